@@ -26,6 +26,7 @@
 package ee.ria.xroad.signer.tokenmanager.token;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.common.util.PasswordStore;
 import ee.ria.xroad.signer.protocol.dto.CertificateInfo;
@@ -69,6 +70,10 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_KEY_NOT_FOUND;
@@ -119,10 +124,15 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
     private final Map<String, Mechanism> signMechanisms;
 
     // maps key id (hex) to RSAPrivateKey
-    private final Map<String, RSAPrivateKey> privateKeys = new HashMap<>();
+    private final Map<String, RSAPrivateKey> privateKeys = new ConcurrentHashMap<>();
     private final Map<String, List<X509PublicKeyCertificate>> certs = new HashMap<>();
 
-    private Session activeSession;
+    private volatile Session activeSession;
+
+    // additional sessions used for concurrent signing, opened on demand
+    private final int signSessionPoolSize = SystemProperties.getHwTokenSignSessionPoolSize();
+    private final Semaphore signSessionPermits = new Semaphore(signSessionPoolSize);
+    private final BlockingQueue<Session> idleSignSessions = new LinkedBlockingQueue<>();
 
     /**
      * @param tokenInfo the token info
@@ -418,6 +428,11 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
                 throw CodedException.tr(X_UNSUPPORTED_SIGN_ALGORITHM, "unsupported_sign_algorithm",
                         "Unsupported signature algorithm '%s'", signatureAlgorithmId);
             }
+
+            if (isConcurrentSigningSupported()) {
+                return signWithPooledSession(signMechanism, key, data);
+            }
+
             activeSession.signInit(signMechanism, key);
             return activeSession.sign(data);
         } finally {
@@ -425,6 +440,57 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
         }
     }
 
+    /**
+     * Concurrent signing uses a pool of sessions, since a PKCS#11 session can only run one
+     * operation at a time. Login state is shared by all sessions of the token, so the pooled
+     * sessions can use the private keys as soon as the user has logged in.
+     */
+    @Override
+    public boolean isConcurrentSigningSupported() {
+        return signSessionPoolSize > 1 && !tokenType.isPinVerificationPerSigning();
+    }
+
+    private byte[] signWithPooledSession(Mechanism signMechanism, RSAPrivateKey key, byte[] data) throws Exception {
+        signSessionPermits.acquire();
+        try {
+            Session session = idleSignSessions.poll();
+            if (session == null) {
+                log.trace("Opening new signing session on token '{}'", getWorkerId());
+                session = getToken().openSession(SERIAL_SESSION, false, null, null);
+            }
+
+            byte[] signature;
+            try {
+                session.signInit(signMechanism, key);
+                signature = session.sign(data);
+            } catch (Exception e) {
+                // The state of a failed session is unknown, do not reuse it
+                closeSignSession(session);
+                throw e;
+            }
+
+            idleSignSessions.offer(session);
+            return signature;
+        } finally {
+            signSessionPermits.release();
+        }
+    }
+
+    private void closeSignSessions() {
+        Session session;
+        while ((session = idleSignSessions.poll()) != null) {
+            closeSignSession(session);
+        }
+    }
+
+    private void closeSignSession(Session session) {
+        try {
+            session.closeSession();
+        } catch (Exception e) {
+            log.warn("Failed to close signing session on token '{}'", getWorkerId(), e);
+        }
+    }
+
     protected byte[] signCertificate(String keyId, String signatureAlgorithmId, String subjectName, PublicKey publicKey) throws Exception {
         log.trace("signCertificate({}, {}, {})", keyId, signatureAlgorithmId, subjectName);
 
@@ -494,9 +560,15 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
     private RSAPrivateKey getPrivateKey(String keyId) throws Exception {
         RSAPrivateKey privateKey = privateKeys.get(keyId);
         if (privateKey == null) {
-            log.debug("Key {} not found in cache, trying to find it from hardware token", keyId);
-            privateKey = findPrivateKey(activeSession, keyId, tokenType.getPrivKeyAttributes().getAllowedMechanisms());
-            privateKeys.put(keyId, privateKey);
+            // concurrent signers must not use the active session at the same time
+            synchronized (privateKeys) {
+                log.debug("Key {} not found in cache, trying to find it from hardware token", keyId);
+                privateKey = findPrivateKey(activeSession, keyId,
+                        tokenType.getPrivKeyAttributes().getAllowedMechanisms());
+                if (privateKey != null) {
+                    privateKeys.put(keyId, privateKey);
+                }
+            }
         }
         return privateKey;
     }
@@ -610,6 +682,7 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
         }
 
         privateKeys.clear();
+        closeSignSessions();
 
         log.trace("logout()");
 
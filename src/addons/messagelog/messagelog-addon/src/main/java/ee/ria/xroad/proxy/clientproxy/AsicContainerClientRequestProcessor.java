@@ -59,6 +59,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.FilterOutputStream;
 import java.io.IOException;
@@ -68,9 +69,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Function;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -159,14 +160,11 @@ public class AsicContainerClientRequestProcessor extends MessageProcessorBase {
     private void handleVerificationConfRequest() throws Exception {
         // GlobalConf.verifyValidity() is not necessary here.
 
-        VersionedConfigurationDirectory confDir = new VersionedConfigurationDirectory(SystemProperties.getConfigurationPath());
+        final byte[] verificationConf = VerificationConf.get(SystemProperties.getConfigurationPath());
 
         servletResponse.setContentType(MimeTypes.ZIP);
         servletResponse.setHeader(HttpHeaders.CONTENT_DISPOSITION, "filename=\"verificationconf.zip\"");
-        try (VerificationConfWriter writer = new VerificationConfWriter(confDir.getInstanceIdentifier(),
-                servletResponse.getOutputStream())) {
-            confDir.eachFile(writer);
-        }
+        servletResponse.getOutputStream().write(verificationConf);
     }
 
     private void handleAsicRequest() throws Exception {
@@ -212,22 +210,26 @@ public class AsicContainerClientRequestProcessor extends MessageProcessorBase {
     }
 
     private void ensureTimestamped(ClientId id, String queryId, Boolean response, boolean force) throws Exception {
-        final List<MessageRecord> records = LogRecordManager.getByQueryId(queryId, id, response, Function.identity());
+        final List<MessageRecord> notTimestamped = new ArrayList<>();
+
+        final int count = LogRecordManager.forEachByQueryId(queryId, id, response, record -> {
+            if (record.getTimestampRecord() == null) {
+                if (!force) {
+                    throw new CodedException(X_INTERNAL_ERROR, MISSING_TIMESTAMP_FAULT_MESSAGE);
+                }
+                notTimestamped.add(record);
+            }
+        });
 
-        if (records.isEmpty()) {
+        if (count == 0) {
             throw new CodedExceptionWithHttpStatus(HttpServletResponse.SC_NOT_FOUND, ErrorCodes.X_NOT_FOUND,
                     DOCUMENTS_NOT_FOUND_FAULT_MESSAGE);
         }
 
-        for (MessageRecord record : records) {
-            if (record.getTimestampRecord() == null) {
-                if (force) {
-                    if (MessageLog.timestamp(record) == null) {
-                        throw new Exception(TIMESTAMPING_FAILED_FAULT_MESSAGE);
-                    }
-                } else {
-                    throw new Exception(MISSING_TIMESTAMP_FAULT_MESSAGE);
-                }
+        // Time-stamping runs in its own transactions, so it is done only after the records have been read
+        for (MessageRecord record : notTimestamped) {
+            if (MessageLog.timestamp(record) == null) {
+                throw new Exception(TIMESTAMPING_FAILED_FAULT_MESSAGE);
             }
         }
     }
@@ -295,19 +297,17 @@ public class AsicContainerClientRequestProcessor extends MessageProcessorBase {
     private void writeContainers(ClientId clientId, String queryId, AsicContainerNameGenerator nameGen,
             Boolean response, CheckedSupplier<OutputStream> outputSupplier) throws Exception {
 
-        LogRecordManager.getByQueryId(queryId, clientId, response, records -> {
-            if (records.isEmpty()) {
-                throw new CodedExceptionWithHttpStatus(HttpServletResponse.SC_NOT_FOUND, ErrorCodes.X_NOT_FOUND,
-                        DOCUMENTS_NOT_FOUND_FAULT_MESSAGE);
-            }
-            final MessageRecordEncryption messageRecordEncryption = MessageRecordEncryption.getInstance();
-            try (OutputStream os = outputSupplier.get(); ZipOutputStream zos = new ZipOutputStream(os)) {
-                zos.setLevel(0);
-                for (MessageRecord record : records) {
+        final MessageRecordEncryption messageRecordEncryption = MessageRecordEncryption.getInstance();
+
+        // The output is opened when the first record arrives, so that a missing records fault can still be sent
+        try (ContainerZip containers = new ContainerZip(outputSupplier)) {
+            final int count = LogRecordManager.forEachByQueryId(queryId, clientId, response, record -> {
+                try {
+                    final ZipOutputStream zos = containers.open();
                     if (record.getTimestampRecord() == null) {
                         // Only happens if there are matching messages that are sent after
                         // the ensureTimestamped check was made. Ignore to emulate the previous behavior.
-                        continue;
+                        return;
                     }
                     messageRecordEncryption.prepareDecryption(record);
                     final ZipEntry entry = new ZipEntry(
@@ -319,14 +319,50 @@ public class AsicContainerClientRequestProcessor extends MessageProcessorBase {
                         record.toAsicContainer().write(es);
                     }
                     zos.closeEntry();
+                } catch (CodedException ce) {
+                    throw ce;
+                } catch (Exception e) {
+                    throw new CodedException(X_INTERNAL_ERROR, e);
                 }
-            } catch (CodedException ce) {
-                throw ce;
-            } catch (Exception e) {
-                throw new CodedException(X_INTERNAL_ERROR, e);
+            });
+
+            if (count == 0) {
+                throw new CodedExceptionWithHttpStatus(HttpServletResponse.SC_NOT_FOUND, ErrorCodes.X_NOT_FOUND,
+                        DOCUMENTS_NOT_FOUND_FAULT_MESSAGE);
             }
-            return null;
-        });
+        }
+    }
+
+    /**
+     * Zip stream of containers that opens the underlying output on first use.
+     */
+    private static final class ContainerZip implements Closeable {
+
+        private final CheckedSupplier<OutputStream> outputSupplier;
+        private OutputStream os;
+        private ZipOutputStream zos;
+
+        ContainerZip(CheckedSupplier<OutputStream> outputSupplier) {
+            this.outputSupplier = outputSupplier;
+        }
+
+        ZipOutputStream open() throws Exception {
+            if (zos == null) {
+                os = outputSupplier.get();
+                zos = new ZipOutputStream(os);
+                zos.setLevel(0);
+            }
+            return zos;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (zos != null) {
+                try (OutputStream ignored = os) {
+                    zos.close();
+                }
+            }
+        }
     }
 
     /**
@@ -430,6 +466,40 @@ public class AsicContainerClientRequestProcessor extends MessageProcessorBase {
         return paramValue;
     }
 
+    /**
+     * Verification configuration zip, cached between requests. The configuration directory is re-read on every
+     * request, but the zip is rebuilt only when the directory or any of its parameters have changed.
+     */
+    private static final class VerificationConf {
+
+        private static VersionedConfigurationDirectory cachedDir;
+        private static byte[] cachedZip;
+
+        private VerificationConf() {
+        }
+
+        static synchronized byte[] get(String configurationPath) throws IOException {
+            final VersionedConfigurationDirectory confDir = cachedDir == null
+                    ? new VersionedConfigurationDirectory(configurationPath)
+                    : new VersionedConfigurationDirectory(configurationPath, cachedDir);
+
+            if (cachedDir == null
+                    || !confDir.getPath().equals(cachedDir.getPath())
+                    || !confDir.getInstanceIdentifier().equals(cachedDir.getInstanceIdentifier())
+                    || !confDir.hasSameParameters(cachedDir)) {
+                final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                try (VerificationConfWriter writer = new VerificationConfWriter(confDir.getInstanceIdentifier(), bos)) {
+                    confDir.eachFile(writer);
+                }
+                cachedZip = bos.toByteArray();
+                cachedDir = confDir;
+                log.debug("Verification configuration rebuilt ({} bytes)", cachedZip.length);
+            }
+
+            return cachedZip;
+        }
+    }
+
     private static class VerificationConfWriter implements FileConsumer, Closeable {
 
         private static final String PREFIX = "verificationconf/";
@@ -29,7 +29,10 @@ import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.signature.TimestampVerifier;
+import ee.ria.xroad.common.util.MetricsHolder;
 
+import com.codahale.metrics.Meter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -40,9 +43,22 @@ import org.bouncycastle.tsp.TimeStampResponse;
 import org.bouncycastle.tsp.TimeStampToken;
 
 import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static com.codahale.metrics.MetricRegistry.name;
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
 import static ee.ria.xroad.common.util.CryptoUtils.getAlgorithmIdentifier;
@@ -53,8 +69,37 @@ import static ee.ria.xroad.proxy.messagelog.TimestamperUtil.getTimestampResponse
 @RequiredArgsConstructor
 abstract class AbstractTimestampRequest {
 
+    private static final long REQUEST_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    // Each of the batches time-stamped in parallel has at most one request in progress per time-stamping provider.
+    // The pool grows with the number of providers, see ensureRequestThreads().
+    private static final ThreadPoolExecutor REQUEST_EXECUTOR = newRequestExecutor(
+            MessageLogProperties.getTimestampParallelBatches());
+
+    private static final Meter HEDGED_REQUESTS = MetricsHolder.getRegistry()
+            .meter(name(AbstractTimestampRequest.class, "hedgedRequests"));
+
     protected final Long[] logRecords;
 
+    private static ThreadPoolExecutor newRequestExecutor(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                REQUEST_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("timestamp-request-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static void ensureRequestThreads(int tspCount) {
+        int threads = MessageLogProperties.getTimestampParallelBatches() * Math.max(1, tspCount);
+
+        synchronized (REQUEST_EXECUTOR) {
+            if (REQUEST_EXECUTOR.getMaximumPoolSize() < threads) {
+                REQUEST_EXECUTOR.setMaximumPoolSize(threads);
+                REQUEST_EXECUTOR.setCorePoolSize(threads);
+            }
+        }
+    }
+
     abstract byte[] getRequestData() throws Exception;
 
     abstract Timestamper.TimestampResult result(TimeStampResponse tsResponse, String url) throws Exception;
@@ -76,30 +121,135 @@ abstract class AbstractTimestampRequest {
         }
     }
 
+    /**
+     * Sends the time-stamp request to the time-stamping providers in the given order, moving on to the next
+     * provider when a request fails. If a provider has not answered within the hedge delay, the request is also
+     * sent to the next provider, and the first valid time-stamp is used. The connections of the requests that
+     * are no longer waited for are closed, so they do not keep a thread until the provider answers or times out.
+     */
     protected Timestamper.TimestampResult makeTsRequest(TimeStampRequest tsRequest,
                                       List<String> tspUrls) throws Exception {
         log.debug("tspUrls: {}", tspUrls);
-        for (String url: tspUrls) {
+
+        ensureRequestThreads(tspUrls.size());
+
+        int hedgeDelay = MessageLogProperties.getTimestamperHedgeDelay();
+        Requests requests = new Requests();
+        CompletionService<Timestamper.TimestampResult> responses = new ExecutorCompletionService<>(REQUEST_EXECUTOR);
+        List<Future<Timestamper.TimestampResult>> sent = new ArrayList<>(tspUrls.size());
+
+        try {
+            if (!tspUrls.isEmpty()) {
+                sent.add(send(responses, tsRequest, tspUrls.get(0), requests));
+            }
+
+            int pending = sent.size();
+            while (pending > 0) {
+                boolean hasNext = sent.size() < tspUrls.size();
+                Future<Timestamper.TimestampResult> response = hasNext && hedgeDelay > 0
+                        ? responses.poll(hedgeDelay, TimeUnit.MILLISECONDS)
+                        : responses.take();
+
+                if (response == null) {
+                    String url = tspUrls.get(sent.size());
+                    log.info("No time-stamp received in {} ms, also sending time-stamp request to {}", hedgeDelay, url);
+                    HEDGED_REQUESTS.mark();
+
+                    sent.add(send(responses, tsRequest, url, requests));
+                    pending++;
+                    continue;
+                }
+
+                pending--;
+                try {
+                    return response.get();
+                } catch (ExecutionException e) {
+                    if (sent.size() < tspUrls.size()) {
+                        sent.add(send(responses, tsRequest, tspUrls.get(sent.size()), requests));
+                        pending++;
+                    }
+                }
+            }
+        } finally {
+            requests.abort();
+            sent.forEach(request -> request.cancel(true));
+        }
+
+        // All the URLs failed. Throw exception.
+        throw new RuntimeException(
+                "Failed to get time stamp from any time-stamping providers");
+    }
+
+    private Future<Timestamper.TimestampResult> send(CompletionService<Timestamper.TimestampResult> responses,
+            TimeStampRequest tsRequest, String url, Requests requests) {
+        return responses.submit(() -> {
+            long start = System.nanoTime();
             try {
                 log.debug("Sending time-stamp request to {}", url);
 
-                TsRequest req = new TsRequest(TimestamperUtil.makeTsRequest(tsRequest, url), url);
+                HttpURLConnection connection = requests.open(url);
+                TimeStampResponse tsResponse;
+                try {
+                    TsRequest req = new TsRequest(TimestamperUtil.makeTsRequest(tsRequest, connection), url);
 
-                TimeStampResponse tsResponse = getTimestampResponse(req.getInputStream());
+                    tsResponse = getTimestampResponse(req.getInputStream());
+                } finally {
+                    requests.closed(connection);
+                }
                 log.info("tsresponse {}", tsResponse);
 
                 verify(tsRequest, tsResponse);
 
-                return result(tsResponse, url);
+                Timestamper.TimestampResult result = result(tsResponse, url);
+                TspHealth.getInstance().recordSuccess(url, System.nanoTime() - start);
 
+                return result;
             } catch (Exception ex) {
-                log.error("Failed to get time stamp from " + url, ex);
+                // Failures of requests that are no longer waited for are caused by the cancellation.
+                if (!requests.isAborted()) {
+                    log.error("Failed to get time stamp from " + url, ex);
+                    TspHealth.getInstance().recordFailure(url);
+                }
+
+                throw ex;
+            }
+        });
+    }
+
+    /**
+     * Connections of the requests sent for one time-stamp, closed when the time-stamp is no longer waited for.
+     */
+    private static final class Requests {
+        private final AtomicBoolean aborted = new AtomicBoolean();
+        private final Queue<HttpURLConnection> connections = new ConcurrentLinkedQueue<>();
+
+        HttpURLConnection open(String url) throws Exception {
+            HttpURLConnection connection = TimestamperUtil.openTsConnection(url);
+            connections.add(connection);
+
+            // abort() may have run before the connection was added
+            if (aborted.get()) {
+                connections.remove(connection);
+                throw new InterruptedException("Time-stamp request to " + url + " is no longer needed");
             }
+
+            return connection;
         }
 
-        // All the URLs failed. Throw exception.
-        throw new RuntimeException(
-                "Failed to get time stamp from any time-stamping providers");
+        void closed(HttpURLConnection connection) {
+            connections.remove(connection);
+        }
+
+        boolean isAborted() {
+            return aborted.get();
+        }
+
+        void abort() {
+            aborted.set(true);
+
+            connections.forEach(HttpURLConnection::disconnect);
+            connections.clear();
+        }
     }
 
     private TimeStampRequest createTimestampRequest(byte[] data)
@@ -79,21 +79,34 @@ public class LogManager extends AbstractLogManager {
 
     private final Timestamper timestamper;
     private final TimestamperJob timestamperJob;
+    private final MessageRecordWriter messageRecordWriter;
 
     // package private for testing
+    final PendingTasks pendingTasks;
     final TaskQueue taskQueue;
 
     LogManager(JobManager jobManager) {
         super(jobManager);
 
+        pendingTasks = new PendingTasks(MessageLogProperties.getTimestampQueueCapacity());
         timestamper = getTimestamperImpl();
         taskQueue = getTaskQueueImpl(timestamper);
         timestamperJob = createTimestamperJob(taskQueue);
+
+        int writeBatchSize = MessageLogProperties.getWriteBatchSize();
+        messageRecordWriter = writeBatchSize > 1
+                ? new MessageRecordWriter(writeBatchSize, MessageLogProperties.getWriteQueueCapacity(),
+                        MessageLogProperties.getWriteTimeout(), this::addPendingTask)
+                : null;
     }
 
     @Override
     public void shutdown() {
         timestamperJob.shutdown();
+        timestamper.shutdown();
+        if (messageRecordWriter != null) {
+            messageRecordWriter.shutdown();
+        }
         super.shutdown();
     }
 
@@ -171,7 +184,11 @@ public class LogManager extends AbstractLogManager {
         Timestamper.TimestampResult result = timestamper.handleTimestampTask(new Timestamper.TimestampTask(logRecord));
 
         if (result instanceof Timestamper.TimestampSucceeded) {
-            return saveTimestampRecord((Timestamper.TimestampSucceeded) result);
+            Timestamper.TimestampSucceeded succeeded = (Timestamper.TimestampSucceeded) result;
+            TimestampRecord timestampRecord = saveTimestampRecord(succeeded);
+            pendingTasks.remove(succeeded.getMessageRecords());
+
+            return timestampRecord;
         } else if (result instanceof Timestamper.TimestampFailed) {
             Exception e = ((Timestamper.TimestampFailed) result).getCause();
 
@@ -245,10 +262,20 @@ public class LogManager extends AbstractLogManager {
     }
 
     protected MessageRecord saveMessageRecord(MessageRecord messageRecord) throws Exception {
-        LogRecordManager.saveMessageRecord(messageRecord);
+        // Records with an attachment are streamed to the database by the thread logging the message.
+        if (messageRecordWriter != null && messageRecord.getAttachmentStream() == null) {
+            messageRecordWriter.save(messageRecord);
+        } else {
+            LogRecordManager.saveMessageRecord(messageRecord);
+        }
+        addPendingTask(messageRecord);
         return messageRecord;
     }
 
+    private void addPendingTask(MessageRecord messageRecord) {
+        pendingTasks.add(messageRecord.getId(), messageRecord.getSignatureHash());
+    }
+
     static TimestampRecord saveTimestampRecord(Timestamper.TimestampSucceeded message) throws Exception {
         log.trace("saveTimestampRecord()");
 
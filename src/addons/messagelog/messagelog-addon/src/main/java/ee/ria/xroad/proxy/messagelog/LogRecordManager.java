@@ -34,7 +34,11 @@ import ee.ria.xroad.common.messagelog.TimestampRecord;
 import ee.ria.xroad.messagelog.database.MessageRecordEncryption;
 
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.hibernate.query.Query;
 
 import javax.persistence.criteria.CriteriaBuilder;
@@ -47,8 +51,10 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransaction;
@@ -60,6 +66,7 @@ import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransactio
 public final class LogRecordManager {
 
     private static final int DEFAULT_BATCH_SIZE = 50;
+    private static final int SCROLL_FETCH_SIZE = 20;
     private static final String GET_BY_QUERY_ID_LOG_FORMAT = "getByQueryId({}, {}, {})";
 
     private static int configuredBatchSize = 0;
@@ -105,19 +112,39 @@ public final class LogRecordManager {
     }
 
     /**
-     * Returns a list of log records for a given message Query Id and sender Client Id.
+     * Passes the log records for a given message Query Id and sender Client Id to the consumer one by one.
+     * The records are read through a database cursor and evicted from the session once consumed, so the
+     * number of matching records does not affect memory use. The consumer is called within the transaction,
+     * so record attachments can be read.
      * @param queryId the message query id.
      * @param clientId the sender client id.
-     * @param isResponse whether the response record should be retrieved.
-     * @return the log record list or empty list, if no log records were not found in database.
+     * @param isResponse whether the response records should be retrieved.
+     * @param consumer the consumer of the records.
+     * @return the number of records found.
      * @throws Exception if an error occurs while communicating with database.
      */
-    public static <R> R getByQueryId(String queryId, ClientId clientId, Boolean isResponse,
-            Function<List<MessageRecord>, R> processor)
-            throws Exception {
+    public static int forEachByQueryId(String queryId, ClientId clientId, Boolean isResponse,
+            Consumer<MessageRecord> consumer) throws Exception {
         log.trace(GET_BY_QUERY_ID_LOG_FORMAT, queryId, clientId, isResponse);
 
-        return doInTransaction(session -> processor.apply(getMessageRecords(session, queryId, clientId, isResponse)));
+        return doInTransaction(session -> {
+            final CriteriaQuery<MessageRecord> query = createRecordCriteria(session, queryId, clientId, isResponse);
+            int count = 0;
+
+            try (ScrollableResults results = session.createQuery(query)
+                    .setReadOnly(true)
+                    .setFetchSize(SCROLL_FETCH_SIZE)
+                    .scroll(ScrollMode.FORWARD_ONLY)) {
+                while (results.next()) {
+                    final MessageRecord record = (MessageRecord) results.get(0);
+                    consumer.accept(record);
+                    session.evict(record);
+                    count++;
+                }
+            }
+
+            return count;
+        });
     }
 
     /**
@@ -138,25 +165,41 @@ public final class LogRecordManager {
      * @throws Exception if an error occurs while communicating with database.
      */
     static void saveMessageRecord(MessageRecord messageRecord) throws Exception {
+        saveMessageRecords(Collections.singletonList(messageRecord));
+    }
+
+    /**
+     * Saves the message records to database in one transaction.
+     * @param messageRecords the message records to be saved.
+     * @throws Exception if an error occurs while communicating with database.
+     */
+    static void saveMessageRecords(List<MessageRecord> messageRecords) throws Exception {
+        log.trace("saveMessageRecords({})", messageRecords.size());
 
         final MessageRecordEncryption encryption = MessageRecordEncryption.getInstance();
         final boolean encrypt = encryption.encryptionEnabled();
 
         doInTransaction(session -> {
-            //the blob must be created within hibernate session
-            messageRecord.setId(getNextRecordId(session));
+            long[] ids = getNextRecordIds(session, messageRecords.size());
 
-            if (encrypt) {
-                encryption.prepareEncryption(messageRecord);
-            }
+            for (int i = 0; i < ids.length; i++) {
+                MessageRecord messageRecord = messageRecords.get(i);
 
-            InputStream is = messageRecord.getAttachmentStream();
-            if (is != null) {
-                messageRecord.setAttachment(
-                        session.getLobHelper().createBlob(is, messageRecord.getAttachmentStreamSize()));
-            }
+                //the blob must be created within hibernate session
+                messageRecord.setId(ids[i]);
+
+                if (encrypt) {
+                    encryption.prepareEncryption(messageRecord);
+                }
 
-            save(session, messageRecord);
+                InputStream is = messageRecord.getAttachmentStream();
+                if (is != null) {
+                    messageRecord.setAttachment(
+                            session.getLobHelper().createBlob(is, messageRecord.getAttachmentStreamSize()));
+                }
+
+                save(session, messageRecord);
+            }
             return null;
         });
     }
@@ -215,6 +258,40 @@ public final class LogRecordManager {
         return ((Number) session.createSQLQuery("SELECT nextval('logrecord_sequence')").getSingleResult()).longValue();
     }
 
+    /**
+     * Reserves the given number of log record ids. On PostgreSQL, the ids are reserved with one query.
+     * @param session the Hibernate session.
+     * @param count the number of ids.
+     * @return the reserved ids in ascending order.
+     */
+    static long[] getNextRecordIds(Session session, int count) {
+        long[] ids = new long[count];
+
+        if (count > 1 && isPostgreSQL(session)) {
+            List<?> result = session.createSQLQuery(
+                    "SELECT nextval('logrecord_sequence') FROM generate_series(1, :count)")
+                    .setParameter("count", count)
+                    .getResultList();
+
+            for (int i = 0; i < count; i++) {
+                ids[i] = ((Number) result.get(i)).longValue();
+            }
+
+            Arrays.sort(ids);
+        } else {
+            for (int i = 0; i < count; i++) {
+                ids[i] = getNextRecordId(session);
+            }
+        }
+
+        return ids;
+    }
+
+    private static boolean isPostgreSQL(Session session) {
+        return ((SessionFactoryImplementor) session.getSessionFactory()).getJdbcServices()
+                .getDialect() instanceof PostgreSQL81Dialect;
+    }
+
     /**
      * Associates each log record with the time-stamp record.
      * @param session the Hibernate session.
@@ -296,13 +373,6 @@ public final class LogRecordManager {
         return session.createQuery(query).setReadOnly(true).setMaxResults(1).uniqueResult();
     }
 
-    private static List<MessageRecord> getMessageRecords(Session session, String queryId, ClientId
-            clientId,
-            Boolean isResponse) {
-        final CriteriaQuery<MessageRecord> query = createRecordCriteria(session, queryId, clientId, isResponse);
-        return session.createQuery(query).setReadOnly(true).getResultList();
-    }
-
     private static CriteriaQuery<MessageRecord> createRecordCriteria(Session session, String queryId, ClientId clientId,
             Boolean isResponse) {
 
@@ -0,0 +1,307 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+import ee.ria.xroad.common.util.MetricsHolder;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static ee.ria.xroad.common.ErrorCodes.X_LOGGING_FAILED_X;
+
+/**
+ * Saves message records with group commit. The threads logging messages put the records into a bounded queue
+ * and a single writer thread saves all records waiting in the queue (up to the maximum batch size) in one
+ * transaction. {@link #save(MessageRecord)} returns only after the transaction containing the record has been
+ * committed, so a logged message is as durable as when it is saved in its own transaction. The records are
+ * saved in the order they were queued.
+ * <p>
+ * If saving a batch fails, its records are saved again one by one, so that a single bad record only fails the
+ * message it belongs to. Records with an attachment are not accepted, because the attachment stream is consumed
+ * by the save and the record could not be retried. They are saved by the thread logging the message.
+ * <p>
+ * A save that has not been committed within the write timeout fails. If the record was already being saved, it
+ * may still be committed afterwards, and is then handed to the late commit handler.
+ */
+@Slf4j
+final class MessageRecordWriter {
+
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private final BlockingQueue<PendingRecord> queue;
+    private final int maxBatchSize;
+    private final long timeoutMillis;
+    private final RecordSaver saver;
+    private final Consumer<MessageRecord> lateCommitHandler;
+    private final Thread writerThread;
+
+    private final Histogram batchSize = MetricsHolder.getRegistry()
+            .histogram(name(MessageRecordWriter.class, "batchSize"));
+    private final Timer commitLatency = MetricsHolder.getRegistry()
+            .timer(name(MessageRecordWriter.class, "commitLatency"));
+
+    private volatile boolean running = true;
+
+    MessageRecordWriter(int maxBatchSize, int queueCapacity, long timeoutMillis,
+            Consumer<MessageRecord> lateCommitHandler) {
+        this(maxBatchSize, queueCapacity, timeoutMillis, LogRecordManager::saveMessageRecords, lateCommitHandler);
+    }
+
+    MessageRecordWriter(int maxBatchSize, int queueCapacity, long timeoutMillis, RecordSaver saver,
+            Consumer<MessageRecord> lateCommitHandler) {
+        this.maxBatchSize = maxBatchSize;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.timeoutMillis = timeoutMillis;
+        this.saver = saver;
+        this.lateCommitHandler = lateCommitHandler;
+
+        MetricsHolder.registerGauge(name(MessageRecordWriter.class, "queueDepth"), queue::size);
+
+        writerThread = new Thread(this::run, "messagelog-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Saves the message record. Blocks until the record has been committed to database or the write timeout
+     * has passed.
+     * @param messageRecord the message record, without an attachment
+     * @throws CodedException if the record was not committed within the write timeout
+     * @throws Exception if saving the record failed
+     */
+    void save(MessageRecord messageRecord) throws Exception {
+        if (messageRecord.getAttachmentStream() != null) {
+            throw new IllegalArgumentException("Message records with an attachment cannot be saved in groups");
+        }
+
+        if (!running) {
+            throw new IllegalStateException("Message record writer has been shut down");
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        PendingRecord pending = new PendingRecord(messageRecord);
+        while (!queue.offer(pending, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (!running) {
+                throw new IllegalStateException("Message record writer has been shut down");
+            }
+
+            if (timeoutMillis > 0 && System.nanoTime() - deadline >= 0) {
+                throw timedOut();
+            }
+        }
+
+        if (!writerThread.isAlive() && queue.remove(pending)) {
+            throw new IllegalStateException("Message record writer has been shut down");
+        }
+
+        if (timeoutMillis <= 0) {
+            getResult(pending);
+            return;
+        }
+
+        try {
+            pending.result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // A record still in the queue is never saved. Otherwise it is being saved right now, and if it gets
+            // committed after all, the writer hands it to the late commit handler.
+            queue.remove(pending);
+
+            if (pending.result.completeExceptionally(e)) {
+                throw timedOut();
+            }
+
+            // committed or failed just now
+            getResult(pending);
+        } catch (ExecutionException e) {
+            throw cause(e);
+        }
+    }
+
+    private CodedException timedOut() {
+        return new CodedException(X_LOGGING_FAILED_X, "Saving message record timed out after %d ms", timeoutMillis);
+    }
+
+    private static void getResult(PendingRecord pending) throws Exception {
+        try {
+            pending.result.get();
+        } catch (ExecutionException e) {
+            throw cause(e);
+        }
+    }
+
+    private static Exception cause(ExecutionException e) {
+        return e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    }
+
+    /**
+     * Stops the writer after saving the records already in the queue.
+     */
+    void shutdown() {
+        running = false;
+
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    int queueSize() {
+        return queue.size();
+    }
+
+    private void run() {
+        List<PendingRecord> batch = new ArrayList<>(maxBatchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingRecord first = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+
+                write(batch);
+            } catch (InterruptedException e) {
+                log.warn("Message record writer interrupted");
+
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+
+        // Records left in the queue after an interrupt are not saved
+        queue.drainTo(batch);
+        batch.forEach(pending -> pending.result.completeExceptionally(
+                new IllegalStateException("Message record writer has been shut down")));
+    }
+
+    private void write(List<PendingRecord> batch) {
+        // records whose save has already timed out
+        batch.removeIf(pending -> pending.result.isDone());
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        if (batch.size() == 1) {
+            writeSeparately(batch.get(0));
+        } else {
+            writeGrouped(batch);
+        }
+    }
+
+    private void writeGrouped(List<PendingRecord> batch) {
+        List<MessageRecord> records = new ArrayList<>(batch.size());
+        batch.forEach(pending -> records.add(pending.messageRecord));
+
+        batchSize.update(records.size());
+
+        try (Timer.Context ignored = commitLatency.time()) {
+            saver.save(records);
+        } catch (Exception e) {
+            log.warn("Saving {} message records failed, saving them one by one", records.size(), e);
+
+            for (PendingRecord pending : batch) {
+                pending.reset();
+                writeSeparately(pending);
+            }
+            return;
+        }
+
+        batch.forEach(this::committed);
+    }
+
+    private void writeSeparately(PendingRecord pending) {
+        batchSize.update(1);
+
+        try (Timer.Context ignored = commitLatency.time()) {
+            saver.save(List.of(pending.messageRecord));
+        } catch (Exception e) {
+            log.error("Saving message record failed", e);
+
+            pending.result.completeExceptionally(e);
+            return;
+        }
+
+        committed(pending);
+    }
+
+    private void committed(PendingRecord pending) {
+        if (!pending.result.complete(null)) {
+            log.warn("Message record {} was committed after its save had timed out", pending.messageRecord.getId());
+
+            lateCommitHandler.accept(pending.messageRecord);
+        }
+    }
+
+    /**
+     * Saves message records in one transaction.
+     */
+    @FunctionalInterface
+    interface RecordSaver {
+        void save(List<MessageRecord> records) throws Exception;
+    }
+
+    private static final class PendingRecord {
+        private final MessageRecord messageRecord;
+        private final String message;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        PendingRecord(MessageRecord messageRecord) {
+            this.messageRecord = messageRecord;
+            this.message = messageRecord.getMessage();
+        }
+
+        /**
+         * Undoes the encryption done by a failed save, the record gets a new id and thus a new IV when saved again.
+         */
+        void reset() {
+            messageRecord.setCipherMessage(null);
+            messageRecord.setMessage(message);
+            messageRecord.setKeyId(null);
+        }
+    }
+}
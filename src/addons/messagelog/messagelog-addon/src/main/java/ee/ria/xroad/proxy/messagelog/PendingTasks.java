@@ -0,0 +1,189 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransaction;
+
+/**
+ * Message records waiting to be time-stamped, kept in memory in the order of their ids so that the task queue
+ * does not have to query the message log table for them on every time-stamping round.
+ *
+ * Records are added after they have been committed and removed after their time-stamp has been saved. At most
+ * {@code capacity} records are kept in memory. Records that do not fit, and all the records waiting when the
+ * proxy starts, are loaded from the database when there is room again. Loading uses the partial index of
+ * the records that have not been time-stamped and starts from the smallest id that is missing from memory.
+ */
+@Slf4j
+final class PendingTasks {
+
+    private static final long NONE_MISSING = Long.MAX_VALUE;
+
+    private final ConcurrentNavigableMap<Long, String> tasks = new ConcurrentSkipListMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int capacity;
+    private final Loader loader;
+
+    /** Smallest id of the records that may be waiting in the database but are missing from memory. */
+    private final AtomicLong missingFrom = new AtomicLong(0);
+
+    PendingTasks(int capacity) {
+        this(capacity, (from, limit) -> doInTransaction(session -> getTasks(session, from, limit)));
+    }
+
+    PendingTasks(int capacity, Loader loader) {
+        this.capacity = Math.max(1, capacity);
+        this.loader = loader;
+    }
+
+    /**
+     * Adds a committed message record.
+     * @param messageRecordNo id of the message record
+     * @param signatureHash signature hash of the message record
+     */
+    void add(Long messageRecordNo, String signatureHash) {
+        if (size.get() >= capacity) {
+            missingFrom.accumulateAndGet(messageRecordNo, Math::min);
+            return;
+        }
+
+        if (tasks.putIfAbsent(messageRecordNo, signatureHash) == null) {
+            size.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes time-stamped message records.
+     * @param messageRecordNos ids of the message records
+     */
+    void remove(Long[] messageRecordNos) {
+        for (Long messageRecordNo : messageRecordNos) {
+            if (tasks.remove(messageRecordNo) != null) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns the message records with the smallest ids, without removing them. Loads the records missing from
+     * memory from the database first if there is room for them.
+     * @param limit maximum number of records to return
+     * @return the records in the order of their ids
+     * @throws Exception if loading the records from the database failed
+     */
+    List<Task> peek(int limit) throws Exception {
+        if (missingFrom.get() != NONE_MISSING && size.get() <= capacity / 2) {
+            load();
+        }
+
+        List<Task> result = new ArrayList<>(Math.min(limit, size.get()));
+        for (Map.Entry<Long, String> task : tasks.entrySet()) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(new Task(task.getKey(), task.getValue()));
+        }
+
+        return result;
+    }
+
+    /**
+     * @return true if no message records are waiting to be time-stamped
+     */
+    boolean isEmpty() {
+        return missingFrom.get() == NONE_MISSING && tasks.isEmpty();
+    }
+
+    /**
+     * @return the number of message records in memory
+     */
+    int size() {
+        return size.get();
+    }
+
+    private void load() throws Exception {
+        long from = missingFrom.getAndSet(NONE_MISSING);
+        int space = capacity - size.get();
+
+        List<Task> loaded;
+        try {
+            loaded = loader.load(from, space);
+        } catch (Exception e) {
+            missingFrom.accumulateAndGet(from, Math::min);
+            throw e;
+        }
+
+        for (Task task : loaded) {
+            if (tasks.putIfAbsent(task.getMessageRecordNo(), task.getSignatureHash()) == null) {
+                size.incrementAndGet();
+            }
+        }
+
+        if (loaded.size() == space) {
+            // There may be more.
+            missingFrom.accumulateAndGet(loaded.get(loaded.size() - 1).getMessageRecordNo() + 1, Math::min);
+        }
+
+        log.debug("Loaded {} message records waiting to be time-stamped", loaded.size());
+    }
+
+    /**
+     * Loads the message records waiting to be time-stamped.
+     */
+    @FunctionalInterface
+    interface Loader {
+        /**
+         * @param from smallest id to load
+         * @param limit maximum number of records to load
+         * @return the records in the order of their ids
+         * @throws Exception in case of errors
+         */
+        List<Task> load(long from, int limit) throws Exception;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Task> getTasks(Session session, long from, int limit) {
+        return session.createQuery(getTasksQuery())
+                .setParameter("from", from)
+                .setMaxResults(limit)
+                .list();
+    }
+
+    private static String getTasksQuery() {
+        return "select new " + Task.class.getName() + "(m.id, m.signatureHash) "
+                + "from MessageRecord m where m.timestampRecord is null and m.id >= :from order by m.id";
+    }
+}
@@ -26,33 +26,65 @@
 package ee.ria.xroad.proxy.messagelog;
 
 import ee.ria.xroad.common.messagelog.MessageLogProperties;
+import ee.ria.xroad.common.util.MetricsHolder;
 import ee.ria.xroad.proxy.messagelog.Timestamper.TimestampFailed;
 import ee.ria.xroad.proxy.messagelog.Timestamper.TimestampSucceeded;
 import ee.ria.xroad.proxy.messagelog.Timestamper.TimestampTask;
 
-import lombok.AccessLevel;
-import lombok.RequiredArgsConstructor;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
 import lombok.extern.slf4j.Slf4j;
-import org.hibernate.Session;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
-import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransaction;
+import static com.codahale.metrics.MetricRegistry.name;
 
 /**
  * Handles the TaskQueues -- adds tasks to the queue and sends the active queue for time-stamping.
+ * The message records waiting to be time-stamped are taken from {@link PendingTasks}.
+ *
+ * When more records are waiting than fit in one time-stamping batch, up to
+ * {@link MessageLogProperties#getTimestampParallelBatches()} batches are time-stamped in parallel. The number of
+ * records waiting and the estimated time to time-stamp them are published as metrics. The results of all batches
+ * are combined and reported to the {@link LogManager} once, after the time-stamping pass is over.
  */
 @Slf4j
-@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
 public class TaskQueue {
 
     static final double TIMESTAMPED_RECORDS_RATIO_THRESHOLD = 0.7;
     static final int TIMESTAMP_RECORDS_LIMIT_RETRY_MODE = 1;
 
+    private static final Meter TIMESTAMPED_RECORDS = MetricsHolder.getRegistry()
+            .meter(name(TaskQueue.class, "timestampedRecords"));
+
     private final Timestamper timestamper;
     private final LogManager logManager;
 
+    private final PendingTasks pendingTasks;
+
+    // The outcome of the current time-stamping pass.
+    private boolean failed;
+    private Exception failureCause;
+
+    TaskQueue(Timestamper timestamper, LogManager logManager) {
+        this.timestamper = timestamper;
+        this.logManager = logManager;
+        this.pendingTasks = logManager.pendingTasks;
+
+        MetricsHolder.registerGauge(name(TaskQueue.class, "backlog"), (Gauge<Integer>) pendingTasks::size);
+        MetricsHolder.registerGauge(name(TaskQueue.class, "backlogDrainSeconds"), (Gauge<Double>) () -> {
+            int waiting = pendingTasks.size();
+            double rate = TIMESTAMPED_RECORDS.getOneMinuteRate();
+            if (waiting == 0) {
+                return 0.0;
+            }
+            return rate > 0 ? waiting / rate : Double.NaN;
+        });
+    }
+
     protected void handleTimestampSucceeded(TimestampSucceeded message) {
         log.trace("handleTimestampSucceeded");
 
@@ -60,33 +92,21 @@ public class TaskQueue {
             log.trace("Time-stamped message records {}", Arrays.toString(message.getMessageRecords()));
         }
 
-        boolean succeeded = true;
-        Exception failureCause = null;
-
         try {
             saveTimestampRecord(message);
+
+            TIMESTAMPED_RECORDS.mark(message.getMessageRecords().length);
         } catch (Exception e) {
             log.error("Failed to save time-stamp record to database", e);
 
-            succeeded = false;
-        } finally {
-            if (succeeded) {
-                indicateSuccess();
-                // If time-stamped records count equals to time-stamp records limit, there are probably
-                // still records to be time-stamped. Init another another time-stamping round to prevent
-                // messagelog records to begin to bloat.
-                if (message.getMessageRecords().length == MessageLogProperties.getTimestampRecordsLimit()) {
-                    log.info("Time-stamped records count equaled to time-stamp records limit");
-                    handleStartTimestamping();
-                }
-            } else {
-                indicateFailure(failureCause);
-            }
+            // not a time-stamping service failure, so no diagnostics error code
+            markFailed(null);
         }
     }
 
     protected void saveTimestampRecord(TimestampSucceeded message) throws Exception {
         LogManager.saveTimestampRecord(message);
+        pendingTasks.remove(message.getMessageRecords());
     }
 
     private void indicateSuccess() {
@@ -123,7 +143,15 @@ public class TaskQueue {
     protected void handleTimestampFailed(TimestampFailed message) {
         log.trace("handleTimestampFailed");
 
-        indicateFailure(message.getCause());
+        markFailed(message.getCause());
+    }
+
+    private void markFailed(Exception cause) {
+        failed = true;
+
+        if (failureCause == null) {
+            failureCause = cause;
+        }
     }
 
     protected void handleStartTimestamping() {
@@ -135,43 +163,79 @@ public class TaskQueue {
     }
 
     private void handleStartTimestamping(int timestampRecordsLimit) {
-        List<Task> timestampTasks;
+        int parallelBatches = timestampRecordsLimit > TIMESTAMP_RECORDS_LIMIT_RETRY_MODE
+                ? MessageLogProperties.getTimestampParallelBatches() : 1;
+        int fetchLimit = (int) Math.min((long) timestampRecordsLimit * parallelBatches, Integer.MAX_VALUE);
 
-        try {
-            timestampTasks = doInTransaction(session -> getTimestampTasks(session, timestampRecordsLimit));
-        } catch (Exception e) {
-            log.error("Error getting time-stamp tasks", e);
+        failed = false;
+        failureCause = null;
 
-            return;
-        }
+        boolean moreRecords = true;
+        while (moreRecords) {
+            List<Task> timestampTasks;
 
-        if (timestampTasks.isEmpty()) {
-            log.trace("Nothing to time-stamp, task queue is empty");
-            indicateSuccess();
-            return;
-        }
+            try {
+                timestampTasks = pendingTasks.peek(fetchLimit);
+            } catch (Exception e) {
+                log.error("Error getting time-stamp tasks", e);
 
-        int timestampTasksSize = timestampTasks.size();
+                return;
+            }
 
-        log.info("Start time-stamping {} message records", timestampTasksSize);
+            if (timestampTasks.isEmpty()) {
+                log.trace("Nothing to time-stamp, task queue is empty");
+                break;
+            }
 
-        if (timestampTasksSize / (double) MessageLogProperties.getTimestampRecordsLimit()
-                >= TIMESTAMPED_RECORDS_RATIO_THRESHOLD) {
-            log.warn("Number of time-stamped records is over {} % of 'timestamp-records-limit' value",
-                    TIMESTAMPED_RECORDS_RATIO_THRESHOLD * 100);
-        }
+            int timestampTasksSize = timestampTasks.size();
+
+            log.info("Start time-stamping {} message records", timestampTasksSize);
+
+            int batchSize = Math.min(timestampTasksSize, timestampRecordsLimit);
+            if (batchSize / (double) MessageLogProperties.getTimestampRecordsLimit()
+                    >= TIMESTAMPED_RECORDS_RATIO_THRESHOLD) {
+                log.warn("Number of time-stamped records is over {} % of 'timestamp-records-limit' value",
+                        TIMESTAMPED_RECORDS_RATIO_THRESHOLD * 100);
+            }
+
+            List<TimestampTask> batches = new ArrayList<>(parallelBatches);
+            for (int i = 0; i < timestampTasksSize; i += timestampRecordsLimit) {
+                batches.add(createTimestampTask(
+                        timestampTasks.subList(i, Math.min(i + timestampRecordsLimit, timestampTasksSize))));
+            }
 
-        final Timestamper.TimestampResult timestampResult = timestamper
-                .handleTimestampTask(createTimestampTask(timestampTasks));
-        if (timestampResult instanceof TimestampSucceeded) {
-            handleTimestampSucceeded((TimestampSucceeded) timestampResult);
-        } else if (timestampResult instanceof TimestampFailed) {
-            handleTimestampFailed((TimestampFailed) timestampResult);
+            if (batches.size() > 1) {
+                log.info("Time-stamping {} message records in {} parallel batches", timestampTasksSize, batches.size());
+            }
+
+            // Results are handled in the order of the batches as soon as each of them is available.
+            for (CompletableFuture<Timestamper.TimestampResult> result : timestamper.handleTimestampTasks(batches)) {
+                final Timestamper.TimestampResult timestampResult = result.join();
+                if (timestampResult instanceof TimestampSucceeded) {
+                    handleTimestampSucceeded((TimestampSucceeded) timestampResult);
+                } else if (timestampResult instanceof TimestampFailed) {
+                    handleTimestampFailed((TimestampFailed) timestampResult);
+                }
+            }
+
+            // If time-stamped records count equals to the number of records fetched, there are probably
+            // still records to be time-stamped. Init another time-stamping round to prevent
+            // messagelog records to begin to bloat.
+            moreRecords = !failed && timestampTasksSize == fetchLimit;
+            if (moreRecords) {
+                log.info("Time-stamped records count equaled to time-stamp records limit");
+            }
         }
 
+        // Reported only now, as reporting success after a failure starts a new time-stamping pass.
+        if (failed) {
+            indicateFailure(failureCause);
+        } else {
+            indicateSuccess();
+        }
     }
 
-    private TimestampTask createTimestampTask(List<Task> timestampTasks) {
+    private static TimestampTask createTimestampTask(List<Task> timestampTasks) {
         Long[] messageRecords = new Long[timestampTasks.size()];
         String[] signatureHashes = new String[timestampTasks.size()];
 
@@ -183,31 +247,12 @@ public class TaskQueue {
         return new TimestampTask(messageRecords, signatureHashes);
     }
 
-    private static boolean isTaskQueueEmpty() {
-        try {
-            return doInTransaction(TaskQueue::getTasksQueueSize) == 0L;
-        } catch (Exception e) {
-            log.error("Could not read timestamp task queue status", e);
-
-            return false;
-        }
-    }
-
-    @SuppressWarnings("unchecked")
-    private List<Task> getTimestampTasks(Session session, int timestampRecordsLimit) {
-        return session.createQuery(getTaskQueueQuery()).setMaxResults(timestampRecordsLimit).list();
-    }
-
-    private static Long getTasksQueueSize(Session session) {
-        return (Long) session.createQuery(getTaskQueueSizeQuery()).uniqueResult();
+    private boolean isTaskQueueEmpty() {
+        return pendingTasks.isEmpty();
     }
 
     static String getTaskQueueQuery() {
         return "select new " + Task.class.getName() + "(m.id, m.signatureHash) "
                 + "from MessageRecord m where m.timestampRecord is null order by m.id";
     }
-
-    private static String getTaskQueueSizeQuery() {
-        return "select COUNT(*) from MessageRecord m where m.timestampRecord is null";
-    }
 }
@@ -28,14 +28,21 @@ package ee.ria.xroad.proxy.messagelog;
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.messagelog.MessageRecord;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static ee.ria.xroad.common.ErrorCodes.X_OUTDATED_GLOBALCONF;
 
@@ -77,16 +84,49 @@ public class Timestamper {
         private final Exception cause;
     }
 
+    private final ExecutorService executor = Executors.newFixedThreadPool(
+            MessageLogProperties.getTimestampParallelBatches(),
+            new ThreadFactoryBuilder().setNameFormat("timestamper-%d").setDaemon(true).build());
+
     protected TimestamperWorker getWorkerImpl() {
         return new TimestamperWorker(ServerConf.getTspUrl());
     }
 
     public TimestampResult handleTimestampTask(TimestampTask message) {
+        return handleTimestampTask(message, 0);
+    }
+
+    /**
+     * Time-stamps the given tasks in parallel, spreading them over the healthy time-stamping providers.
+     * @param messages the tasks
+     * @return the results, in the order of the tasks
+     */
+    public List<CompletableFuture<TimestampResult>> handleTimestampTasks(List<TimestampTask> messages) {
+        List<CompletableFuture<TimestampResult>> results = new ArrayList<>(messages.size());
+
+        if (messages.size() == 1) {
+            results.add(CompletableFuture.completedFuture(handleTimestampTask(messages.get(0))));
+        } else {
+            for (int i = 0; i < messages.size(); i++) {
+                TimestampTask message = messages.get(i);
+                int tspOffset = i;
+                results.add(CompletableFuture.supplyAsync(() -> handleTimestampTask(message, tspOffset), executor));
+            }
+        }
+
+        return results;
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private TimestampResult handleTimestampTask(TimestampTask message, int tspOffset) {
         if (!GlobalConf.isValid()) {
             return new TimestampFailed(message.getMessageRecords(),
                     new CodedException(X_OUTDATED_GLOBALCONF, "Global configuration is not valid"));
         }
 
-        return getWorkerImpl().timestamp(message);
+        return getWorkerImpl().timestamp(message, tspOffset);
     }
 }
@@ -68,16 +68,25 @@ final class TimestamperUtil {
                 new JcaCertStore(collection), cms.getAttributeCertificates(), cms.getCRLs()));
     }
 
-    static InputStream makeTsRequest(TimeStampRequest req, String tspUrl) throws Exception {
-        byte[] request = req.getEncoded();
-
+    /**
+     * Opens a connection to the time-stamping provider, without connecting yet. Disconnecting it from another
+     * thread aborts a request in progress.
+     */
+    static HttpURLConnection openTsConnection(String tspUrl) throws IOException {
         URL url = new URL(tspUrl);
         HttpURLConnection con = (HttpURLConnection) url.openConnection();
 
-        con.setDoOutput(true);
-        con.setDoInput(true);
         con.setConnectTimeout(MessageLogProperties.getTimestamperClientConnectTimeout());
         con.setReadTimeout(MessageLogProperties.getTimestamperClientReadTimeout());
+
+        return con;
+    }
+
+    static InputStream makeTsRequest(TimeStampRequest req, HttpURLConnection con) throws Exception {
+        byte[] request = req.getEncoded();
+
+        con.setDoOutput(true);
+        con.setDoInput(true);
         con.setRequestMethod("POST");
         con.setRequestProperty("Content-type", "application/timestamp-query");
         con.setRequestProperty("Content-length", String.valueOf(request.length));
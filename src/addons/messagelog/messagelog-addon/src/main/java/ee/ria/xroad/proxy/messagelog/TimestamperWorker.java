@@ -43,9 +43,20 @@ public class TimestamperWorker {
     private final List<String> tspUrls;
 
     public Timestamper.TimestampResult timestamp(TimestampTask message) {
+        return timestamp(message, 0);
+    }
+
+    /**
+     * Time-stamps the given task.
+     * @param message the task
+     * @param tspOffset offset of the time-stamping provider to try first among the healthy ones, used for spreading
+     * tasks that are time-stamped in parallel over the providers
+     * @return the time-stamping result
+     */
+    public Timestamper.TimestampResult timestamp(TimestampTask message, int tspOffset) {
         log.trace("timestamp({})", message.getClass());
         try {
-            return handleTimestampTask(message);
+            return handleTimestampTask(message, tspOffset);
         } catch (Exception e) {
             return handleFailure(message, e);
         }
@@ -58,7 +69,7 @@ public class TimestamperWorker {
         return new Timestamper.TimestampFailed(message.getMessageRecords(), e);
     }
 
-    private Timestamper.TimestampResult handleTimestampTask(TimestampTask message) throws Exception {
+    private Timestamper.TimestampResult handleTimestampTask(TimestampTask message, int tspOffset) throws Exception {
         if (tspUrls.isEmpty()) {
             throw new RuntimeException("Cannot time-stamp, no TSP URLs configured");
         }
@@ -81,7 +92,7 @@ public class TimestamperWorker {
         AbstractTimestampRequest tsRequest =
                 createTimestampRequest(logRecords, signatureHashes);
 
-        Timestamper.TimestampResult result = tsRequest.execute(tspUrls);
+        Timestamper.TimestampResult result = tsRequest.execute(TspHealth.getInstance().order(tspUrls, tspOffset));
 
         log.info("Timestamped {} message records in {} ms",
                 message.getMessageRecords().length,
@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.util.HealthScore;
+import ee.ria.xroad.common.util.MetricsHolder;
+
+import com.codahale.metrics.Gauge;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Keeps track of the latency and error rate of the time-stamping providers as {@link HealthScore}s.
+ * Time-stamping providers are tried in the order of their score, which is the latency multiplied by a penalty
+ * that grows with the error rate. Providers that have failed without ever answering, or whose error rate is too
+ * high, are tried last.
+ */
+final class TspHealth {
+
+    // Lower than for provider security servers, as every time-stamp request can fall back to all the other
+    // providers, and there are only a few of them to spread the parallel requests over.
+    private static final double MAX_HEALTHY_ERROR_RATE = 0.5;
+
+    private static final TspHealth INSTANCE = new TspHealth();
+
+    private final ConcurrentMap<String, HealthScore> scores = new ConcurrentHashMap<>();
+
+    /**
+     * @return the process-wide time-stamping provider health
+     */
+    static TspHealth getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Orders the given time-stamping provider URLs for sending a time-stamp request. Healthy providers come
+     * first, ordered by score and then rotated by the given offset, so that requests sent at the same time can
+     * be spread over all the healthy providers. Providers that have not been used yet are considered healthy
+     * and as good as the best one.
+     * @param tspUrls the time-stamping provider URLs
+     * @param offset number of positions to rotate the healthy providers by
+     * @return the ordered URLs
+     */
+    List<String> order(List<String> tspUrls, int offset) {
+        List<String> healthy = new ArrayList<>(tspUrls.size());
+        List<String> unhealthy = new ArrayList<>();
+
+        for (String url : tspUrls) {
+            HealthScore score = scores.get(url);
+            if (score == null || (score.hasLatency() && score.getErrorRate() < MAX_HEALTHY_ERROR_RATE)) {
+                healthy.add(url);
+            } else {
+                unhealthy.add(url);
+            }
+        }
+
+        Comparator<String> byScore = Comparator.comparingDouble(this::score);
+        healthy.sort(byScore);
+        unhealthy.sort(byScore);
+
+        if (!healthy.isEmpty()) {
+            Collections.rotate(healthy, -(offset % healthy.size()));
+        }
+
+        healthy.addAll(unhealthy);
+        return healthy;
+    }
+
+    /**
+     * Records a time-stamp received from the given provider.
+     * @param url the time-stamping provider URL
+     * @param latencyNanos time it took to get the time-stamp
+     */
+    void recordSuccess(String url, long latencyNanos) {
+        scoreOf(url).success(latencyNanos);
+    }
+
+    /**
+     * Records a failure to get a time-stamp from the given provider.
+     * @param url the time-stamping provider URL
+     */
+    void recordFailure(String url) {
+        scoreOf(url).failure();
+    }
+
+    /**
+     * @param url the time-stamping provider URL
+     * @return the score of the provider, lower is better, 0 if the provider has not been used yet
+     * and {@link Double#MAX_VALUE} if it has only failed
+     */
+    double score(String url) {
+        HealthScore score = scores.get(url);
+        if (score == null) {
+            return 0.0;
+        }
+        return score.hasLatency() ? score.value() : Double.MAX_VALUE;
+    }
+
+    private HealthScore scoreOf(String url) {
+        return scores.computeIfAbsent(url, u -> {
+            HealthScore score = new HealthScore();
+            MetricsHolder.registerGauge(name(TspHealth.class, u, "latencyMillis"),
+                    (Gauge<Double>) () -> score.getLatencyNanos() / TimeUnit.MILLISECONDS.toNanos(1));
+            MetricsHolder.registerGauge(name(TspHealth.class, u, "errorRate"), (Gauge<Double>) score::getErrorRate);
+            return score;
+        });
+    }
+}
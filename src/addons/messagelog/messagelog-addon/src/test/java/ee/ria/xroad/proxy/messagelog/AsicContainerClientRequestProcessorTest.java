@@ -26,6 +26,7 @@
  */
 package ee.ria.xroad.proxy.messagelog;
 
+import ee.ria.xroad.common.CodedExceptionWithHttpStatus;
 import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.message.RestRequest;
 import ee.ria.xroad.common.messagelog.AbstractLogManager;
@@ -33,6 +34,7 @@ import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.messagelog.archive.GroupingStrategy;
 import ee.ria.xroad.proxy.clientproxy.AsicContainerClientRequestProcessor;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.SystemUtils;
 import org.bouncycastle.bcpg.BCPGInputStream;
 import org.bouncycastle.bcpg.PacketTags;
@@ -40,7 +42,9 @@ import org.bouncycastle.bcpg.PublicKeyEncSessionPacket;
 import org.junit.After;
 import org.junit.Assume;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.mockito.Mockito;
@@ -52,12 +56,16 @@ import javax.servlet.http.HttpServletResponse;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -70,6 +78,7 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 @RunWith(Parameterized.class)
@@ -83,6 +92,9 @@ public class AsicContainerClientRequestProcessorTest extends AbstractMessageLogT
     @Parameterized.Parameter(0)
     public boolean encrypted;
 
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     @Test
     public void assertVerificationConfiguration() throws IOException {
         final HttpServletRequest request = mock(HttpServletRequest.class);
@@ -107,6 +119,22 @@ public class AsicContainerClientRequestProcessorTest extends AbstractMessageLogT
         }
     }
 
+    @Test
+    public void verificationConfigurationIsRebuiltWhenSharedParametersChange() throws Exception {
+        final Path confDir = tempFolder.newFolder("globalconf").toPath();
+        FileUtils.copyDirectory(new File("src/test/resources/globalconf"), confDir.toFile());
+        System.setProperty(SystemProperties.CONFIGURATION_PATH, confDir.toString());
+
+        final Path sharedParams = confDir.resolve("CS/shared-params.xml");
+        assertArrayEquals(Files.readAllBytes(sharedParams), getVerificationConfSharedParams());
+
+        // unchanged configuration is served from the cache
+        assertArrayEquals(Files.readAllBytes(sharedParams), getVerificationConfSharedParams());
+
+        Files.write(sharedParams, "<!-- changed -->\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertArrayEquals(Files.readAllBytes(sharedParams), getVerificationConfSharedParams());
+    }
+
     @Test
     public void downloadAsicContainer() throws Exception {
         //TODO /usr/bin/gpg is usually not present on macos
@@ -155,6 +183,65 @@ public class AsicContainerClientRequestProcessorTest extends AbstractMessageLogT
         }
     }
 
+    @Test
+    public void downloadMultipleAsicContainers() throws Exception {
+        //TODO /usr/bin/gpg is usually not present on macos
+        Assume.assumeTrue("OS not supported.", SystemUtils.IS_OS_LINUX);
+
+        final String requestId = UUID.randomUUID().toString();
+        final String queryId = "q-" + requestId;
+        final RestRequest message = createRestRequest(queryId, requestId);
+
+        final byte[] body = "\"test message body\"".getBytes(StandardCharsets.UTF_8);
+        log(message, createSignature(), body);
+        log(message, createSignature(), body);
+        log(message, createSignature(), body);
+        startTimestamping();
+        waitForTimestampSuccessful();
+
+        final MockOutputStream mockOutputStream = new MockOutputStream();
+        final AsicContainerClientRequestProcessor processor = new AsicContainerClientRequestProcessor("/asic",
+                mockAsicRequest(message, queryId), mockResponse(mockOutputStream));
+
+        processor.process();
+
+        if (encrypted) {
+            // sanity check, we are excepting a gpg encrypted archive
+            assertPGPStream(mockOutputStream);
+        } else {
+            try (ZipInputStream zip = new ZipInputStream(
+                    new ByteArrayInputStream(mockOutputStream.bos.toByteArray()))) {
+                final Set<String> names = new HashSet<>();
+                ZipEntry e;
+                while ((e = zip.getNextEntry()) != null) {
+                    assertTrue(e.getName().startsWith(queryId));
+                    names.add(e.getName());
+                }
+                assertEquals(3, names.size());
+            }
+        }
+    }
+
+    @Test
+    public void asicContainerNotFound() throws Exception {
+        final String requestId = UUID.randomUUID().toString();
+        final String queryId = "q-" + requestId;
+        final RestRequest message = createRestRequest(queryId, requestId);
+
+        final MockOutputStream mockOutputStream = new MockOutputStream();
+        final AsicContainerClientRequestProcessor processor = new AsicContainerClientRequestProcessor("/asic",
+                mockAsicRequest(message, queryId), mockResponse(mockOutputStream));
+
+        try {
+            processor.process();
+            fail("Expected not found");
+        } catch (CodedExceptionWithHttpStatus e) {
+            assertEquals(HttpServletResponse.SC_NOT_FOUND, e.getStatus());
+        }
+
+        assertEquals(0, mockOutputStream.bos.size());
+    }
+
     @Test
     public void downloadUniqueAsicContainer() throws Exception {
         //TODO /usr/bin/gpg is usually not present on macos
@@ -209,6 +296,40 @@ public class AsicContainerClientRequestProcessorTest extends AbstractMessageLogT
         }
     }
 
+    private static HttpServletRequest mockAsicRequest(RestRequest message, String queryId) {
+        final HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getParameter(Mockito.eq("xRoadInstance"))).thenReturn(message.getClientId().getXRoadInstance());
+        when(request.getParameter(Mockito.eq("memberClass"))).thenReturn(message.getClientId().getMemberClass());
+        when(request.getParameter(Mockito.eq("memberCode"))).thenReturn(message.getClientId().getMemberCode());
+        when(request.getParameter(Mockito.eq("subsystemCode"))).thenReturn(message.getClientId().getSubsystemCode());
+        when(request.getParameter(Mockito.eq("queryId"))).thenReturn(queryId);
+        return request;
+    }
+
+    private static HttpServletResponse mockResponse(MockOutputStream outputStream) throws IOException {
+        final HttpServletResponse response = mock(HttpServletResponse.class);
+        when(response.getOutputStream()).thenReturn(outputStream);
+        return response;
+    }
+
+    private static byte[] getVerificationConfSharedParams() throws IOException {
+        final MockOutputStream mockOutputStream = new MockOutputStream();
+        new AsicContainerClientRequestProcessor("/verificationconf", mock(HttpServletRequest.class),
+                mockResponse(mockOutputStream)).process();
+
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(mockOutputStream.bos.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.getName().equals("verificationconf/CS/shared-params.xml")) {
+                    return zip.readAllBytes();
+                }
+            }
+        }
+
+        fail("Shared parameters missing from the verification configuration");
+        return null;
+    }
+
     private void assertPGPStream(MockOutputStream mockOutputStream)
             throws IOException {
         try (BCPGInputStream is = new BCPGInputStream(
@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+import ee.ria.xroad.common.messagelog.TimestampRecord;
+import ee.ria.xroad.common.messagelog.archive.GroupingStrategy;
+import ee.ria.xroad.common.signature.SignatureData;
+
+import lombok.extern.slf4j.Slf4j;
+
+import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransaction;
+import static ee.ria.xroad.proxy.messagelog.TestUtil.cleanUpDatabase;
+import static ee.ria.xroad.proxy.messagelog.TestUtil.createMessage;
+import static ee.ria.xroad.proxy.messagelog.TestUtil.createSignature;
+
+/**
+ * Log archiver performance test program. Archives time-stamped records of several subsystems
+ * from the embedded test database and reports the archiving throughput.
+ */
+@Slf4j
+public class LogArchiverPerformanceTest extends AbstractMessageLogTest {
+
+    // number of iterations
+    private static final int NUM_ITERATIONS = 3;
+
+    // number of time-stamped records per iteration
+    private static final int NUM_RECORDS = 20000;
+
+    // number of subsystems (archive groups) the records are spread to
+    private static final int NUM_SUBSYSTEMS = 8;
+
+    // number of records time-stamped with the same time-stamp
+    private static final int TIMESTAMP_BATCH_SIZE = 1000;
+
+    /**
+     * Main program access point.
+     * @param args command-line arguments
+     * @throws Exception in case of any errors
+     */
+    public static void main(String[] args) throws Exception {
+        log.info("Starting LogArchiver performance test...");
+
+        new LogArchiverPerformanceTest().run();
+    }
+
+    void run() throws Exception {
+        testSetUp(false);
+
+        try {
+            for (int i = 0; i < NUM_ITERATIONS; i++) {
+                insertTimestampedRecords();
+
+                long start = System.currentTimeMillis();
+                startArchiving();
+                long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+                log.info("Iteration {}: archived {} records in {} ms ({} records/s)",
+                        i, NUM_RECORDS, elapsed, NUM_RECORDS * 1000L / elapsed);
+
+                cleanUpDatabase();
+            }
+        } finally {
+            testTearDown();
+        }
+    }
+
+    @Override
+    protected void testSetUp(boolean timestampImmediately) throws Exception {
+        TestUtil.initForTest();
+
+        System.setProperty(MessageLogProperties.ARCHIVE_GROUPING, GroupingStrategy.SUBSYSTEM.name());
+        System.setProperty(MessageLogProperties.ARCHIVE_MAX_FILESIZE, "2000000");
+
+        super.testSetUp(timestampImmediately);
+    }
+
+    private static void insertTimestampedRecords() throws Exception {
+        final SignatureData signature = createSignature();
+        final String message = createMessage().getXml();
+
+        for (int batch = 0; batch < NUM_RECORDS / TIMESTAMP_BATCH_SIZE; batch++) {
+            final int firstRecord = batch * TIMESTAMP_BATCH_SIZE;
+            doInTransaction(session -> {
+                final long time = System.currentTimeMillis();
+
+                TimestampRecord timestampRecord = new TimestampRecord();
+                timestampRecord.setId(LogRecordManager.getNextRecordId(session));
+                timestampRecord.setTime(time);
+                timestampRecord.setTimestamp("dGltZXN0YW1w");
+                timestampRecord.setHashChainResult("<hashChainResult/>");
+                session.save(timestampRecord);
+
+                for (int i = firstRecord; i < firstRecord + TIMESTAMP_BATCH_SIZE; i++) {
+                    ClientId clientId = ClientId.Conf.create("EE", "BUSINESS", "consumer",
+                            "subsystem" + (i % NUM_SUBSYSTEMS));
+                    MessageRecord messageRecord = new MessageRecord("q" + i, message,
+                            signature.getSignatureXml(), false, clientId, null);
+                    messageRecord.setId(LogRecordManager.getNextRecordId(session));
+                    messageRecord.setTime(time);
+                    messageRecord.setTimestampRecord(timestampRecord);
+                    messageRecord.setTimestampHashChain("<hashChain/>");
+                    session.save(messageRecord);
+                }
+                return null;
+            });
+        }
+    }
+}
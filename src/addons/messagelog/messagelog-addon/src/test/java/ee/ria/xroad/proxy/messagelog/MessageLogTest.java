@@ -246,6 +246,39 @@ public class MessageLogTest extends AbstractMessageLogTest {
         }
     }
 
+    /**
+     * Time-stamps two batches in parallel, one of them fails. A single failure must be reported to the
+     * LogManager and the records of the failed batch must stay in the task queue.
+     *
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void timestampingOneOfParallelBatchesFailed() throws Exception {
+        log.trace("timestampingOneOfParallelBatchesFailed()");
+        int orig = MessageLogProperties.getTimestampRecordsLimit();
+        try {
+            TestTaskQueue.successfulMessageSizes.clear();
+            TestLogManager.TIMESTAMPING_STATUSES.clear();
+            System.setProperty(MessageLogProperties.TIMESTAMP_RECORDS_LIMIT, "2");
+            TestTimestamperWorker.failNextTimestamping(true);
+
+            log(createMessage(), createSignature());
+            log(createMessage(), createSignature());
+            log(createMessage(), createSignature());
+            log(createMessage(), createSignature());
+            assertTaskQueueSize(4);
+
+            startTimestamping();
+
+            assertEquals(List.of(2), TestTaskQueue.successfulMessageSizes);
+            assertEquals(List.of(SetTimestampingStatusMessage.Status.FAILURE), TestLogManager.TIMESTAMPING_STATUSES);
+            assertTrue(logManager.isTimestampFailed());
+            assertTaskQueueSize(2);
+        } finally {
+            System.setProperty(MessageLogProperties.TIMESTAMP_RECORDS_LIMIT, String.valueOf(orig));
+        }
+    }
+
     /**
      * Timestamps message immediately. No messages are expected to be in the task queue.
      *
@@ -0,0 +1,242 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.ErrorCodes.X_LOGGING_FAILED_X;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the group commit of message records.
+ */
+public class MessageRecordWriterTest {
+
+    private static final ClientId.Conf CLIENT = ClientId.Conf.create("EE", "GOV", "1234");
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    /** Sizes of the saved batches. */
+    private final List<Integer> batches = Collections.synchronizedList(new ArrayList<>());
+
+    /** Records committed after their save had timed out. */
+    private final List<MessageRecord> lateCommits = Collections.synchronizedList(new ArrayList<>());
+
+    private final CountDownLatch firstSaveStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseSaves = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        releaseSaves.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void savesWaitingRecordsInOneBatch() throws Exception {
+        MessageRecordWriter writer = new MessageRecordWriter(10, 100, TIMEOUT_MILLIS, records -> {
+            firstSaveStarted.countDown();
+            releaseSaves.await();
+            batches.add(records.size());
+        }, lateCommits::add);
+
+        Future<?> first = save(writer, record("first"));
+        assertTrue(firstSaveStarted.await(5, TimeUnit.SECONDS));
+
+        List<Future<?>> waiting = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            waiting.add(save(writer, record("q" + i)));
+        }
+        waitForQueued(writer, 5);
+
+        releaseSaves.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        for (Future<?> f : waiting) {
+            f.get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(List.of(1, 5), batches);
+        writer.shutdown();
+    }
+
+    @Test
+    public void failingRecordDoesNotFailOthersInBatch() throws Exception {
+        MessageRecordWriter writer = new MessageRecordWriter(10, 100, TIMEOUT_MILLIS, records -> {
+            firstSaveStarted.countDown();
+            releaseSaves.await();
+            batches.add(records.size());
+            if (records.stream().anyMatch(r -> r.getQueryId().equals("bad"))) {
+                throw new IllegalStateException("bad record");
+            }
+        }, lateCommits::add);
+
+        Future<?> first = save(writer, record("first"));
+        assertTrue(firstSaveStarted.await(5, TimeUnit.SECONDS));
+
+        Future<?> good1 = save(writer, record("good1"));
+        waitForQueued(writer, 1);
+        Future<?> bad = save(writer, record("bad"));
+        waitForQueued(writer, 2);
+        Future<?> good2 = save(writer, record("good2"));
+        waitForQueued(writer, 3);
+
+        releaseSaves.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        good1.get(5, TimeUnit.SECONDS);
+        good2.get(5, TimeUnit.SECONDS);
+
+        try {
+            bad.get(5, TimeUnit.SECONDS);
+            fail("Saving the bad record should fail");
+        } catch (ExecutionException e) {
+            assertEquals("bad record", e.getCause().getMessage());
+        }
+
+        // the failed batch of three is retried one record at a time
+        assertEquals(List.of(1, 3, 1, 1, 1), batches);
+        writer.shutdown();
+    }
+
+    @Test
+    public void saveFailsAfterShutdownWhenQueueIsFull() throws Exception {
+        MessageRecordWriter writer = new MessageRecordWriter(10, 1, TIMEOUT_MILLIS, records -> {
+            firstSaveStarted.countDown();
+            releaseSaves.await();
+        }, lateCommits::add);
+
+        save(writer, record("first"));
+        assertTrue(firstSaveStarted.await(5, TimeUnit.SECONDS));
+        save(writer, record("queued"));
+        waitForQueued(writer, 1);
+
+        // the queue is full, so this save waits for space
+        Future<?> blocked = save(writer, record("blocked"));
+
+        Future<?> shutdown = executor.submit(writer::shutdown);
+
+        try {
+            blocked.get(5, TimeUnit.SECONDS);
+            fail("Saving should fail after shutdown");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        releaseSaves.countDown();
+        shutdown.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void saveTimesOutWhenWriterIsStalled() throws Exception {
+        List<String> saved = Collections.synchronizedList(new ArrayList<>());
+        MessageRecordWriter writer = new MessageRecordWriter(10, 100, 200, records -> {
+            firstSaveStarted.countDown();
+            releaseSaves.await();
+            records.forEach(r -> saved.add(r.getQueryId()));
+        }, lateCommits::add);
+
+        Future<?> inProgress = save(writer, record("in-progress"));
+        assertTrue(firstSaveStarted.await(5, TimeUnit.SECONDS));
+        Future<?> queued = save(writer, record("queued"));
+
+        assertTimedOut(inProgress);
+        assertTimedOut(queued);
+        assertEquals(0, writer.queueSize());
+
+        releaseSaves.countDown();
+        writer.shutdown();
+
+        // the record being saved was committed after all, the queued one was never saved
+        assertEquals(List.of("in-progress"), saved);
+        assertEquals(1, lateCommits.size());
+        assertEquals("in-progress", lateCommits.get(0).getQueryId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void recordWithAttachmentIsNotAccepted() throws Exception {
+        MessageRecordWriter writer = new MessageRecordWriter(10, 100, TIMEOUT_MILLIS,
+                records -> batches.add(records.size()), lateCommits::add);
+
+        MessageRecord record = record("rest");
+        record.setAttachmentStream(new ByteArrayInputStream(new byte[] {1, 2, 3}), 3);
+
+        try {
+            writer.save(record);
+        } finally {
+            writer.shutdown();
+            assertTrue(batches.isEmpty());
+        }
+    }
+
+    private static void assertTimedOut(Future<?> save) throws Exception {
+        try {
+            save.get(5, TimeUnit.SECONDS);
+            fail("Saving should time out");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof CodedException);
+            assertEquals(X_LOGGING_FAILED_X, ((CodedException) e.getCause()).getFaultCode());
+        }
+    }
+
+    private Future<?> save(MessageRecordWriter writer, MessageRecord record) {
+        return executor.submit(() -> {
+            writer.save(record);
+            return null;
+        });
+    }
+
+    private static void waitForQueued(MessageRecordWriter writer, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (writer.queueSize() < count) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Records were not queued");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static MessageRecord record(String queryId) {
+        return new MessageRecord(queryId, "<message/>", "<signature/>", false, CLIENT, "x-request-id");
+    }
+}
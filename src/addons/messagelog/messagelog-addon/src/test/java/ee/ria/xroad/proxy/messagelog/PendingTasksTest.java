@@ -0,0 +1,148 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the in-memory queue of message records waiting to be time-stamped.
+ */
+public class PendingTasksTest {
+
+    /** Message records that have not been time-stamped, as stored in the database. */
+    private final NavigableMap<Long, String> database = new TreeMap<>();
+
+    private int loads;
+
+    @Test
+    public void recoverOnFirstUse() throws Exception {
+        save(1);
+        save(2);
+
+        PendingTasks tasks = new PendingTasks(10, this::load);
+        assertFalse(tasks.isEmpty());
+
+        assertEquals(List.of(1L, 2L), ids(tasks.peek(10)));
+        assertEquals(1, loads);
+
+        assertEquals(List.of(1L, 2L), ids(tasks.peek(10)));
+        assertEquals(1, loads);
+    }
+
+    @Test
+    public void addAndRemove() throws Exception {
+        PendingTasks tasks = new PendingTasks(10, this::load);
+        assertTrue(tasks.peek(10).isEmpty());
+        assertTrue(tasks.isEmpty());
+
+        tasks.add(save(1), "hash1");
+        tasks.add(save(3), "hash3");
+        tasks.add(save(2), "hash2");
+        assertEquals(3, tasks.size());
+        assertEquals(List.of(1L, 2L), ids(tasks.peek(2)));
+
+        tasks.remove(new Long[] {1L, 2L});
+        assertEquals(List.of(3L), ids(tasks.peek(10)));
+        assertEquals(1, tasks.size());
+        assertEquals(1, loads);
+    }
+
+    @Test
+    public void reloadRecordsThatDidNotFit() throws Exception {
+        PendingTasks tasks = new PendingTasks(4, this::load);
+        tasks.peek(4);
+
+        for (long id = 1; id <= 10; id++) {
+            tasks.add(save(id), "hash" + id);
+        }
+        assertEquals(4, tasks.size());
+
+        assertEquals(List.of(1L, 2L, 3L, 4L), ids(tasks.peek(10)));
+        assertEquals(1, loads);
+
+        timestamp(tasks, 1L, 2L, 3L);
+        assertEquals(List.of(4L, 5L, 6L, 7L), ids(tasks.peek(10)));
+        assertEquals(2, loads);
+
+        timestamp(tasks, 4L, 5L, 6L, 7L);
+        assertEquals(List.of(8L, 9L, 10L), ids(tasks.peek(10)));
+
+        timestamp(tasks, 8L, 9L, 10L);
+        assertTrue(tasks.peek(10).isEmpty());
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void retryFailedLoad() throws Exception {
+        save(1);
+
+        PendingTasks tasks = new PendingTasks(10, (from, limit) -> {
+            throw new IllegalStateException("database is down");
+        });
+
+        try {
+            tasks.peek(10);
+            fail("Loading should have failed");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        assertFalse(tasks.isEmpty());
+    }
+
+    private Long save(long id) {
+        database.put(id, "hash" + id);
+        return id;
+    }
+
+    private void timestamp(PendingTasks tasks, Long... ids) {
+        for (Long id : ids) {
+            database.remove(id);
+        }
+        tasks.remove(ids);
+    }
+
+    private List<Task> load(long from, int limit) {
+        loads++;
+        return database.tailMap(from, true).entrySet().stream()
+                .limit(limit)
+                .map(e -> new Task(e.getKey(), e.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    private static List<Long> ids(List<Task> tasks) {
+        return tasks.stream().map(Task::getMessageRecordNo).collect(Collectors.toList());
+    }
+}
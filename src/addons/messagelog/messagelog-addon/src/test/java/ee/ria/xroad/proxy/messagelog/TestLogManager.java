@@ -33,6 +33,8 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -41,6 +43,8 @@ class TestLogManager extends LogManager {
     // Countdownlatch for waiting for next timestamp record save.
     private static CountDownLatch setTimestampingStatusLatch = new CountDownLatch(1);
 
+    static final List<SetTimestampingStatusMessage.Status> TIMESTAMPING_STATUSES = new CopyOnWriteArrayList<>();
+
     TestLogManager(JobManager jobManager) {
         super(jobManager);
     }
@@ -105,6 +109,8 @@ class TestLogManager extends LogManager {
 
     @Override
     void setTimestampingStatus(SetTimestampingStatusMessage statusMessage) {
+        TIMESTAMPING_STATUSES.add(statusMessage.getStatus());
+
         super.setTimestampingStatus(statusMessage);
 
         setTimestampingStatusLatch.countDown();
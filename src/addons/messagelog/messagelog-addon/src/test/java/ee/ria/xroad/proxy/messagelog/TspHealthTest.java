@@ -0,0 +1,88 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the ordering of time-stamping providers by their health.
+ */
+public class TspHealthTest {
+
+    private static final String TSP1 = "http://tsp1.example.org";
+    private static final String TSP2 = "http://tsp2.example.org";
+    private static final String TSP3 = "http://tsp3.example.org";
+
+    private static final List<String> URLS = Arrays.asList(TSP1, TSP2, TSP3);
+
+    @Test
+    public void unusedProvidersKeepConfiguredOrder() {
+        TspHealth health = new TspHealth();
+
+        assertEquals(URLS, health.order(URLS, 0));
+    }
+
+    @Test
+    public void fasterProvidersFirst() {
+        TspHealth health = new TspHealth();
+        health.recordSuccess(TSP1, TimeUnit.MILLISECONDS.toNanos(300));
+        health.recordSuccess(TSP2, TimeUnit.MILLISECONDS.toNanos(100));
+        health.recordSuccess(TSP3, TimeUnit.MILLISECONDS.toNanos(200));
+
+        assertEquals(Arrays.asList(TSP2, TSP3, TSP1), health.order(URLS, 0));
+    }
+
+    @Test
+    public void failingProvidersLast() {
+        TspHealth health = new TspHealth();
+        health.recordSuccess(TSP1, TimeUnit.MILLISECONDS.toNanos(100));
+        health.recordSuccess(TSP2, TimeUnit.MILLISECONDS.toNanos(200));
+        health.recordSuccess(TSP3, TimeUnit.MILLISECONDS.toNanos(300));
+        for (int i = 0; i < 5; i++) {
+            health.recordFailure(TSP1);
+        }
+
+        assertEquals(Arrays.asList(TSP2, TSP3, TSP1), health.order(URLS, 0));
+    }
+
+    @Test
+    public void parallelRequestsSpreadOverHealthyProviders() {
+        TspHealth health = new TspHealth();
+        for (int i = 0; i < 5; i++) {
+            health.recordFailure(TSP3);
+        }
+
+        assertEquals(Arrays.asList(TSP1, TSP2, TSP3), health.order(URLS, 0));
+        assertEquals(Arrays.asList(TSP2, TSP1, TSP3), health.order(URLS, 1));
+        assertEquals(Arrays.asList(TSP1, TSP2, TSP3), health.order(URLS, 2));
+    }
+}
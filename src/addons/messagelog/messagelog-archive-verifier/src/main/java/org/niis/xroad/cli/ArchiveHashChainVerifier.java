@@ -27,6 +27,7 @@
 package org.niis.xroad.cli;
 
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -51,12 +52,22 @@ public class ArchiveHashChainVerifier {
         String[] parsedArgs = parseArguments(args);
         String archiveFile = parsedArgs[0];
         String prevDigest = parsedArgs[1];
+        boolean parallel = parallel(args);
 
-        MessageArchiveExtractor extractor = new MessageArchiveExtractor(archiveFile);
+        long started = System.nanoTime();
+        MessageArchiveExtractor extractor = new MessageArchiveExtractor(archiveFile,
+                parallel ? Runtime.getRuntime().availableProcessors() : 1);
         MessageArchiveExtractor.ExtractionResult extractedArchive = extractor.extract();
+        long extracted = System.nanoTime();
 
         verify(archiveFile, prevDigest, extractedArchive);
+        long verified = System.nanoTime();
+
         printLastDigest(extractedArchive);
+
+        if (parallel) {
+            printStatistics(extractedArchive, extracted - started, verified - extracted);
+        }
     }
 
     private void verify(final String archiveFile, final String prevDigest,
@@ -105,6 +116,21 @@ public class ArchiveHashChainVerifier {
         System.out.println(extractedArchive.lastDigest());
     }
 
+    /**
+     * Statistics go to the error stream, so that the output stays usable as the previous digest of the next archive.
+     */
+    private void printStatistics(MessageArchiveExtractor.ExtractionResult extractedArchive, long extractNanos,
+                                 long verifyNanos) {
+        int containers = extractedArchive.asicContainers().size();
+        double seconds = Math.max(extractNanos + verifyNanos, 1) / 1e9;
+
+        System.err.printf(Locale.ROOT, "Verified %d ASiC containers (%d bytes) in %.3f s: %.1f containers/s, %.1f MB/s%n",
+                containers, extractedArchive.extractedBytes(), seconds, containers / seconds,
+                extractedArchive.extractedBytes() / seconds / (1024 * 1024));
+        System.err.printf(Locale.ROOT, "\tExtracting and digesting: %.3f s%n", extractNanos / 1e9);
+        System.err.printf(Locale.ROOT, "\tVerifying linking info: %.3f s%n", verifyNanos / 1e9);
+    }
+
     private static void exitWithError(String archiveFile, String errorMessage) {
         System.err.println("ERROR: Archive file '" + archiveFile + "' is invalid, reason:\n" + errorMessage);
         System.exit(1);
@@ -113,12 +139,14 @@ public class ArchiveHashChainVerifier {
     private static void printUsage() {
         System.err.println("Program must be invoked like this:\n"
                 + "java -jar messagelog-archive-verifier.jar <pathToZippedAsicContainersArchive> "
-                + "<(previousArchiveHexDigest) or (-f) or (--first)>");
+                + "<(previousArchiveHexDigest) or (-f) or (--first)> [(-p) or (--parallel)]\n"
+                + "With --parallel, the ASiC containers are digested in parallel and timing statistics are printed.");
     }
 
     private String[] parseArguments(String[] args) throws InputErrorException {
-        if (args.length != 2) {
-            throw new InputErrorException("Invalid arguments. Expected 2 arguments, got " + args.length + ".");
+        if (args.length != 2 && !(args.length == 3 && parallel(args))) {
+            throw new InputErrorException("Invalid arguments. Expected 2 arguments and an optional parallel flag, got "
+                    + args.length + ".");
         }
 
         String archiveFile = args[0];
@@ -131,6 +159,11 @@ public class ArchiveHashChainVerifier {
         return new String[]{archiveFile, prevDigest};
     }
 
+    private boolean parallel(String[] args) {
+        String thirdArg = args.length > 2 ? args[2].toLowerCase() : "";
+        return thirdArg.equals("-p") || thirdArg.equals("--parallel");
+    }
+
     private boolean firstInHashChain(String[] args) {
         String secondArg = args.length > 1 ? args[1].toLowerCase() : "";
         return secondArg.equals("-f") || secondArg.equals("--first");
@@ -50,8 +50,15 @@ public class DigestCalculator {
     }
 
     public String chainDigest(byte[] fileContent, String prevHexDigest) {
-        String hexDigest = hexDigest(fileContent);
-        String combinedDigests = prevHexDigest + hexDigest;
+        return chainFileDigest(fileDigest(fileContent), prevHexDigest);
+    }
+
+    public String fileDigest(byte[] fileContent) {
+        return hexDigest(fileContent);
+    }
+
+    public String chainFileDigest(String fileHexDigest, String prevHexDigest) {
+        String combinedDigests = prevHexDigest + fileHexDigest;
 
         return hexDigest(combinedDigests.getBytes(StandardCharsets.UTF_8));
     }
@@ -29,17 +29,30 @@ package org.niis.xroad.cli;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 public class MessageArchiveExtractor {
     private final List<AsicContainer> asicContainers = new ArrayList<>();
     private final String archiveFile;
+    private final int parallelism;
     private LinkingInfo linkingInfo;
     private String previousDigest;
+    private long extractedBytes;
 
     public MessageArchiveExtractor(final String archiveFile) {
+        this(archiveFile, 1);
+    }
+
+    /**
+     * @param archiveFile the archive file
+     * @param parallelism number of threads used for digesting the ASiC containers, 1 digests them on the calling thread
+     */
+    public MessageArchiveExtractor(final String archiveFile, final int parallelism) {
         this.archiveFile = archiveFile;
+        this.parallelism = parallelism;
         this.linkingInfo = null;
         this.previousDigest = null;
     }
@@ -48,22 +61,61 @@ public class MessageArchiveExtractor {
         try (ZipFile zipFile = new ZipFile(archiveFile)) {
             extractLinkingInfo(zipFile);
 
-            zipFile.stream()
+            List<? extends ZipEntry> entries = zipFile.stream()
                     .filter(this::isAsic)
-                    .forEach(entry -> processAsic(zipFile, entry));
+                    .toList();
+
+            processAsics(entries, digestFiles(zipFile, entries));
         } catch (IOException | InvalidLogArchiveException e) {
             throw new InvalidLogArchiveException("File '" + archiveFile + "' cannot be extracted - it may not be a valid zip file.", e);
         }
 
-        return new ExtractionResult(asicContainers, linkingInfo, previousDigest);
+        return new ExtractionResult(asicContainers, linkingInfo, previousDigest, extractedBytes);
     }
 
-    private void processAsic(ZipFile zipFile, ZipEntry entry) {
-        String fileName = entry.getName();
-        String digest = linkingInfo.digestCalculator().chainDigest(readFile(zipFile, entry), previousDigest);
+    /**
+     * Digests the content of each file. Only the file digests are calculated in parallel, chaining them is cheap and
+     * stays sequential, so the result is the same regardless of parallelism.
+     */
+    private List<String> digestFiles(ZipFile zipFile, List<? extends ZipEntry> entries) throws IOException {
+        DigestCalculator digestCalculator = linkingInfo.digestCalculator();
+        extractedBytes = entries.stream().mapToLong(ZipEntry::getSize).sum();
+
+        if (parallelism <= 1) {
+            return entries.stream()
+                    .map(entry -> digestCalculator.fileDigest(readFile(zipFile, entry)))
+                    .toList();
+        }
 
-        asicContainers.add(new AsicContainer(fileName, digest));
-        previousDigest = digest;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.submit(() -> entries.parallelStream()
+                    .map(entry -> digestCalculator.fileDigest(readFile(zipFile, entry)))
+                    .toList())
+                    .get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while digesting archive file: " + zipFile.getName(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof InvalidLogArchiveException invalidLogArchiveException) {
+                throw invalidLogArchiveException;
+            }
+            throw new IOException("Failed to digest archive file: " + zipFile.getName(), e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void processAsics(List<? extends ZipEntry> entries, List<String> fileDigests) {
+        DigestCalculator digestCalculator = linkingInfo.digestCalculator();
+
+        for (int i = 0; i < entries.size(); i++) {
+            String fileName = entries.get(i).getName();
+            String digest = digestCalculator.chainFileDigest(fileDigests.get(i), previousDigest);
+
+            asicContainers.add(new AsicContainer(fileName, digest));
+            previousDigest = digest;
+        }
     }
 
     private boolean isAsic(ZipEntry entry) {
@@ -104,7 +156,8 @@ public class MessageArchiveExtractor {
 
     public record ExtractionResult(List<AsicContainer> asicContainers,
                                    LinkingInfo linkingInfo,
-                                   String lastDigest) {
+                                   String lastDigest,
+                                   long extractedBytes) {
     }
 
     public record AsicContainer(String name, String digest) {
@@ -55,6 +55,39 @@ class ArchiveHashChainVerifierTest {
         }
     }
 
+    @Test
+    void shouldSucceedOnValidHashChainInParallel() {
+        String validHashChain =
+                "9011ab557706b5050584d6888af7b390e5350f4edad296bd7a582aa51732aac"
+                        + "7f49a4ec44dd361027945ade0de8b8cf607fb7b7d11f17b0560d44b965c358eaa";
+        try {
+            verifier.run(new String[]{MESSAGE_ARCHIVE_1_FILENAME, validHashChain, "--parallel"});
+        } catch (Exception e) {
+            Assertions.fail(e);
+        }
+    }
+
+    @Test
+    void shouldDigestTheSameInParallel() {
+        MessageArchiveExtractor.ExtractionResult sequential =
+                new MessageArchiveExtractor(MESSAGE_ARCHIVE_1_FILENAME).extract();
+        MessageArchiveExtractor.ExtractionResult parallel =
+                new MessageArchiveExtractor(MESSAGE_ARCHIVE_1_FILENAME, 4).extract();
+
+        Assertions.assertEquals(sequential.asicContainers(), parallel.asicContainers());
+        Assertions.assertEquals(sequential.lastDigest(), parallel.lastDigest());
+    }
+
+    @Test
+    void shouldFailOnUnknownThirdArg() {
+        try {
+            verifier.run(new String[]{MESSAGE_ARCHIVE_0_FILENAME, "-f", "--unknown"});
+            Assertions.fail();
+        } catch (Exception e) {
+            Assertions.assertTrue(e instanceof ArchiveHashChainVerifier.InputErrorException);
+        }
+    }
+
     @Test
     void shouldFailOnMissingArgs() {
         try {
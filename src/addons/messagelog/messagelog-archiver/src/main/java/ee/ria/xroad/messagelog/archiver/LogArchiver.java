@@ -32,20 +32,27 @@ import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.messagelog.MessageRecord;
 import ee.ria.xroad.common.messagelog.archive.ArchiveDigest;
 import ee.ria.xroad.common.messagelog.archive.DigestEntry;
+import ee.ria.xroad.common.messagelog.archive.GroupingStrategy;
 import ee.ria.xroad.common.messagelog.archive.LogArchiveBase;
 import ee.ria.xroad.common.messagelog.archive.LogArchiveWriter;
+import ee.ria.xroad.common.util.MetricsHolder;
 import ee.ria.xroad.messagelog.database.MessageRecordEncryption;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.hibernate.Session;
 import org.quartz.Job;
 import org.quartz.JobExecutionContext;
 
+import javax.persistence.Tuple;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -54,11 +61,22 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static com.codahale.metrics.MetricRegistry.name;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getArchiveTransactionBatchSize;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getArchiveTransferCommand;
 import static ee.ria.xroad.messagelog.database.MessageLogDatabaseCtx.doInTransaction;
@@ -67,86 +85,169 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
 /**
  * Reads all non-archived time-stamped records from the database, writes them
  * to archive file and marks the records as archived.
+ *
+ * Records of different archive groups (see {@link MessageLogProperties#getArchiveGrouping()}) are archived
+ * in parallel, each group by its own worker. Within a group, the records are read in id order using
+ * keyset pagination, one transaction per page.
  */
 @Slf4j
 public class LogArchiver implements Job {
 
     private static final String PROPERTY_NAME_ARCHIVED = "archived";
+    private static final String PROPERTY_NAME_ID = "id";
+    private static final String PROPERTY_NAME_TIMESTAMP_RECORD = "timestampRecord";
+    private static final String PROPERTY_NAME_MEMBER_CLASS = "memberClass";
+    private static final String PROPERTY_NAME_MEMBER_CODE = "memberCode";
+    private static final String PROPERTY_NAME_SUBSYSTEM_CODE = "subsystemCode";
 
     public static final int FETCH_SIZE = 10;
 
+    private static final int MARK_ARCHIVED_BATCH_SIZE = 1000;
+
+    private static final Object TRANSFER_LOCK = new Object();
+
+    private static final ThreadFactory ARCHIVER_THREADS = new ThreadFactory() {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(r, "log-archiver-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private static final Meter ARCHIVED_RECORDS = MetricsHolder.getRegistry()
+            .meter(name(LogArchiver.class, "archivedRecords"));
+    private static final Timer BATCH_DURATION = MetricsHolder.getRegistry()
+            .timer(name(LogArchiver.class, "batchDuration"));
+
+    private static volatile long archiveLag;
+
+    static {
+        MetricsHolder.registerGauge(name(LogArchiver.class, "archiveLag"), () -> archiveLag);
+    }
+
     private final Path archivePath = Paths.get(MessageLogProperties.getArchivePath());
 
     @Override
     public void execute(JobExecutionContext context) {
         try {
+            updateArchiveLag();
             Long maxRecordId = doInTransaction(this::getMaxRecordId);
             if (maxRecordId != null) {
-                while (handleArchive(maxRecordId)) {
-                    // body intentionally empty
+                final List<ArchiveGroup> groups = doInTransaction(session -> getArchiveGroups(session, maxRecordId));
+                final int recordsArchived = archiveGroups(groups, maxRecordId);
+                if (recordsArchived > 0) {
+                    runTransferCommand(getArchiveTransferCommand());
                 }
             }
+            doInTransaction(this::markTimestampRecordsArchived);
+            updateArchiveLag();
             onArchivingDone();
         } catch (Exception ex) {
             log.error("Failed to archive log records", ex);
         }
     }
 
+    private int archiveGroups(List<ArchiveGroup> groups, long maxRecordId) throws Exception {
+        if (groups.isEmpty()) {
+            return 0;
+        } else if (groups.size() == 1) {
+            return archiveGroup(groups.get(0), maxRecordId);
+        }
+
+        final int workers = Math.min(groups.size(), MessageLogProperties.getArchiveWorkers());
+        final ExecutorService executor = Executors.newFixedThreadPool(workers, ARCHIVER_THREADS);
+        try {
+            final List<Future<Integer>> results = new ArrayList<>(groups.size());
+            for (ArchiveGroup group : groups) {
+                results.add(executor.submit(() -> archiveGroup(group, maxRecordId)));
+            }
+
+            int recordsArchived = 0;
+            for (Future<Integer> result : results) {
+                try {
+                    recordsArchived += result.get();
+                } catch (ExecutionException e) {
+                    // the failing group is retried on the next run, the other groups are not affected
+                    log.error("Failed to archive log records", e.getCause());
+                }
+            }
+            return recordsArchived;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private int archiveGroup(ArchiveGroup group, long maxRecordId) throws Exception {
+        int recordsArchived = 0;
+        long lastRecordId = 0;
+        ArchiveBatch batch;
+        do {
+            final long fromRecordId = lastRecordId;
+            batch = doInTransaction(session -> handleArchive(session, group, fromRecordId, maxRecordId));
+            recordsArchived += batch.recordsArchived;
+            lastRecordId = batch.lastRecordId;
+        } while (batch.full);
+        return recordsArchived;
+    }
+
     private void markArchived(Session session, List<Long> recordIds) {
         session.createQuery("UPDATE AbstractLogRecord r SET r.archived = true WHERE r.id in (?1)")
                 .setParameter(1, recordIds)
                 .executeUpdate();
     }
 
-    private boolean handleArchive(long maxRecordId) throws Exception {
-        return doInTransaction(session -> {
-            final int limit = getArchiveTransactionBatchSize();
-            final String archiveTransferCommand = getArchiveTransferCommand();
-            final long start = System.currentTimeMillis();
-            final MessageRecordEncryption messageRecordEncryption = MessageRecordEncryption.getInstance();
-
-            int recordsArchived = 0;
-            log.info("Archiving log records...");
-
-            try (LogArchiveWriter archiveWriter = createLogArchiveWriter(session)) {
-                List<Long> recordIds = new ArrayList<>(100);
-                try (Stream<MessageRecord> records = getNonArchivedMessageRecords(session, maxRecordId, limit)) {
-                    for (Iterator<MessageRecord> it = records.iterator(); it.hasNext(); ) {
-                        MessageRecord messageRecord = it.next();
-                        recordIds.add(messageRecord.getId());
-                        messageRecordEncryption.prepareDecryption(messageRecord);
-                        if (archiveWriter.write(messageRecord)) {
-                            runTransferCommand(archiveTransferCommand);
-                        }
-                        //evict record from persistence context to avoid running out of memory
-                        session.detach(messageRecord);
-                        recordsArchived++;
-
-                        if (recordsArchived % 100 == 0) {
-                            markArchived(session, recordIds);
-                            recordIds.clear();
-                        }
+    private ArchiveBatch handleArchive(Session session, ArchiveGroup group, long fromRecordId, long maxRecordId) {
+        final int limit = getArchiveTransactionBatchSize();
+        final String archiveTransferCommand = getArchiveTransferCommand();
+        final Timer.Context batchTimer = BATCH_DURATION.time();
+        final MessageRecordEncryption messageRecordEncryption = MessageRecordEncryption.getInstance();
+
+        int recordsArchived = 0;
+        long lastRecordId = fromRecordId;
+        log.info("Archiving log records of group {}...", group);
+
+        try (LogArchiveWriter archiveWriter = createLogArchiveWriter(session)) {
+            List<Long> recordIds = new ArrayList<>(MARK_ARCHIVED_BATCH_SIZE);
+            try (Stream<MessageRecord> records =
+                         getNonArchivedMessageRecords(session, group, fromRecordId, maxRecordId, limit)) {
+                for (Iterator<MessageRecord> it = records.iterator(); it.hasNext(); ) {
+                    MessageRecord messageRecord = it.next();
+                    lastRecordId = messageRecord.getId();
+                    recordIds.add(lastRecordId);
+                    messageRecordEncryption.prepareDecryption(messageRecord);
+                    if (archiveWriter.write(messageRecord)) {
+                        runTransferCommand(archiveTransferCommand);
                     }
-                }
-                if (recordsArchived > 0) {
-                    if (recordIds.size() > 0) {
+                    //evict record from persistence context to avoid running out of memory
+                    session.detach(messageRecord);
+                    recordsArchived++;
+
+                    if (recordIds.size() == MARK_ARCHIVED_BATCH_SIZE) {
                         markArchived(session, recordIds);
                         recordIds.clear();
                     }
-                    markTimestampRecordsArchived(session);
-                }
-                session.flush();
-            } catch (Exception e) {
-                throw new CodedException(ErrorCodes.X_INTERNAL_ERROR, e);
-            } finally {
-                if (recordsArchived > 0) {
-                    runTransferCommand(archiveTransferCommand);
-                    log.info("Archived {} log records in {} ms", recordsArchived, System.currentTimeMillis() - start);
                 }
             }
-            //try to continue if the batch was full (there might be more)
-            return recordsArchived == limit;
-        });
+            if (!recordIds.isEmpty()) {
+                markArchived(session, recordIds);
+                recordIds.clear();
+            }
+            session.flush();
+        } catch (Exception e) {
+            throw new CodedException(ErrorCodes.X_INTERNAL_ERROR, e);
+        } finally {
+            final long elapsed = batchTimer.stop();
+            if (recordsArchived > 0) {
+                ARCHIVED_RECORDS.mark(recordsArchived);
+                log.info("Archived {} log records of group {} in {} ms", recordsArchived, group,
+                        TimeUnit.NANOSECONDS.toMillis(elapsed));
+            }
+        }
+        //try to continue if the batch was full (there might be more)
+        return new ArchiveBatch(recordsArchived, lastRecordId, recordsArchived == limit);
     }
 
     private LogArchiveWriter createLogArchiveWriter(Session session) throws IOException {
@@ -183,29 +284,63 @@ public class LogArchiver implements Job {
         final CriteriaQuery<Long> query = cb.createQuery(Long.class);
         final Root<MessageRecord> t = query.from(MessageRecord.class);
 
-        query.select(cb.max(t.get("id")))
+        query.select(cb.max(t.get(PROPERTY_NAME_ID)))
                 .where(cb.and(
-                        cb.isNotNull(t.get("timestampRecord")),
+                        cb.isNotNull(t.get(PROPERTY_NAME_TIMESTAMP_RECORD)),
                         cb.isFalse(t.get(PROPERTY_NAME_ARCHIVED))));
         return session.createQuery(query).uniqueResult();
     }
 
-    protected Stream<MessageRecord> getNonArchivedMessageRecords(Session session, Long maxId, int limit) {
+    /**
+     * Returns the archive groups that have non-archived time-stamped records. With archive grouping disabled, all
+     * records belong to a single group.
+     */
+    protected List<ArchiveGroup> getArchiveGroups(Session session, Long maxId) {
+        final GroupingStrategy groupingStrategy = MessageLogProperties.getArchiveGrouping();
+        if (groupingStrategy == GroupingStrategy.NONE) {
+            return Collections.singletonList(ArchiveGroup.ALL);
+        }
+
+        final boolean bySubsystem = groupingStrategy == GroupingStrategy.SUBSYSTEM;
+        final CriteriaBuilder cb = session.getCriteriaBuilder();
+        final CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        final Root<MessageRecord> m = query.from(MessageRecord.class);
+
+        final List<Selection<?>> selection = new ArrayList<>(3);
+        selection.add(m.get(PROPERTY_NAME_MEMBER_CLASS));
+        selection.add(m.get(PROPERTY_NAME_MEMBER_CODE));
+        if (bySubsystem) {
+            selection.add(m.get(PROPERTY_NAME_SUBSYSTEM_CODE));
+        }
+
+        query.multiselect(selection)
+                .distinct(true)
+                .where(cb.and(
+                        cb.isNotNull(m.get(PROPERTY_NAME_TIMESTAMP_RECORD)),
+                        cb.isFalse(m.get(PROPERTY_NAME_ARCHIVED)),
+                        cb.lessThanOrEqualTo(m.get(PROPERTY_NAME_ID), maxId)));
+
+        return session.createQuery(query).getResultList().stream()
+                .map(t -> new ArchiveGroup(t.get(0, String.class), t.get(1, String.class),
+                        bySubsystem ? t.get(2, String.class) : null, bySubsystem))
+                .collect(Collectors.toList());
+    }
+
+    protected Stream<MessageRecord> getNonArchivedMessageRecords(Session session, ArchiveGroup group,
+            long fromId, long maxId, int limit) {
         final CriteriaBuilder cb = session.getCriteriaBuilder();
         final CriteriaQuery<MessageRecord> query = cb.createQuery(MessageRecord.class);
         final Root<MessageRecord> m = query.from(MessageRecord.class);
 
         query.select(m)
                 .where(cb.and(
-                        cb.isNotNull(m.get("timestampRecord")),
+                        group.toPredicate(cb, m),
+                        cb.isNotNull(m.get(PROPERTY_NAME_TIMESTAMP_RECORD)),
                         cb.isFalse(m.get(PROPERTY_NAME_ARCHIVED)),
-                        cb.lessThanOrEqualTo(m.get("id"), maxId)))
-                .orderBy(
-                        // order is important for archive grouping
-                        cb.asc(m.get("memberClass")),
-                        cb.asc(m.get("memberCode")),
-                        cb.asc(m.get("subsystemCode")),
-                        cb.asc(m.get("id")));
+                        // keyset pagination, continue after the last record of the previous batch
+                        cb.greaterThan(m.get(PROPERTY_NAME_ID), fromId),
+                        cb.lessThanOrEqualTo(m.get(PROPERTY_NAME_ID), maxId)))
+                .orderBy(cb.asc(m.get(PROPERTY_NAME_ID)));
 
         return session
                 .createQuery(query)
@@ -217,6 +352,24 @@ public class LogArchiver implements Job {
                 .getResultStream();
     }
 
+    /**
+     * Updates the archive lag gauge, i.e. the age of the oldest time-stamped record waiting to be archived.
+     */
+    private void updateArchiveLag() throws Exception {
+        final Long oldest = doInTransaction(session -> {
+            final CriteriaBuilder cb = session.getCriteriaBuilder();
+            final CriteriaQuery<Long> query = cb.createQuery(Long.class);
+            final Root<MessageRecord> m = query.from(MessageRecord.class);
+
+            query.select(cb.min(m.get("time")))
+                    .where(cb.and(
+                            cb.isNotNull(m.get(PROPERTY_NAME_TIMESTAMP_RECORD)),
+                            cb.isFalse(m.get(PROPERTY_NAME_ARCHIVED))));
+            return session.createQuery(query).uniqueResult();
+        });
+        archiveLag = oldest == null ? 0 : Math.max(0, System.currentTimeMillis() - oldest);
+    }
+
     protected void onArchivingDone() {
         //hook for testing
     }
@@ -226,6 +379,14 @@ public class LogArchiver implements Job {
             return;
         }
 
+        // archive workers rotate files concurrently, but the transfers must not overlap
+        synchronized (TRANSFER_LOCK) {
+            doRunTransferCommand(transferCommand);
+        }
+    }
+
+    private static void doRunTransferCommand(String transferCommand) {
+
         log.info("Transferring archives with shell command: \t{}", transferCommand);
         Process process = null;
         try {
@@ -263,6 +424,67 @@ public class LogArchiver implements Job {
         }
     }
 
+    /**
+     * Result of archiving one batch of records of an archive group.
+     */
+    private static final class ArchiveBatch {
+        private final int recordsArchived;
+        private final long lastRecordId;
+        private final boolean full;
+
+        ArchiveBatch(int recordsArchived, long lastRecordId, boolean full) {
+            this.recordsArchived = recordsArchived;
+            this.lastRecordId = lastRecordId;
+            this.full = full;
+        }
+    }
+
+    /**
+     * Set of message records that are written to the same archive files.
+     */
+    protected static final class ArchiveGroup {
+        static final ArchiveGroup ALL = new ArchiveGroup(null, null, null, false);
+
+        private final String memberClass;
+        private final String memberCode;
+        private final String subsystemCode;
+        private final boolean bySubsystem;
+
+        ArchiveGroup(String memberClass, String memberCode, String subsystemCode, boolean bySubsystem) {
+            this.memberClass = memberClass;
+            this.memberCode = memberCode;
+            this.subsystemCode = subsystemCode;
+            this.bySubsystem = bySubsystem;
+        }
+
+        Predicate toPredicate(CriteriaBuilder cb, Root<MessageRecord> m) {
+            if (this == ALL) {
+                return cb.conjunction();
+            }
+            final List<Predicate> predicates = new ArrayList<>(3);
+            predicates.add(equalOrNull(cb, m.get(PROPERTY_NAME_MEMBER_CLASS), memberClass));
+            predicates.add(equalOrNull(cb, m.get(PROPERTY_NAME_MEMBER_CODE), memberCode));
+            if (bySubsystem) {
+                predicates.add(equalOrNull(cb, m.get(PROPERTY_NAME_SUBSYSTEM_CODE), subsystemCode));
+            }
+            return cb.and(predicates.toArray(new Predicate[0]));
+        }
+
+        private static Predicate equalOrNull(CriteriaBuilder cb, Expression<String> expression, String value) {
+            return value == null ? cb.isNull(expression) : cb.equal(expression, value);
+        }
+
+        @Override
+        public String toString() {
+            if (this == ALL) {
+                return "<all>";
+            }
+            return bySubsystem
+                    ? String.join("/", memberClass, memberCode, Objects.toString(subsystemCode, ""))
+                    : String.join("/", memberClass, memberCode);
+        }
+    }
+
     private static class HibernateLogArchiveBase implements LogArchiveBase {
 
         HibernateLogArchiveBase(Session session) {
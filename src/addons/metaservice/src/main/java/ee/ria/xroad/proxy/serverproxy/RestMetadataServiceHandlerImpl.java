@@ -138,13 +138,20 @@ public class RestMetadataServiceHandlerImpl implements RestServiceHandler {
                 servletRequest.getHeader(HEADER_REQUEST_ID)
         );
 
+        releaseRestResponseBody();
         restResponseBody = new CachingStream();
-        if (requestProxyMessage.getRest().getServiceId().getServiceCode().equals(LIST_METHODS)) {
-            handleListMethods(requestProxyMessage);
-        } else if (requestProxyMessage.getRest().getServiceId().getServiceCode().equals(ALLOWED_METHODS)) {
-            handleAllowedMethods(requestProxyMessage);
-        } else if (requestProxyMessage.getRest().getServiceId().getServiceCode().equals(GET_OPENAPI)) {
-            handleGetOpenApi(requestProxyMessage);
+        try {
+            if (requestProxyMessage.getRest().getServiceId().getServiceCode().equals(LIST_METHODS)) {
+                handleListMethods(requestProxyMessage);
+            } else if (requestProxyMessage.getRest().getServiceId().getServiceCode().equals(ALLOWED_METHODS)) {
+                handleAllowedMethods(requestProxyMessage);
+            } else if (requestProxyMessage.getRest().getServiceId().getServiceCode().equals(GET_OPENAPI)) {
+                handleGetOpenApi(requestProxyMessage);
+            }
+        } catch (Exception e) {
+            // the error response does not use the body, release its buffer now
+            releaseRestResponseBody();
+            throw e;
         }
 
         messageEncoder.restResponse(restResponse);
@@ -286,4 +293,12 @@ public class RestMetadataServiceHandlerImpl implements RestServiceHandler {
     public void finishHandling() {
         // NOP
     }
+
+    // The body of a successful response is consumed by the message processor once the response has been sent.
+    private void releaseRestResponseBody() {
+        if (restResponseBody != null) {
+            restResponseBody.consume();
+            restResponseBody = null;
+        }
+    }
 }
@@ -77,6 +77,7 @@ import static ee.ria.xroad.common.metadata.MetadataRequests.GET_OPENAPI;
 import static ee.ria.xroad.common.metadata.MetadataRequests.LIST_METHODS;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -367,8 +368,13 @@ public class RestMetadataServiceHandlerTest {
         when(mockRestRequest.getHash()).thenReturn(REQUEST_HASH);
         when(mockProxyMessage.getRest()).thenReturn(mockRestRequest);
 
-        handlerToTest.startHandling(mockRequest, mockProxyMessage, mockDecoder, mockEncoder, httpClientMock,
-                httpClientMock, mock(OpMonitoringData.class));
+        try {
+            handlerToTest.startHandling(mockRequest, mockProxyMessage, mockDecoder, mockEncoder, httpClientMock,
+                    httpClientMock, mock(OpMonitoringData.class));
+        } finally {
+            // the body of the failed response is released
+            assertNull(handlerToTest.getRestResponseBody());
+        }
     }
 
 }
@@ -28,22 +28,29 @@ package ee.ria.xroad.proxy.opmonitoring;
 import ee.ria.xroad.common.opmonitoring.AbstractOpMonitoringBuffer;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
+import ee.ria.xroad.common.util.MetricsHolder;
 
+import com.codahale.metrics.Counter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.codahale.metrics.MetricRegistry.name;
 
 /**
  * Operational monitoring buffer. This buffer is used for gathering
  * operational data and for periodically sending the data to the operational
  * monitoring daemon (using OpMonitoringDaemonSender).
+ * <p>
+ * The data is stored in a lock-free ring buffer by the threads processing the requests. When the buffer is
+ * full, the oldest records are dropped. The records are sent in batches by a single sending thread, which
+ * hands the batches to the sender as long as the sender has capacity for more requests.
  */
 @Slf4j
 public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
@@ -55,7 +62,12 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
     private final OpMonitoringDataProcessor opMonitoringDataProcessor;
     private final OpMonitoringDaemonSender sender;
 
-    final BlockingDeque<OpMonitoringData> buffer = new LinkedBlockingDeque<>();
+    final OpMonitoringDataRingBuffer buffer;
+
+    private final AtomicBoolean sendScheduled = new AtomicBoolean();
+
+    private final Counter droppedRecords = MetricsHolder.getRegistry()
+            .counter(name(OpMonitoringBuffer.class, "droppedRecords"));
 
     /**
      * Constructor.
@@ -70,11 +82,15 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
             executorService = null;
             taskScheduler = null;
             opMonitoringDataProcessor = null;
+            buffer = null;
         } else {
+            buffer = new OpMonitoringDataRingBuffer(maxBufferSize);
             sender = createSender();
             executorService = Executors.newSingleThreadExecutor();
             taskScheduler = Executors.newSingleThreadScheduledExecutor();
             opMonitoringDataProcessor = createDataProcessor();
+
+            MetricsHolder.registerGauge(name(OpMonitoringBuffer.class, "bufferSize"), buffer::size);
         }
     }
 
@@ -91,50 +107,55 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
         if (ignoreOpMonitoringData()) {
             return;
         }
-        executorService.execute(() -> {
-            try {
-                data.setSecurityServerInternalIp(opMonitoringDataProcessor.getIpAddress());
-
-                buffer.addLast(data);
-                if (buffer.size() > maxBufferSize) {
-                    synchronized (buffer) {
-                        if (buffer.size() > maxBufferSize) {
-                            buffer.removeFirst();
-                            log.warn("Operational monitoring buffer overflow (limit: {}), removing oldest record. Current size: {}",
-                                    maxBufferSize, buffer.size());
-                        }
-                    }
-                }
-                sendInternal();
-            } catch (Exception e) {
-                log.error("Failed to process OpMonitoringData..", e);
-            }
-        });
+        try {
+            data.setSecurityServerInternalIp(opMonitoringDataProcessor.getIpAddress());
+
+            add(data);
+            send();
+        } catch (Exception e) {
+            log.error("Failed to process OpMonitoringData..", e);
+        }
+    }
+
+    private void add(OpMonitoringData data) {
+        final int dropped = buffer.offer(data);
+        if (dropped > 0) {
+            droppedRecords.inc(dropped);
+            log.warn("Operational monitoring buffer overflow (limit: {}), removed {} oldest record(s)",
+                    maxBufferSize, dropped);
+        }
     }
 
+    /**
+     * Schedules sending unless the sending thread is already scheduled to run.
+     */
     private void send() {
-        executorService.execute(() -> {
-            try {
-                this.sendInternal();
-            } catch (Exception e) {
-                log.error("Failed to send message", e);
-            }
-        });
+        if (canSend() && sendScheduled.compareAndSet(false, true)) {
+            executorService.execute(() -> {
+                try {
+                    sendScheduled.set(false);
+                    this.sendInternal();
+                } catch (Exception e) {
+                    log.error("Failed to send message", e);
+                }
+            });
+        }
     }
 
     private void sendInternal() {
-        if (!canSend()) {
-            return;
-        }
+        while (canSend()) {
+            final List<OpMonitoringData> dataToProcess = new ArrayList<>(maxRecordsInMessage);
 
-        final List<OpMonitoringData> dataToProcess = new ArrayList<>();
+            buffer.drainTo(dataToProcess, maxRecordsInMessage);
+            if (log.isDebugEnabled()) {
+                log.debug("Op monitoring remaining buffer records count {}", buffer.size());
+            }
+            if (dataToProcess.isEmpty()) {
+                return;
+            }
 
-        buffer.drainTo(dataToProcess, maxRecordsInMessage);
-        if (log.isDebugEnabled()) {
-            log.debug("Op monitoring remaining buffer records count {}", buffer.size());
+            sender.sendMessage(dataToProcess);
         }
-
-        sender.sendMessage(dataToProcess);
     }
 
     private boolean canSend() {
@@ -144,13 +165,11 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
     void sendingSuccess(int count) {
         log.trace("Sent {} messages from buffer", count);
 
-        if (canSend()) {
-            send();
-        }
+        send();
     }
 
     void sendingFailure(List<OpMonitoringData> failedData) {
-        failedData.forEach(buffer::addFirst);
+        failedData.forEach(this::add);
         // Do not worry, scheduled sending retries.
     }
 
@@ -26,6 +26,7 @@
 package ee.ria.xroad.proxy.opmonitoring;
 
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
+import ee.ria.xroad.common.opmonitoring.CompactOpMonitoringDataFormat;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringDaemonEndpoints;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringDaemonHttpClient;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
@@ -33,30 +34,47 @@ import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
 import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataResponse;
 import ee.ria.xroad.common.util.HttpSender;
 import ee.ria.xroad.common.util.JsonUtils;
+import ee.ria.xroad.common.util.MetricsHolder;
 import ee.ria.xroad.common.util.MimeTypes;
 import ee.ria.xroad.common.util.MimeUtils;
 import ee.ria.xroad.common.util.StartStop;
 import ee.ria.xroad.common.util.TimeUtils;
 
+import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.databind.ObjectReader;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpHeaders;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
 
+import java.io.ByteArrayOutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 
+import static com.codahale.metrics.MetricRegistry.name;
 import static ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataResponse.STATUS_ERROR;
 import static ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataResponse.STATUS_OK;
 
 /**
  * Actor for sending operational data to the operational monitoring daemon. This actor is used by the
  * OpMonitoringBuffer class for periodically forwarding operational data gathered in the buffer.
+ * <p>
+ * Up to {@link OpMonitoringSystemProperties#getOpMonitorBufferMaxConcurrentRequests()} messages are
+ * sent concurrently.
+ * <p>
+ * Messages are sent as JSON until the daemon advertises support for the
+ * {@link CompactOpMonitoringDataFormat compact format} in a response, and as JSON again as soon as a response
+ * no longer does.
  */
 @Slf4j
 public class OpMonitoringDaemonSender implements StartStop {
@@ -69,12 +87,21 @@ public class OpMonitoringDaemonSender implements StartStop {
     private static final int SOCKET_TIMEOUT_MILLISECONDS = TimeUtils.secondsToMillis(
             OpMonitoringSystemProperties.getOpMonitorBufferSocketTimeoutSeconds());
 
+    private final int maxConcurrentRequests = OpMonitoringSystemProperties.getOpMonitorBufferMaxConcurrentRequests();
+    private final boolean compressionEnabled = OpMonitoringSystemProperties.isOpMonitorBufferCompressionEnabled();
+    private final boolean compactFormatEnabled = OpMonitoringSystemProperties.isOpMonitorBufferCompactFormatEnabled();
+
+    private volatile boolean compactFormatAccepted;
+
     private final OpMonitoringDataProcessor opMonitoringDataProcessor = new OpMonitoringDataProcessor();
     private final OpMonitoringBuffer opMonitoringBuffer;
     private final CloseableHttpClient httpClient;
-    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    private final ExecutorService executorService = Executors.newFixedThreadPool(maxConcurrentRequests);
+
+    private final AtomicInteger requestsInFlight = new AtomicInteger();
 
-    private final AtomicBoolean processing = new AtomicBoolean(false);
+    private final Timer sendTime = MetricsHolder.getRegistry()
+            .timer(name(OpMonitoringDaemonSender.class, "sendTime"));
 
     OpMonitoringDaemonSender(OpMonitoringBuffer opMonitoringBuffer) throws Exception {
         this.httpClient = createHttpClient();
@@ -82,34 +109,48 @@ public class OpMonitoringDaemonSender implements StartStop {
     }
 
     void sendMessage(final List<OpMonitoringData> dataToProcess) {
+        // counted before handing over, so that isReady() reflects the message right away
+        requestsInFlight.incrementAndGet();
         executorService.execute(() -> {
-            try {
-                processing.set(true);
-                var json = opMonitoringDataProcessor.prepareMonitoringMessage(dataToProcess);
-                log.trace("onReceive: {}", json);
-
-                send(json);
-
-                processing.set(false);
+            try (Timer.Context ignored = sendTime.time()) {
+                if (compactFormatEnabled && compactFormatAccepted) {
+                    send(opMonitoringDataProcessor.prepareCompactMonitoringMessage(dataToProcess),
+                            ContentType.create(CompactOpMonitoringDataFormat.CONTENT_TYPE));
+                } else {
+                    var json = opMonitoringDataProcessor.prepareMonitoringMessage(dataToProcess);
+                    log.trace("onReceive: {}", json);
+
+                    send(json.getBytes(StandardCharsets.UTF_8),
+                            ContentType.create(MimeTypes.JSON, StandardCharsets.UTF_8));
+                }
+
+                requestsInFlight.decrementAndGet();
                 opMonitoringBuffer.sendingSuccess(dataToProcess.size());
             } catch (Exception e) {
                 log.error("Sending operational monitoring data failed", e);
-                processing.set(false);
+                requestsInFlight.decrementAndGet();
                 opMonitoringBuffer.sendingFailure(dataToProcess);
             }
         });
     }
 
     public boolean isReady() {
-        return Boolean.FALSE.equals(processing.get());
+        return requestsInFlight.get() < maxConcurrentRequests;
     }
 
-    private void send(String json) throws Exception {
+    private void send(byte[] content, ContentType contentType) throws Exception {
         try (HttpSender sender = new HttpSender(httpClient)) {
             sender.setConnectionTimeout(CONNECTION_TIMEOUT_MILLISECONDS);
             sender.setSocketTimeout(SOCKET_TIMEOUT_MILLISECONDS);
 
-            sender.doPost(getAddress(), json, MimeTypes.JSON);
+            if (compressionEnabled) {
+                sender.addHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+                sender.doPost(getAddress(), new ByteArrayEntity(gzip(content), contentType));
+            } else {
+                sender.doPost(getAddress(), new ByteArrayEntity(content, contentType));
+            }
+
+            updateCompactFormatAccepted(sender.getResponseHeaders());
 
             String responseJson = IOUtils.toString(sender.getResponseContent(), MimeUtils.UTF8);
             StoreOpMonitoringDataResponse response;
@@ -135,6 +176,27 @@ public class OpMonitoringDaemonSender implements StartStop {
         }
     }
 
+    // Older daemons do not send the header and accept only JSON.
+    private void updateCompactFormatAccepted(Map<String, String> responseHeaders) {
+        boolean accepted = responseHeaders.entrySet().stream()
+                .filter(header -> OpMonitoringDaemonEndpoints.STORE_DATA_ACCEPT_HEADER.equalsIgnoreCase(header.getKey()))
+                .anyMatch(header -> header.getValue().contains(CompactOpMonitoringDataFormat.CONTENT_TYPE));
+
+        if (accepted != compactFormatAccepted) {
+            log.info("Operational monitoring daemon {} the compact data format", accepted ? "accepts" : "does not accept");
+
+            compactFormatAccepted = accepted;
+        }
+    }
+
+    private static byte[] gzip(byte[] content) throws Exception {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bos)) {
+            gzip.write(content);
+        }
+        return bos.toByteArray();
+    }
+
     private URI getAddress() throws URISyntaxException {
         return new URI(OpMonitoringSystemProperties.getOpMonitorDaemonScheme(), null,
                 OpMonitoringSystemProperties.getOpMonitorHost(), OpMonitoringSystemProperties.getOpMonitorPort(),
@@ -143,7 +205,7 @@ public class OpMonitoringDaemonSender implements StartStop {
 
     CloseableHttpClient createHttpClient() throws Exception {
         return OpMonitoringDaemonHttpClient.createHttpClient(ServerConf.getSSLKey(),
-                1, 1,
+                maxConcurrentRequests, maxConcurrentRequests,
                 TimeUtils.secondsToMillis(OpMonitoringSystemProperties.getOpMonitorBufferConnectionTimeoutSeconds()),
                 TimeUtils.secondsToMillis(OpMonitoringSystemProperties.getOpMonitorBufferSocketTimeoutSeconds()));
     }
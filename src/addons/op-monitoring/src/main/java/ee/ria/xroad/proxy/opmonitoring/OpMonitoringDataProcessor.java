@@ -25,6 +25,7 @@
  */
 package ee.ria.xroad.proxy.opmonitoring;
 
+import ee.ria.xroad.common.opmonitoring.CompactOpMonitoringDataWriter;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
 import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataRequest;
 import ee.ria.xroad.common.util.JsonUtils;
@@ -34,6 +35,7 @@ import com.fasterxml.jackson.databind.ObjectWriter;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
 import java.net.NetworkInterface;
 import java.util.List;
 
@@ -59,6 +61,10 @@ public class OpMonitoringDataProcessor {
         return OBJECT_WRITER.writeValueAsString(request);
     }
 
+    byte[] prepareCompactMonitoringMessage(List<OpMonitoringData> dataToProcess) throws IOException {
+        return CompactOpMonitoringDataWriter.encode(dataToProcess);
+    }
+
     String getIpAddress() {
         try {
             if (ipAddress == null) {
@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.opmonitoring;
+
+import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free ring buffer for operational monitoring data. The slots are allocated up front, so
+ * storing a record does not allocate. Any thread may add and remove records.
+ * <p>
+ * When the buffer is full, the oldest record is removed to make room for the new one.
+ * <p>
+ * The implementation follows the bounded multi-producer multi-consumer queue of Dmitry Vyukov: every slot
+ * has a sequence number telling whether the slot is free for the producer or holds a record for the consumer
+ * of the current lap.
+ */
+final class OpMonitoringDataRingBuffer {
+
+    private final int capacity;
+    private final AtomicReferenceArray<OpMonitoringData> slots;
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    OpMonitoringDataRingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds the record to the buffer, removing the oldest records if the buffer is full.
+     * @param data the record
+     * @return number of records removed to make room for the new record
+     */
+    int offer(OpMonitoringData data) {
+        int dropped = 0;
+        while (!tryOffer(data)) {
+            if (poll() != null) {
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Removes at most maxRecords oldest records from the buffer and adds them to the given collection.
+     * @param target the collection to add the records to
+     * @param maxRecords maximum number of records to remove
+     * @return number of records removed
+     */
+    int drainTo(Collection<? super OpMonitoringData> target, int maxRecords) {
+        int count = 0;
+        OpMonitoringData data;
+        while (count < maxRecords && (data = poll()) != null) {
+            target.add(data);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the approximate number of records in the buffer
+     */
+    int size() {
+        final long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    private boolean tryOffer(OpMonitoringData data) {
+        long pos = tail.get();
+        while (true) {
+            final int index = index(pos);
+            final long diff = sequences.get(index) - pos;
+
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots.set(index, data);
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                // the slot still holds the record of the previous lap, the buffer is full
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    private OpMonitoringData poll() {
+        long pos = head.get();
+        while (true) {
+            final int index = index(pos);
+            final long diff = sequences.get(index) - (pos + 1);
+
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    final OpMonitoringData data = slots.getAndSet(index, null);
+                    sequences.set(index, pos + capacity);
+                    return data;
+                }
+                pos = head.get();
+            } else if (diff < 0) {
+                // the slot has not been written yet, the buffer is empty
+                return null;
+            } else {
+                pos = head.get();
+            }
+        }
+    }
+
+    private int index(long pos) {
+        return (int) (pos % capacity);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.opmonitoring;
+
+import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the operational monitoring data ring buffer.
+ */
+class OpMonitoringDataRingBufferTest {
+
+    @Test
+    void drainsRecordsInInsertionOrder() {
+        OpMonitoringDataRingBuffer buffer = new OpMonitoringDataRingBuffer(4);
+        List<OpMonitoringData> stored = createData(3);
+        stored.forEach(buffer::offer);
+
+        List<OpMonitoringData> drained = new ArrayList<>();
+        assertEquals(2, buffer.drainTo(drained, 2));
+        assertEquals(1, buffer.size());
+        assertEquals(1, buffer.drainTo(drained, 2));
+
+        assertEquals(stored, drained);
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    void dropsOldestRecordsWhenFull() {
+        OpMonitoringDataRingBuffer buffer = new OpMonitoringDataRingBuffer(3);
+        List<OpMonitoringData> stored = createData(5);
+
+        int dropped = 0;
+        for (OpMonitoringData data : stored) {
+            dropped += buffer.offer(data);
+        }
+
+        List<OpMonitoringData> drained = new ArrayList<>();
+        buffer.drainTo(drained, 10);
+
+        assertEquals(2, dropped);
+        assertEquals(stored.subList(2, 5), drained);
+    }
+
+    @Test
+    void keepsEveryRecordOnceUnderConcurrentLoad() throws Exception {
+        final int producers = 8;
+        final int recordsPerProducer = 20_000;
+        final OpMonitoringDataRingBuffer buffer = new OpMonitoringDataRingBuffer(1000);
+        final ExecutorService executor = Executors.newFixedThreadPool(producers + 1);
+        final CountDownLatch produced = new CountDownLatch(producers);
+        final AtomicInteger dropped = new AtomicInteger();
+        final Set<OpMonitoringData> consumed = ConcurrentHashMap.newKeySet();
+        final AtomicInteger duplicates = new AtomicInteger();
+
+        try {
+            for (int i = 0; i < producers; i++) {
+                executor.execute(() -> {
+                    createData(recordsPerProducer).forEach(data -> dropped.addAndGet(buffer.offer(data)));
+                    produced.countDown();
+                });
+            }
+            executor.execute(() -> {
+                List<OpMonitoringData> batch = new ArrayList<>();
+                while (produced.getCount() > 0 || !buffer.isEmpty()) {
+                    batch.clear();
+                    buffer.drainTo(batch, 100);
+                    batch.stream().filter(data -> !consumed.add(data)).forEach(data -> duplicates.incrementAndGet());
+                }
+            });
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        assertEquals(0, duplicates.get());
+        assertEquals(producers * recordsPerProducer, consumed.size() + dropped.get());
+    }
+
+    @Test
+    void sizeNeverExceedsCapacity() {
+        OpMonitoringDataRingBuffer buffer = new OpMonitoringDataRingBuffer(2);
+        OpMonitoringData last = null;
+        for (OpMonitoringData data : createData(10)) {
+            buffer.offer(data);
+            last = data;
+            assertTrue(buffer.size() <= 2);
+        }
+
+        List<OpMonitoringData> drained = new ArrayList<>();
+        buffer.drainTo(drained, 10);
+        assertSame(last, drained.get(drained.size() - 1));
+    }
+
+    private static List<OpMonitoringData> createData(int count) {
+        List<OpMonitoringData> data = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            data.add(new OpMonitoringData(OpMonitoringData.SecurityServerType.CLIENT, i));
+        }
+        return data;
+    }
+}
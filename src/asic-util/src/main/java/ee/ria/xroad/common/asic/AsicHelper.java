@@ -34,6 +34,8 @@ import org.bouncycastle.operator.DigestCalculator;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.attribute.FileTime;
 import java.util.HashMap;
@@ -229,14 +231,23 @@ final class AsicHelper {
     }
 
     private static void addEntry(ZipOutputStream zip, String name, long time, String data) throws IOException {
-        addEntry(zip, name, time, data.getBytes(StandardCharsets.UTF_8));
+        putEntry(zip, name, time);
+        // Encoded directly into the zip stream, so that a large message is not copied into a byte array first.
+        // The writer must not be closed, it would close the zip stream.
+        final Writer writer = new OutputStreamWriter(zip, StandardCharsets.UTF_8);
+        writer.write(data);
+        writer.flush();
     }
 
     private static void addEntry(ZipOutputStream zip, String name, long time, byte[] data) throws IOException {
+        putEntry(zip, name, time);
+        zip.write(data);
+    }
+
+    private static void putEntry(ZipOutputStream zip, String name, long time) throws IOException {
         final ZipEntry e = new ZipEntry(name);
         e.setLastModifiedTime(FileTime.from(time, TimeUnit.MILLISECONDS));
         zip.putNextEntry(e);
-        zip.write(data);
     }
 
     static String stripSlash(String name) {
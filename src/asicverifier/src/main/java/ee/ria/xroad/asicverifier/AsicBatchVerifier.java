@@ -0,0 +1,237 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.asicverifier;
+
+import ee.ria.xroad.common.asic.AsicContainer;
+import ee.ria.xroad.common.asic.AsicContainerVerifier;
+import ee.ria.xroad.common.asic.AsicUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Verifies all ASiC containers in a directory or in a zip file, such as a message log archive or a
+ * multi-container export. The containers are verified in parallel on a fork/join pool, but the results
+ * are printed in input order with the same output as for a single container. The loaded global
+ * configuration and the certificate chain verification results are shared by all the verifications.
+ */
+final class AsicBatchVerifier {
+
+    private static final String ASIC_SUFFIX = ".asice";
+
+    // Number of containers verified ahead of the one whose result is printed next, per thread
+    private static final int PENDING_PER_THREAD = 4;
+
+    private static final ContainerVerification SIGNATURE_VERIFICATION = asic -> {
+        AsicContainerVerifier verifier = new AsicContainerVerifier(asic);
+        verifier.verify();
+
+        return AsicUtils.buildSuccessOutput(verifier);
+    };
+
+    private final ForkJoinPool pool;
+    private final int maxPending;
+    private final ContainerVerification verification;
+
+    private final LongAdder readNanos = new LongAdder();
+    private final LongAdder verifyNanos = new LongAdder();
+
+    private long bytes;
+    private int passed;
+    private int failed;
+
+    AsicBatchVerifier(int parallelism) {
+        this(parallelism, SIGNATURE_VERIFICATION);
+    }
+
+    AsicBatchVerifier(int parallelism, ContainerVerification verification) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.maxPending = parallelism * PENDING_PER_THREAD;
+        this.verification = verification;
+    }
+
+    /**
+     * Verifies the containers and prints the results followed by throughput and timing statistics.
+     * @param path the directory or the zip file containing the containers
+     * @throws IOException if the containers could not be listed
+     */
+    void verify(String path) throws IOException {
+        Path source = Paths.get(path);
+        long started = System.nanoTime();
+
+        try {
+            if (Files.isDirectory(source)) {
+                verifyDirectory(source);
+            } else {
+                verifyZip(source);
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        printStatistics(System.nanoTime() - started);
+    }
+
+    private void verifyDirectory(Path directory) throws IOException {
+        List<Container> containers = new ArrayList<>();
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.filter(Files::isRegularFile).filter(f -> isAsic(f.toString())).sorted().toList()) {
+                containers.add(new Container(directory.relativize(file).toString(), Files.size(file),
+                        () -> Files.newInputStream(file)));
+            }
+        }
+
+        verifyInOrder(containers);
+    }
+
+    private void verifyZip(Path zip) throws IOException {
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            List<Container> containers = new ArrayList<>();
+
+            zipFile.stream()
+                    .filter(entry -> !entry.isDirectory() && isAsic(entry.getName()))
+                    .forEach(entry -> containers.add(new Container(entry.getName(), entry.getSize(),
+                            () -> zipFile.getInputStream(entry))));
+
+            verifyInOrder(containers);
+        }
+    }
+
+    private static boolean isAsic(String name) {
+        return name.toLowerCase(Locale.ROOT).endsWith(ASIC_SUFFIX);
+    }
+
+    private void verifyInOrder(List<Container> containers) {
+        Deque<ForkJoinTask<Result>> pending = new ArrayDeque<>();
+
+        for (Container container : containers) {
+            if (pending.size() >= maxPending) {
+                print(pending.removeFirst().join());
+            }
+            pending.addLast(pool.submit(() -> verify(container)));
+            bytes += Math.max(container.size(), 0);
+        }
+
+        while (!pending.isEmpty()) {
+            print(pending.removeFirst().join());
+        }
+    }
+
+    private Result verify(Container container) {
+        long started = System.nanoTime();
+        AsicContainer asic;
+
+        try (InputStream is = container.source().open()) {
+            asic = AsicContainer.read(is);
+        } catch (Exception e) {
+            return new Result(container.name(), null, e);
+        } finally {
+            readNanos.add(System.nanoTime() - started);
+        }
+
+        long read = System.nanoTime();
+
+        try {
+            return new Result(container.name(), verification.verify(asic), null);
+        } catch (Exception e) {
+            return new Result(container.name(), null, e);
+        } finally {
+            verifyNanos.add(System.nanoTime() - read);
+        }
+    }
+
+    private void print(Result result) {
+        System.out.println("Verifying ASiC container \"" + result.name() + "\" ...");
+
+        if (result.failure() == null) {
+            passed++;
+            System.out.println(result.output());
+        } else {
+            failed++;
+            AsicVerifierMain.onVerificationFailed(result.failure());
+        }
+    }
+
+    private void printStatistics(long elapsedNanos) {
+        int total = passed + failed;
+        double seconds = Math.max(elapsedNanos, 1) / 1e9;
+
+        System.out.printf(Locale.ROOT, "Verified %d ASiC containers (%d bytes) in %.3f s using %d threads: "
+                + "%.1f containers/s, %.1f MB/s%n", total, bytes, seconds, pool.getParallelism(),
+                total / seconds, bytes / seconds / (1024 * 1024));
+        System.out.printf(Locale.ROOT, "    Passed: %d, failed: %d%n", passed, failed);
+        System.out.printf(Locale.ROOT, "    Reading containers: %.3f s, %.3f ms per container%n",
+                readNanos.sum() / 1e9, perContainerMillis(readNanos.sum(), total));
+        System.out.printf(Locale.ROOT, "    Verifying signatures and time-stamps: %.3f s, %.3f ms per container%n",
+                verifyNanos.sum() / 1e9, perContainerMillis(verifyNanos.sum(), total));
+    }
+
+    int getPassed() {
+        return passed;
+    }
+
+    int getFailed() {
+        return failed;
+    }
+
+    private static double perContainerMillis(long nanos, int containers) {
+        return containers == 0 ? 0 : nanos / 1e6 / containers;
+    }
+
+    /**
+     * Verifies a container and returns the output printed when the verification succeeds.
+     */
+    @FunctionalInterface
+    interface ContainerVerification {
+        String verify(AsicContainer asic) throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface ContainerSource {
+        InputStream open() throws IOException;
+    }
+
+    private record Container(String name, long size, ContainerSource source) {
+    }
+
+    private record Result(String name, String output, Exception failure) {
+    }
+}
@@ -60,6 +60,9 @@ public final class AsicVerifierMain {
     public static void main(String[] args) {
         if (args.length == 1 && "--version".equals(args[0])) {
             showVersion();
+        } else if (args.length == 3 && "--batch".equals(args[1])) {
+            loadConf(args[0]);
+            verifyBatch(args[2]);
         } else if (args.length != 2) {
             showUsage();
         } else {
@@ -103,12 +106,22 @@ public final class AsicVerifierMain {
         extractMessage(fileName);
     }
 
+    private static void verifyBatch(String path) {
+        System.out.println("Verifying ASiC containers in \"" + path + "\" ...");
+
+        try {
+            new AsicBatchVerifier(Runtime.getRuntime().availableProcessors()).verify(path);
+        } catch (IOException e) {
+            System.err.println("Unable to read ASiC containers: " + e);
+        }
+    }
+
     @SuppressWarnings("resource")
     private static void onVerificationSucceeded(AsicContainerVerifier verifier) {
         System.out.println(AsicUtils.buildSuccessOutput(verifier));
     }
 
-    private static void onVerificationFailed(Throwable cause) {
+    static void onVerificationFailed(Throwable cause) {
         cause.printStackTrace();
         System.err.println(AsicUtils.buildFailureOutput(cause));
     }
@@ -144,7 +157,8 @@ public final class AsicVerifierMain {
     }
 
     private static void showUsage() {
-        System.out.println("Usage: java -jar asicverifier.jar ( --version | <configuration path> <asic container> )");
+        System.out.println("Usage: java -jar asicverifier.jar ( --version | <configuration path> <asic container>"
+                + " | <configuration path> --batch <directory or zip file of asic containers> )");
     }
 
     private static void showVersion() {
@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.asicverifier;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the batch verification prints the results in input order and counts them the same way
+ * regardless of the number of threads.
+ */
+public class AsicBatchVerifierTest {
+
+    private static final String VERIFYING = "Verifying ASiC container ";
+
+    // The good container is verified slowly, so that the corrupt one is done first when run in parallel.
+    private static final AsicBatchVerifier.ContainerVerification SLOW_VERIFICATION = asic -> {
+        Thread.sleep(200);
+
+        return "Verification successful.";
+    };
+
+    @Rule
+    public TemporaryFolder containers = new TemporaryFolder();
+
+    /**
+     * Creates a directory with one good and one corrupt (truncated) container.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Before
+    public void createContainers() throws Exception {
+        byte[] good = Files.readAllBytes(Paths.get("src/test/resources/valid-signed-message.asice"));
+
+        Path directory = containers.getRoot().toPath();
+        Files.write(directory.resolve("1-good.asice"), good);
+        Files.write(directory.resolve("2-corrupt.asice"), Arrays.copyOf(good, good.length / 2));
+        Files.write(directory.resolve("readme.txt"), "not a container".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void verifySequentially() throws Exception {
+        assertResults(1);
+    }
+
+    @Test
+    public void verifyInParallel() throws Exception {
+        assertResults(4);
+    }
+
+    private void assertResults(int parallelism) throws Exception {
+        AsicBatchVerifier verifier = new AsicBatchVerifier(parallelism, SLOW_VERIFICATION);
+
+        List<String> output = verify(verifier);
+        List<String> verified = output.stream().filter(line -> line.startsWith(VERIFYING)).toList();
+
+        assertEquals(List.of(VERIFYING + "\"1-good.asice\" ...", VERIFYING + "\"2-corrupt.asice\" ..."), verified);
+        assertEquals(1, verifier.getPassed());
+        assertEquals(1, verifier.getFailed());
+        assertTrue(output.contains("    Passed: 1, failed: 1"));
+    }
+
+    private List<String> verify(AsicBatchVerifier verifier) throws Exception {
+        PrintStream originalOut = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+        try {
+            verifier.verify(containers.getRoot().getPath());
+        } finally {
+            System.setOut(originalOut);
+        }
+
+        return out.toString(StandardCharsets.UTF_8).lines().toList();
+    }
+}
@@ -57,8 +57,19 @@ public final class MessageLogProperties {
 
     private static final int DEFAULT_TIMESTAMP_RETRY_DELAY = 60;
 
+    private static final int DEFAULT_TIMESTAMP_PARALLEL_BATCHES = 4;
+
+    private static final int DEFAULT_TIMESTAMPER_HEDGE_DELAY = 5000;
+
+    private static final int DEFAULT_TIMESTAMP_QUEUE_CAPACITY = 100000;
+
     private static final int DEFAULT_ARCHIVE_TRANSACTION_BATCH_SIZE = 10000;
     private static final int DEFAULT_CLEAN_TRANSACTION_BATCH_SIZE = 10000;
+    private static final int DEFAULT_ARCHIVE_WORKERS = 2;
+
+    private static final int DEFAULT_WRITE_BATCH_SIZE = 100;
+    private static final int DEFAULT_WRITE_QUEUE_CAPACITY = 10000;
+    private static final int DEFAULT_WRITE_TIMEOUT = 60000;
 
     private static final long DEFAULT_MAX_LOGGABLE_MESSAGE_BODY_SIZE = 10 * 1024 * 1024;
     private static final long MAX_LOGGABLE_MESSAGE_BODY_SIZE_LIMIT = 1024 * 1024 * 1024;
@@ -84,6 +95,22 @@ public final class MessageLogProperties {
      */
     public static final String TIMESTAMP_RETRY_DELAY = PREFIX + "timestamp-retry-delay";
 
+    /**
+     * Property name of the maximum number of batches time-stamped in parallel.
+     */
+    public static final String TIMESTAMP_PARALLEL_BATCHES = PREFIX + "timestamp-parallel-batches";
+
+    /**
+     * Property name of the time in milliseconds after which a time-stamp request is also sent to the next
+     * time-stamping provider.
+     */
+    public static final String TIMESTAMPER_HEDGE_DELAY = PREFIX + "timestamper-hedge-delay";
+
+    /**
+     * Property name of the maximum number of message records waiting to be time-stamped that are kept in memory.
+     */
+    public static final String TIMESTAMP_QUEUE_CAPACITY = PREFIX + "timestamp-queue-capacity";
+
     public static final String ACCEPTABLE_TIMESTAMP_FAILURE_PERIOD = PREFIX + "acceptable-timestamp-failure-period";
 
     public static final String KEEP_RECORDS_FOR = PREFIX + "keep-records-for";
@@ -96,10 +123,30 @@ public final class MessageLogProperties {
 
     public static final String ARCHIVE_TRANSACTION_BATCH = PREFIX + "archive-transaction-batch";
 
+    /**
+     * Property name of the maximum number of archive groups archived in parallel.
+     */
+    public static final String ARCHIVE_WORKERS = PREFIX + "archive-workers";
+
     public static final String CLEAN_INTERVAL = PREFIX + "clean-interval";
 
     private static final String CLEAN_TRANSACTION_BATCH = "clean-transaction-batch";
 
+    /**
+     * Property name of the maximum number of message records saved in one transaction.
+     */
+    public static final String WRITE_BATCH_SIZE = PREFIX + "write-batch-size";
+
+    /**
+     * Property name of the maximum number of message records waiting to be saved.
+     */
+    public static final String WRITE_QUEUE_CAPACITY = PREFIX + "write-queue-capacity";
+
+    /**
+     * Property name of the time to wait for a message record to be saved (milliseconds).
+     */
+    public static final String WRITE_TIMEOUT = PREFIX + "write-timeout";
+
     public static final String HASH_ALGO_ID = PREFIX + "hash-algo-id";
 
     public static final String ARCHIVE_TRANSFER_COMMAND = PREFIX + "archive-transfer-command";
@@ -221,6 +268,30 @@ public final class MessageLogProperties {
         return getInt(System.getProperty(TIMESTAMP_RECORDS_LIMIT), DEFAULT_TIMESTAMP_RECORDS_LIMIT);
     }
 
+    /**
+     * @return the maximum number of batches time-stamped in parallel when there are more records waiting than
+     * fit in one batch, 4 by default.
+     */
+    public static int getTimestampParallelBatches() {
+        return Math.max(1, getInt(System.getProperty(TIMESTAMP_PARALLEL_BATCHES), DEFAULT_TIMESTAMP_PARALLEL_BATCHES));
+    }
+
+    /**
+     * @return the time in milliseconds after which a time-stamp request that has not been answered is also sent
+     * to the next time-stamping provider, 5000 by default. Zero disables hedging.
+     */
+    public static int getTimestamperHedgeDelay() {
+        return getInt(System.getProperty(TIMESTAMPER_HEDGE_DELAY), DEFAULT_TIMESTAMPER_HEDGE_DELAY);
+    }
+
+    /**
+     * @return the maximum number of message records waiting to be time-stamped that are kept in memory,
+     * 100000 by default. Records that do not fit are read from the database when there is room again.
+     */
+    public static int getTimestampQueueCapacity() {
+        return getInt(System.getProperty(TIMESTAMP_QUEUE_CAPACITY), DEFAULT_TIMESTAMP_QUEUE_CAPACITY);
+    }
+
     /**
      * @return the time period in seconds, how long is time-stamping allowed to be failed before message log stops
      * accepting any more messages.
@@ -244,6 +315,13 @@ public final class MessageLogProperties {
         return getInt(System.getProperty(ARCHIVE_TRANSACTION_BATCH), DEFAULT_ARCHIVE_TRANSACTION_BATCH_SIZE);
     }
 
+    /**
+     * @return the maximum number of archive groups archived in parallel, 2 by default.
+     */
+    public static int getArchiveWorkers() {
+        return Math.max(1, getInt(System.getProperty(ARCHIVE_WORKERS), DEFAULT_ARCHIVE_WORKERS));
+    }
+
     /**
      * @return the time interval as Cron expression for cleaning archived records from online database.
      */
@@ -351,6 +429,29 @@ public final class MessageLogProperties {
         return Integer.getInteger(CLEAN_TRANSACTION_BATCH, DEFAULT_CLEAN_TRANSACTION_BATCH_SIZE);
     }
 
+    /**
+     * @return the maximum number of message records saved in one transaction, 100 by default.
+     * 1 saves every message record in its own transaction in the thread logging the message.
+     */
+    public static int getWriteBatchSize() {
+        return Math.max(1, getInt(System.getProperty(WRITE_BATCH_SIZE), DEFAULT_WRITE_BATCH_SIZE));
+    }
+
+    /**
+     * @return the maximum number of message records waiting to be saved, 10000 by default.
+     */
+    public static int getWriteQueueCapacity() {
+        return Math.max(1, getInt(System.getProperty(WRITE_QUEUE_CAPACITY), DEFAULT_WRITE_QUEUE_CAPACITY));
+    }
+
+    /**
+     * @return the time in milliseconds to wait for a message record to be saved when it is saved together with
+     * other records, 60000 by default. A timeout of zero is interpreted as an infinite timeout.
+     */
+    public static int getWriteTimeout() {
+        return getInt(System.getProperty(WRITE_TIMEOUT), DEFAULT_WRITE_TIMEOUT);
+    }
+
     public static boolean isArchiveEncryptionEnabled() {
         return Boolean.getBoolean(ARCHIVE_ENCRYPTION_ENABLED);
     }
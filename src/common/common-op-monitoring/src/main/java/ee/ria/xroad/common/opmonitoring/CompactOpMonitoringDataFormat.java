@@ -0,0 +1,66 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.opmonitoring;
+
+/**
+ * Compact binary encoding of operational monitoring data records, used as an alternative to
+ * JSON when storing data in the operational monitoring daemon.
+ * <p>
+ * A message consists of a header ({@link #MAGIC} followed by {@link #VERSION}) and a sequence of
+ * records terminated by a zero varint. Each record starts with its field count plus one, followed
+ * by the fields as (key, type, value) triples:
+ * <ul>
+ *     <li>Keys and string values are dictionary encoded: a varint {@code n} refers to an
+ *     already seen string {@code n >>> 1} if {@code n} is even, otherwise it is followed by
+ *     {@code n >>> 1} bytes of a new UTF-8 string, which is added to the dictionary.</li>
+ *     <li>Long values (timestamps, sizes) are written as zigzag varints of the difference to the
+ *     previous long value written under the same key, so that timestamps take a few bytes.</li>
+ *     <li>Integer values are written as zigzag varints, booleans by their type alone.</li>
+ * </ul>
+ * The dictionary and the previous long values are scoped to a single message. Null values are
+ * not written.
+ */
+public final class CompactOpMonitoringDataFormat {
+
+    /**
+     * The content type of store requests in the compact format.
+     */
+    public static final String CONTENT_TYPE = "application/x-xroad-opmonitoring-compact";
+
+    static final int MAGIC = 0x584F; // "XO"
+    static final int VERSION = 1;
+
+    static final int END_OF_RECORDS = 0;
+
+    static final int TYPE_STRING = 1;
+    static final int TYPE_LONG = 2;
+    static final int TYPE_INT = 3;
+    static final int TYPE_TRUE = 4;
+    static final int TYPE_FALSE = 5;
+
+    private CompactOpMonitoringDataFormat() {
+    }
+}
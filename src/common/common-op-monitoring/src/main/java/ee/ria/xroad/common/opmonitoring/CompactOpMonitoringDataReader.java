@@ -0,0 +1,204 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.opmonitoring;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static ee.ria.xroad.common.opmonitoring.CompactOpMonitoringDataFormat.END_OF_RECORDS;
+import static ee.ria.xroad.common.opmonitoring.CompactOpMonitoringDataFormat.MAGIC;
+import static ee.ria.xroad.common.opmonitoring.CompactOpMonitoringDataFormat.TYPE_FALSE;
+import static ee.ria.xroad.common.opmonitoring.CompactOpMonitoringDataFormat.TYPE_INT;
+import static ee.ria.xroad.common.opmonitoring.CompactOpMonitoringDataFormat.TYPE_LONG;
+import static ee.ria.xroad.common.opmonitoring.CompactOpMonitoringDataFormat.TYPE_STRING;
+import static ee.ria.xroad.common.opmonitoring.CompactOpMonitoringDataFormat.TYPE_TRUE;
+import static ee.ria.xroad.common.opmonitoring.CompactOpMonitoringDataFormat.VERSION;
+
+/**
+ * Reads operational monitoring data records in the {@link CompactOpMonitoringDataFormat compact format}
+ * one record at a time, without buffering the whole message.
+ */
+public final class CompactOpMonitoringDataReader {
+
+    private static final int INITIAL_DICTIONARY_SIZE = 64;
+    private static final int MAX_FIELD_COUNT = 1024;
+    private static final int MAX_VARLONG_SHIFT = 63;
+
+    private final InputStream in;
+
+    private final List<String> dictionary = new ArrayList<>(INITIAL_DICTIONARY_SIZE);
+
+    // Previous long values by the dictionary index of the key.
+    private long[] previousLongs = new long[INITIAL_DICTIONARY_SIZE];
+
+    private boolean endOfRecords;
+
+    /**
+     * Creates a new reader and verifies the message header.
+     * @param in the input stream
+     * @throws IOException if the stream does not start with a supported header
+     */
+    public CompactOpMonitoringDataReader(InputStream in) throws IOException {
+        this.in = new BufferedInputStream(in);
+
+        int magic = (readByte() << 8) | readByte();
+        int version = readByte();
+
+        if (magic != MAGIC || version != VERSION) {
+            throw new IOException("Unsupported operational monitoring data format");
+        }
+    }
+
+    /**
+     * Reads the next record.
+     * @return the record fields or null if there are no more records
+     * @throws IOException if reading fails or the data is malformed
+     */
+    public Map<String, Object> read() throws IOException {
+        if (endOfRecords) {
+            return null;
+        }
+
+        long header = readVarLong();
+
+        if (header == END_OF_RECORDS) {
+            endOfRecords = true;
+
+            return null;
+        }
+
+        if (header < 0 || header - 1 > MAX_FIELD_COUNT) {
+            throw new IOException("Invalid field count: " + (header - 1));
+        }
+
+        int fieldCount = (int) header - 1;
+        Map<String, Object> record = new HashMap<>(fieldCount * 2);
+
+        for (int i = 0; i < fieldCount; i++) {
+            int keyIndex = readString();
+
+            record.put(dictionary.get(keyIndex), readValue(keyIndex));
+        }
+
+        return record;
+    }
+
+    private Object readValue(int keyIndex) throws IOException {
+        int type = readByte();
+
+        switch (type) {
+            case TYPE_STRING:
+                return dictionary.get(readString());
+            case TYPE_LONG:
+                long value = previousLongs[keyIndex] + unzigzag(readVarLong());
+                previousLongs[keyIndex] = value;
+
+                return value;
+            case TYPE_INT:
+                return (int) unzigzag(readVarLong());
+            case TYPE_TRUE:
+                return Boolean.TRUE;
+            case TYPE_FALSE:
+                return Boolean.FALSE;
+            default:
+                throw new IOException("Invalid field type: " + type);
+        }
+    }
+
+    // Returns the dictionary index of the string.
+    private int readString() throws IOException {
+        long token = readVarLong();
+
+        if ((token & 1) == 0) {
+            long index = token >>> 1;
+
+            if (index >= dictionary.size()) {
+                throw new IOException("Invalid string reference: " + index);
+            }
+
+            return (int) index;
+        }
+
+        long length = token >>> 1;
+
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Invalid string length: " + length);
+        }
+
+        // readNBytes allocates as the data arrives, so a corrupt length cannot exhaust memory
+        byte[] bytes = in.readNBytes((int) length);
+
+        if (bytes.length != length) {
+            throw new EOFException();
+        }
+
+        int index = dictionary.size();
+        dictionary.add(new String(bytes, StandardCharsets.UTF_8));
+
+        if (index == previousLongs.length) {
+            previousLongs = Arrays.copyOf(previousLongs, index * 2);
+        }
+
+        return index;
+    }
+
+    private long readVarLong() throws IOException {
+        long result = 0;
+
+        for (int shift = 0; shift <= MAX_VARLONG_SHIFT; shift += 7) {
+            int b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+
+        throw new IOException("Malformed varint");
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+
+        if (b < 0) {
+            throw new EOFException();
+        }
+
+        return b;
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.opmonitoring;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static ee.ria.xroad.common.opmonitoring.CompactOpMonitoringDataFormat.END_OF_RECORDS;
+import static ee.ria.xroad.common.opmonitoring.CompactOpMonitoringDataFormat.MAGIC;
+import static ee.ria.xroad.common.opmonitoring.CompactOpMonitoringDataFormat.TYPE_FALSE;
+import static ee.ria.xroad.common.opmonitoring.CompactOpMonitoringDataFormat.TYPE_INT;
+import static ee.ria.xroad.common.opmonitoring.CompactOpMonitoringDataFormat.TYPE_LONG;
+import static ee.ria.xroad.common.opmonitoring.CompactOpMonitoringDataFormat.TYPE_STRING;
+import static ee.ria.xroad.common.opmonitoring.CompactOpMonitoringDataFormat.TYPE_TRUE;
+import static ee.ria.xroad.common.opmonitoring.CompactOpMonitoringDataFormat.VERSION;
+
+/**
+ * Writes operational monitoring data records in the {@link CompactOpMonitoringDataFormat compact format}.
+ * The end of the records is marked when the writer is closed.
+ */
+public final class CompactOpMonitoringDataWriter implements Closeable {
+
+    private static final int INITIAL_DICTIONARY_SIZE = 64;
+
+    private final OutputStream out;
+
+    private final Map<String, Integer> dictionary = new HashMap<>(INITIAL_DICTIONARY_SIZE);
+
+    // Previous long values by the dictionary index of the key.
+    private long[] previousLongs = new long[INITIAL_DICTIONARY_SIZE];
+
+    /**
+     * Creates a new writer and writes the message header.
+     * @param out the output stream, closed when the writer is closed
+     * @throws IOException if writing fails
+     */
+    public CompactOpMonitoringDataWriter(OutputStream out) throws IOException {
+        this.out = new BufferedOutputStream(out);
+
+        this.out.write(MAGIC >>> 8);
+        this.out.write(MAGIC & 0xFF);
+        this.out.write(VERSION);
+    }
+
+    /**
+     * Encodes the given operational monitoring data as a single message.
+     * @param dataList the data to encode
+     * @return the encoded message
+     * @throws IOException if encoding fails
+     */
+    public static byte[] encode(List<OpMonitoringData> dataList) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+        try (CompactOpMonitoringDataWriter writer = new CompactOpMonitoringDataWriter(bos)) {
+            for (OpMonitoringData data : dataList) {
+                writer.write(data.getData());
+            }
+        }
+
+        return bos.toByteArray();
+    }
+
+    /**
+     * Writes a single record.
+     * @param record the record fields; values must be strings, integral numbers or booleans
+     * @throws IOException if writing fails
+     */
+    public void write(Map<String, Object> record) throws IOException {
+        int fieldCount = 0;
+
+        for (Object value : record.values()) {
+            if (value != null) {
+                fieldCount++;
+            }
+        }
+
+        writeVarLong(fieldCount + 1L);
+
+        for (Map.Entry<String, Object> field : record.entrySet()) {
+            if (field.getValue() != null) {
+                writeField(field.getKey(), field.getValue());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writeVarLong(END_OF_RECORDS);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeField(String key, Object value) throws IOException {
+        int keyIndex = writeString(key);
+
+        if (value instanceof String) {
+            out.write(TYPE_STRING);
+            writeString((String) value);
+        } else if (value instanceof Long) {
+            long longValue = (Long) value;
+
+            out.write(TYPE_LONG);
+            writeVarLong(zigzag(longValue - previousLongs[keyIndex]));
+            previousLongs[keyIndex] = longValue;
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.write(TYPE_INT);
+            writeVarLong(zigzag(((Number) value).longValue()));
+        } else if (value instanceof Boolean) {
+            out.write((Boolean) value ? TYPE_TRUE : TYPE_FALSE);
+        } else {
+            throw new IllegalArgumentException("Unsupported type of field " + key + ": " + value.getClass());
+        }
+    }
+
+    // Returns the dictionary index of the string.
+    private int writeString(String value) throws IOException {
+        Integer index = dictionary.get(value);
+
+        if (index != null) {
+            writeVarLong((long) index << 1);
+
+            return index;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+        writeVarLong(((long) bytes.length << 1) | 1);
+        out.write(bytes);
+
+        int newIndex = dictionary.size();
+        dictionary.put(value, newIndex);
+
+        if (newIndex == previousLongs.length) {
+            previousLongs = Arrays.copyOf(previousLongs, newIndex * 2);
+        }
+
+        return newIndex;
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        long remaining = value;
+
+        while ((remaining & ~0x7FL) != 0) {
+            out.write((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+
+        out.write((int) remaining);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
@@ -33,6 +33,12 @@ public final class OpMonitoringDaemonEndpoints {
     public static final String STORE_DATA_PATH = "/store_data";
     public static final String QUERY_DATA_PATH = "/query_data";
 
+    /**
+     * Response header of {@link #STORE_DATA_PATH} listing the content types accepted for store requests.
+     * JSON is always accepted; clients may switch to another listed format for subsequent requests.
+     */
+    public static final String STORE_DATA_ACCEPT_HEADER = "Accept-Post";
+
     private OpMonitoringDaemonEndpoints() {
     }
 }
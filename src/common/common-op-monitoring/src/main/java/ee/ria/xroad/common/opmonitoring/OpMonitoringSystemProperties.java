@@ -40,6 +40,8 @@ public final class OpMonitoringSystemProperties {
 
     private static final String DEFAULT_OP_MONITOR_MAX_RECORDS_IN_PAYLOAD = "10000";
 
+    private static final String DEFAULT_OP_MONITOR_MAX_RECORDS_IN_STREAMED_PAYLOAD = "100000";
+
     // Operational monitoring buffer --------------------------------------- //
 
     /**
@@ -74,6 +76,26 @@ public final class OpMonitoringSystemProperties {
     private static final String OP_MONITOR_BUFFER_CONNECTION_TIMEOUT_SECONDS =
             PREFIX + "op-monitor-buffer.connection-timeout-seconds";
 
+    /**
+     * Property name of the maximum number of messages the operational monitoring buffer sends concurrently
+     * to the operational monitoring daemon.
+     */
+    private static final String OP_MONITOR_BUFFER_MAX_CONCURRENT_REQUESTS =
+            PREFIX + "op-monitor-buffer.max-concurrent-requests";
+
+    /**
+     * Property name of the switch for compressing the messages sent by the operational monitoring buffer.
+     */
+    private static final String OP_MONITOR_BUFFER_COMPRESSION_ENABLED =
+            PREFIX + "op-monitor-buffer.compression-enabled";
+
+    /**
+     * Property name of the switch for sending the messages of the operational monitoring buffer in the compact
+     * binary format, if the operational monitoring daemon supports it.
+     */
+    private static final String OP_MONITOR_BUFFER_COMPACT_FORMAT_ENABLED =
+            PREFIX + "op-monitor-buffer.compact-format-enabled";
+
     // Operational monitoring service ---------------------------------------//
 
     /**
@@ -153,6 +175,13 @@ public final class OpMonitoringSystemProperties {
     private static final String OP_MONITOR_MAX_RECORDS_IN_PAYLOAD =
             PREFIX + "op-monitor.max-records-in-payload";
 
+    /**
+     * Property name of the maximum records in the get operational data response payload when the records are
+     * streamed with continuation tokens.
+     */
+    private static final String OP_MONITOR_MAX_RECORDS_IN_STREAMED_PAYLOAD =
+            PREFIX + "op-monitor.max-records-in-streamed-payload";
+
     private OpMonitoringSystemProperties() {
     }
 
@@ -193,6 +222,30 @@ public final class OpMonitoringSystemProperties {
         return Integer.parseInt(System.getProperty(OP_MONITOR_BUFFER_CONNECTION_TIMEOUT_SECONDS, "30"));
     }
 
+    /**
+     * @return the maximum number of messages the operational monitoring buffer sends concurrently to the
+     * operational monitoring daemon, '2' by default.
+     */
+    public static int getOpMonitorBufferMaxConcurrentRequests() {
+        return Math.max(1, Integer.parseInt(System.getProperty(OP_MONITOR_BUFFER_MAX_CONCURRENT_REQUESTS, "2")));
+    }
+
+    /**
+     * @return whether the operational monitoring buffer compresses the messages sent to the operational
+     * monitoring daemon, 'false' by default.
+     */
+    public static boolean isOpMonitorBufferCompressionEnabled() {
+        return Boolean.parseBoolean(System.getProperty(OP_MONITOR_BUFFER_COMPRESSION_ENABLED, "false"));
+    }
+
+    /**
+     * @return whether the operational monitoring buffer sends the messages in the compact binary format once the
+     * operational monitoring daemon has advertised support for it, 'true' by default.
+     */
+    public static boolean isOpMonitorBufferCompactFormatEnabled() {
+        return Boolean.parseBoolean(System.getProperty(OP_MONITOR_BUFFER_COMPACT_FORMAT_ENABLED, "true"));
+    }
+
     /**
      * @return the operational monitoring service HTTP client SO_TIMEOUT in seconds, '60' by default.
      */
@@ -284,6 +337,24 @@ public final class OpMonitoringSystemProperties {
         return payload;
     }
 
+    /**
+     * @return the maximum records in the get operational data response payload when the records are streamed with
+     * continuation tokens, 100000 by default.
+     */
+    public static int getOpMonitorMaxRecordsInStreamedPayload() {
+        int payload = Integer.parseInt(System.getProperty(OP_MONITOR_MAX_RECORDS_IN_STREAMED_PAYLOAD,
+                DEFAULT_OP_MONITOR_MAX_RECORDS_IN_STREAMED_PAYLOAD));
+
+        if (payload < 1) {
+            log.warn("Property {} has invalid value, using default '{}'", OP_MONITOR_MAX_RECORDS_IN_STREAMED_PAYLOAD,
+                    DEFAULT_OP_MONITOR_MAX_RECORDS_IN_STREAMED_PAYLOAD);
+
+            payload = Integer.parseInt(DEFAULT_OP_MONITOR_MAX_RECORDS_IN_STREAMED_PAYLOAD);
+        }
+
+        return payload;
+    }
+
     /**
      * @return the offset seconds used to calculate timestamp to which the operational data records are available,
      * 60 by default.
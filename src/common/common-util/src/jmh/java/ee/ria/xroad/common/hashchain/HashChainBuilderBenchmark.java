@@ -0,0 +1,110 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.hashchain;
+
+import ee.ria.xroad.common.util.CryptoUtils;
+import ee.ria.xroad.common.util.MessageFileNames;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
+
+/**
+ * Measures building a hash chain tree and writing the hash chain result and the hash chains
+ * of all the inputs, with {@link HashChainXmlWriter} and with the JAXB marshaller it replaces.
+ * <p>
+ * Run with {@code ./gradlew :common:common-util:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashChainBuilderBenchmark {
+
+    private static final String DIGEST_ALGORITHM_ID = CryptoUtils.SHA256_ID;
+
+    @Param({"1", "10", "100", "1000", "10000"})
+    private int batchSize;
+
+    private List<byte[][]> inputs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        inputs = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            byte[] message = calculateDigest(DIGEST_ALGORITHM_ID,
+                    ("<message id=\"" + i + "\"/>").getBytes(StandardCharsets.UTF_8));
+
+            if (batchSize == 1) {
+                // A single input needs an attachment to have a hash chain at all.
+                byte[] attachment = calculateDigest(DIGEST_ALGORITHM_ID,
+                        ("attachment " + i).getBytes(StandardCharsets.UTF_8));
+                inputs.add(new byte[][] {message, attachment});
+            } else {
+                inputs.add(new byte[][] {message});
+            }
+        }
+    }
+
+    @Benchmark
+    public void writer(Blackhole blackhole) throws Exception {
+        build(new HashChainBuilder(DIGEST_ALGORITHM_ID), blackhole);
+    }
+
+    @Benchmark
+    public void jaxb(Blackhole blackhole) throws Exception {
+        build(new HashChainBuilder(DIGEST_ALGORITHM_ID, new HashChainXmlWriter.Jaxb()), blackhole);
+    }
+
+    private void build(HashChainBuilder builder, Blackhole blackhole) throws Exception {
+        for (byte[][] input : inputs) {
+            builder.addInputHash(input);
+        }
+        builder.finishBuilding();
+
+        blackhole.consume(builder.getHashChainResult(MessageFileNames.SIG_HASH_CHAIN));
+        blackhole.consume(builder.getHashChains(MessageFileNames.MESSAGE));
+    }
+}
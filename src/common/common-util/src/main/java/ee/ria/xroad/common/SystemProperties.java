@@ -100,6 +100,18 @@ public final class SystemProperties {
     public static final String PROXY_UI_API_ALLOW_CSR_FOR_KEY_WITH_CERTIFICATE =
             PREFIX + "proxy-ui-api.allow-csr-for-key-with-certificate";
 
+    /** Property name of the size of the memory buffer of a caching stream, above which data is cached in a file. */
+    private static final String CACHING_STREAM_MEMORY_THRESHOLD =
+            PREFIX + "common.caching-stream-memory-threshold";
+
+    /** Property name of the maximum number of caching stream memory buffers kept for reuse. */
+    private static final String CACHING_STREAM_BUFFER_POOL_SIZE =
+            PREFIX + "common.caching-stream-buffer-pool-size";
+
+    private static final String DEFAULT_CACHING_STREAM_MEMORY_THRESHOLD = "65536";
+
+    private static final String DEFAULT_CACHING_STREAM_BUFFER_POOL_SIZE = "64";
+
     // Proxy ------------------------------------------------------------------
 
     /** Property name of controlling SSL support between Proxies. */
@@ -201,6 +213,10 @@ public final class SystemProperties {
 
     public static final String SERVER_CONF_ACL_CACHE_SIZE = PREFIX + "proxy.server-conf-acl-cache-size";
 
+    public static final String SERVER_CONF_CACHE_REFRESH_AHEAD = PREFIX + "proxy.server-conf-cache-refresh-ahead";
+
+    public static final String SERVER_CONF_CACHE_LOADER_THREADS = PREFIX + "proxy.server-conf-cache-loader-threads";
+
 
     /** Property name of the idle time that connections to the ServerProxy Connector are allowed, in milliseconds */
     private static final String SERVERPROXY_CONNECTOR_MAX_IDLE_TIME =
@@ -271,6 +287,12 @@ public final class SystemProperties {
     public static final String CLIENTPROXY_FASTEST_CONNECTING_SSL_URI_CACHE_PERIOD =
             PREFIX + "proxy.client-fastest-connecting-ssl-uri-cache-period";
 
+    public static final String CLIENTPROXY_HEALTH_SCORED_TARGET_SELECTION =
+            PREFIX + "proxy.client-health-scored-target-selection";
+
+    public static final String CLIENTPROXY_TARGET_HEALTH_PROBE_INTERVAL =
+            PREFIX + "proxy.client-target-health-probe-interval";
+
     private static final String CLIENTPROXY_POOL_VALIDATE_CONNECTIONS_AFTER_INACTIVITY_OF_MS =
             PREFIX + "proxy.pool-validate-connections-after-inactivity-of-millis";
 
@@ -338,6 +360,10 @@ public final class SystemProperties {
 
     private static final String DEFAULT_CLIENTPROXY_FASTEST_CONNECTING_SSL_URI_CACHE_PERIOD = "3600";
 
+    private static final String DEFAULT_CLIENTPROXY_HEALTH_SCORED_TARGET_SELECTION = "true";
+
+    private static final String DEFAULT_CLIENTPROXY_TARGET_HEALTH_PROBE_INTERVAL = "30";
+
     private static final String DEFAULT_ENV_MONITOR_LIMIT_REMOTE_DATA_SET = "false";
 
     private static final String DEFAULT_CLIENTPROXY_POOL_VALIDATE_CONNECTIONS_AFTER_INACTIVITY_OF_MS = "2000";
@@ -361,6 +387,45 @@ public final class SystemProperties {
 
     private static final int OCSP_VERIFIER_CACHE_PERIOD_MAX = 180;
 
+    private static final String CERT_CHAIN_VERIFIER_CACHE_SIZE =
+            PREFIX + "proxy.cert-chain-verifier-cache-size";
+
+    /** Property name of the number of concurrent batch signing lanes per signing certificate. */
+    private static final String PROXY_BATCH_SIGNER_LANES =
+            PREFIX + "proxy.batch-signer-lanes";
+
+    /** Property name of the maximum number of queued signing requests per batch signing lane. */
+    private static final String PROXY_BATCH_SIGNER_QUEUE_CAPACITY =
+            PREFIX + "proxy.batch-signer-queue-capacity";
+
+    private static final String DEFAULT_PROXY_BATCH_SIGNER_LANES = "1";
+
+    private static final String DEFAULT_PROXY_BATCH_SIGNER_QUEUE_CAPACITY = "10000";
+
+    /** Property name of the maximum number of signing requests signed in one batch. */
+    private static final String PROXY_BATCH_SIGNER_MAX_BATCH_SIZE =
+            PREFIX + "proxy.batch-signer-max-batch-size";
+
+    /** Property name of the maximum time a batch signing lane waits for more requests, in microseconds. */
+    private static final String PROXY_BATCH_SIGNER_MAX_LINGER_MICROS =
+            PREFIX + "proxy.batch-signer-max-linger-micros";
+
+    private static final String DEFAULT_PROXY_BATCH_SIGNER_MAX_BATCH_SIZE = "10000";
+
+    private static final String DEFAULT_PROXY_BATCH_SIGNER_MAX_LINGER_MICROS = "0";
+
+    /** Property name of the size above which the SOAP parser caches a message copy in a temporary file. */
+    private static final String PROXY_SOAP_PARSER_MEMORY_THRESHOLD =
+            PREFIX + "proxy.soap-parser-memory-threshold";
+
+    private static final String DEFAULT_PROXY_SOAP_PARSER_MEMORY_THRESHOLD = "1048576";
+
+    /** Property name of the size of the buffer between the client proxy SOAP request reader and sender. */
+    private static final String PROXY_CLIENT_SOAP_PIPE_BUFFER_SIZE =
+            PREFIX + "proxy.client-soap-pipe-buffer-size";
+
+    private static final String DEFAULT_PROXY_CLIENT_SOAP_PIPE_BUFFER_SIZE = "16384";
+
     // Signer -----------------------------------------------------------------
 
     /** Property name of the key configuration file. */
@@ -470,6 +535,24 @@ public final class SystemProperties {
      */
     public enum AllowedFederationMode { ALL, NONE, CUSTOM }
 
+    /** Property name of the number of PKCS#11 sessions a hardware token uses for concurrent signing. */
+    private static final String SIGNER_HW_TOKEN_SIGN_SESSION_POOL_SIZE =
+            PREFIX + "signer.hw-token-sign-session-pool-size";
+
+    private static final String DEFAULT_SIGNER_HW_TOKEN_SIGN_SESSION_POOL_SIZE = "1";
+
+    /** Property name of the number of threads the signer uses for refreshing OCSP responses. */
+    private static final String SIGNER_OCSP_REFRESH_THREADS =
+            PREFIX + "signer.ocsp-refresh-threads";
+
+    private static final String DEFAULT_SIGNER_OCSP_REFRESH_THREADS = "8";
+
+    /** Property name of the maximum number of concurrent requests the signer sends to one OCSP responder. */
+    public static final String SIGNER_OCSP_RESPONDER_MAX_CONCURRENT_REQUESTS =
+            PREFIX + "signer.ocsp-responder-max-concurrent-requests";
+
+    private static final String DEFAULT_SIGNER_OCSP_RESPONDER_MAX_CONCURRENT_REQUESTS = "4";
+
     // Center -----------------------------------------------------------------
 
     public static final String CENTER_DATABASE_PROPERTIES =
@@ -1464,6 +1547,14 @@ public final class SystemProperties {
         return period < OCSP_VERIFIER_CACHE_PERIOD_MAX ? period : OCSP_VERIFIER_CACHE_PERIOD_MAX;
     }
 
+    /**
+     * @return maximum number of successful certificate chain verification results (signing certificate and
+     * OCSP responses) kept for reuse when verifying message signatures, 0 disables caching. Default is 1000.
+     */
+    public static int getCertChainVerifierCacheSize() {
+        return Integer.parseInt(System.getProperty(CERT_CHAIN_VERIFIER_CACHE_SIZE, "1000"));
+    }
+
     /**
      * @return serverproxy initial idle time (used until the request processing starts)
      */
@@ -1598,6 +1689,24 @@ public final class SystemProperties {
                 DEFAULT_CLIENTPROXY_FASTEST_CONNECTING_SSL_URI_CACHE_PERIOD));
     }
 
+    /**
+     * @return whether the provider security server should be selected using the latency and error rate scores of
+     * previous requests when a service is available from several security servers, 'true' by default
+     */
+    public static boolean isClientProxyHealthScoredTargetSelection() {
+        return Boolean.parseBoolean(System.getProperty(CLIENTPROXY_HEALTH_SCORED_TARGET_SELECTION,
+                DEFAULT_CLIENTPROXY_HEALTH_SCORED_TARGET_SELECTION));
+    }
+
+    /**
+     * @return interval in seconds for probing provider security servers that have not been used recently,
+     * '30' by default
+     */
+    public static int getClientProxyTargetHealthProbeInterval() {
+        return Integer.parseInt(System.getProperty(CLIENTPROXY_TARGET_HEALTH_PROBE_INTERVAL,
+                DEFAULT_CLIENTPROXY_TARGET_HEALTH_PROBE_INTERVAL));
+    }
+
     /**
      * @return the time in milliseconds, after which connections in a pool should be check for validity, ie.
      * after this time, check if pooled connections are still alive, don't just assume they are.
@@ -1686,6 +1795,21 @@ public final class SystemProperties {
         return Long.getLong(SERVER_CONF_ACL_CACHE_SIZE, 100_000);
     }
 
+    /**
+     * @return whether cached serverconf items in use are reloaded in the background before they expire,
+     * 'true' by default
+     */
+    public static boolean isServerConfCacheRefreshAhead() {
+        return "true".equalsIgnoreCase(System.getProperty(SERVER_CONF_CACHE_REFRESH_AHEAD, "true"));
+    }
+
+    /**
+     * @return the number of threads reloading cached serverconf items in the background, '2' by default
+     */
+    public static int getServerConfCacheLoaderThreads() {
+        return Integer.getInteger(SERVER_CONF_CACHE_LOADER_THREADS, 2);
+    }
+
     private static void checkVersionValidity(int min, int current, String defaultVersion) {
         if (min > current || min < 1) {
             throw new IllegalArgumentException("Illegal minimum global configuration version in system parameters");
@@ -1772,4 +1896,97 @@ public final class SystemProperties {
     public static String getGrpcInternalTruststorePassword() {
         return System.getProperty(GRPC_INTERNAL_TRUSTSTORE_PASSWORD, System.getenv().get(GRPC_INTERNAL_TRUSTSTORE_PASSWORD_ENV));
     }
+
+    /**
+     * @return the number of concurrent batch signing lanes per signing certificate, '1' by default.
+     */
+    public static int getBatchSignerLanes() {
+        return Math.max(1, Integer.parseInt(System.getProperty(PROXY_BATCH_SIGNER_LANES,
+                DEFAULT_PROXY_BATCH_SIGNER_LANES)));
+    }
+
+    /**
+     * @return the maximum number of signing requests waiting in one batch signing lane, '10000' by default.
+     */
+    public static int getBatchSignerQueueCapacity() {
+        return Math.max(1, Integer.parseInt(System.getProperty(PROXY_BATCH_SIGNER_QUEUE_CAPACITY,
+                DEFAULT_PROXY_BATCH_SIGNER_QUEUE_CAPACITY)));
+    }
+
+    /**
+     * @return the maximum number of signing requests signed in one batch, '10000' by default.
+     */
+    public static int getBatchSignerMaxBatchSize() {
+        return Math.max(1, Integer.parseInt(System.getProperty(PROXY_BATCH_SIGNER_MAX_BATCH_SIZE,
+                DEFAULT_PROXY_BATCH_SIGNER_MAX_BATCH_SIZE)));
+    }
+
+    /**
+     * @return the maximum time in microseconds a batch signing lane waits for more signing requests
+     * before signing, '0' (no waiting) by default.
+     */
+    public static long getBatchSignerMaxLingerMicros() {
+        return Math.max(0, Long.parseLong(System.getProperty(PROXY_BATCH_SIGNER_MAX_LINGER_MICROS,
+                DEFAULT_PROXY_BATCH_SIGNER_MAX_LINGER_MICROS)));
+    }
+
+    /**
+     * @return the number of PKCS#11 sessions a hardware token uses for signing, '1' by default.
+     * Values greater than 1 enable concurrent signing on hardware tokens.
+     */
+    public static int getHwTokenSignSessionPoolSize() {
+        return Math.max(1, Integer.parseInt(System.getProperty(SIGNER_HW_TOKEN_SIGN_SESSION_POOL_SIZE,
+                DEFAULT_SIGNER_HW_TOKEN_SIGN_SESSION_POOL_SIZE)));
+    }
+
+    /**
+     * @return the number of bytes of a SOAP message copy the SOAP parser keeps in memory before caching
+     * the copy in a temporary file, '1048576' by default.
+     */
+    public static int getSoapParserMemoryThreshold() {
+        return Math.max(0, Integer.parseInt(System.getProperty(PROXY_SOAP_PARSER_MEMORY_THRESHOLD,
+                DEFAULT_PROXY_SOAP_PARSER_MEMORY_THRESHOLD)));
+    }
+
+    /**
+     * @return the size of the memory buffer of a caching stream in bytes, '65536' by default.
+     * Data that does not fit into the buffer is cached in a temporary file.
+     */
+    public static int getCachingStreamMemoryThreshold() {
+        return Math.max(0, Integer.parseInt(System.getProperty(CACHING_STREAM_MEMORY_THRESHOLD,
+                DEFAULT_CACHING_STREAM_MEMORY_THRESHOLD)));
+    }
+
+    /**
+     * @return the maximum number of caching stream memory buffers kept for reuse, '64' by default.
+     */
+    public static int getCachingStreamBufferPoolSize() {
+        return Math.max(0, Integer.parseInt(System.getProperty(CACHING_STREAM_BUFFER_POOL_SIZE,
+                DEFAULT_CACHING_STREAM_BUFFER_POOL_SIZE)));
+    }
+
+    /**
+     * @return the size in bytes of the buffer through which the client proxy passes the SOAP request
+     * from the request reader to the request sender, '16384' by default.
+     */
+    public static int getClientProxySoapPipeBufferSize() {
+        return Math.max(1, Integer.parseInt(System.getProperty(PROXY_CLIENT_SOAP_PIPE_BUFFER_SIZE,
+                DEFAULT_PROXY_CLIENT_SOAP_PIPE_BUFFER_SIZE)));
+    }
+
+    /**
+     * @return the number of threads the signer uses for refreshing OCSP responses, '8' by default.
+     */
+    public static int getOcspRefreshThreads() {
+        return Math.max(1, Integer.parseInt(System.getProperty(SIGNER_OCSP_REFRESH_THREADS,
+                DEFAULT_SIGNER_OCSP_REFRESH_THREADS)));
+    }
+
+    /**
+     * @return the maximum number of concurrent requests the signer sends to one OCSP responder, '4' by default.
+     */
+    public static int getOcspResponderMaxConcurrentRequests() {
+        return Math.max(1, Integer.parseInt(System.getProperty(SIGNER_OCSP_RESPONDER_MAX_CONCURRENT_REQUESTS,
+                DEFAULT_SIGNER_OCSP_RESPONDER_MAX_CONCURRENT_REQUESTS)));
+    }
 }
@@ -29,7 +29,16 @@ import java.time.OffsetDateTime;
 
 public interface PrivateParametersProvider {
 
+    /**
+     * Returns the parameters with the given expiration date. The parsed parameters are shared with this instance.
+     * @param fileExpiresOn expiration date of the parameters file
+     * @return this instance if the expiration date has not changed, otherwise a copy with the new expiration date
+     */
     default PrivateParametersProvider refresh(OffsetDateTime fileExpiresOn) {
+        if (fileExpiresOn.equals(getExpiresOn())) {
+            return this;
+        }
+
         if (this instanceof PrivateParametersV3 v3) {
             return new PrivateParametersV3(v3, fileExpiresOn);
         } else {
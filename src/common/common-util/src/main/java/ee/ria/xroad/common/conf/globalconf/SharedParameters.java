@@ -31,8 +31,8 @@ import ee.ria.xroad.common.identifier.SecurityServerId;
 import lombok.Data;
 import lombok.Getter;
 import org.apache.commons.lang3.StringUtils;
-import org.bouncycastle.asn1.x500.X500Name;
-import org.bouncycastle.cert.X509CertificateHolder;
+
+import javax.security.auth.x500.X500Principal;
 
 import java.io.IOException;
 import java.math.BigInteger;
@@ -43,6 +43,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -62,10 +63,11 @@ public class SharedParameters {
     private final GlobalSettings globalSettings;
 
     // Utility maps of existing data to speed up searches, filled at conf initialization
-    private final Map<X500Name, X509Certificate> subjectsAndCaCerts = new HashMap<>();
+    private final Map<X500Principal, X509Certificate> subjectsAndCaCerts = new HashMap<>();
     private final Map<X509Certificate, String> caCertsAndCertProfiles = new HashMap<>();
     private final Map<X509Certificate, ApprovedCA> caCertsAndApprovedCAData = new HashMap<>();
     private final Map<X509Certificate, List<OcspInfo>> caCertsAndOcspData = new HashMap<>();
+    private final Map<X509Certificate, Set<X509Certificate>> caCertsAndOcspCerts = new HashMap<>();
     private final List<X509Certificate> verificationCaCerts = new ArrayList<>();
     private final Map<ClientId, Set<String>> memberAddresses = new HashMap<>();
     private final Map<ClientId, Set<byte[]>> memberAuthCerts = new HashMap<>();
@@ -73,6 +75,9 @@ public class SharedParameters {
     private final Map<SecurityServerId, Set<ClientId>> securityServerClients = new HashMap<>();
     private final Set<String> knownAddresses = new HashSet<>();
     private final Map<SecurityServerId, SecurityServer> securityServersById = new HashMap<>();
+    private final Map<ClientId, String> memberNames = new HashMap<>();
+    private final Map<String, GlobalGroup> globalGroupsByCode = new HashMap<>();
+    private final Map<String, Set<ClientId>> globalGroupMembers = new HashMap<>();
 
     public SharedParameters(String instanceIdentifier, List<ConfigurationSource> sources, List<ApprovedCA> approvedCAs,
                             List<ApprovedTSA> approvedTSAs, List<Member> members, List<SecurityServer> securityServers,
@@ -90,9 +95,11 @@ public class SharedParameters {
         cacheCaCerts();
         cacheKnownAddresses();
         cacheSecurityServers();
+        cacheMembers();
+        cacheGlobalGroups();
     }
 
-    private void cacheCaCerts() throws CertificateEncodingException, IOException {
+    private void cacheCaCerts() {
         List<X509Certificate> allCaCerts = new ArrayList<>();
 
         for (ApprovedCA ca : approvedCAs) {
@@ -117,12 +124,10 @@ public class SharedParameters {
                 caCertsAndApprovedCAData.put(pkiCaCert, ca);
             }
             allCaCerts.addAll(pkiCaCerts);
+        }
 
-            for (X509Certificate cert : allCaCerts) {
-                X509CertificateHolder certHolder =
-                        new X509CertificateHolder(cert.getEncoded());
-                subjectsAndCaCerts.put(certHolder.getSubject(), cert);
-            }
+        for (X509Certificate cert : allCaCerts) {
+            subjectsAndCaCerts.put(cert.getSubjectX500Principal(), cert);
         }
     }
 
@@ -131,6 +136,14 @@ public class SharedParameters {
             X509Certificate cert = readCertificate(caInfo.getCert());
             List<OcspInfo> caOcspTypes = caInfo.getOcsp();
             caCertsAndOcspData.put(cert, caOcspTypes);
+
+            if (caOcspTypes != null) {
+                caCertsAndOcspCerts.put(cert, caOcspTypes.stream()
+                        .map(OcspInfo::getCert)
+                        .filter(Objects::nonNull)
+                        .map(ocspCert -> readCertificate(ocspCert))
+                        .collect(Collectors.toSet()));
+            }
         }
     }
 
@@ -166,6 +179,23 @@ public class SharedParameters {
         }
     }
 
+    private void cacheMembers() {
+        for (Member member : members) {
+            ClientId memberId = ClientId.Conf.create(instanceIdentifier, member.getMemberClass().getCode(),
+                    member.getMemberCode());
+            memberNames.putIfAbsent(memberId, member.getName());
+        }
+    }
+
+    private void cacheGlobalGroups() {
+        for (GlobalGroup globalGroup : globalGroups) {
+            if (globalGroupsByCode.putIfAbsent(globalGroup.getGroupCode(), globalGroup) == null) {
+                globalGroupMembers.put(globalGroup.getGroupCode(), globalGroup.getGroupMembers() == null
+                        ? Set.of() : new HashSet<>(globalGroup.getGroupMembers()));
+            }
+        }
+    }
+
     private void addServerClient(ClientId client, SecurityServer server) {
         // Add the mapping from client to security server address.
         if (isNotBlank(server.getAddress())) {
@@ -31,7 +31,16 @@ import java.time.OffsetDateTime;
 
 public interface SharedParametersProvider {
 
+    /**
+     * Returns the parameters with the given expiration date. The parsed parameters are shared with this instance.
+     * @param fileExpiresOn expiration date of the parameters file
+     * @return this instance if the expiration date has not changed, otherwise a copy with the new expiration date
+     */
     default SharedParametersProvider refresh(OffsetDateTime fileExpiresOn) throws CertificateEncodingException, IOException {
+        if (fileExpiresOn.equals(getExpiresOn())) {
+            return this;
+        }
+
         if (this instanceof SharedParametersV3 v3) {
             return new SharedParametersV3(v3, fileExpiresOn);
         } else {
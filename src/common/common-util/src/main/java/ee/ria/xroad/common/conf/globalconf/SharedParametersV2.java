@@ -77,7 +77,7 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
     public SharedParametersV2(SharedParametersV2 original, OffsetDateTime newExpiresOn) throws CertificateEncodingException, IOException {
         super(original);
         expiresOn = newExpiresOn;
-        sharedParameters = converter.convert(confType);
+        sharedParameters = original.getSharedParameters();
         initCompleted = true;
     }
 
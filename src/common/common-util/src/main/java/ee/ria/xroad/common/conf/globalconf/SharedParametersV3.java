@@ -74,7 +74,7 @@ public class SharedParametersV3 extends AbstractXmlConf<SharedParametersTypeV3>
     public SharedParametersV3(SharedParametersV3 original, OffsetDateTime newExpiresOn) throws CertificateEncodingException, IOException {
         super(original);
         expiresOn = newExpiresOn;
-        sharedParameters = converter.convert(confType);
+        sharedParameters = original.getSharedParameters();
         initCompleted = true;
     }
 
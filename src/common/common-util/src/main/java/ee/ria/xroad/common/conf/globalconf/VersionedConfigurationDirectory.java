@@ -26,8 +26,10 @@
 package ee.ria.xroad.common.conf.globalconf;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.util.MetricsHolder;
 import ee.ria.xroad.common.util.TimeUtils;
 
+import com.codahale.metrics.Meter;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
@@ -50,6 +52,7 @@ import java.util.Map;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 
+import static com.codahale.metrics.MetricRegistry.name;
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.SystemProperties.CURRENT_GLOBAL_CONFIGURATION_VERSION;
 import static ee.ria.xroad.common.conf.globalconf.ConfigurationUtils.escapeInstanceIdentifier;
@@ -60,12 +63,20 @@ import static java.lang.String.valueOf;
  * Each subdirectory must contain private and/or shared parameters.
  * <br/> When querying the parameters from this class, the parameters XML is checked for modifications and if the XML has
  * been modified, the parameters are reloaded from the XML.
- *
+ * <br/> When constructed from a base directory, the parameters whose file content checksum has not changed are reused
+ * as they are, so that only the changed parts are validated and parsed again.
  */
 @Slf4j
 @Immutable
 public class VersionedConfigurationDirectory implements ConfigurationDirectory {
 
+    private static final Meter PARSED_PARTS = MetricsHolder.getRegistry()
+            .meter(name(VersionedConfigurationDirectory.class, "parsedParts"));
+    private static final Meter PARSED_BYTES = MetricsHolder.getRegistry()
+            .meter(name(VersionedConfigurationDirectory.class, "parsedBytes"));
+    private static final Meter REUSED_PARTS = MetricsHolder.getRegistry()
+            .meter(name(VersionedConfigurationDirectory.class, "reusedParts"));
+
     @Getter
     private final Path path;
 
@@ -136,8 +147,10 @@ public class VersionedConfigurationDirectory implements ConfigurationDirectory {
                 if (existingParameters != null && !existingParameters.hasChanged()) {
                     log.trace("PrivateParameters from {} have not changed, reusing", privateParametersPath);
                     parametersToUse = existingParameters.refresh(fileExpiresOn);
+                    REUSED_PARTS.mark();
                 } else {
                     log.trace("Reloading PrivateParameters from {} ", privateParametersPath);
+                    markParsed(privateParametersPath);
                     parametersToUse = isCurrentVersion(privateParametersPath)
                             ? new PrivateParametersV3(privateParametersPath, fileExpiresOn)
                             : new PrivateParametersV2(privateParametersPath, fileExpiresOn);
@@ -181,8 +194,10 @@ public class VersionedConfigurationDirectory implements ConfigurationDirectory {
                 if (existingParameters != null && !existingParameters.hasChanged()) {
                     log.trace("SharedParameters from {} have not changed, reusing", sharedParametersPath);
                     parametersToUse = existingParameters.refresh(fileExpiresOn);
+                    REUSED_PARTS.mark();
                 } else {
                     log.trace("Reloading SharedParameters from {} ", sharedParametersPath);
+                    markParsed(sharedParametersPath);
                     parametersToUse = isCurrentVersion(sharedParametersPath)
                             ? new SharedParametersV3(sharedParametersPath, fileExpiresOn)
                             : new SharedParametersV2(sharedParametersPath, fileExpiresOn);
@@ -196,6 +211,20 @@ public class VersionedConfigurationDirectory implements ConfigurationDirectory {
         }
     }
 
+    /**
+     * @param other another configuration directory
+     * @return true if this directory holds the same parameter instances as the other one, i.e. nothing
+     * was re-read when this directory was loaded based on the other
+     */
+    public boolean hasSameParameters(VersionedConfigurationDirectory other) {
+        return privateParameters.equals(other.privateParameters) && sharedParameters.equals(other.sharedParameters);
+    }
+
+    private static void markParsed(Path parametersPath) throws IOException {
+        PARSED_PARTS.mark();
+        PARSED_BYTES.mark(Files.size(parametersPath));
+    }
+
     /**
      * Returns private parameters for a given instance identifier.
      * @param instanceId the instance identifier
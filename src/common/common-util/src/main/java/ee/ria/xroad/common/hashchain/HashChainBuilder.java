@@ -28,11 +28,6 @@ package ee.ria.xroad.common.hashchain;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBElement;
-import javax.xml.bind.Marshaller;
-
-import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -66,6 +61,10 @@ import static java.lang.Integer.numberOfLeadingZeros;
  * treated as a single array consisting of nodes+inputs.
  *
  * For incomplete binary trees, some inputs and nodes can be null.
+ *
+ * The hash chains are written with {@link HashChainXmlWriter}, without building
+ * JAXB objects. Digests of the upper tree nodes appear in many hash chains, so
+ * their encoded form is computed once per tree.
  */
 public final class HashChainBuilder {
 
@@ -74,9 +73,6 @@ public final class HashChainBuilder {
     private static final Logger LOG =
             LoggerFactory.getLogger(HashChainBuilder.class);
 
-    /** For accessing JAXB functionality. Shared between all the builders. */
-    private static JAXBContext jaxbCtx;
-
     /**
      * Index of the root of the tree.
      */
@@ -108,11 +104,11 @@ public final class HashChainBuilder {
     /** Maximum index a tree node can have. */
     private int maxIndex;
 
-    /** Used for serializing XML objects. */
-    private Marshaller marshaller;
+    /** Base64 encoded tree nodes and inputs, filled in as the hash chains are written. */
+    private String[] encodedNodes;
 
-    /** Factory for creating XML objects. */
-    private ObjectFactory objectFactory = new ObjectFactory();
+    /** Used for serializing hash chains. */
+    private final HashChainXmlWriter writer;
 
     /**
      * Constructs a hash chain builder.
@@ -123,12 +119,16 @@ public final class HashChainBuilder {
      * @throws Exception in case of errors
      */
     public HashChainBuilder(String hashAlgorithm) throws Exception {
-        this.hashAlgorithm = hashAlgorithm;
-        hashAlgorithmUri = getDigestAlgorithmURI(hashAlgorithm);
+        this(hashAlgorithm, HashChainXmlWriter.create());
+    }
 
-        marshaller = jaxbCtx.createMarshaller();
-        // Format the XML, good for debugging.
-        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+    /**
+     * Constructs a hash chain builder that uses the given writer.
+     */
+    HashChainBuilder(String hashAlgorithm, HashChainXmlWriter writer) throws Exception {
+        this.hashAlgorithm = hashAlgorithm;
+        this.hashAlgorithmUri = getDigestAlgorithmURI(hashAlgorithm);
+        this.writer = writer;
     }
 
     /**
@@ -217,13 +217,8 @@ public final class HashChainBuilder {
                             + "without attachments.");
         }
 
-        HashChainResultType result = new HashChainResultType();
-
-        result.setDigestValue(getTreeTop());
-        result.setDigestMethod(digestMethod());
-        result.setURI(hashChainFileName + "#" + STEP + "0");
-
-        return elementToString(objectFactory.createHashChainResult(result));
+        return writer.hashChainResult(hashChainFileName + "#" + STEP + "0",
+                hashAlgorithmUri, getTreeTop());
     }
 
     /**
@@ -256,6 +251,7 @@ public final class HashChainBuilder {
         String[] ret = new String[inputs.size()];
 
         if (inputs.size() > 1) {
+            encodedNodes = new String[maxIndex];
             for (int i = 0; i < inputs.size(); ++i) {
                 ret[i] = makeHashChain(i);
             }
@@ -392,18 +388,19 @@ public final class HashChainBuilder {
 
     /**
      * Similar to get(index), but if the data is null then goes down the tree
-     * until data is found.
+     * until data is found. Returns the base64 encoded data.
      */
-    private byte[] getDeep(int index) {
-        byte[] ret = get(index);
-
-        while (ret == null && index < maxIndex) {
+    private String getDeepEncoded(int index) {
+        while (get(index) == null && index < maxIndex) {
             index = leftIdx(index);
-            LOG.trace("getDeep() -> {}", index);
-            ret = get(index);
+            LOG.trace("getDeepEncoded() -> {}", index);
         }
 
-        return ret;
+        if (encodedNodes[index] == null) {
+            encodedNodes[index] = writer.encode(get(index));
+        }
+
+        return encodedNodes[index];
     }
 
     /**
@@ -412,8 +409,7 @@ public final class HashChainBuilder {
     private String makeHashChain(int itemIndex) throws Exception {
         LOG.trace("makeHashChain({})", itemIndex);
 
-        HashChainType hashChain = new HashChainType();
-        hashChain.setDefaultDigestMethod(digestMethod());
+        writer.startHashChain(hashAlgorithmUri);
 
         // Hash step count is used to generate references.
         int stepCount = 0;
@@ -442,35 +438,30 @@ public final class HashChainBuilder {
                 --currentLevel;
             }
 
-            // For the other node, we always use hash value.
-            AbstractValueType otherData = hashValue(getDeep(otherChildIdx));
-            AbstractValueType myData;
+            // Construct the hash step. The two data items are written
+            // in the order of the children.
+            writer.startHashStep(stepCount);
+
+            if (myDirection == 1) {
+                // For the other node, we always use hash value.
+                writer.hashValue(getDeepEncoded(otherChildIdx));
+            }
 
             // If the child is leaf node and there are no attachments,
             // use the data ref. Otherwise use the StepRef.
             if (isLeaf(myChildIdx) && !multiparts.containsKey(itemIndex)) {
                 // Plain data ref.
-                myData = dataRef(get(myChildIdx));
+                writer.dataRef(dataRefFileName, get(myChildIdx));
             } else {
                 // Non-leaf nodes refer to other hash steps.
-                myData = stepRef(stepCount + 1);
+                writer.stepRef(stepCount + 1);
             }
 
-            // Construct the hash step.
-            HashStepType hashStep = new HashStepType();
-            hashStep.setId(STEP + stepCount);
-            // Create two elements.
-            hashStep.getHashValueOrStepRefOrDataRef().add(null);
-            hashStep.getHashValueOrStepRefOrDataRef().add(null);
-
-            // Set the data items.
-            hashStep.getHashValueOrStepRefOrDataRef().set(
-                    myDirection, myData);
-            hashStep.getHashValueOrStepRefOrDataRef().set(
-                    1 - myDirection, otherData);
+            if (myDirection == 0) {
+                writer.hashValue(getDeepEncoded(otherChildIdx));
+            }
 
-            // Add to chain
-            hashChain.getHashStep().add(hashStep);
+            writer.endHashStep();
 
             // Update state variables.
             ++stepCount;
@@ -482,46 +473,10 @@ public final class HashChainBuilder {
         // step that references all the individual parts.
         if (multiparts.containsKey(itemIndex)) {
             LOG.trace("Adding attachments");
-            hashChain.getHashStep().add(
-                    multipartStep(multiparts.get(itemIndex), stepCount));
+            multipartStep(multiparts.get(itemIndex), stepCount);
         }
 
-        return elementToString(objectFactory.createHashChain(hashChain));
-    }
-
-    /**
-     * Creates reference to input data.
-     */
-    private DataRefType dataRef(byte[] digest) {
-        return dataRef(dataRefFileName, digest);
-    }
-
-    /**
-     * Creates reference to input data with given file name.
-     */
-    private static DataRefType dataRef(String fileName, byte[] digest) {
-        DataRefType dataRef = new DataRefType();
-        dataRef.setURI(fileName);
-        dataRef.setDigestValue(digest);
-        return dataRef;
-    }
-
-    /**
-     * Creates reference to another hash step.
-     */
-    private static StepRefType stepRef(int stepCount) {
-        StepRefType stepRef = new StepRefType();
-        stepRef.setURI("#" + STEP + stepCount);
-        return stepRef;
-    }
-
-    /**
-     * Creates a concrete hash value.
-     */
-    private static HashValueType hashValue(byte[] data) {
-        HashValueType hashValue = new HashValueType();
-        hashValue.setDigestValue(data);
-        return hashValue;
+        return writer.endHashChain();
     }
 
     /**
@@ -530,51 +485,29 @@ public final class HashChainBuilder {
     private String makeSingleInputHashChain() throws Exception {
         LOG.trace("makeSingleInputHashChain()");
 
-        HashChainType hashChain = new HashChainType();
-        hashChain.setDefaultDigestMethod(digestMethod());
+        writer.startHashChain(hashAlgorithmUri);
 
         // This is a multipart input. Add single step for all
         // the input parts
-        hashChain.getHashStep().add(multipartStep(multiparts.get(0), 0));
+        multipartStep(multiparts.get(0), 0);
 
-        return elementToString(objectFactory.createHashChain(hashChain));
+        return writer.endHashChain();
     }
 
-    private HashStepType multipartStep(byte[][] inputSet, int stepCount) {
-        HashStepType ret = new HashStepType();
-        ret.setId(STEP + stepCount);
+    private void multipartStep(byte[][] inputSet, int stepCount) {
+        writer.startHashStep(stepCount);
 
         for (int i = 0; i < inputSet.length; ++i) {
             if (i == 0) {
                 // The first input is message
-                ret.getHashValueOrStepRefOrDataRef().add(dataRef(inputSet[i]));
+                writer.dataRef(dataRefFileName, inputSet[i]);
             } else {
                 // All the other inputs are attachments, starting from 1.
-                ret.getHashValueOrStepRefOrDataRef().add(
-                        dataRef(attachment(i), inputSet[i]));
+                writer.dataRef(attachment(i), inputSet[i]);
             }
         }
 
-        return ret;
-    }
-
-    /**
-     * Creates a DigestMethod element, based on the current hash algorithm.
-     */
-    private DigestMethodType digestMethod() {
-        DigestMethodType digestMethod = new DigestMethodType();
-        digestMethod.setAlgorithm(hashAlgorithmUri);
-        return digestMethod;
-    }
-
-    /**
-     * Serializes the given XML element to a string.
-     */
-    private <T> String elementToString(JAXBElement<T> element)
-            throws Exception {
-        StringWriter writer = new StringWriter();
-        marshaller.marshal(element, writer);
-        return writer.toString();
+        writer.endHashStep();
     }
 
     /**
@@ -627,12 +560,4 @@ public final class HashChainBuilder {
     private static int pow2(int n) {
         return 1 << n;
     }
-
-    static {
-        try {
-            jaxbCtx = JAXBContext.newInstance(ObjectFactory.class);
-        } catch (Exception ex) {
-            LOG.error("Failed to initialize JAXB context", ex);
-        }
-    }
 }
@@ -0,0 +1,474 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.hashchain;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+
+import java.io.StringWriter;
+import java.util.Base64;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Writes hash chains and hash chain results without building a JAXB object tree.
+ *
+ * The output must be byte-for-byte identical to what the JAXB marshaller produces with
+ * formatted output, because hash chains end up in signatures and archives that are compared
+ * and re-verified later. Details that the JAXB runtime decides on its own (the XML declaration,
+ * namespace prefixes and the order of namespace declarations, indentation) are therefore taken
+ * from a template that is marshalled once with JAXB. The writer is then checked against JAXB
+ * with the same template, and if the outputs differ, {@link #create()} falls back to a writer
+ * that builds the JAXB objects and marshals them.
+ *
+ * A writer instance reuses its buffer and is not thread-safe.
+ */
+@Slf4j
+class HashChainXmlWriter {
+
+    private static final String STEP = "STEP";
+
+    private static final Pattern DIGEST_VALUE_TAG = Pattern.compile("<([^<>/:\\s]+:)?DigestValue>");
+
+    private static final Format FORMAT = Format.create();
+
+    private final Format format;
+    private final StringBuilder buf = new StringBuilder(1024);
+    private final Base64.Encoder base64 = Base64.getEncoder();
+
+    private HashChainXmlWriter(Format format) {
+        this.format = format;
+    }
+
+    /**
+     * @return a new writer, backed by the JAXB marshaller if the writer cannot reproduce its output
+     */
+    static HashChainXmlWriter create() {
+        return FORMAT != null ? new HashChainXmlWriter(FORMAT) : new Jaxb();
+    }
+
+    /**
+     * @return true if the writer produces the same output as the JAXB marshaller without using it
+     */
+    static boolean isAvailable() {
+        return FORMAT != null;
+    }
+
+    /**
+     * Starts a new hash chain document, discarding any previous content of the buffer.
+     * @param digestMethodUri URI of the default digest method of the chain
+     * @return this writer
+     */
+    HashChainXmlWriter startHashChain(String digestMethodUri) {
+        buf.setLength(0);
+        buf.append(format.header);
+        buf.append('<').append(format.hashChainPrefix).append("HashChain").append(format.hashChainNamespaces).append('>');
+        indent(1).append('<').append(format.hashChainPrefix).append("DefaultDigestMethod");
+        attribute("Algorithm", digestMethodUri).append("/>");
+        return this;
+    }
+
+    /**
+     * Starts a hash step with the id {@code STEP<stepNo>}.
+     * @param stepNo number of the step in the chain
+     * @return this writer
+     */
+    HashChainXmlWriter startHashStep(int stepNo) {
+        indent(1).append('<').append(format.hashChainPrefix).append("HashStep id=\"").append(STEP).append(stepNo).append("\">");
+        return this;
+    }
+
+    /**
+     * Writes a HashValue element into the current hash step.
+     * @param digest the digest
+     * @return this writer
+     */
+    HashChainXmlWriter hashValue(byte[] digest) {
+        return hashValue(encode(digest));
+    }
+
+    /**
+     * Writes a HashValue element into the current hash step.
+     * @param encodedDigest base64 encoded digest, as returned by {@link #encode(byte[])}
+     * @return this writer
+     */
+    HashChainXmlWriter hashValue(String encodedDigest) {
+        indent(2).append('<').append(format.hashChainPrefix).append("HashValue>");
+        digestValue(3, encodedDigest);
+        indent(2).append("</").append(format.hashChainPrefix).append("HashValue>");
+        return this;
+    }
+
+    /**
+     * Writes a DataRef element into the current hash step.
+     * @param uri the referenced data
+     * @param digest digest of the data
+     * @return this writer
+     */
+    HashChainXmlWriter dataRef(String uri, byte[] digest) {
+        indent(2).append('<').append(format.hashChainPrefix).append("DataRef");
+        attribute("URI", uri).append('>');
+        digestValue(3, encode(digest));
+        indent(2).append("</").append(format.hashChainPrefix).append("DataRef>");
+        return this;
+    }
+
+    /**
+     * Writes a StepRef element referring to the hash step {@code STEP<stepNo>} of the same chain.
+     * @param stepNo number of the referenced step
+     * @return this writer
+     */
+    HashChainXmlWriter stepRef(int stepNo) {
+        indent(2).append('<').append(format.hashChainPrefix).append("StepRef URI=\"#").append(STEP).append(stepNo).append("\"/>");
+        return this;
+    }
+
+    /**
+     * Ends the current hash step.
+     * @return this writer
+     */
+    HashChainXmlWriter endHashStep() {
+        indent(1).append("</").append(format.hashChainPrefix).append("HashStep>");
+        return this;
+    }
+
+    /**
+     * Ends the hash chain document.
+     * @return the document
+     */
+    String endHashChain() {
+        buf.append(format.newline).append("</").append(format.hashChainPrefix).append("HashChain>").append(format.trailer);
+        return buf.toString();
+    }
+
+    /**
+     * Writes a complete hash chain result document, discarding any previous content of the buffer.
+     * @param uri reference to the first hash step of the hash chain
+     * @param digestMethodUri URI of the digest method
+     * @param digest the digest
+     * @return the document
+     */
+    String hashChainResult(String uri, String digestMethodUri, byte[] digest) {
+        buf.setLength(0);
+        buf.append(format.header);
+        buf.append('<').append(format.hashChainPrefix).append("HashChainResult");
+        attribute("URI", uri).append(format.resultNamespaces).append('>');
+        indent(1).append('<').append(format.signaturePrefix).append("DigestMethod");
+        attribute("Algorithm", digestMethodUri).append("/>");
+        digestValue(1, encode(digest));
+        buf.append(format.newline).append("</").append(format.hashChainPrefix).append("HashChainResult>").append(format.trailer);
+        return buf.toString();
+    }
+
+    /**
+     * Encodes a digest the way it appears in DigestValue elements. Digests that are written
+     * more than once, such as the upper nodes of a Merkle tree, can be encoded once and
+     * passed to {@link #hashValue(String)}.
+     * @param digest the digest
+     * @return base64 encoded digest
+     */
+    String encode(byte[] digest) {
+        return base64.encodeToString(digest);
+    }
+
+    private void digestValue(int level, String encodedDigest) {
+        indent(level).append('<').append(format.signaturePrefix).append("DigestValue>").append(encodedDigest)
+                .append("</").append(format.signaturePrefix).append("DigestValue>");
+    }
+
+    private StringBuilder indent(int level) {
+        buf.append(format.newline);
+        for (int i = 0; i < level; i++) {
+            buf.append(format.indent);
+        }
+        return buf;
+    }
+
+    private StringBuilder attribute(String name, String value) {
+        buf.append(' ').append(name).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    buf.append("&amp;");
+                    break;
+                case '<':
+                    buf.append("&lt;");
+                    break;
+                case '>':
+                    buf.append("&gt;");
+                    break;
+                case '"':
+                    buf.append("&quot;");
+                    break;
+                default:
+                    buf.append(c);
+            }
+        }
+        return buf.append('"');
+    }
+
+    /**
+     * Fallback writer that builds the JAXB objects and marshals them.
+     */
+    static final class Jaxb extends HashChainXmlWriter {
+        private static final JAXBContext JAXB_CTX = Format.createJaxbContext();
+
+        private final ObjectFactory objectFactory = new ObjectFactory();
+
+        private HashChainType hashChain;
+        private HashStepType hashStep;
+
+        Jaxb() {
+            super(null);
+        }
+
+        @Override
+        HashChainXmlWriter startHashChain(String digestMethodUri) {
+            hashChain = new HashChainType();
+            hashChain.setDefaultDigestMethod(digestMethod(digestMethodUri));
+            return this;
+        }
+
+        @Override
+        HashChainXmlWriter startHashStep(int stepNo) {
+            hashStep = new HashStepType();
+            hashStep.setId(STEP + stepNo);
+            return this;
+        }
+
+        @Override
+        HashChainXmlWriter hashValue(String encodedDigest) {
+            HashValueType hashValue = new HashValueType();
+            hashValue.setDigestValue(Base64.getDecoder().decode(encodedDigest));
+            hashStep.getHashValueOrStepRefOrDataRef().add(hashValue);
+            return this;
+        }
+
+        @Override
+        HashChainXmlWriter dataRef(String uri, byte[] digest) {
+            DataRefType dataRef = new DataRefType();
+            dataRef.setURI(uri);
+            dataRef.setDigestValue(digest);
+            hashStep.getHashValueOrStepRefOrDataRef().add(dataRef);
+            return this;
+        }
+
+        @Override
+        HashChainXmlWriter stepRef(int stepNo) {
+            StepRefType stepRef = new StepRefType();
+            stepRef.setURI("#" + STEP + stepNo);
+            hashStep.getHashValueOrStepRefOrDataRef().add(stepRef);
+            return this;
+        }
+
+        @Override
+        HashChainXmlWriter endHashStep() {
+            hashChain.getHashStep().add(hashStep);
+            hashStep = null;
+            return this;
+        }
+
+        @Override
+        String endHashChain() {
+            return marshal(objectFactory.createHashChain(hashChain));
+        }
+
+        @Override
+        String hashChainResult(String uri, String digestMethodUri, byte[] digest) {
+            HashChainResultType result = new HashChainResultType();
+            result.setURI(uri);
+            result.setDigestMethod(digestMethod(digestMethodUri));
+            result.setDigestValue(digest);
+
+            return marshal(objectFactory.createHashChainResult(result));
+        }
+
+        private static DigestMethodType digestMethod(String digestMethodUri) {
+            DigestMethodType digestMethod = new DigestMethodType();
+            digestMethod.setAlgorithm(digestMethodUri);
+            return digestMethod;
+        }
+
+        private static String marshal(JAXBElement<?> element) {
+            try {
+                return Format.marshal(JAXB_CTX, element);
+            } catch (JAXBException e) {
+                throw new IllegalStateException("Failed to marshal hash chain", e);
+            }
+        }
+    }
+
+    /**
+     * The parts of the output that are decided by the JAXB runtime.
+     */
+    private static final class Format {
+        private static final String TEMPLATE_DIGEST_METHOD = "urn:template:digest";
+        private static final String TEMPLATE_DATA_URI = "/template.xml";
+        private static final String TEMPLATE_RESULT_URI = "/template.xml#STEP0";
+        private static final byte[] TEMPLATE_DIGEST = {1, 2, 3};
+
+        private String header;
+        private String trailer;
+        private String newline;
+        private String indent;
+        private String hashChainPrefix;
+        private String signaturePrefix;
+        private String hashChainNamespaces;
+        private String resultNamespaces;
+
+        static Format create() {
+            try {
+                JAXBContext jaxbCtx = createJaxbContext();
+                String chain = marshal(jaxbCtx, templateChain());
+                String result = marshal(jaxbCtx, templateResult());
+
+                Format format = new Format();
+                format.parse(chain, result);
+
+                String writtenChain = new HashChainXmlWriter(format).startHashChain(TEMPLATE_DIGEST_METHOD)
+                        .startHashStep(0).stepRef(1).hashValue(TEMPLATE_DIGEST).endHashStep()
+                        .startHashStep(1).hashValue(TEMPLATE_DIGEST).dataRef(TEMPLATE_DATA_URI, TEMPLATE_DIGEST).endHashStep()
+                        .endHashChain();
+                String writtenResult = new HashChainXmlWriter(format)
+                        .hashChainResult(TEMPLATE_RESULT_URI, TEMPLATE_DIGEST_METHOD, TEMPLATE_DIGEST);
+
+                if (chain.equals(writtenChain) && result.equals(writtenResult)) {
+                    return format;
+                }
+
+                log.warn("Hash chain writer output differs from JAXB output, falling back to JAXB");
+            } catch (Exception e) {
+                log.warn("Failed to initialize hash chain writer, falling back to JAXB", e);
+            }
+
+            return null;
+        }
+
+        private void parse(String chain, String result) {
+            int rootStart = chain.indexOf('<', chain.indexOf("?>"));
+            int rootEnd = chain.indexOf('>', rootStart);
+
+            header = chain.substring(0, rootStart);
+            trailer = chain.substring(chain.lastIndexOf('>') + 1);
+
+            int pos = rootEnd + 1;
+            while (chain.charAt(pos) == '\r' || chain.charAt(pos) == '\n') {
+                pos++;
+            }
+            newline = chain.substring(rootEnd + 1, pos);
+
+            int indentStart = pos;
+            while (chain.charAt(pos) == ' ' || chain.charAt(pos) == '\t') {
+                pos++;
+            }
+            indent = chain.substring(indentStart, pos);
+
+            String rootTag = chain.substring(rootStart + 1, rootEnd);
+            hashChainPrefix = rootTag.substring(0, rootTag.indexOf("HashChain"));
+            hashChainNamespaces = namespaces(rootTag);
+
+            int resultStart = result.indexOf('<', result.indexOf("?>"));
+            resultNamespaces = namespaces(result.substring(resultStart + 1, result.indexOf('>', resultStart)));
+
+            Matcher digestValue = DIGEST_VALUE_TAG.matcher(chain);
+            if (!digestValue.find()) {
+                throw new IllegalStateException("No DigestValue in template");
+            }
+            signaturePrefix = digestValue.group(1) != null ? digestValue.group(1) : "";
+        }
+
+        private static String namespaces(String rootTag) {
+            int start = rootTag.indexOf(" xmlns");
+            return start < 0 ? "" : rootTag.substring(start);
+        }
+
+        private static JAXBElement<HashChainType> templateChain() {
+            DigestMethodType digestMethod = new DigestMethodType();
+            digestMethod.setAlgorithm(TEMPLATE_DIGEST_METHOD);
+
+            HashValueType hashValue = new HashValueType();
+            hashValue.setDigestValue(TEMPLATE_DIGEST);
+
+            StepRefType stepRef = new StepRefType();
+            stepRef.setURI("#" + STEP + 1);
+
+            DataRefType dataRef = new DataRefType();
+            dataRef.setURI(TEMPLATE_DATA_URI);
+            dataRef.setDigestValue(TEMPLATE_DIGEST);
+
+            HashStepType first = new HashStepType();
+            first.setId(STEP + 0);
+            first.getHashValueOrStepRefOrDataRef().add(stepRef);
+            first.getHashValueOrStepRefOrDataRef().add(hashValue);
+
+            HashStepType second = new HashStepType();
+            second.setId(STEP + 1);
+            second.getHashValueOrStepRefOrDataRef().add(hashValue);
+            second.getHashValueOrStepRefOrDataRef().add(dataRef);
+
+            HashChainType hashChain = new HashChainType();
+            hashChain.setDefaultDigestMethod(digestMethod);
+            hashChain.getHashStep().add(first);
+            hashChain.getHashStep().add(second);
+
+            return new ObjectFactory().createHashChain(hashChain);
+        }
+
+        private static JAXBElement<HashChainResultType> templateResult() {
+            DigestMethodType digestMethod = new DigestMethodType();
+            digestMethod.setAlgorithm(TEMPLATE_DIGEST_METHOD);
+
+            HashChainResultType result = new HashChainResultType();
+            result.setURI(TEMPLATE_RESULT_URI);
+            result.setDigestMethod(digestMethod);
+            result.setDigestValue(TEMPLATE_DIGEST);
+
+            return new ObjectFactory().createHashChainResult(result);
+        }
+
+        static JAXBContext createJaxbContext() {
+            try {
+                return JAXBContext.newInstance(ObjectFactory.class);
+            } catch (JAXBException e) {
+                throw new IllegalStateException("Failed to initialize JAXB context", e);
+            }
+        }
+
+        static String marshal(JAXBContext jaxbCtx, JAXBElement<?> element) throws JAXBException {
+            Marshaller marshaller = jaxbCtx.createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+
+            StringWriter writer = new StringWriter();
+            marshaller.marshal(element, writer);
+            return writer.toString();
+        }
+    }
+}
@@ -26,10 +26,12 @@
 package ee.ria.xroad.common.message;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
 import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.identifier.XRoadObjectType;
+import ee.ria.xroad.common.util.CachingStream;
 import ee.ria.xroad.common.util.MimeUtils;
 import ee.ria.xroad.common.util.XmlUtils;
 
@@ -38,8 +40,11 @@ import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.BOMInputStream;
 import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.xml.sax.Attributes;
@@ -54,8 +59,9 @@ import javax.xml.parsers.SAXParserFactory;
 import javax.xml.soap.SOAPException;
 
 import java.io.BufferedWriter;
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.Arrays;
@@ -191,21 +197,38 @@ public class SaxSoapParserImpl implements SoapParser {
     private Soap parseMessage(InputStream is, String mimeType, String contentType, String charset) throws Exception {
         log.trace("parseMessage({}, {})", mimeType, charset);
 
-        ByteArrayOutputStream rawXml = new ByteArrayOutputStream();
-        ByteArrayOutputStream processedXml = new ByteArrayOutputStream();
+        if (!isProcessedXmlRequired()) {
+            // The original XML is the message, nothing is re-encoded
+            UnsynchronizedByteArrayOutputStream rawXml = new UnsynchronizedByteArrayOutputStream();
 
-        InputStream proxyStream = excludeUtf8Bom(contentType, new TeeInputStream(is, rawXml));
-        Writer outputWriter = new OutputStreamWriter(processedXml, charset);
-        XRoadSoapHandler handler = handleSoap(outputWriter, proxyStream);
+            InputStream proxyStream = excludeUtf8Bom(contentType, new TeeInputStream(is, rawXml));
+            XRoadSoapHandler handler = handleSoap(
+                    new OutputStreamWriter(NullOutputStream.NULL_OUTPUT_STREAM, charset), proxyStream);
 
-        CodedException fault = handler.getFault();
-        if (fault != null) {
-            return createSoapFault(charset, rawXml, fault);
+            CodedException fault = handler.getFault();
+            if (fault != null) {
+                return createSoapFault(charset, rawXml.toByteArray(), fault);
+            }
+
+            return createSoapMessage(contentType, charset, handler, rawXml.toByteArray());
         }
 
-        byte[] xmlBytes = isProcessedXmlRequired() ? processedXml.toByteArray() : rawXml.toByteArray();
+        // The original XML is only needed if the message turns out to be a SOAP fault,
+        // so a large original is not kept in memory next to the re-encoded message
+        try (OriginalXmlCache rawXml = new OriginalXmlCache(SystemProperties.getSoapParserMemoryThreshold())) {
+            UnsynchronizedByteArrayOutputStream processedXml = new UnsynchronizedByteArrayOutputStream();
+
+            InputStream proxyStream = excludeUtf8Bom(contentType, new TeeInputStream(is, rawXml));
+            Writer outputWriter = new OutputStreamWriter(processedXml, charset);
+            XRoadSoapHandler handler = handleSoap(outputWriter, proxyStream);
+
+            CodedException fault = handler.getFault();
+            if (fault != null) {
+                return createSoapFault(charset, rawXml.toByteArray(), fault);
+            }
 
-        return createSoapMessage(contentType, charset, handler, xmlBytes);
+            return createSoapMessage(contentType, charset, handler, processedXml.toByteArray());
+        }
     }
 
     private XRoadSoapHandler handleSoap(Writer writer, InputStream inputStream)
@@ -233,10 +256,10 @@ public class SaxSoapParserImpl implements SoapParser {
     }
 
     private static Soap createSoapFault(String charset,
-            ByteArrayOutputStream rawXml, CodedException fault) {
+            byte[] rawXml, CodedException fault) {
         return new SoapFault(fault.getFaultCode(), fault.getFaultString(),
                 fault.getFaultActor(), fault.getFaultDetail(),
-                rawXml.toByteArray(), charset);
+                rawXml, charset);
     }
 
     @SneakyThrows
@@ -296,6 +319,60 @@ public class SaxSoapParserImpl implements SoapParser {
         return new SoapHeaderHandler(header);
     }
 
+    /**
+     * Keeps a copy of the original XML in memory up to the given threshold
+     * and in a {@link CachingStream} above it.
+     */
+    private static final class OriginalXmlCache extends OutputStream {
+        private final int threshold;
+        private final UnsynchronizedByteArrayOutputStream memory = new UnsynchronizedByteArrayOutputStream();
+
+        private CachingStream file;
+
+        OriginalXmlCache(int threshold) {
+            this.threshold = threshold;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target(1).write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            target(len).write(b, off, len);
+        }
+
+        private OutputStream target(int len) throws IOException {
+            if (file == null && memory.size() + len > threshold) {
+                log.trace("Caching original XML larger than {} bytes in a temporary file", threshold);
+
+                file = new CachingStream();
+                memory.writeTo(file);
+                memory.reset();
+            }
+
+            return file != null ? file : memory;
+        }
+
+        byte[] toByteArray() throws IOException {
+            if (file == null) {
+                return memory.toByteArray();
+            }
+
+            file.flush();
+
+            return IOUtils.toByteArray(file.getCachedContents());
+        }
+
+        @Override
+        public void close() {
+            if (file != null) {
+                file.consume();
+            }
+        }
+    }
+
     @RequiredArgsConstructor
     private class XRoadSoapHandler extends DefaultHandler2 {
         private static final String NAMESPACE_PREFIX_SEPARATOR = ":";
@@ -25,6 +25,8 @@
  */
 package ee.ria.xroad.common.util;
 
+import org.apache.commons.io.IOUtils;
+
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -36,14 +38,23 @@ import java.nio.channels.SeekableByteChannel;
  */
 public final class CacheInputStream extends FilterInputStream {
     private final long size;
+    private final boolean closeSource;
 
     CacheInputStream(SeekableByteChannel ch) throws IOException {
         this(Channels.newInputStream(ch.position(0)), ch.size());
     }
 
     public CacheInputStream(InputStream is, long size) {
+        this(is, size, false);
+    }
+
+    /**
+     * @param closeSource whether closing this stream closes the underlying stream
+     */
+    CacheInputStream(InputStream is, long size, boolean closeSource) {
         super(is);
         this.size = size;
+        this.closeSource = closeSource;
     }
 
     public long size() {
@@ -52,7 +63,9 @@ public final class CacheInputStream extends FilterInputStream {
 
     @Override
     public void close() {
-        //NOP
+        if (closeSource) {
+            IOUtils.closeQuietly(in);
+        }
     }
 
     @Override
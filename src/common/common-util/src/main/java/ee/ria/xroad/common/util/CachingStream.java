@@ -27,66 +27,144 @@ package ee.ria.xroad.common.util;
 
 import ee.ria.xroad.common.DefaultFilepaths;
 import ee.ria.xroad.common.ErrorCodes;
+import ee.ria.xroad.common.SystemProperties;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.RatioGauge;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.codahale.metrics.MetricRegistry.name;
 
 /**
- * Caches stuff in a temporary file.
+ * Caches stuff in memory and, if it does not fit into the memory buffer, in a temporary file.
+ * <p>
+ * The memory buffers are direct buffers of {@link SystemProperties#getCachingStreamMemoryThreshold()} bytes
+ * that are reused by subsequent caching streams. A buffer is returned to the pool when the caching stream has
+ * been consumed and all the input streams of its cached contents have been closed or read to the end, so that
+ * a reader on another thread never sees the contents of another caching stream.
  */
 @Slf4j
-public class CachingStream extends FilterOutputStream {
+public class CachingStream extends OutputStream {
+    private static final int MEMORY_THRESHOLD = SystemProperties.getCachingStreamMemoryThreshold();
+    private static final int BUFFER_POOL_SIZE = SystemProperties.getCachingStreamBufferPoolSize();
+
+    private static final Queue<ByteBuffer> BUFFER_POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED_BUFFERS = new AtomicInteger();
+
+    private static final Meter CREATED = MetricsHolder.getRegistry().meter(name(CachingStream.class, "created"));
+    private static final Meter SPILLED = MetricsHolder.getRegistry().meter(name(CachingStream.class, "spilled"));
+
+    static {
+        MetricsHolder.registerGauge(name(CachingStream.class, "spillRatio"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(SPILLED.getCount(), CREATED.getCount());
+            }
+        });
+        MetricsHolder.registerGauge(name(CachingStream.class, "pooledBuffers"), POOLED_BUFFERS::get);
+    }
+
+    private ByteBuffer buffer;
+    // read by the input streams of the cached contents, which may be used by another thread
+    private volatile boolean consumed;
+    // number of input streams still reading the memory buffer, guarded by this
+    private int readers;
+
     private SeekableByteChannel channel;
+    private OutputStream out;
     private Path tempFile;
 
     /**
-     * Constructs a new caching stream that caches data in a temporary file.
+     * Constructs a new caching stream. The temporary file is only created when
+     * the cached data does not fit into the memory buffer.
      *
      * @throws IOException if I/O errors occurred
      */
     public CachingStream() throws IOException {
-        // Construct the parent class with null stream and replace it later.
-        super(null);
+        CREATED.mark();
+    }
 
-        tempFile = DefaultFilepaths.createTempFile("tmpattach", null);
-        channel = Files.newByteChannel(tempFile, StandardOpenOption.CREATE,
-                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
-                StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+    @Override
+    public void write(int b) throws IOException {
+        if (fitsInMemory(1)) {
+            buffer.put((byte) b);
+        } else {
+            out.write(b);
+        }
+    }
 
-        // Now that we are set up, we can set the output stream in the
-        // parent class.
-        out = Channels.newOutputStream(channel);
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (fitsInMemory(len)) {
+            buffer.put(b, off, len);
+        } else {
+            out.write(b, off, len);
+        }
     }
 
     @Override
-    public void close() throws IOException {
-        // we must not close the channel before reading it
-        flush();
+    public void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
     }
 
     @Override
-    public void write(byte[] b, int off, int len) throws IOException {
-        // prevent FilterOutputStream from writing inefficiently
-        out.write(b, off, len);
+    public void close() throws IOException {
+        // we must not close the channel before reading it
+        flush();
     }
 
     /**
      * @return input stream that contains the encoded attachment contents.
-     * The returned stream does not support mark, and closing the stream has no effect.
+     * The returned stream does not support mark. Closing the stream has no effect on contents cached in a
+     * temporary file. Contents cached in memory cannot be read after closing the stream, and their buffer is
+     * only reused after the stream has been closed or read to the end.
      * @see #consume() to free resources used by the cache.
      */
     public CacheInputStream getCachedContents() {
-        try {
-            return new CacheInputStream(channel);
-        } catch (IOException ex) { // the position shouldn't really throw
-            throw ErrorCodes.translateException(ex);
+        if (channel != null) {
+            try {
+                return new CacheInputStream(channel);
+            } catch (IOException ex) { // the position shouldn't really throw
+                throw ErrorCodes.translateException(ex);
+            }
+        }
+
+        BufferInputStream contents = newBufferInputStream();
+
+        return new CacheInputStream(contents, contents.available(), true);
+    }
+
+    private synchronized BufferInputStream newBufferInputStream() {
+        if (buffer == null) {
+            return new BufferInputStream(ByteBuffer.allocate(0), false);
+        }
+
+        readers++;
+
+        return new BufferInputStream(buffer.duplicate().flip(), true);
+    }
+
+    private synchronized void readerClosed() {
+        readers--;
+
+        if (consumed && readers == 0 && buffer != null) {
+            releaseBuffer(buffer);
+            buffer = null;
         }
     }
 
@@ -94,11 +172,192 @@ public class CachingStream extends FilterOutputStream {
      * Finalize caching stream. Use to avoid file handle leaks.
      */
     public void consume() {
-        try {
-            channel.close();
-        } catch (IOException e) {
-            log.warn("Error closing channel of the temporary file '{}'", tempFile.toString(), e);
+        synchronized (this) {
+            consumed = true;
+
+            // otherwise the buffer is released when the last reader is closed
+            if (buffer != null && readers == 0) {
+                releaseBuffer(buffer);
+                buffer = null;
+            }
+        }
+
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Error closing channel of the temporary file '{}'", tempFile.toString(), e);
+            }
         }
     }
 
+    private boolean fitsInMemory(int len) throws IOException {
+        if (out != null) {
+            return false;
+        }
+
+        if (consumed) {
+            throw new IOException("Caching stream has been consumed");
+        }
+
+        if (buffer == null && len <= MEMORY_THRESHOLD) {
+            buffer = acquireBuffer();
+        }
+
+        if (buffer != null && buffer.remaining() >= len) {
+            return true;
+        }
+
+        spill();
+
+        return false;
+    }
+
+    private void spill() throws IOException {
+        tempFile = DefaultFilepaths.createTempFile("tmpattach", null);
+        channel = Files.newByteChannel(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+        out = Channels.newOutputStream(channel);
+
+        if (buffer != null) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            releaseUnread(buffer);
+            buffer = null;
+        }
+
+        SPILLED.mark();
+    }
+
+    private synchronized void releaseUnread(ByteBuffer released) {
+        // a buffer that is still being read is left to the garbage collector
+        if (readers == 0) {
+            releaseBuffer(released);
+        }
+    }
+
+    private static ByteBuffer acquireBuffer() {
+        ByteBuffer pooled = BUFFER_POOL.poll();
+        if (pooled != null) {
+            POOLED_BUFFERS.decrementAndGet();
+            return pooled;
+        }
+
+        return ByteBuffer.allocateDirect(MEMORY_THRESHOLD);
+    }
+
+    // package private for testing
+    static int pooledBuffers() {
+        return POOLED_BUFFERS.get();
+    }
+
+    private static void releaseBuffer(ByteBuffer released) {
+        released.clear();
+
+        if (POOLED_BUFFERS.incrementAndGet() <= BUFFER_POOL_SIZE) {
+            BUFFER_POOL.offer(released);
+        } else {
+            POOLED_BUFFERS.decrementAndGet();
+        }
+    }
+
+    /**
+     * Reads the contents of the memory buffer. The buffer is not returned to the pool while the stream is open,
+     * the stream releases it when it is closed or has been read to the end.
+     */
+    private final class BufferInputStream extends InputStream {
+        private final ByteBuffer contents;
+        private boolean open;
+        private boolean closed;
+
+        BufferInputStream(ByteBuffer contents, boolean holdsBuffer) {
+            this.contents = contents;
+            this.open = holdsBuffer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkReadable();
+
+            if (!contents.hasRemaining()) {
+                release();
+                return -1;
+            }
+
+            int b = contents.get() & 0xFF;
+            releaseAtEnd();
+
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkReadable();
+
+            if (len == 0) {
+                return 0;
+            }
+
+            if (!contents.hasRemaining()) {
+                release();
+                return -1;
+            }
+
+            int count = Math.min(len, contents.remaining());
+            contents.get(b, off, count);
+            releaseAtEnd();
+
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            checkReadable();
+
+            int count = (int) Math.max(0, Math.min(n, contents.remaining()));
+            contents.position(contents.position() + count);
+            releaseAtEnd();
+
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return closed ? 0 : contents.remaining();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            release();
+        }
+
+        private void checkReadable() throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+
+            if (consumed) {
+                release();
+                throw new IOException("Caching stream has been consumed");
+            }
+        }
+
+        private void releaseAtEnd() {
+            if (!contents.hasRemaining()) {
+                release();
+            }
+        }
+
+        private void release() {
+            if (open) {
+                open = false;
+                readerClosed();
+            }
+        }
+    }
 }
@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Health of a remote endpoint, such as a provider security server or a time-stamping provider, as exponentially
+ * weighted moving averages (EWMA) of its response latency and error rate.
+ *
+ * The score value is the latency multiplied by a penalty that grows with the error rate, lower is better. Latency
+ * moves faster than the error rate, so that a slowing endpoint is noticed quickly while a single failure does not
+ * outweigh a history of successful requests.
+ */
+public final class HealthScore {
+
+    private static final double LATENCY_ALPHA = 0.2;
+    private static final double ERROR_ALPHA = 0.1;
+    private static final double ERROR_PENALTY = 10.0;
+    private static final long MIN_LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private volatile double latencyNanos = Double.NaN;
+    private volatile double errorRate;
+
+    /**
+     * Records a request that completed in the given time.
+     * @param latency the response latency in nanoseconds
+     */
+    public synchronized void success(long latency) {
+        long clamped = Math.max(MIN_LATENCY_NANOS, latency);
+        latencyNanos = hasLatency() ? latencyNanos + LATENCY_ALPHA * (clamped - latencyNanos) : clamped;
+        errorRate = errorRate * (1 - ERROR_ALPHA);
+    }
+
+    /**
+     * Records that the endpoint was reachable, without a response latency.
+     */
+    public synchronized void available() {
+        errorRate = errorRate * (1 - ERROR_ALPHA);
+    }
+
+    /**
+     * Records a failed request.
+     */
+    public synchronized void failure() {
+        errorRate = errorRate + ERROR_ALPHA * (1 - errorRate);
+    }
+
+    /**
+     * @return whether at least one request has succeeded
+     */
+    public boolean hasLatency() {
+        return !Double.isNaN(latencyNanos);
+    }
+
+    /**
+     * @return the average response latency in nanoseconds or NaN if no request has succeeded yet
+     */
+    public double getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    /**
+     * @return the average error rate between 0 and 1
+     */
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    /**
+     * @return the score value or NaN if no request has succeeded yet
+     */
+    public double value() {
+        return value(latencyNanos);
+    }
+
+    /**
+     * @param latency the latency to use instead of the average latency, in nanoseconds
+     * @return the score value with the given latency
+     */
+    public double value(double latency) {
+        return latency * (1 + ERROR_PENALTY * errorRate);
+    }
+}
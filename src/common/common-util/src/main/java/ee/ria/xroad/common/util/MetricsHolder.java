@@ -0,0 +1,69 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.jmx.JmxReporter;
+
+/**
+ * Process-wide access point for the performance metrics of an X-Road component.
+ * All metrics registered here are published over JMX under the {@value #JMX_DOMAIN} domain.
+ */
+public final class MetricsHolder {
+
+    public static final String JMX_DOMAIN = "xroad.metrics";
+
+    private static final MetricRegistry REGISTRY = new MetricRegistry();
+
+    static {
+        JmxReporter.forRegistry(REGISTRY).inDomain(JMX_DOMAIN).build().start();
+    }
+
+    private MetricsHolder() {
+    }
+
+    /**
+     * @return the metric registry of this process
+     */
+    public static MetricRegistry getRegistry() {
+        return REGISTRY;
+    }
+
+    /**
+     * Registers the given gauge, replacing any previously registered metric with the same name.
+     * Gauges usually capture the state of a particular component instance, so a re-initialized
+     * component must be able to take over the name.
+     * @param name name of the gauge
+     * @param gauge the gauge
+     * @param <T> type of the gauge value
+     * @return the registered gauge
+     */
+    public static synchronized <T> Gauge<T> registerGauge(String name, Gauge<T> gauge) {
+        REGISTRY.remove(name);
+        return REGISTRY.register(name, gauge);
+    }
+}
@@ -25,15 +25,22 @@
  */
 package ee.ria.xroad.common.conf.globalconf;
 
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -41,6 +48,9 @@ import static org.junit.Assert.assertTrue;
  */
 public class VersionedConfigurationDirectoryTest {
 
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     /**
      * Test to ensure a correct configuration directory is read properly.
      *
@@ -185,6 +195,29 @@ public class VersionedConfigurationDirectoryTest {
         assertNull(dir.getShared("foo"));
     }
 
+    /**
+     * Test to ensure that reloading a directory parses only the parameters whose content has changed.
+     *
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void reloadOnlyChangedParameters() throws Exception {
+        File rootDir = tempFolder.newFolder("globalconf");
+        FileUtils.copyDirectory(new File("src/test/resources/globalconf_good_v2"), rootDir);
+
+        VersionedConfigurationDirectory dir = new VersionedConfigurationDirectory(rootDir.getPath());
+
+        File barSharedParams = new File(rootDir, "bar/shared-params.xml");
+        FileUtils.writeStringToFile(barSharedParams, "\n<!-- changed -->\n", StandardCharsets.UTF_8, true);
+
+        VersionedConfigurationDirectory reloaded = new VersionedConfigurationDirectory(rootDir.getPath(), dir);
+
+        assertSame(dir.getShared("foo"), reloaded.getShared("foo"));
+        assertSame(dir.getPrivate("foo"), reloaded.getPrivate("foo"));
+        assertNotSame(dir.getShared("bar"), reloaded.getShared("bar"));
+        assertEquals("bar", reloaded.getShared("bar").getInstanceIdentifier());
+    }
+
     private boolean pathExists(List<Path> paths, String path) {
         return null != paths.stream()
                 .filter(p -> (p.getParent() + "/" + p.getFileName()).equals(path))
@@ -35,9 +35,11 @@ import static ee.ria.xroad.common.util.CryptoUtils.SHA256_ID;
 import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
 import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
 import static ee.ria.xroad.common.util.CryptoUtils.encodeHex;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests to verify hash chain builder functionality.
@@ -213,4 +215,40 @@ public class HashChainBuilderTest {
         LOG.debug("Hash chain result:\n{}", builder.getHashChainResult("foo"));
         printChains(builder);
     }
+
+    /**
+     * Test to ensure that hash chains and hash chain results are written
+     * exactly as the JAXB marshaller would write them.
+     * @throws Exception in case of unexpected errors
+     */
+    @Test
+    public void jaxbCompatibility() throws Exception {
+        LOG.info("jaxbCompatibility()");
+
+        assertTrue(HashChainXmlWriter.isAvailable());
+
+        for (int count : new int[] {1, 2, 3, 5, 8, 13, 100, 1000}) {
+            HashChainBuilder builder = new HashChainBuilder(SHA256_ID);
+            HashChainBuilder jaxbBuilder = new HashChainBuilder(SHA256_ID, new HashChainXmlWriter.Jaxb());
+
+            for (int i = 0; i < count; ++i) {
+                byte[] message = calculateDigest(SHA256_ID, String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+                if (i % 3 == 0) {
+                    byte[][] parts = {message, new byte[] {(byte) i }};
+                    builder.addInputHash(parts);
+                    jaxbBuilder.addInputHash(parts);
+                } else {
+                    builder.addInputHash(message);
+                    jaxbBuilder.addInputHash(message);
+                }
+            }
+            builder.finishBuilding();
+            jaxbBuilder.finishBuilding();
+
+            assertEquals("count = " + count, jaxbBuilder.getHashChainResult("/sig-hashchain.xml"),
+                    builder.getHashChainResult("/sig-hashchain.xml"));
+            assertArrayEquals("count = " + count, jaxbBuilder.getHashChains("/message.xml"),
+                    builder.getHashChains("/message.xml"));
+        }
+    }
 }
@@ -25,6 +25,7 @@
  */
 package ee.ria.xroad.common.message;
 
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.util.ExpectedCodedException;
@@ -34,6 +35,7 @@ import org.apache.commons.io.IOUtils;
 import org.bouncycastle.util.Arrays;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import javax.xml.namespace.QName;
 import javax.xml.soap.SOAPElement;
@@ -71,6 +73,9 @@ public class SoapMessageTest {
     @Rule
     public ExpectedCodedException thrown = ExpectedCodedException.none();
 
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
     /**
      * Test that reading a normal request message is successful and that header and body are correctly parsed.
      * @throws Exception in case of any unexpected errors
@@ -243,6 +248,34 @@ public class SoapMessageTest {
         assertEquals("yyy", fault.getDetail());
     }
 
+    /**
+     * Tests that the original XML of a fault message is returned when the message is re-encoded
+     * and the original has been cached in a temporary file.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void faultMessageWithProcessedXml() throws Exception {
+        String soapFaultXml = SoapFault.createFaultXml("foo.bar", "baz", "xxx", "yyy");
+
+        System.setProperty(SystemProperties.TEMP_FILES_PATH, tempDir.getRoot().getPath());
+        System.setProperty(SystemProperties.PREFIX + "proxy.soap-parser-memory-threshold", "16");
+        try {
+            Soap message = new SaxSoapParserImpl() {
+                @Override
+                protected boolean isProcessedXmlRequired() {
+                    return true;
+                }
+            }.parse(MimeTypes.TEXT_XML_UTF8, new ByteArrayInputStream(soapFaultXml.getBytes()));
+
+            assertTrue(message instanceof SoapFault);
+            assertEquals("baz", ((SoapFault) message).getString());
+            assertEquals(soapFaultXml, message.getXml());
+        } finally {
+            System.clearProperty(SystemProperties.TEMP_FILES_PATH);
+            System.clearProperty(SystemProperties.PREFIX + "proxy.soap-parser-memory-threshold");
+        }
+    }
+
     /**
      * Checks that inconsistencies between two messages are detected.
      * @throws Exception in case of any unexpected errors
@@ -0,0 +1,160 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests {@link CachingStream}.
+ */
+public class CachingStreamTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        System.setProperty(SystemProperties.TEMP_FILES_PATH, tempDir.getRoot().getPath());
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(SystemProperties.TEMP_FILES_PATH);
+    }
+
+    @Test
+    public void cachesSmallContentsInMemory() throws IOException {
+        byte[] data = randomBytes(1000);
+
+        CachingStream cache = new CachingStream();
+        cache.write(data[0]);
+        cache.write(data, 1, data.length - 1);
+        cache.close();
+
+        assertContents(data, cache);
+        // the contents can be read more than once
+        assertContents(data, cache);
+        assertEquals(0, tempDir.getRoot().list().length);
+
+        cache.consume();
+    }
+
+    @Test
+    public void spillsLargeContentsToFile() throws IOException {
+        int threshold = SystemProperties.getCachingStreamMemoryThreshold();
+        byte[] data = randomBytes(threshold * 2 + 1);
+
+        CachingStream cache = new CachingStream();
+        cache.write(data, 0, threshold - 1);
+        cache.write(data, threshold - 1, data.length - threshold + 1);
+        cache.close();
+
+        assertEquals(1, tempDir.getRoot().list().length);
+        assertContents(data, cache);
+
+        cache.consume();
+    }
+
+    @Test(expected = IOException.class)
+    public void failsReadingConsumedMemoryContents() throws IOException {
+        CachingStream cache = new CachingStream();
+        cache.write(randomBytes(10));
+        cache.close();
+
+        InputStream contents = cache.getCachedContents();
+        cache.consume();
+
+        contents.read();
+    }
+
+    @Test
+    public void bufferIsPooledOnlyAfterReadersAreDone() throws IOException {
+        byte[] data = randomBytes(10);
+
+        CachingStream cache = new CachingStream();
+        cache.write(data);
+        cache.close();
+
+        // one reader is read to the end, the other one is closed after the cache has been consumed
+        InputStream read = cache.getCachedContents();
+        InputStream closed = cache.getCachedContents();
+        assertEquals(data[0] & 0xFF, closed.read());
+
+        byte[] contents = new byte[data.length];
+        assertEquals(data.length, read.read(contents, 0, contents.length));
+        assertArrayEquals(data, contents);
+
+        int pooled = CachingStream.pooledBuffers();
+        cache.consume();
+        assertEquals(pooled, CachingStream.pooledBuffers());
+
+        closed.close();
+        assertEquals(pooled + 1, CachingStream.pooledBuffers());
+    }
+
+    @Test(expected = IOException.class)
+    public void failsReadingClosedMemoryContents() throws IOException {
+        CachingStream cache = new CachingStream();
+        cache.write(randomBytes(10));
+        cache.close();
+
+        InputStream contents = cache.getCachedContents();
+        contents.close();
+
+        try {
+            contents.read();
+        } finally {
+            cache.consume();
+        }
+    }
+
+    private static void assertContents(byte[] expected, CachingStream cache) throws IOException {
+        CacheInputStream contents = cache.getCachedContents();
+
+        assertEquals(expected.length, contents.size());
+        assertArrayEquals(expected, IOUtils.toByteArray(contents));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
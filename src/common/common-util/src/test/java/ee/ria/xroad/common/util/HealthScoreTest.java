@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link HealthScore}.
+ */
+public class HealthScoreTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void firstLatencyIsTakenAsIs() {
+        HealthScore score = new HealthScore();
+        assertFalse(score.hasLatency());
+        assertTrue(Double.isNaN(score.value()));
+
+        score.success(100 * MILLIS);
+
+        assertTrue(score.hasLatency());
+        assertEquals(100 * MILLIS, score.value(), 1);
+    }
+
+    @Test
+    public void latencyMovesTowardsNewSamples() {
+        HealthScore score = new HealthScore();
+        score.success(100 * MILLIS);
+        score.success(200 * MILLIS);
+
+        assertEquals(120 * MILLIS, score.getLatencyNanos(), 1);
+    }
+
+    @Test
+    public void failuresPenalizeAndSuccessesRestoreScore() {
+        HealthScore score = new HealthScore();
+        score.success(100 * MILLIS);
+        score.failure();
+
+        assertEquals(0.1, score.getErrorRate(), 1e-9);
+        assertEquals(200 * MILLIS, score.value(), 1);
+
+        score.available();
+
+        assertEquals(0.09, score.getErrorRate(), 1e-9);
+        assertEquals(100 * MILLIS, score.getLatencyNanos(), 1);
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.globalconf;
+
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.identifier.ClientId;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the indexed global configuration lookups done on the message path (global group membership,
+ * member name and the CA of a certificate) to the list scans and certificate parsing they replaced, on an
+ * instance with thousands of members, each having a few subsystems, and global groups of a quarter of all
+ * the subsystems.
+ * <p>
+ * Run with {@code ./gradlew :common:common-verifier:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SharedParametersLookupBenchmark {
+
+    private static final String INSTANCE = "EE";
+    private static final int SUBSYSTEMS_PER_MEMBER = 3;
+    private static final int GROUP_COUNT = 20;
+    private static final int LOOKUP_COUNT = 1024;
+
+    @Param({"1000", "5000"})
+    private int memberCount;
+
+    private SharedParameters sharedParameters;
+    private X509Certificate memberCert;
+    private Map<X500Name, X509Certificate> caCertsByParsedSubject;
+
+    private String[] groupCodes;
+    private ClientId[] subjects;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        List<SharedParameters.Member> members = new ArrayList<>(memberCount);
+        List<ClientId> subsystems = new ArrayList<>(memberCount * SUBSYSTEMS_PER_MEMBER);
+
+        for (int i = 0; i < memberCount; i++) {
+            SharedParameters.MemberClass memberClass = new SharedParameters.MemberClass();
+            memberClass.setCode(i % 2 == 0 ? "GOV" : "COM");
+
+            SharedParameters.Member member = new SharedParameters.Member();
+            member.setMemberClass(memberClass);
+            member.setMemberCode(String.format("%08d", i));
+            member.setName("Member " + i);
+            member.setSubsystems(new ArrayList<>());
+
+            for (int j = 0; j < SUBSYSTEMS_PER_MEMBER; j++) {
+                SharedParameters.Subsystem subsystem = new SharedParameters.Subsystem();
+                subsystem.setSubsystemCode("subsystem-" + j);
+                member.getSubsystems().add(subsystem);
+
+                subsystems.add(ClientId.Conf.create(INSTANCE, memberClass.getCode(), member.getMemberCode(),
+                        subsystem.getSubsystemCode()));
+            }
+
+            members.add(member);
+        }
+
+        List<SharedParameters.GlobalGroup> globalGroups = new ArrayList<>(GROUP_COUNT);
+        groupCodes = new String[GROUP_COUNT];
+
+        for (int i = 0; i < GROUP_COUNT; i++) {
+            SharedParameters.GlobalGroup globalGroup = new SharedParameters.GlobalGroup();
+            globalGroup.setGroupCode("group-" + i);
+            globalGroup.setDescription("Group " + i);
+            globalGroup.setGroupMembers(new ArrayList<>());
+
+            for (int j = i; j < subsystems.size(); j += 4) {
+                globalGroup.getGroupMembers().add(subsystems.get(j));
+            }
+
+            globalGroups.add(globalGroup);
+            groupCodes[i] = globalGroup.getGroupCode();
+        }
+
+        subjects = new ClientId[LOOKUP_COUNT];
+
+        for (int i = 0; i < LOOKUP_COUNT; i++) {
+            subjects[i] = subsystems.get((int) ((long) i * 7919 % subsystems.size()));
+        }
+
+        SharedParameters.CaInfo topCa = new SharedParameters.CaInfo();
+        topCa.setCert(TestCertUtil.getCaCert().getEncoded());
+        topCa.setOcsp(new ArrayList<>());
+
+        SharedParameters.ApprovedCA approvedCa = new SharedParameters.ApprovedCA();
+        approvedCa.setName("CA");
+        approvedCa.setTopCA(topCa);
+        approvedCa.setIntermediateCas(new ArrayList<>());
+
+        SharedParameters.GlobalSettings globalSettings = new SharedParameters.GlobalSettings();
+        globalSettings.setMemberClasses(new ArrayList<>());
+        globalSettings.setOcspFreshnessSeconds(BigInteger.valueOf(3600));
+
+        sharedParameters = new SharedParameters(INSTANCE, new ArrayList<>(), List.of(approvedCa), new ArrayList<>(),
+                members, new ArrayList<>(), globalGroups, globalSettings);
+
+        memberCert = TestCertUtil.getProducer().certChain[0];
+
+        caCertsByParsedSubject = new HashMap<>();
+
+        for (X509Certificate caCert : sharedParameters.getSubjectsAndCaCerts().values()) {
+            caCertsByParsedSubject.put(new X509CertificateHolder(caCert.getEncoded()).getSubject(), caCert);
+        }
+    }
+
+    @Benchmark
+    public boolean groupMembershipScan() {
+        ClientId subject = nextSubject();
+        String groupCode = groupCodes[next % GROUP_COUNT];
+
+        return sharedParameters.getGlobalGroups().stream()
+                .filter(g -> g.getGroupCode().equals(groupCode))
+                .findFirst()
+                .map(g -> g.getGroupMembers().stream().anyMatch(m -> m.equals(subject)))
+                .orElse(false);
+    }
+
+    @Benchmark
+    public boolean groupMembershipIndexed() {
+        ClientId subject = nextSubject();
+        Set<ClientId> groupMembers = sharedParameters.getGlobalGroupMembers().get(groupCodes[next % GROUP_COUNT]);
+
+        return groupMembers != null && groupMembers.contains(subject);
+    }
+
+    @Benchmark
+    public String memberNameScan() {
+        ClientId subject = nextSubject();
+
+        return sharedParameters.getMembers().stream()
+                .filter(m -> ClientId.Conf.create(INSTANCE, m.getMemberClass().getCode(), m.getMemberCode())
+                        .memberEquals(subject))
+                .map(SharedParameters.Member::getName)
+                .findFirst()
+                .orElse(null);
+    }
+
+    @Benchmark
+    public String memberNameIndexed() {
+        ClientId subject = nextSubject();
+
+        return sharedParameters.getMemberNames().get(ClientId.Conf.create(
+                subject.getXRoadInstance(), subject.getMemberClass(), subject.getMemberCode()));
+    }
+
+    @Benchmark
+    public X509Certificate caCertByParsedIssuer() throws Exception {
+        X509CertificateHolder certHolder = new X509CertificateHolder(memberCert.getEncoded());
+
+        return caCertsByParsedSubject.get(certHolder.getIssuer());
+    }
+
+    @Benchmark
+    public X509Certificate caCertByIssuerPrincipal() {
+        return sharedParameters.getSubjectsAndCaCerts().get(memberCert.getIssuerX500Principal());
+    }
+
+    private ClientId nextSubject() {
+        next = (next + 1) % LOOKUP_COUNT;
+
+        return subjects[next];
+    }
+}
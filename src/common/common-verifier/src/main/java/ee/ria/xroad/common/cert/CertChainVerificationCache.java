@@ -0,0 +1,167 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.cert;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.common.conf.globalconfextension.GlobalConfExtensions;
+import ee.ria.xroad.common.util.MetricsHolder;
+
+import com.codahale.metrics.Meter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.Value;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.SingleResp;
+
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Cache of successful certificate chain verifications.
+ *
+ * The same signing certificate and OCSP responses arrive with every message from a client, so once the chain has
+ * been verified, the result is reused until one of the OCSP responses is no longer fresh (or past its nextUpdate)
+ * or one of the certificates in the chain expires. The results are discarded when the global configuration changes,
+ * since the trusted CAs and OCSP responders come from there. Only successful verifications are cached.
+ */
+public final class CertChainVerificationCache {
+
+    private static final Meter HITS = MetricsHolder.getRegistry()
+            .meter(name(CertChainVerificationCache.class, "hits"));
+    private static final Meter MISSES = MetricsHolder.getRegistry()
+            .meter(name(CertChainVerificationCache.class, "misses"));
+
+    private static final int CACHE_SIZE = SystemProperties.getCertChainVerifierCacheSize();
+
+    private static final Cache<Key, Result> RESULTS = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .build();
+
+    private CertChainVerificationCache() {
+    }
+
+    /**
+     * Creates the cache key for verifying the given signing certificate chain with the given OCSP responses.
+     * @param instanceIdentifier the instance identifier of the signer
+     * @param signingCert the signing certificate
+     * @param extraCerts additional certificates used for building the chain
+     * @param ocspResponses the OCSP responses
+     * @return the key or null if caching is disabled
+     * @throws Exception if encoding the certificates or responses fails
+     */
+    public static Key createKey(String instanceIdentifier, X509Certificate signingCert,
+            List<X509Certificate> extraCerts, List<OCSPResp> ocspResponses) throws Exception {
+        if (CACHE_SIZE <= 0) {
+            return null;
+        }
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(signingCert.getEncoded());
+        for (X509Certificate cert : extraCerts) {
+            digest.update(cert.getEncoded());
+        }
+        // separate the certificates from the responses
+        digest.update((byte) 0);
+        for (OCSPResp response : ocspResponses) {
+            digest.update(response.getEncoded());
+        }
+        return new Key(instanceIdentifier, digest.digest());
+    }
+
+    /**
+     * @param key the cache key, may be null
+     * @param atDate the date at which the chain is verified
+     * @return true if the chain has already been verified successfully and the result still holds at the given date
+     */
+    public static boolean isVerified(Key key, Date atDate) {
+        if (key == null) {
+            return false;
+        }
+        Result result = RESULTS.getIfPresent(key);
+        long at = atDate.getTime();
+        if (result != null && result.confVersion == GlobalConf.getVersion()
+                && at >= result.verifiedAt && at < result.validUntil) {
+            HITS.mark();
+            return true;
+        }
+        MISSES.mark();
+        return false;
+    }
+
+    /**
+     * Stores a successful verification.
+     * @param key the cache key, may be null
+     * @param certs the certificates in the verified chain
+     * @param ocspResponses the OCSP responses used in the verification
+     * @param atDate the date at which the chain was verified
+     * @param confVersion the global configuration version at the time verification started
+     * @throws Exception if the OCSP responses cannot be parsed
+     */
+    public static void verified(Key key, List<X509Certificate> certs, List<OCSPResp> ocspResponses, Date atDate,
+            long confVersion) throws Exception {
+        if (key == null) {
+            return;
+        }
+        long validUntil = Long.MAX_VALUE;
+        for (X509Certificate cert : certs) {
+            validUntil = Math.min(validUntil, cert.getNotAfter().getTime());
+        }
+
+        final long freshness = TimeUnit.SECONDS.toMillis(GlobalConf.getOcspFreshnessSeconds());
+        final boolean verifyNextUpdate = GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate();
+        for (OCSPResp response : ocspResponses) {
+            SingleResp singleResp = ((BasicOCSPResp) response.getResponseObject()).getResponses()[0];
+            validUntil = Math.min(validUntil, singleResp.getThisUpdate().getTime() + freshness);
+            if (verifyNextUpdate && singleResp.getNextUpdate() != null) {
+                validUntil = Math.min(validUntil, singleResp.getNextUpdate().getTime());
+            }
+        }
+
+        RESULTS.put(key, new Result(atDate.getTime(), validUntil, confVersion));
+    }
+
+    /**
+     * Identifies a signing certificate chain and its OCSP responses.
+     */
+    @Value
+    public static class Key {
+        String instanceIdentifier;
+        byte[] hash;
+    }
+
+    @Value
+    private static class Result {
+        long verifiedAt;
+        long validUntil;
+        long confVersion;
+    }
+}
@@ -42,6 +42,7 @@ import java.security.cert.X509Certificate;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static ee.ria.xroad.common.ErrorCodes.X_OUTDATED_GLOBALCONF;
 
@@ -53,6 +54,8 @@ public final class GlobalConf {
 
     private static volatile GlobalConfProvider instance;
 
+    private static final AtomicLong VERSION = new AtomicLong();
+
     private GlobalConf() {
     }
 
@@ -84,6 +87,19 @@ public final class GlobalConf {
         }
     }
 
+    /**
+     * Returns the version of the configuration content. The version changes whenever reloading replaces
+     * any configuration parameters, so it can be used to invalidate results derived from the configuration.
+     * @return the current configuration version
+     */
+    public static long getVersion() {
+        return VERSION.get();
+    }
+
+    static void configurationChanged() {
+        VERSION.incrementAndGet();
+    }
+
     /**
      * Reloads the configuration with given configuration instance.
      * Used in tests. DO NOT USE in other circumstances.
@@ -94,6 +110,7 @@ public final class GlobalConf {
         synchronized (GlobalConf.class) {
             instance = conf;
         }
+        configurationChanged();
     }
 
     /**
@@ -105,6 +122,7 @@ public final class GlobalConf {
         synchronized (GlobalConf.class) {
             instance = null;
         }
+        configurationChanged();
     }
 
     // ------------------------------------------------------------------------
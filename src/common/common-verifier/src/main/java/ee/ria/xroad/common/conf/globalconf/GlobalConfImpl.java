@@ -36,15 +36,14 @@ import ee.ria.xroad.common.identifier.GlobalGroupId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
 import ee.ria.xroad.common.util.CertUtils;
 import ee.ria.xroad.common.util.CryptoUtils;
+import ee.ria.xroad.common.util.MetricsHolder;
 import ee.ria.xroad.common.util.TimeUtils;
 
+import com.codahale.metrics.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.bouncycastle.cert.X509CertificateHolder;
 
-import java.io.IOException;
-import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
@@ -56,6 +55,7 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import static com.codahale.metrics.MetricRegistry.name;
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_MALFORMED_GLOBALCONF;
 import static ee.ria.xroad.common.ErrorCodes.translateException;
@@ -71,6 +71,9 @@ import static ee.ria.xroad.common.util.CryptoUtils.readCertificate;
 @Slf4j
 public class GlobalConfImpl implements GlobalConfProvider {
 
+    private static final Timer RELOAD_DURATION = MetricsHolder.getRegistry()
+            .timer(name(GlobalConfImpl.class, "reloadDuration"));
+
     private volatile VersionedConfigurationDirectory confDir;
 
     GlobalConfImpl() {
@@ -84,8 +87,13 @@ public class GlobalConfImpl implements GlobalConfProvider {
     @Override
     public void reload() {
         VersionedConfigurationDirectory original = confDir;
-        try {
-            confDir = new VersionedConfigurationDirectory(getConfigurationPath(), original);
+        try (Timer.Context ignored = RELOAD_DURATION.time()) {
+            // The new directory is built aside and swapped in as a whole, so readers never see a partial reload
+            VersionedConfigurationDirectory reloaded = new VersionedConfigurationDirectory(getConfigurationPath(), original);
+            confDir = reloaded;
+            if (!reloaded.hasSameParameters(original)) {
+                GlobalConf.configurationChanged();
+            }
         } catch (Exception e) {
             throw translateWithPrefix(X_MALFORMED_GLOBALCONF, e);
         }
@@ -181,11 +189,8 @@ public class GlobalConfImpl implements GlobalConfProvider {
             throw new CodedException(X_INTERNAL_ERROR, e);
         }
 
-        return p == null ? null : p.getMembers().stream()
-                .filter(m -> createMemberId(p, m).memberEquals(clientId))
-                .map(SharedParameters.Member::getName)
-                .findFirst()
-                .orElse(null);
+        return p == null ? null : p.getMemberNames().get(ClientId.Conf.create(
+                clientId.getXRoadInstance(), clientId.getMemberClass(), clientId.getMemberCode()));
     }
 
     @Override
@@ -214,10 +219,10 @@ public class GlobalConfImpl implements GlobalConfProvider {
             throw new CodedException(X_INTERNAL_ERROR, e);
         }
 
-        return p == null ? null : p.getGlobalGroups().stream()
-                .filter(g -> g.getGroupCode().equals(globalGroupId.getGroupCode()))
-                .map(SharedParameters.GlobalGroup::getDescription)
-                .findFirst().orElse(null);
+        SharedParameters.GlobalGroup group = p == null ? null
+                : p.getGlobalGroupsByCode().get(globalGroupId.getGroupCode());
+
+        return group == null ? null : group.getDescription();
     }
 
     @Override
@@ -327,15 +332,12 @@ public class GlobalConfImpl implements GlobalConfProvider {
                     "Member certificate must be present to find CA cert!");
         }
 
-        X509CertificateHolder ch = new X509CertificateHolder(
-                memberCert.getEncoded());
-
         String[] instances = instanceIdentifier != null
                 ? new String[] {instanceIdentifier} : new String[] {};
 
         return getSharedParameters(instances)
                 .stream()
-                .map(p -> p.getSubjectsAndCaCerts().get(ch.getIssuer()))
+                .map(p -> p.getSubjectsAndCaCerts().get(memberCert.getIssuerX500Principal()))
                 .filter(Objects::nonNull)
                 .findFirst()
                 .orElseThrow(
@@ -381,26 +383,20 @@ public class GlobalConfImpl implements GlobalConfProvider {
         return CertChain.create(instanceIdentifier, chain.toArray(new X509Certificate[chain.size()]));
     }
 
-    X509Certificate getCaCertForSubject(X509Certificate subject, SharedParameters sharedParameters)
-            throws CertificateEncodingException, IOException {
-        X509CertificateHolder certHolder =
-                new X509CertificateHolder(subject.getEncoded());
-        if (certHolder.getSubject().equals(certHolder.getIssuer())) {
+    X509Certificate getCaCertForSubject(X509Certificate subject, SharedParameters sharedParameters) {
+        if (subject.getSubjectX500Principal().equals(subject.getIssuerX500Principal())) {
             return null;
         }
 
-        return sharedParameters.getSubjectsAndCaCerts().get(certHolder.getIssuer());
+        return sharedParameters.getSubjectsAndCaCerts().get(subject.getIssuerX500Principal());
     }
 
     @Override
     public boolean isOcspResponderCert(X509Certificate ca,
             X509Certificate ocspCert) {
         return getSharedParameters().stream()
-                .map(p -> p.getCaCertsAndOcspData().get(ca))
-                .filter(Objects::nonNull).flatMap(Collection::stream)
-                .map(SharedParameters.OcspInfo::getCert).filter(Objects::nonNull)
-                .map(CryptoUtils::readCertificate)
-                .anyMatch(c -> c.equals(ocspCert));
+                .map(p -> p.getCaCertsAndOcspCerts().get(ca))
+                .anyMatch(ocspCerts -> ocspCerts != null && ocspCerts.contains(ocspCert));
     }
 
     @Override
@@ -539,18 +535,14 @@ public class GlobalConfImpl implements GlobalConfProvider {
     @Override
     public boolean isSubjectInGlobalGroup(ClientId subjectId, GlobalGroupId groupId) {
 
-        SharedParameters.GlobalGroup group = findGlobalGroup(groupId);
-        if (group == null) {
-            return false;
-        }
+        Set<ClientId> groupMembers = getSharedParameters(groupId.getXRoadInstance())
+                .getGlobalGroupMembers().get(groupId.getGroupCode());
 
-        return group.getGroupMembers().stream().anyMatch(m -> m.equals(subjectId));
+        return groupMembers != null && groupMembers.contains(subjectId);
     }
 
     SharedParameters.GlobalGroup findGlobalGroup(GlobalGroupId groupId) {
-        return getSharedParameters(groupId.getXRoadInstance()).getGlobalGroups().stream()
-                .filter(g -> g.getGroupCode().equals(groupId.getGroupCode()))
-                .findFirst().orElse(null);
+        return getSharedParameters(groupId.getXRoadInstance()).getGlobalGroupsByCode().get(groupId.getGroupCode());
     }
 
     @Override
@@ -27,6 +27,7 @@ package ee.ria.xroad.common.signature;
 
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.cert.CertChain;
+import ee.ria.xroad.common.cert.CertChainVerificationCache;
 import ee.ria.xroad.common.cert.CertChainVerifier;
 import ee.ria.xroad.common.cert.CertHelper;
 import ee.ria.xroad.common.certificateprofile.impl.SignCertificateProfileInfoParameters;
@@ -326,12 +327,26 @@ public class SignatureVerifier {
         }
     }
 
-    private void verifyCertificateChain(Date atDate, ClientId signer, X509Certificate signingCert) {
+    private void verifyCertificateChain(Date atDate, ClientId signer, X509Certificate signingCert)
+            throws Exception {
+        List<X509Certificate> extraCertificates = signature.getExtraCertificates();
+        List<OCSPResp> ocspResponses = signature.getOcspResponses();
+
+        // the configuration version is read before verifying so that a concurrent reload invalidates the result
+        long confVersion = GlobalConf.getVersion();
+        CertChainVerificationCache.Key key = CertChainVerificationCache.createKey(signer.getXRoadInstance(),
+                signingCert, extraCertificates, ocspResponses);
+        if (CertChainVerificationCache.isVerified(key, atDate)) {
+            return;
+        }
+
         CertChain certChain =
                 CertChain.create(signer.getXRoadInstance(), signingCert,
-                        signature.getExtraCertificates());
-        new CertChainVerifier(certChain).verify(signature.getOcspResponses(),
-                atDate);
+                        extraCertificates);
+        CertChainVerifier verifier = new CertChainVerifier(certChain);
+        verifier.verify(ocspResponses, atDate);
+
+        CertChainVerificationCache.verified(key, verifier.getCerts(), ocspResponses, atDate, confVersion);
     }
 
     private Map<String, DigestValue> getHashChainInputs() throws Exception {
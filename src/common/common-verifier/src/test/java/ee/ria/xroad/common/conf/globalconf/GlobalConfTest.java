@@ -141,6 +141,29 @@ public class GlobalConfTest {
         assertNull("Description", GlobalConf.getGlobalGroupDescription(GlobalGroupId.Conf.create("EE", "foo")));
     }
 
+    /**
+     * Tests checking the global group membership of a subject.
+     */
+    @Test
+    public void isSubjectInGlobalGroup() {
+        GlobalGroupId group = GlobalGroupId.Conf.create("EE", "Test group");
+
+        assertTrue(GlobalConf.isSubjectInGlobalGroup(newClientId("member2"), group));
+        assertFalse(GlobalConf.isSubjectInGlobalGroup(newClientId("member5"), group));
+        assertFalse(GlobalConf.isSubjectInGlobalGroup(newClientId("member2"),
+                GlobalGroupId.Conf.create("EE", "foo")));
+    }
+
+    /**
+     * Tests getting the member names.
+     */
+    @Test
+    public void getMemberName() {
+        assertEquals("Experimental producer", GlobalConf.getMemberName(newClientId("producer")));
+        assertEquals("Experimental producer", GlobalConf.getMemberName(newClientId("producer", "subsystem")));
+        assertNull(GlobalConf.getMemberName(newClientId("member5")));
+    }
+
     /**
      * Tests getting the members.
      */
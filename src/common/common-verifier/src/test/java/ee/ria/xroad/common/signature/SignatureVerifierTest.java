@@ -25,6 +25,7 @@
  */
 package ee.ria.xroad.common.signature;
 
+import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.ExpectedCodedException;
 import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.TestCertUtil;
@@ -53,6 +54,7 @@ import java.util.List;
 import java.util.Map;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INCORRECT_CERTIFICATE;
+import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_INVALID_SIGNATURE_VALUE;
 import static ee.ria.xroad.common.ErrorCodes.X_INVALID_XML;
 import static ee.ria.xroad.common.ErrorCodes.X_MALFORMED_SIGNATURE;
@@ -104,6 +106,41 @@ public class SignatureVerifierTest {
         verifyValidSignature("../common-test/src/test/signatures/sign-0.xml");
     }
 
+    /**
+     * Tests that a successful certificate chain verification is reused while the global configuration stays
+     * the same.
+     * @throws Exception if error occurs
+     */
+    @Test
+    public void cachedChainVerificationReused() throws Exception {
+        ChainVerificationConf conf = new ChainVerificationConf();
+        GlobalConf.reload(conf);
+
+        verifyValidSignature("../common-test/src/test/signatures/sign-0.xml");
+
+        // verifying the chain again would fail, but the configuration version has not changed
+        conf.failChainVerification = true;
+        verifyValidSignature("../common-test/src/test/signatures/sign-0.xml");
+    }
+
+    /**
+     * Tests that a cached certificate chain verification is not reused after the global configuration changes.
+     * @throws Exception if error occurs
+     */
+    @Test
+    public void cachedChainVerificationDiscardedOnGlobalConfChange() throws Exception {
+        ChainVerificationConf conf = new ChainVerificationConf();
+        GlobalConf.reload(conf);
+
+        verifyValidSignature("../common-test/src/test/signatures/sign-0.xml");
+
+        conf.failChainVerification = true;
+        GlobalConf.reload(conf);
+
+        thrown.expectErrorSuffix(X_INTERNAL_ERROR);
+        verifyValidSignature("../common-test/src/test/signatures/sign-0.xml");
+    }
+
     /**
      * Tests that verifying a valid signature succeeds.
      * @throws Exception if error occurs
@@ -138,6 +175,28 @@ public class SignatureVerifierTest {
         verifyValidSignature("../common-test/src/test/signatures/sign-0-old-format.xml");
     }
 
+    /**
+     * Global configuration whose OCSP freshness, which is only read when the certificate chain is verified, can be
+     * made unavailable.
+     */
+    private static class ChainVerificationConf extends TestGlobalConfImpl {
+        private volatile boolean failChainVerification;
+
+        @Override
+        public X509Certificate getCaCert(String instanceIdentifier, X509Certificate memberCert) throws Exception {
+            return TestCertUtil.getCaCert();
+        }
+
+        @Override
+        public int getOcspFreshnessSeconds() {
+            if (failChainVerification) {
+                throw new CodedException(X_INTERNAL_ERROR, "OCSP freshness not available");
+            }
+
+            return super.getOcspFreshnessSeconds();
+        }
+    }
+
     private void verifyValidSignature(String signatureFileName) throws Exception {
         List<MessagePart> hashes = new ArrayList<>();
         byte[] messageBytes = fileToBytes("../common-test/src/test/signatures/message-0.xml");
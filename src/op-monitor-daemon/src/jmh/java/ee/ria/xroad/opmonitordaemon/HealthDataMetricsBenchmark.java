@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import ee.ria.xroad.common.opmonitoring.OpMonitoringData.SecurityServerType;
+
+import com.codahale.metrics.MetricRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of updating the health data metrics from batches of operational data records,
+ * as done for each store request, with a varying number of services known to the daemon. Several threads
+ * process batches concurrently, like the request handler threads of the daemon do.
+ * <p>
+ * Run with {@code ./gradlew :op-monitor-daemon:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class HealthDataMetricsBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"10", "1000", "5000"})
+    private int serviceCount;
+
+    private MetricRegistry registry;
+    private List<List<OperationalDataRecord>> batches;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        registry = new MetricRegistry();
+        batches = new ArrayList<>();
+
+        long timestamp = System.currentTimeMillis();
+        int recordCount = Math.max(serviceCount, BATCH_SIZE);
+
+        for (int i = 0; i < recordCount; i += BATCH_SIZE) {
+            List<OperationalDataRecord> batch = new ArrayList<>(BATCH_SIZE);
+
+            for (int j = i; j < i + BATCH_SIZE; j++) {
+                batch.add(createRecord(j % serviceCount, j % 10 != 0, timestamp + j));
+            }
+
+            batches.add(batch);
+        }
+
+        // Register the metrics of all the services before measuring.
+        batches.forEach(batch -> HealthDataMetrics.processRecords(registry, batch));
+    }
+
+    @Benchmark
+    public void processRecords(BatchIndex index) {
+        HealthDataMetrics.processRecords(registry, batches.get(index.next(batches.size())));
+    }
+
+    /**
+     * The position of a benchmark thread in the list of batches.
+     */
+    @State(Scope.Thread)
+    public static class BatchIndex {
+
+        private int index;
+
+        int next(int size) {
+            index = (index + 1) % size;
+
+            return index;
+        }
+    }
+
+    private static OperationalDataRecord createRecord(int service, boolean succeeded, long timestamp) {
+        OperationalDataRecord record = new OperationalDataRecord();
+
+        record.setSecurityServerType(SecurityServerType.PRODUCER.getTypeString());
+        record.setServiceXRoadInstance("EE");
+        record.setServiceMemberClass("COM");
+        record.setServiceMemberCode("10000002");
+        record.setServiceSubsystemCode("provider");
+        record.setServiceCode("service-" + service);
+        record.setServiceVersion("v1");
+        record.setServiceType("WSDL");
+        record.setRequestInTs(timestamp);
+        record.setResponseOutTs(timestamp + 120 + service % 50);
+        record.setRequestSize(1200L + service % 100);
+        record.setResponseSize(4000L + service % 1000);
+        record.setSucceeded(succeeded);
+
+        return record;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.ServiceId;
+import ee.ria.xroad.common.opmonitoring.CompactOpMonitoringDataWriter;
+import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataRequest;
+import ee.ria.xroad.common.util.JsonUtils;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares the JSON and the compact format of store requests sent by the operational monitoring buffer:
+ * the cost of encoding a message in the proxy and decoding it into records in the daemon. The payload
+ * sizes of both formats, plain and gzipped, are printed when a trial starts.
+ * <p>
+ * Run with {@code ./gradlew :op-monitor-daemon:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StoreDataFormatBenchmark {
+
+    private static final ObjectWriter OBJECT_WRITER = JsonUtils.getObjectWriter();
+    private static final ObjectReader OBJECT_READER = JsonUtils.getObjectReader();
+
+    private static final int SERVICE_COUNT = 5;
+
+    @Param({"10", "100", "1000"})
+    private int recordCount;
+
+    private List<OpMonitoringData> data;
+    private byte[] json;
+    private byte[] compact;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        data = new ArrayList<>(recordCount);
+
+        long timestamp = System.currentTimeMillis();
+
+        for (int i = 0; i < recordCount; i++) {
+            OpMonitoringData record = new OpMonitoringData(OpMonitoringData.SecurityServerType.PRODUCER, timestamp);
+
+            record.setSecurityServerInternalIp("10.0.0.15");
+            record.setClientId(ClientId.Conf.create("EE", "GOV", "70000001", "client-" + i % SERVICE_COUNT));
+            record.setServiceId(ServiceId.Conf.create("EE", "COM", "10000002", "provider",
+                    "service-" + i % SERVICE_COUNT, "v1"));
+            record.setClientSecurityServerAddress("ss1.example.org");
+            record.setServiceSecurityServerAddress("ss2.example.org");
+            record.setMessageId(UUID.randomUUID().toString());
+            record.setMessageUserId("EE30101010007");
+            record.setMessageProtocolVersion("4.0");
+            record.setXRequestId(UUID.randomUUID().toString());
+            record.setRequestOutTs(timestamp + 2);
+            record.setResponseInTs(timestamp + 120 + i % 50);
+            record.setResponseOutTs(timestamp + 125 + i % 50, true);
+            record.setRequestSize(1200 + i % 100);
+            record.setRequestMimeSize(1200 + i % 100);
+            record.setRequestAttachmentCount(0);
+            record.setResponseSize(4000 + i % 1000);
+            record.setResponseMimeSize(4000 + i % 1000);
+            record.setResponseAttachmentCount(0);
+            record.setSucceeded(true);
+            record.setServiceType("WSDL");
+
+            data.add(record);
+            timestamp += 3;
+        }
+
+        json = encodeJson();
+        compact = encodeCompact();
+
+        System.out.printf("%n%d records: JSON %d bytes (%d gzipped), compact %d bytes (%d gzipped)%n",
+                recordCount, json.length, gzip(json).length, compact.length, gzip(compact).length);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() throws Exception {
+        StoreOpMonitoringDataRequest request = new StoreOpMonitoringDataRequest();
+
+        for (OpMonitoringData record : data) {
+            request.addRecord(record.getData());
+        }
+
+        return OBJECT_WRITER.writeValueAsBytes(request);
+    }
+
+    @Benchmark
+    public byte[] encodeCompact() throws Exception {
+        return CompactOpMonitoringDataWriter.encode(data);
+    }
+
+    @Benchmark
+    public List<OperationalDataRecord> decodeJson() throws Exception {
+        return OBJECT_READER.readValue(json, OperationalDataRecords.class).getRecords();
+    }
+
+    @Benchmark
+    public List<OperationalDataRecord> decodeCompact() throws Exception {
+        return StoreRequestProcessor.prepareCompactStoreData(new ByteArrayInputStream(compact));
+    }
+
+    private static byte[] gzip(byte[] content) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+        try (GZIPOutputStream out = new GZIPOutputStream(bos)) {
+            out.write(content);
+        }
+
+        return bos.toByteArray();
+    }
+}
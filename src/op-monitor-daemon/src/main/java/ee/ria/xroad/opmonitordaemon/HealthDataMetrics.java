@@ -33,12 +33,15 @@ import com.codahale.metrics.Counter;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
-import com.codahale.metrics.SlidingTimeWindowReservoir;
+import com.codahale.metrics.SlidingTimeWindowArrayReservoir;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
@@ -66,13 +69,12 @@ final class HealthDataMetrics {
     static final String MONITORING_STARTUP_TIMESTAMP =
             "monitoringStartupTimestamp";
 
-    // The timestamps of last successful and unsuccessful requests are stored
-    // for each service that is handled for, and are provided when the
-    // respective gauge is queried.
-    private static Map<String, Long> requestTimestamps = new HashMap<>();
-
-    // Stores the service types of the services
-    private static Map<String, String> serviceTypes = new HashMap<>();
+    // The metrics of each service that has been handled for, by metric
+    // registry. The metrics are looked up by service ID instead of by name
+    // in the registry, so that processing a record does not need to format
+    // any names or to search the registry.
+    private static final Map<MetricRegistry, ConcurrentMap<ServiceId, ServiceMetrics>> SERVICE_METRICS =
+            Collections.synchronizedMap(new WeakHashMap<>());
 
     private HealthDataMetrics() {
     }
@@ -99,6 +101,9 @@ final class HealthDataMetrics {
      */
     static void processRecords(MetricRegistry registry,
             List<OperationalDataRecord> records) {
+        ConcurrentMap<ServiceId, ServiceMetrics> serviceMetrics =
+                SERVICE_METRICS.computeIfAbsent(registry, r -> new ConcurrentHashMap<>());
+
         for (OperationalDataRecord rec : records) {
             if (!SecurityServerType.PRODUCER.equals(
                     SecurityServerType.fromString(rec.getSecurityServerType()))) {
@@ -114,82 +119,9 @@ final class HealthDataMetrics {
                 continue;
             }
 
-            registerOrUpdateGauges(registry, serviceId, rec);
-            registerOrUpdateCounters(registry, serviceId, rec);
-
-            if (rec.getSucceeded()) {
-                // Statistics of request duration and the sizes of the request
-                // and response are computed over the successful requests only.
-                registerOrUpdateHistograms(registry, serviceId, rec);
-            }
-        }
-    }
-
-    private static void registerOrUpdateGauges(MetricRegistry registry,
-            ServiceId serviceId, OperationalDataRecord rec) {
-        // last request timestamp
-        String expectedGaugeName = getLastRequestTimestampGaugeName(serviceId,
-                rec.getSucceeded());
-        requestTimestamps.put(expectedGaugeName, rec.getResponseOutTs());
-        Gauge gauge = HealthDataMetricsUtil.findGauge(registry,
-                expectedGaugeName);
-        if (gauge == null) {
-            registry.register(expectedGaugeName,
-                    (Gauge<Long>) () -> requestTimestamps.get(
-                            expectedGaugeName));
-        }
-
-        // service type
-        String serviceTypeGaugeName = getServiceTypeName(serviceId);
-        serviceTypes.put(serviceTypeGaugeName, rec.getServiceType());
-        Gauge serviceTypeGauge = HealthDataMetricsUtil.findGauge(registry,
-                serviceTypeGaugeName);
-        if (serviceTypeGauge == null) {
-            registry.register(serviceTypeGaugeName,
-                    (Gauge<String>) () -> serviceTypes.get(serviceTypeGaugeName));
-        }
-    }
-
-    private static void registerOrUpdateCounters(MetricRegistry registry,
-            ServiceId serviceId, OperationalDataRecord rec) {
-        String expectedCounterName = getRequestCounterName(serviceId,
-                rec.getSucceeded());
-        Counter counter = HealthDataMetricsUtil.findCounter(registry,
-                expectedCounterName);
-
-        if (counter == null) {
-            // Register and increment a new counter.
-            counter = new SlidingTimeWindowCounter(
-                    OP_MONITOR_HEALTH_STATS_PERIOD_SECONDS, TimeUnit.SECONDS);
-            registry.register(expectedCounterName, counter);
-        }
-
-        counter.inc();
-    }
-
-    private static void registerOrUpdateHistograms(MetricRegistry registry,
-            ServiceId serviceId, OperationalDataRecord rec) {
-        registerOrUpdateHistogram(registry, getRequestDurationName(serviceId), getRequestDuration(rec));
-
-        registerOrUpdateHistogram(registry, getRequestSizeName(serviceId), rec.getRequestSize());
-        registerOrUpdateHistogram(registry, getResponseSizeName(serviceId), rec.getResponseSize());
-    }
-
-    private static void registerOrUpdateHistogram(MetricRegistry registry, String histogramName, Long newValue) {
-
-        if (newValue == null) return;
-
-        Histogram histogram = HealthDataMetricsUtil.findHistogram(registry, histogramName);
-
-        if (histogram == null) {
-            // Add a histogram corresponding to the service and update it.
-            histogram = registry.register(histogramName,
-                    new Histogram(new SlidingTimeWindowReservoir(
-                            OP_MONITOR_HEALTH_STATS_PERIOD_SECONDS,
-                            TimeUnit.SECONDS)));
+            serviceMetrics.computeIfAbsent(serviceId, ServiceMetrics::new)
+                    .update(registry, rec);
         }
-
-        histogram.update(newValue);
     }
 
     /**
@@ -224,4 +156,137 @@ final class HealthDataMetrics {
                 (Gauge<Long>) startupTimestampProvider::get);
     }
 
+    /**
+     * The health metrics of a single service. A metric is registered when
+     * the first value for it is encountered, after that the metric object is
+     * updated directly. Registering is idempotent, so concurrent updates of
+     * a new metric register the same metric object. The registry is not
+     * referenced, so that it can be garbage collected along with the metrics.
+     */
+    private static final class ServiceMetrics {
+
+        private final ServiceId serviceId;
+
+        // The timestamps of last successful and unsuccessful requests and
+        // the service type, provided when the respective gauge is queried.
+        private volatile Long lastSuccessfulRequestTimestamp;
+        private volatile Long lastUnsuccessfulRequestTimestamp;
+        private volatile String serviceType;
+
+        private volatile Gauge<Long> lastSuccessfulRequestTimestampGauge;
+        private volatile Gauge<Long> lastUnsuccessfulRequestTimestampGauge;
+        private volatile Gauge<String> serviceTypeGauge;
+
+        private volatile Counter successfulRequestCounter;
+        private volatile Counter unsuccessfulRequestCounter;
+
+        private volatile Histogram requestDurationHistogram;
+        private volatile Histogram requestSizeHistogram;
+        private volatile Histogram responseSizeHistogram;
+
+        ServiceMetrics(ServiceId serviceId) {
+            this.serviceId = serviceId;
+        }
+
+        void update(MetricRegistry registry, OperationalDataRecord rec) {
+            boolean succeeded = rec.getSucceeded();
+
+            updateGauges(registry, rec, succeeded);
+            updateCounters(registry, succeeded);
+
+            if (succeeded) {
+                // Statistics of request duration and the sizes of the request
+                // and response are computed over the successful requests only.
+                updateHistograms(registry, rec);
+            }
+        }
+
+        private void updateGauges(MetricRegistry registry, OperationalDataRecord rec, boolean succeeded) {
+            // last request timestamp
+            if (succeeded) {
+                lastSuccessfulRequestTimestamp = rec.getResponseOutTs();
+
+                if (lastSuccessfulRequestTimestampGauge == null) {
+                    lastSuccessfulRequestTimestampGauge = registerGauge(registry,
+                            getLastRequestTimestampGaugeName(serviceId, true),
+                            () -> lastSuccessfulRequestTimestamp);
+                }
+            } else {
+                lastUnsuccessfulRequestTimestamp = rec.getResponseOutTs();
+
+                if (lastUnsuccessfulRequestTimestampGauge == null) {
+                    lastUnsuccessfulRequestTimestampGauge = registerGauge(registry,
+                            getLastRequestTimestampGaugeName(serviceId, false),
+                            () -> lastUnsuccessfulRequestTimestamp);
+                }
+            }
+
+            // service type
+            serviceType = rec.getServiceType();
+
+            if (serviceTypeGauge == null) {
+                serviceTypeGauge = registerGauge(registry, getServiceTypeName(serviceId),
+                        () -> serviceType);
+            }
+        }
+
+        private void updateCounters(MetricRegistry registry, boolean succeeded) {
+            if (succeeded) {
+                if (successfulRequestCounter == null) {
+                    successfulRequestCounter = registerCounter(registry,
+                            getRequestCounterName(serviceId, true));
+                }
+
+                successfulRequestCounter.inc();
+            } else {
+                if (unsuccessfulRequestCounter == null) {
+                    unsuccessfulRequestCounter = registerCounter(registry,
+                            getRequestCounterName(serviceId, false));
+                }
+
+                unsuccessfulRequestCounter.inc();
+            }
+        }
+
+        private void updateHistograms(MetricRegistry registry, OperationalDataRecord rec) {
+            if (requestDurationHistogram == null) {
+                requestDurationHistogram = registerHistogram(registry, getRequestDurationName(serviceId));
+            }
+
+            requestDurationHistogram.update(getRequestDuration(rec));
+
+            if (rec.getRequestSize() != null) {
+                if (requestSizeHistogram == null) {
+                    requestSizeHistogram = registerHistogram(registry, getRequestSizeName(serviceId));
+                }
+
+                requestSizeHistogram.update(rec.getRequestSize());
+            }
+
+            if (rec.getResponseSize() != null) {
+                if (responseSizeHistogram == null) {
+                    responseSizeHistogram = registerHistogram(registry, getResponseSizeName(serviceId));
+                }
+
+                responseSizeHistogram.update(rec.getResponseSize());
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Gauge<T> registerGauge(MetricRegistry registry, String name, Gauge<T> gauge) {
+            return registry.gauge(name, () -> gauge);
+        }
+
+        private static Counter registerCounter(MetricRegistry registry, String name) {
+            return registry.counter(name, () -> new SlidingTimeWindowCounter(
+                    OP_MONITOR_HEALTH_STATS_PERIOD_SECONDS, TimeUnit.SECONDS));
+        }
+
+        private static Histogram registerHistogram(MetricRegistry registry, String name) {
+            return registry.histogram(name, () -> new Histogram(
+                    new SlidingTimeWindowArrayReservoir(
+                            OP_MONITOR_HEALTH_STATS_PERIOD_SECONDS,
+                            TimeUnit.SECONDS)));
+        }
+    }
 }
@@ -26,6 +26,7 @@
 package ee.ria.xroad.opmonitordaemon;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.opmonitoring.CompactOpMonitoringDataFormat;
 import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataResponse;
 import ee.ria.xroad.common.util.HandlerBase;
 import ee.ria.xroad.common.util.JsonUtils;
@@ -49,6 +50,7 @@ import static ee.ria.xroad.common.ErrorCodes.X_INVALID_CONTENT_TYPE;
 import static ee.ria.xroad.common.ErrorCodes.X_INVALID_HTTP_METHOD;
 import static ee.ria.xroad.common.ErrorCodes.translateWithPrefix;
 import static ee.ria.xroad.common.opmonitoring.OpMonitoringDaemonEndpoints.QUERY_DATA_PATH;
+import static ee.ria.xroad.common.opmonitoring.OpMonitoringDaemonEndpoints.STORE_DATA_ACCEPT_HEADER;
 import static ee.ria.xroad.common.opmonitoring.OpMonitoringDaemonEndpoints.STORE_DATA_PATH;
 
 /**
@@ -61,6 +63,9 @@ class OpMonitorDaemonRequestHandler extends HandlerBase {
 
     private static final byte[] OK_RESPONSE_BYTES = getOkResponseBytes();
 
+    private static final String STORE_DATA_CONTENT_TYPES =
+            MimeTypes.JSON + ", " + CompactOpMonitoringDataFormat.CONTENT_TYPE;
+
     private final MetricRegistry healthMetricRegistry;
 
     OpMonitorDaemonRequestHandler(MetricRegistry healthMetricRegistry) {
@@ -119,6 +124,9 @@ class OpMonitorDaemonRequestHandler extends HandlerBase {
     // must be reported in JSON format.
     private void handleStoreRequest(HttpServletRequest request,
             HttpServletResponse response) throws IOException {
+        // Lets the operational monitoring buffer switch to the compact format.
+        response.setHeader(STORE_DATA_ACCEPT_HEADER, STORE_DATA_CONTENT_TYPES);
+
         try {
             if (!isPostRequest(request)) {
                 throw new RuntimeException(invalidMethodError(request));
@@ -127,15 +135,18 @@ class OpMonitorDaemonRequestHandler extends HandlerBase {
             String contentType = MimeUtils.getBaseContentType(
                     request.getContentType());
 
-            if (!MimeTypes.JSON.equalsIgnoreCase(contentType)) {
+            boolean compact = CompactOpMonitoringDataFormat.CONTENT_TYPE
+                    .equalsIgnoreCase(contentType);
+
+            if (!compact && !MimeTypes.JSON.equalsIgnoreCase(contentType)) {
                 throw new RuntimeException(invalidContentTypeError(request,
-                        MimeTypes.JSON));
+                        STORE_DATA_CONTENT_TYPES));
             }
 
             log.info("Received store request from {}", request.getRemoteAddr());
 
             new StoreRequestProcessor(
-                    request, healthMetricRegistry).process();
+                    request, healthMetricRegistry, compact).process();
         } catch (Throwable t) { // We want to catch serious errors as well
             log.error("Error while handling data store request", t);
 
@@ -0,0 +1,80 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import ee.ria.xroad.common.CodedException;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import static ee.ria.xroad.common.ErrorCodes.CLIENT_X;
+import static ee.ria.xroad.common.ErrorCodes.X_INVALID_REQUEST;
+
+/**
+ * Position of an operational data record in the (monitoringDataTs, id) order used by streamed
+ * getSecurityServerOperationalData responses. A response that does not include all the matching
+ * records returns the position of its last record, and the next request continues right after it.
+ */
+@Getter
+@EqualsAndHashCode
+@RequiredArgsConstructor
+final class OperationalDataContinuationToken {
+
+    private static final String SEPARATOR = ":";
+
+    private final long monitoringDataTs;
+    private final long id;
+
+    /**
+     * Parses a continuation token.
+     * @param token the token returned by a previous response
+     * @return the parsed token
+     * @throws CodedException if the token is malformed
+     */
+    static OperationalDataContinuationToken parse(String token) {
+        String[] parts = token.split(SEPARATOR, -1);
+
+        if (parts.length == 2) {
+            try {
+                return new OperationalDataContinuationToken(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+            } catch (NumberFormatException e) {
+                throw invalidToken(token);
+            }
+        }
+
+        throw invalidToken(token);
+    }
+
+    private static CodedException invalidToken(String token) {
+        return new CodedException(X_INVALID_REQUEST, "Invalid continuation token: " + token).withPrefix(CLIENT_X);
+    }
+
+    @Override
+    public String toString() {
+        return monitoringDataTs + SEPARATOR + id;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.opmonitordaemon.OpMonitorDaemonDatabaseCtx.doInTransaction;
+
+/**
+ * Maintains the daily partitions of the operational_data table. The table is partitioned by
+ * monitoring_data_ts on PostgreSQL 11 and later (see the 6-partitioning database migration);
+ * on other databases the table is not partitioned and the operations of this class do nothing.
+ * <p>
+ * Partitions are created and dropped by database functions owned by the schema owner, so the
+ * daemon does not need any DDL privileges.
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class OperationalDataPartitions {
+
+    // The number of upcoming days for which partitions are created in advance. Records of days without
+    // a partition end up in the default partition.
+    static final int PARTITIONS_AHEAD_DAYS = 3;
+
+    /**
+     * The partition maintenance functions of the database.
+     */
+    interface PartitionFunctions {
+
+        /**
+         * Creates the missing daily partitions of the given number of days starting from the day of from.
+         * @return the number of created partitions
+         */
+        int createPartitions(Session session, long from, int days);
+
+        /**
+         * Drops the partitions whose upper bound is not later than before.
+         * @return the number of dropped partitions
+         */
+        int dropPartitions(Session session, long before);
+    }
+
+    private static final PartitionFunctions DATABASE_FUNCTIONS = new PartitionFunctions() {
+        @Override
+        public int createPartitions(Session session, long from, int days) {
+            return ((Number) session.createNativeQuery("select create_operational_data_partitions(:from, :days)")
+                    .setParameter("from", from)
+                    .setParameter("days", days)
+                    .getSingleResult()).intValue();
+        }
+
+        @Override
+        public int dropPartitions(Session session, long before) {
+            return ((Number) session.createNativeQuery("select drop_operational_data_partitions(:before)")
+                    .setParameter("before", before)
+                    .getSingleResult()).intValue();
+        }
+    };
+
+    private static volatile PartitionFunctions functions = DATABASE_FUNCTIONS;
+
+    private static volatile Boolean partitioned;
+
+    /**
+     * Creates the partitions of the current day and the next {@value #PARTITIONS_AHEAD_DAYS} days,
+     * if missing.
+     * @return the number of created partitions
+     * @throws Exception if an error occurs
+     */
+    static int createUpcomingPartitions() throws Exception {
+        long today = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+
+        return doInTransaction(session -> {
+            if (!isPartitioned(session)) {
+                return 0;
+            }
+
+            int created = functions.createPartitions(session, today, PARTITIONS_AHEAD_DAYS + 1);
+
+            if (created > 0) {
+                log.info("Created {} operational data partitions", created);
+            }
+
+            return created;
+        });
+    }
+
+    /**
+     * Drops the partitions containing only records older than the given timestamp.
+     * @param session the database session
+     * @param before the timestamp in seconds
+     * @return the number of dropped partitions
+     */
+    static int dropPartitions(Session session, long before) {
+        if (!isPartitioned(session)) {
+            return 0;
+        }
+
+        return functions.dropPartitions(session, before);
+    }
+
+    /**
+     * @param session the database session
+     * @return whether the operational_data table is partitioned
+     */
+    static boolean isPartitioned(Session session) {
+        if (partitioned == null) {
+            partitioned = session.doReturningWork(connection ->
+                    "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName()))
+                    && ((Number) session.createNativeQuery("select count(*) from pg_partitioned_table"
+                            + " where partrelid = to_regclass('operational_data')")
+                            .getSingleResult()).intValue() > 0;
+
+            log.info("Operational data table is {}partitioned", partitioned ? "" : "not ");
+        }
+
+        return partitioned;
+    }
+
+    /**
+     * Replaces the partition functions and the detected partitioning state, for testing.
+     * @param testFunctions the functions to use, or null to restore the database functions
+     * @param testPartitioned whether the table is considered partitioned, or null to detect it again
+     */
+    static void setPartitionFunctions(PartitionFunctions testFunctions, Boolean testPartitioned) {
+        functions = testFunctions != null ? testFunctions : DATABASE_FUNCTIONS;
+        partitioned = testPartitioned;
+    }
+}
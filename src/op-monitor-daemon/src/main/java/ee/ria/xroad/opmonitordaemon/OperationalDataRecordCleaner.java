@@ -45,7 +45,9 @@ import java.util.concurrent.TimeUnit;
 import static ee.ria.xroad.opmonitordaemon.OpMonitorDaemonDatabaseCtx.doInTransaction;
 
 /**
- * Deletes outdated operational data records from the database.
+ * Deletes outdated operational data records from the database. If the operational data table is
+ * partitioned, whole partitions of outdated records are dropped first and only the rest are
+ * deleted row by row.
  */
 @Slf4j
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
@@ -60,9 +62,13 @@ final class OperationalDataRecordCleaner {
      */
     public static void init(JobManager jobManager) {
         registerCronJob(jobManager, OpMonitoringSystemProperties.getOpMonitorCleanInterval());
+
+        createPartitions();
     }
 
     public static void doClean() {
+        createPartitions();
+
         try {
             handleCleanup();
         } catch (Exception e) {
@@ -71,6 +77,14 @@ final class OperationalDataRecordCleaner {
         }
     }
 
+    private static void createPartitions() {
+        try {
+            OperationalDataPartitions.createUpcomingPartitions();
+        } catch (Exception e) {
+            log.error("Failed to create operational data partitions", e);
+        }
+    }
+
     private static void handleCleanup() throws Exception {
         cleanRecords(
                 TimeUtils.now().minus(OpMonitoringSystemProperties.getOpMonitorKeepRecordsForDays(), ChronoUnit.DAYS));
@@ -79,10 +93,19 @@ final class OperationalDataRecordCleaner {
     static int cleanRecords(Instant before) throws Exception {
         log.trace("cleanRecords({})", before);
 
+        long beforeSeconds = TimeUnit.MILLISECONDS.toSeconds(before.toEpochMilli());
+
+        // Dropping a partition locks the whole table, so it is committed before deleting the remaining records.
+        int droppedPartitions = doInTransaction(session -> OperationalDataPartitions.dropPartitions(session, beforeSeconds));
+
+        if (droppedPartitions > 0) {
+            log.info("Dropped {} outdated operational data partitions", droppedPartitions);
+        }
+
         return doInTransaction(session -> {
             String hql =
                     "delete OperationalDataRecord r where r.monitoringDataTs < "
-                            + TimeUnit.MILLISECONDS.toSeconds(before.toEpochMilli());
+                            + beforeSeconds;
 
             int removed = session.createQuery(hql).executeUpdate();
 
@@ -0,0 +1,194 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * Inserts operational data records with multi-row JDBC batch statements, bypassing the
+ * persistence context. The statements are derived from the Hibernate mapping of
+ * OperationalDataRecord, ids are taken from its (pre-allocating) identifier generator and the
+ * session interceptor is applied to every record, just like session.save() would do.
+ */
+final class OperationalDataRecordInserter {
+
+    // The maximum number of bind parameters in a single PostgreSQL statement.
+    static final int MAX_BIND_PARAMETERS = 32767;
+
+    private OperationalDataRecordInserter() {
+    }
+
+    /**
+     * Inserts the records in the transaction of the given session.
+     * @param session the database session
+     * @param records the records to insert, their ids are set
+     * @param requestedRowsPerStatement the maximum number of records inserted by a single statement,
+     * further limited so that a statement does not exceed {@link #MAX_BIND_PARAMETERS}
+     */
+    static void insert(Session session, List<OperationalDataRecord> records, int requestedRowsPerStatement) {
+        if (records.isEmpty()) {
+            return;
+        }
+
+        SharedSessionContractImplementor sessionImpl = session.unwrap(SharedSessionContractImplementor.class);
+        AbstractEntityPersister persister = (AbstractEntityPersister) sessionImpl.getFactory().getMetamodel()
+                .entityPersister(OperationalDataRecord.class);
+
+        int rowsPerStatement = maxRowsPerStatement(requestedRowsPerStatement, getColumnCount(persister));
+
+        List<Object[]> rows = new ArrayList<>(records.size());
+
+        for (OperationalDataRecord record : records) {
+            rows.add(prepareRow(sessionImpl, persister, record));
+        }
+
+        session.doWork(connection -> {
+            int fullStatements = rows.size() / rowsPerStatement;
+            int remainder = rows.size() % rowsPerStatement;
+
+            if (fullStatements > 0) {
+                try (PreparedStatement statement = connection.prepareStatement(
+                        getInsertSql(persister, rowsPerStatement))) {
+                    for (int i = 0; i < fullStatements; i++) {
+                        bind(statement, sessionImpl, persister,
+                                rows.subList(i * rowsPerStatement, (i + 1) * rowsPerStatement));
+                        statement.addBatch();
+                    }
+
+                    statement.executeBatch();
+                }
+            }
+
+            if (remainder > 0) {
+                try (PreparedStatement statement = connection.prepareStatement(getInsertSql(persister, remainder))) {
+                    bind(statement, sessionImpl, persister, rows.subList(rows.size() - remainder, rows.size()));
+                    statement.executeUpdate();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the number of rows a single statement may insert, given the requested number of rows and
+     * the number of columns (bind parameters) per row.
+     */
+    static int maxRowsPerStatement(int requestedRows, int columnCount) {
+        return Math.max(1, Math.min(requestedRows, MAX_BIND_PARAMETERS / Math.max(1, columnCount)));
+    }
+
+    private static int getColumnCount(AbstractEntityPersister persister) {
+        int count = persister.getIdentifierColumnNames().length;
+        boolean[] insertable = persister.getPropertyInsertability();
+
+        for (int i = 0; i < insertable.length; i++) {
+            if (insertable[i]) {
+                count += persister.getPropertyColumnNames(i).length;
+            }
+        }
+
+        return count;
+    }
+
+    // Returns the id followed by the insertable property values.
+    private static Object[] prepareRow(SharedSessionContractImplementor session, AbstractEntityPersister persister,
+            OperationalDataRecord record) {
+        Serializable id = persister.getIdentifierGenerator().generate(session, record);
+        record.setId((Long) id);
+
+        Object[] state = persister.getPropertyValues(record);
+
+        if (session.getInterceptor().onSave(record, id, state, persister.getPropertyNames(),
+                persister.getPropertyTypes())) {
+            persister.setPropertyValues(record, state);
+        }
+
+        Object[] row = new Object[state.length + 1];
+        row[0] = id;
+        System.arraycopy(state, 0, row, 1, state.length);
+
+        return row;
+    }
+
+    private static String getInsertSql(AbstractEntityPersister persister, int rowCount) {
+        StringJoiner columns = new StringJoiner(", ", "(", ")");
+        StringJoiner placeholders = new StringJoiner(", ", "(", ")");
+
+        for (String column : persister.getIdentifierColumnNames()) {
+            columns.add(column);
+            placeholders.add("?");
+        }
+
+        boolean[] insertable = persister.getPropertyInsertability();
+
+        for (int i = 0; i < insertable.length; i++) {
+            if (insertable[i]) {
+                for (String column : persister.getPropertyColumnNames(i)) {
+                    columns.add(column);
+                    placeholders.add("?");
+                }
+            }
+        }
+
+        StringJoiner values = new StringJoiner(", ");
+
+        for (int i = 0; i < rowCount; i++) {
+            values.add(placeholders.toString());
+        }
+
+        return "insert into " + persister.getTableName() + " " + columns + " values " + values;
+    }
+
+    private static void bind(PreparedStatement statement, SharedSessionContractImplementor session,
+            AbstractEntityPersister persister, List<Object[]> rows) throws SQLException {
+        Type idType = persister.getIdentifierType();
+        Type[] types = persister.getPropertyTypes();
+        boolean[] insertable = persister.getPropertyInsertability();
+
+        int index = 1;
+
+        for (Object[] row : rows) {
+            idType.nullSafeSet(statement, row[0], index, session);
+            index += idType.getColumnSpan(session.getFactory());
+
+            for (int i = 0; i < types.length; i++) {
+                if (insertable[i]) {
+                    types[i].nullSafeSet(statement, row[i + 1], index, session);
+                    index += types[i].getColumnSpan(session.getFactory());
+                }
+            }
+        }
+    }
+}
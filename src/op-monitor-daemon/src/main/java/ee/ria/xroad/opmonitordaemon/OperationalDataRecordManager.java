@@ -36,8 +36,10 @@ import org.hibernate.query.Query;
 
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import static ee.ria.xroad.opmonitordaemon.OpMonitorDaemonDatabaseCtx.doInTransaction;
 import static ee.ria.xroad.opmonitordaemon.OperationalDataOutputSpecFields.MONITORING_DATA_TS;
@@ -51,9 +53,15 @@ final class OperationalDataRecordManager {
 
     private static final int DEFAULT_BATCH_SIZE = 50;
 
+    private static final int STREAM_FETCH_SIZE = 1000;
+
     @Setter
     private static int maxRecordsInPayload = OpMonitoringSystemProperties.getOpMonitorMaxRecordsInPayload();
 
+    @Setter
+    private static int maxRecordsInStreamedPayload =
+            OpMonitoringSystemProperties.getOpMonitorMaxRecordsInStreamedPayload();
+
     private static int configuredBatchSize = 0;
 
     private OperationalDataRecordManager() {
@@ -86,20 +94,77 @@ final class OperationalDataRecordManager {
         return records;
     }
 
-    private static Void storeInTransaction(Session session, List<OperationalDataRecord> records, long timestamp) {
-        int storedCount = 0;
-        int batchSize = getConfiguredBatchSize(session);
+    /**
+     * Writes the records matching the search criteria in the (monitoringDataTs, id) order, reading them
+     * from a database cursor instead of loading them in memory. The number of written records is limited by
+     * the configured value maxRecordsInStreamedPayload; the returned continuation token tells where to
+     * continue in that case. Records with the same monitoringDataTs may be split between responses.
+     * @param recordsFrom           records from timestamp seconds
+     * @param recordsTo             records to timestamp seconds
+     * @param clientFilter          filter records by client (if not null)
+     * @param serviceProviderFilter filter records by service provider (if not null)
+     * @param outputFields          list of the requested operational data field
+     * @param after                 continue after this record (if not null)
+     * @param writer                the writer of the records
+     * @return position of the last written record if more records match the criteria, otherwise null
+     * @throws Exception if an error occurs
+     */
+    static OperationalDataContinuationToken streamRecords(long recordsFrom, long recordsTo, ClientId clientFilter,
+            ClientId serviceProviderFilter, Set<String> outputFields, OperationalDataContinuationToken after,
+            OperationalDataRecordsWriter writer) throws Exception {
+        return doInTransaction(session -> {
+            final OperationalDataRecordQuery query =
+                    new OperationalDataRecordQuery(session, clientFilter, serviceProviderFilter, outputFields);
+            query.between(recordsFrom, recordsTo);
 
-        for (OperationalDataRecord record : records) {
-            record.setMonitoringDataTs(timestamp);
-            session.save(record);
+            if (after != null) {
+                query.after(after);
+            }
 
-            if (++storedCount % batchSize == 0) {
-                session.flush();
-                session.clear();
+            query.includeId();
+            query.orderByAsc(MONITORING_DATA_TS);
+            query.orderByAsc(OperationalDataRecordQuery.ID);
+            // One more record tells whether the records continue, without a separate overflow query.
+            query.setMaxRecords(maxRecordsInStreamedPayload + 1);
+
+            boolean removeMonitoringDataTs = !outputFields.isEmpty() && !outputFields.contains(MONITORING_DATA_TS);
+            OperationalDataContinuationToken last = null;
+            int written = 0;
+
+            try (Stream<OperationalDataRecord> records = query.stream(STREAM_FETCH_SIZE)) {
+                Iterator<OperationalDataRecord> iterator = records.iterator();
+
+                while (iterator.hasNext()) {
+                    OperationalDataRecord record = iterator.next();
+
+                    if (written == maxRecordsInStreamedPayload) {
+                        log.debug("Records continue after {}", last);
+
+                        return last;
+                    }
+
+                    last = new OperationalDataContinuationToken(record.getMonitoringDataTs(), record.getId());
+
+                    if (removeMonitoringDataTs) {
+                        record.setMonitoringDataTs(null);
+                    }
+
+                    writer.write(record);
+                    written++;
+                }
             }
+
+            return null;
+        });
+    }
+
+    private static Void storeInTransaction(Session session, List<OperationalDataRecord> records, long timestamp) {
+        for (OperationalDataRecord record : records) {
+            record.setMonitoringDataTs(timestamp);
         }
 
+        OperationalDataRecordInserter.insert(session, records, getConfiguredBatchSize(session));
+
         return null;
     }
 
@@ -48,6 +48,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import static ee.ria.xroad.common.opmonitoring.OpMonitoringData.CLIENT_MEMBER_CLASS;
 import static ee.ria.xroad.common.opmonitoring.OpMonitoringData.CLIENT_MEMBER_CODE;
@@ -65,6 +66,8 @@ import static ee.ria.xroad.opmonitordaemon.OperationalDataOutputSpecFields.PUBLI
 @SuppressWarnings("checkstyle:magicnumber")
 final class OperationalDataRecordQuery {
 
+    static final String ID = "id";
+
     private final CriteriaBuilder cb;
     private final CriteriaQuery<Tuple> query;
     private final Root<OperationalDataRecord> from;
@@ -75,7 +78,7 @@ final class OperationalDataRecordQuery {
 
     private Predicate pred;
     private List<Selection<?>> projection = new ArrayList<>();
-    private javax.persistence.criteria.Order order = null;
+    private List<javax.persistence.criteria.Order> order = new ArrayList<>();
 
     OperationalDataRecordQuery(Session session, ClientId clientFilter, ClientId serviceProviderFilter,
             Set<String> outputFields) {
@@ -155,9 +158,27 @@ final class OperationalDataRecordQuery {
         pred = cb.and(pred, cb.equal(from.get(MONITORING_DATA_TS), monitoringDataTs));
     }
 
+    /**
+     * Restricts the query to the records following the given position in the (monitoringDataTs, id) order.
+     */
+    void after(OperationalDataContinuationToken position) {
+        pred = cb.and(pred, cb.or(
+                cb.greaterThan(from.get(MONITORING_DATA_TS), position.getMonitoringDataTs()),
+                cb.and(cb.equal(from.get(MONITORING_DATA_TS), position.getMonitoringDataTs()),
+                        cb.greaterThan(from.get(ID), position.getId()))));
+    }
+
+    /**
+     * Adds the record id to the projected fields. The id is not an output field, it is needed for
+     * continuation tokens only.
+     */
+    void includeId() {
+        projection.add(from.get(ID).alias(ID));
+    }
+
     List<OperationalDataRecord> list() {
         query.multiselect(projection).where(pred);
-        if (order != null) {
+        if (!order.isEmpty()) {
             query.orderBy(order);
         }
         return transform(session.createQuery(query)
@@ -166,12 +187,30 @@ final class OperationalDataRecordQuery {
                 .getResultList());
     }
 
+    /**
+     * Streams the records from a forward-only database cursor, so that the result set is not held in
+     * memory. The returned stream must be closed.
+     * @param fetchSize the number of rows fetched from the database at a time
+     */
+    Stream<OperationalDataRecord> stream(int fetchSize) {
+        query.multiselect(projection).where(pred);
+        if (!order.isEmpty()) {
+            query.orderBy(order);
+        }
+        return session.createQuery(query)
+                .setReadOnly(true)
+                .setFetchSize(fetchSize)
+                .setMaxResults(maxRecords)
+                .stream()
+                .map(OperationalDataRecordQuery::toRecord);
+    }
+
     void between(long fromTs, long toTs) {
         pred = cb.and(pred, cb.between(from.get(MONITORING_DATA_TS), fromTs, toTs));
     }
 
     void orderByAsc(String field) {
-        order = cb.asc(from.get(field));
+        order.add(cb.asc(from.get(field)));
     }
 
     /**
@@ -187,20 +226,24 @@ final class OperationalDataRecordQuery {
         List<OperationalDataRecord> tmp = new ArrayList<>(result.size());
 
         for (Tuple t : result) {
-            final OperationalDataRecord record = new OperationalDataRecord();
-            for (TupleElement<?> te : t.getElements()) {
-                final Method method = SETTERS.get(te.getAlias());
-                if (method != null) {
-                    try {
-                        method.invoke(record, t.get(te));
-                    } catch (InvocationTargetException | IllegalAccessException e) {
-                        throw new IllegalArgumentException("Unable to transform", e);
-                    }
+            tmp.add(toRecord(t));
+        }
+        return tmp;
+    }
+
+    private static OperationalDataRecord toRecord(Tuple t) {
+        final OperationalDataRecord record = new OperationalDataRecord();
+        for (TupleElement<?> te : t.getElements()) {
+            final Method method = SETTERS.get(te.getAlias());
+            if (method != null) {
+                try {
+                    method.invoke(record, t.get(te));
+                } catch (InvocationTargetException | IllegalAccessException e) {
+                    throw new IllegalArgumentException("Unable to transform", e);
                 }
             }
-            tmp.add(record);
         }
-        return tmp;
+        return record;
     }
 
     /*
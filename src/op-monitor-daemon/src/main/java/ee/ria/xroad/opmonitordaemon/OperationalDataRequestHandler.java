@@ -42,16 +42,19 @@ import ee.ria.xroad.opmonitordaemon.message.SearchCriteriaType;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.output.DeferredFileOutputStream;
 
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.Marshaller;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
 
 import static ee.ria.xroad.common.ErrorCodes.CLIENT_X;
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
@@ -71,6 +74,9 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
 
     protected static final String CID = "operational-monitoring-data.json.gz";
 
+    // Streamed payloads larger than this are buffered in a temporary file.
+    private static final int STREAMED_PAYLOAD_MEMORY_THRESHOLD = 1024 * 1024;
+
     @Override
     public void handle(SoapMessageImpl requestSoap, OutputStream out,
             Consumer<String> contentTypeCallback) throws Exception {
@@ -102,24 +108,41 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
                 clientId, recordsFrom, recordsTo, serviceProviderId,
                 outputFields);
 
-        GetSecurityServerOperationalDataResponseType opDataResponse =
-                buildOperationalDataResponse(
-                        getClientForFilter(clientId, serverId), recordsFrom,
-                        recordsTo, serviceProviderId, outputFields,
-                        recordsAvailableBefore);
-
-        try (SoapMessageEncoder responseEncoder = new MultipartSoapMessageEncoder(out)) {
-            contentTypeCallback.accept(responseEncoder.getContentType());
+        String continuationToken = requestData.getContinuationToken();
 
-            SoapEncoderAttachmentMarshaller attachmentMarshaller =
-                    new SoapEncoderAttachmentMarshaller(responseEncoder);
-            Marshaller marshaller = createMarshaller(attachmentMarshaller);
+        // The records are streamed in the payload already before the SOAP part, because
+        // the SOAP part contains the records count and the continuation token.
+        DeferredFileOutputStream streamedPayload = continuationToken == null ? null
+                : new DeferredFileOutputStream(STREAMED_PAYLOAD_MEMORY_THRESHOLD, "opmonitor-", ".json.gz", null);
 
-            SoapMessageImpl response = createResponse(requestSoap, marshaller,
-                    createResponseElement(opDataResponse));
-            responseEncoder.soap(response, new HashMap<>());
-
-            attachmentMarshaller.encodeAttachments();
+        try {
+            GetSecurityServerOperationalDataResponseType opDataResponse = continuationToken == null
+                    ? buildOperationalDataResponse(
+                            getClientForFilter(clientId, serverId), recordsFrom,
+                            recordsTo, serviceProviderId, outputFields,
+                            recordsAvailableBefore)
+                    : buildStreamedOperationalDataResponse(
+                            getClientForFilter(clientId, serverId), recordsFrom,
+                            recordsTo, serviceProviderId, outputFields,
+                            recordsAvailableBefore, continuationToken, streamedPayload);
+
+            try (SoapMessageEncoder responseEncoder = new MultipartSoapMessageEncoder(out)) {
+                contentTypeCallback.accept(responseEncoder.getContentType());
+
+                SoapEncoderAttachmentMarshaller attachmentMarshaller =
+                        new SoapEncoderAttachmentMarshaller(responseEncoder);
+                Marshaller marshaller = createMarshaller(attachmentMarshaller);
+
+                SoapMessageImpl response = createResponse(requestSoap, marshaller,
+                        createResponseElement(opDataResponse));
+                responseEncoder.soap(response, new HashMap<>());
+
+                attachmentMarshaller.encodeAttachments();
+            }
+        } finally {
+            if (streamedPayload != null && !streamedPayload.isInMemory()) {
+                Files.deleteIfExists(streamedPayload.getFile().toPath());
+            }
         }
     }
 
@@ -201,6 +224,57 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
         return opDataResponse;
     }
 
+    /**
+     * Builds the response with the records written to the given payload straight from a database cursor.
+     * The records are ordered by (monitoringDataTs, id) and their number is limited by
+     * maxRecordsInStreamedPayload; a continuation token is returned in case more records are available.
+     */
+    protected GetSecurityServerOperationalDataResponseType
+            buildStreamedOperationalDataResponse(ClientId filterByClient,
+            long recordsFrom, long recordsTo, ClientId filterByServiceProvider,
+            Set<String> outputFields, long recordsAvailableBefore,
+            String continuationToken, DeferredFileOutputStream payload)
+            throws IOException {
+        GetSecurityServerOperationalDataResponseType opDataResponse =
+                OBJECT_FACTORY
+                        .createGetSecurityServerOperationalDataResponseType();
+
+        if (recordsTo >= recordsAvailableBefore) {
+            log.debug("recordsTo({}) >= recordsAvailableBefore({}),"
+                            + " set nextRecordsFrom to {}", recordsTo,
+                    recordsAvailableBefore, recordsAvailableBefore);
+
+            recordsTo = recordsAvailableBefore - 1;
+
+            opDataResponse.setNextRecordsFrom(recordsAvailableBefore);
+        }
+
+        OperationalDataContinuationToken after = continuationToken.isEmpty()
+                ? null : OperationalDataContinuationToken.parse(continuationToken);
+        OperationalDataContinuationToken last;
+
+        try (OperationalDataRecordsWriter writer = new OperationalDataRecordsWriter(
+                new GZIPOutputStream(payload), OBJECT_WRITER)) {
+            last = streamOperationalDataRecords(filterByClient, recordsFrom,
+                    recordsTo, filterByServiceProvider, outputFields, after,
+                    writer);
+
+            opDataResponse.setRecordsCount(writer.getCount());
+        }
+
+        opDataResponse.setRecords(createAttachmentDataSource(payload, CID,
+                MimeTypes.GZIP));
+
+        if (last != null) {
+            // Records with the same timestamp may continue in the next
+            // response, so the timestamp of the last record is included.
+            opDataResponse.setNextRecordsFrom(last.getMonitoringDataTs());
+            opDataResponse.setContinuationToken(last.toString());
+        }
+
+        return opDataResponse;
+    }
+
     private static JAXBElement<?> createResponseElement(
             GetSecurityServerOperationalDataResponseType opDataResponse) {
         return OBJECT_FACTORY.createGetSecurityServerOperationalDataResponse(
@@ -222,6 +296,23 @@ class OperationalDataRequestHandler extends QueryRequestHandler {
         }
     }
 
+    protected OperationalDataContinuationToken streamOperationalDataRecords(
+            ClientId filterByClient, long recordsFrom, long recordsTo,
+            ClientId filterByServiceProvider, Set<String> outputFields,
+            OperationalDataContinuationToken after,
+            OperationalDataRecordsWriter writer) {
+        try {
+            return OperationalDataRecordManager.streamRecords(recordsFrom,
+                    recordsTo, filterByClient, filterByServiceProvider,
+                    outputFields, after, writer);
+        } catch (Exception e) {
+            log.error("Failed to get records for response", e);
+
+            throw new CodedException(X_INTERNAL_ERROR,
+                    "Failed to get records for response: " + e.getMessage());
+        }
+    }
+
     protected ClientId getClientForFilter(ClientId clientId,
             SecurityServerId serverId) throws Exception {
         return !isMonitoringClient(clientId)
@@ -40,10 +40,13 @@ import com.sun.xml.bind.api.AccessorException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.apache.commons.io.output.DeferredFileOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.xml.sax.SAXException;
 
 import javax.activation.DataHandler;
+import javax.activation.DataSource;
+import javax.activation.FileDataSource;
 import javax.xml.XMLConstants;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
@@ -195,6 +198,25 @@ abstract class QueryRequestHandler {
         };
     }
 
+    static DataHandler createAttachmentDataSource(
+            DeferredFileOutputStream payload, String cid, String contentType) {
+        DataSource dataSource = payload.isInMemory()
+                ? new ByteArrayDataSource(payload.getData(), contentType)
+                : new FileDataSource(payload.getFile()) {
+                    @Override
+                    public String getContentType() {
+                        return contentType;
+                    }
+                };
+
+        return new DataHandler(dataSource) {
+            @Override
+            public String getName() {
+                return cid;
+            }
+        };
+    }
+
     static byte[] compress(String data) throws IOException {
         byte[] dataBytes = data.getBytes(StandardCharsets.UTF_8);
 
@@ -25,15 +25,20 @@
  */
 package ee.ria.xroad.opmonitordaemon;
 
+import com.codahale.metrics.Clock;
 import com.codahale.metrics.Counter;
-import com.codahale.metrics.Reservoir;
-import com.codahale.metrics.SlidingTimeWindowReservoir;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
- * A counter metric that uses the sliding time window reservoir internally to
- * support periodic and configurable resetting.
+ * A counter metric that counts the increments made during a sliding window
+ * of time, to support periodic and configurable resetting.
+ * The window is divided into a fixed number of buckets, each holding the
+ * count of one slice of the window, so the memory use does not depend on
+ * the number of increments and both incrementing and reading the count take
+ * constant time. The count of the oldest bucket is dropped at once when the
+ * window slides past it, so the window is accurate to the length of a bucket.
  * This counter does not support manually decrementing the count (the dec()
  * methods raise a runtime exception).
  * We extend Counter instead of implementing the Metric and Counting
@@ -42,7 +47,18 @@ import java.util.concurrent.TimeUnit;
  */
 class SlidingTimeWindowCounter extends Counter {
 
-    private final Reservoir reservoir;
+    static final int BUCKET_COUNT = 60;
+
+    // Each bucket holds the lower 32 bits of the sequence number of the
+    // bucket period in its upper half and the count in its lower half, so
+    // that a bucket can be reset and incremented atomically.
+    private static final int COUNT_BITS = 32;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final long bucketNanos;
+    private final Clock clock;
 
     /**
      * Creates a counter with the given window of time.
@@ -51,27 +67,61 @@ class SlidingTimeWindowCounter extends Counter {
      * @param windowUnit the unit of {@code window}
      */
     SlidingTimeWindowCounter(long window, TimeUnit windowUnit) {
-        reservoir = new SlidingTimeWindowReservoir(window, windowUnit);
+        this(window, windowUnit, Clock.defaultClock());
+    }
+
+    /**
+     * Creates a counter with the given window of time and clock.
+     *
+     * @param window     the window of time
+     * @param windowUnit the unit of {@code window}
+     * @param clock      the clock used to slide the window
+     */
+    SlidingTimeWindowCounter(long window, TimeUnit windowUnit, Clock clock) {
+        this.bucketNanos = Math.max(1, windowUnit.toNanos(window) / BUCKET_COUNT);
+        this.clock = clock;
     }
 
     /**
-     * @return the snapshot size of the sliding time window reservoir.
+     * @return the number of increments made during the window of time.
      */
     @Override
     public long getCount() {
-        return reservoir.getSnapshot().size();
+        long period = currentPeriod();
+        long count = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long bucket = buckets.get(i);
+
+            if (isWithinWindow(period, bucket)) {
+                count += bucket & COUNT_MASK;
+            }
+        }
+
+        return count;
     }
 
     @Override
     public void inc() {
-        reservoir.update(1L);
+        inc(1);
     }
 
     @Override
     public void inc(long n) {
-        for (int i = 0; i < n; ++i) {
-            inc();
-        }
+        long period = currentPeriod();
+        long tag = period << COUNT_BITS;
+        int index = (int) Math.floorMod(period, (long) BUCKET_COUNT);
+
+        long bucket;
+        long updated;
+
+        do {
+            bucket = buckets.get(index);
+
+            updated = (bucket & ~COUNT_MASK) == tag
+                    ? tag | Math.min(COUNT_MASK, (bucket & COUNT_MASK) + n)
+                    : tag | Math.min(COUNT_MASK, n);
+        } while (!buckets.compareAndSet(index, bucket, updated));
     }
 
     @Override
@@ -84,4 +134,19 @@ class SlidingTimeWindowCounter extends Counter {
         throw new RuntimeException("This counter can be incremented only");
     }
 
+    private long currentPeriod() {
+        return Math.floorDiv(clock.getTick(), bucketNanos);
+    }
+
+    private static boolean isWithinWindow(long period, long bucket) {
+        if (bucket == 0) {
+            return false;
+        }
+
+        // Compare the lower 32 bits of the sequence numbers only, the
+        // difference is correct as long as it fits in an int.
+        int age = (int) period - (int) (bucket >>> COUNT_BITS);
+
+        return age >= 0 && age < BUCKET_COUNT;
+    }
 }
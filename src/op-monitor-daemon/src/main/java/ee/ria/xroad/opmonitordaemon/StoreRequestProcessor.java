@@ -25,9 +25,11 @@
  */
 package ee.ria.xroad.opmonitordaemon;
 
+import ee.ria.xroad.common.opmonitoring.CompactOpMonitoringDataReader;
 import ee.ria.xroad.common.util.JsonUtils;
 
 import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
@@ -35,18 +37,25 @@ import org.apache.commons.lang3.StringUtils;
 
 import javax.servlet.http.HttpServletRequest;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 import static ee.ria.xroad.common.util.TimeUtils.getEpochSecond;
 
 /**
- * The processor class for store operational monitoring data (JSON) requests.
+ * The processor class for store operational monitoring data requests, either in JSON or in the
+ * compact format.
  */
 @Slf4j
 class StoreRequestProcessor {
 
     private static final ObjectReader OBJECT_READER = JsonUtils.getObjectReader();
+    private static final ObjectMapper OBJECT_MAPPER = JsonUtils.getObjectMapperCopy();
 
     /** The servlet request. */
     private HttpServletRequest servletRequest;
@@ -54,10 +63,14 @@ class StoreRequestProcessor {
     /** The registry of health data. */
     private MetricRegistry healthMetricRegistry;
 
+    /** Whether the request is in the compact format instead of JSON. */
+    private boolean compact;
+
     StoreRequestProcessor(HttpServletRequest servletRequest,
-            MetricRegistry healthMetricRegistry) {
+            MetricRegistry healthMetricRegistry, boolean compact) {
         this.servletRequest = servletRequest;
         this.healthMetricRegistry = healthMetricRegistry;
+        this.compact = compact;
     }
 
     /**
@@ -66,12 +79,19 @@ class StoreRequestProcessor {
      * @throws Exception in case of any errors
      */
     void process() throws Exception {
-        String rawJson = IOUtils.toString(servletRequest.getInputStream(),
-                StandardCharsets.UTF_8);
+        List<OperationalDataRecord> records;
+
+        try (InputStream in = getRequestContent()) {
+            if (compact) {
+                records = prepareCompactStoreData(in);
+            } else {
+                String rawJson = IOUtils.toString(in, StandardCharsets.UTF_8);
 
-        log.trace("Incoming JSON: {}", rawJson);
+                log.trace("Incoming JSON: {}", rawJson);
 
-        List<OperationalDataRecord> records = prepareRawStoreData(rawJson);
+                records = prepareRawStoreData(rawJson);
+            }
+        }
 
         log.debug("Process {} record{}", records.size(),
                 records.size() == 1 ? "" : "s");
@@ -81,6 +101,14 @@ class StoreRequestProcessor {
         HealthDataMetrics.processRecords(healthMetricRegistry, records);
     }
 
+    // The operational monitoring buffer may compress the data.
+    private InputStream getRequestContent() throws IOException {
+        InputStream in = servletRequest.getInputStream();
+
+        return "gzip".equalsIgnoreCase(servletRequest.getHeader("Content-Encoding"))
+                ? new GZIPInputStream(in) : in;
+    }
+
     // Get usable operational data to be stored. If no such data is found,
     // send an error message right away.
     private static List<OperationalDataRecord> prepareRawStoreData(
@@ -101,4 +129,25 @@ class StoreRequestProcessor {
         return records.getRecords();
     }
 
+    // Decodes the records one at a time while reading the request.
+    static List<OperationalDataRecord> prepareCompactStoreData(
+            InputStream in) throws Exception {
+        List<OperationalDataRecord> records = new ArrayList<>();
+
+        try {
+            CompactOpMonitoringDataReader reader =
+                    new CompactOpMonitoringDataReader(in);
+            Map<String, Object> record;
+
+            while ((record = reader.read()) != null) {
+                records.add(OBJECT_MAPPER.convertValue(record,
+                        OperationalDataRecord.class));
+            }
+        } catch (Exception e) {
+            throw new Exception("Received invalid request", e);
+        }
+
+        return records;
+    }
+
 }
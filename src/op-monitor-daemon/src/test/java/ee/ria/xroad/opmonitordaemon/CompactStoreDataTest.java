@@ -0,0 +1,130 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.ServiceId;
+import ee.ria.xroad.common.opmonitoring.CompactOpMonitoringDataWriter;
+import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+import ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataRequest;
+import ee.ria.xroad.common.util.JsonUtils;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static ee.ria.xroad.opmonitordaemon.OperationalDataTestUtil.OBJECT_READER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that store requests in the compact format yield the same records as JSON requests.
+ */
+public class CompactStoreDataTest {
+
+    private static final long REQUEST_IN_TS = 1619523069297L;
+
+    @Test
+    public void compactFormatMatchesJson() throws Exception {
+        List<OpMonitoringData> data = createData(100);
+
+        String json = JsonUtils.getObjectWriter().writeValueAsString(toRequest(data));
+        byte[] compact = CompactOpMonitoringDataWriter.encode(data);
+
+        List<OperationalDataRecord> fromJson =
+                OBJECT_READER.readValue(json, OperationalDataRecords.class).getRecords();
+        List<OperationalDataRecord> fromCompact =
+                StoreRequestProcessor.prepareCompactStoreData(new ByteArrayInputStream(compact));
+
+        assertEquals(100, fromCompact.size());
+        assertEquals(fromJson, fromCompact);
+        assertTrue(compact.length * 3 < json.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    public void emptyMessage() throws Exception {
+        byte[] compact = CompactOpMonitoringDataWriter.encode(new ArrayList<>());
+
+        assertTrue(StoreRequestProcessor.prepareCompactStoreData(new ByteArrayInputStream(compact)).isEmpty());
+    }
+
+    @Test(expected = Exception.class)
+    public void truncatedMessage() throws Exception {
+        byte[] compact = CompactOpMonitoringDataWriter.encode(createData(2));
+
+        StoreRequestProcessor.prepareCompactStoreData(
+                new ByteArrayInputStream(Arrays.copyOf(compact, compact.length - 10)));
+    }
+
+    @Test(expected = Exception.class)
+    public void jsonMessage() throws Exception {
+        StoreRequestProcessor.prepareCompactStoreData(
+                new ByteArrayInputStream("{\"records\":[]}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static List<OpMonitoringData> createData(int count) {
+        List<OpMonitoringData> data = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            OpMonitoringData record = new OpMonitoringData(OpMonitoringData.SecurityServerType.CLIENT,
+                    REQUEST_IN_TS + i * 17L);
+
+            record.setSecurityServerInternalIp("172.19.0.2");
+            record.setClientId(ClientId.Conf.create("CS", "ORG", "1111", i % 2 == 0 ? "Client" : null));
+            record.setServiceId(ServiceId.Conf.create("CS", "ORG", "2222", "Server", "getRandom", "v1"));
+            record.setClientSecurityServerAddress("ss1");
+            record.setServiceSecurityServerAddress("ss2");
+            record.setMessageId("message-" + i);
+            record.setMessageUserId("xrd");
+            record.setMessageProtocolVersion("4.0");
+            record.setRequestOutTs(REQUEST_IN_TS + i * 17L + 5);
+            record.setResponseInTs(REQUEST_IN_TS + i * 17L + 350);
+            record.setResponseOutTs(REQUEST_IN_TS + i * 17L + 360, true);
+            record.setRequestSize(1024 + i);
+            record.setResponseSize(59089);
+            record.setRequestAttachmentCount(0);
+            record.setResponseAttachmentCount(i % 3);
+            record.setSucceeded(i % 5 != 0);
+            record.setServiceType("WSDL");
+
+            data.add(record);
+        }
+
+        return data;
+    }
+
+    private static StoreOpMonitoringDataRequest toRequest(List<OpMonitoringData> data) {
+        StoreOpMonitoringDataRequest request = new StoreOpMonitoringDataRequest();
+
+        data.forEach(d -> request.addRecord(d.getData()));
+
+        return request;
+    }
+}
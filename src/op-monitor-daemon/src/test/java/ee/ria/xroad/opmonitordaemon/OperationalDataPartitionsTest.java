@@ -0,0 +1,131 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import org.hibernate.Session;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.opmonitordaemon.OpMonitorDaemonDatabaseCtx.doInTransaction;
+import static ee.ria.xroad.opmonitordaemon.OperationalDataRecordManager.queryAllRecords;
+import static ee.ria.xroad.opmonitordaemon.OperationalDataTestUtil.storeFullOperationalDataRecords;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the partition maintenance of the operational data table. The test database is not
+ * partitioned, so the database functions are replaced with recording ones.
+ */
+public class OperationalDataPartitionsTest extends BaseTestUsingDB {
+
+    private final RecordingPartitionFunctions functions = new RecordingPartitionFunctions();
+
+    /**
+     * Cleanup the stored records before each test.
+     * @throws Exception if an error occurs.
+     */
+    @Before
+    public void beforeTest() throws Exception {
+        doInTransaction(session -> session.createQuery("delete OperationalDataRecord").executeUpdate());
+    }
+
+    @After
+    public void afterTest() {
+        OperationalDataPartitions.setPartitionFunctions(null, null);
+    }
+
+    @Test
+    public void cleanRecordsDropsPartitionsAndDeletesRemainingRecords() throws Exception {
+        OperationalDataPartitions.setPartitionFunctions(functions, true);
+
+        storeFullOperationalDataRecords(2, 1474968970L);
+        storeFullOperationalDataRecords(1, 1474968980L);
+
+        int removed = OperationalDataRecordCleaner.cleanRecords(Instant.ofEpochMilli(1474968975000L));
+
+        assertEquals(List.of(1474968975L), functions.dropped);
+        assertEquals(2, removed);
+        assertEquals(1, queryAllRecords().size());
+    }
+
+    @Test
+    public void createUpcomingPartitions() throws Exception {
+        OperationalDataPartitions.setPartitionFunctions(functions, true);
+
+        long before = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+
+        assertEquals(OperationalDataPartitions.PARTITIONS_AHEAD_DAYS + 1,
+                OperationalDataPartitions.createUpcomingPartitions());
+
+        long after = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+
+        assertEquals(1, functions.created.size());
+
+        long from = functions.created.get(0)[0];
+
+        assertTrue(from >= before && from <= after);
+        assertEquals(OperationalDataPartitions.PARTITIONS_AHEAD_DAYS + 1, functions.created.get(0)[1]);
+    }
+
+    @Test
+    public void notPartitionedTableIsLeftAlone() throws Exception {
+        OperationalDataPartitions.setPartitionFunctions(functions, null);
+
+        storeFullOperationalDataRecords(1, 1474968970L);
+
+        assertEquals(0, OperationalDataPartitions.createUpcomingPartitions());
+        assertEquals(1, OperationalDataRecordCleaner.cleanRecords(Instant.ofEpochMilli(1474968975000L)));
+
+        assertTrue(functions.created.isEmpty());
+        assertTrue(functions.dropped.isEmpty());
+    }
+
+    private static final class RecordingPartitionFunctions implements OperationalDataPartitions.PartitionFunctions {
+
+        private final List<long[]> created = new ArrayList<>();
+        private final List<Long> dropped = new ArrayList<>();
+
+        @Override
+        public int createPartitions(Session session, long from, int days) {
+            created.add(new long[] {from, days});
+
+            return days;
+        }
+
+        @Override
+        public int dropPartitions(Session session, long before) {
+            dropped.add(before);
+
+            return 1;
+        }
+    }
+}
@@ -27,6 +27,7 @@ package ee.ria.xroad.opmonitordaemon;
 
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringSystemProperties;
+import ee.ria.xroad.common.util.JsonUtils;
 
 import com.google.common.collect.Sets;
 import lombok.extern.slf4j.Slf4j;
@@ -35,6 +36,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.ByteArrayOutputStream;
 import java.lang.reflect.Field;
 import java.time.Instant;
 import java.util.Collections;
@@ -44,6 +46,7 @@ import static ee.ria.xroad.opmonitordaemon.OpMonitorDaemonDatabaseCtx.doInTransa
 import static ee.ria.xroad.opmonitordaemon.OperationalDataRecordManager.queryAllRecords;
 import static ee.ria.xroad.opmonitordaemon.OperationalDataRecordManager.queryRecords;
 import static ee.ria.xroad.opmonitordaemon.OperationalDataRecordManager.storeRecords;
+import static ee.ria.xroad.opmonitordaemon.OperationalDataRecordManager.streamRecords;
 import static ee.ria.xroad.opmonitordaemon.OperationalDataTestUtil.OBJECT_READER;
 import static ee.ria.xroad.opmonitordaemon.OperationalDataTestUtil.formatFullOperationalDataAsJson;
 import static ee.ria.xroad.opmonitordaemon.OperationalDataTestUtil.storeFullOperationalDataRecord;
@@ -83,6 +86,8 @@ public class OperationalDataRecordManagerTest extends BaseTestUsingDB {
 
         OperationalDataRecordManager.setMaxRecordsInPayload(
                 OpMonitoringSystemProperties.getOpMonitorMaxRecordsInPayload());
+        OperationalDataRecordManager.setMaxRecordsInStreamedPayload(
+                OpMonitoringSystemProperties.getOpMonitorMaxRecordsInStreamedPayload());
     }
 
     @Test
@@ -104,6 +109,17 @@ public class OperationalDataRecordManagerTest extends BaseTestUsingDB {
         assertEquals(record, resultRecord);
     }
 
+    @Test
+    public void storeRecordsInMultipleStatements() throws Exception {
+        // The test configuration inserts up to 100 records per statement.
+        storeFullOperationalDataRecords(250, 1474968979L);
+
+        OperationalDataRecords result = queryAllRecords();
+
+        assertEquals(250, result.size());
+        assertEquals(250, result.getRecords().stream().map(OperationalDataRecord::getId).distinct().count());
+    }
+
     @Test
     public void storeAndQueryDataFromPeriods() throws Exception {
         storeFullOperationalDataRecords(1, 1474968960L);
@@ -382,6 +398,38 @@ public class OperationalDataRecordManagerTest extends BaseTestUsingDB {
         assertEquals(1, result.size());
     }
 
+    @Test
+    public void streamRecordsWithContinuationTokens() throws Exception {
+        storeFullOperationalDataRecords(5, 1474968970L);
+        storeFullOperationalDataRecords(5, 1474968980L);
+
+        OperationalDataRecordManager.setMaxRecordsInStreamedPayload(3);
+
+        OperationalDataContinuationToken token = null;
+        int pages = 0;
+        int total = 0;
+
+        do {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            try (OperationalDataRecordsWriter writer =
+                    new OperationalDataRecordsWriter(out, JsonUtils.getObjectWriter())) {
+                token = streamRecords(1474968960L, 1474968990L, null, null, new HashSet<>(), token, writer);
+            }
+
+            OperationalDataRecords page = OBJECT_READER.readValue(out.toByteArray(), OperationalDataRecords.class);
+
+            assertTrue(page.size() <= 3);
+
+            pages++;
+            total += page.size();
+        } while (token != null);
+
+        // The records of the same timestamp are split between the pages.
+        assertEquals(4, pages);
+        assertEquals(10, total);
+    }
+
     @Test
     public void cleanupLogRecords() throws Exception {
         storeFullOperationalDataRecords(1, 1474968970L);
@@ -394,6 +442,15 @@ public class OperationalDataRecordManagerTest extends BaseTestUsingDB {
         assertEquals(1, result.size());
     }
 
+    @Test
+    public void rowsPerStatementAreLimitedByBindParameters() {
+        assertEquals(100, OperationalDataRecordInserter.maxRowsPerStatement(100, 50));
+        assertEquals(655, OperationalDataRecordInserter.maxRowsPerStatement(100_000, 50));
+        assertEquals(1, OperationalDataRecordInserter.maxRowsPerStatement(100, 40_000));
+        assertTrue(OperationalDataRecordInserter.maxRowsPerStatement(100_000, 50) * 50
+                <= OperationalDataRecordInserter.MAX_BIND_PARAMETERS);
+    }
+
     @Test
     public void stringTruncation() throws Exception {
         OperationalDataRecord record = OBJECT_READER.readValue(
@@ -37,6 +37,7 @@ import org.junit.rules.ExpectedException;
 
 import java.util.Collections;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 /**
@@ -81,6 +82,21 @@ public class OperationalDataRequestHandlerTest extends BaseTestUsingDB {
         assertNotNull(response.getNextRecordsFrom());
     }
 
+    @Test
+    public void parseContinuationToken() {
+        OperationalDataContinuationToken token = new OperationalDataContinuationToken(1474968960L, 42L);
+
+        assertEquals(token, OperationalDataContinuationToken.parse(token.toString()));
+    }
+
+    @Test
+    public void parseInvalidContinuationToken() {
+        thrown.expect(CodedException.class);
+        thrown.expectMessage("Invalid continuation token: 1474968960");
+
+        OperationalDataContinuationToken.parse("1474968960");
+    }
+
     @Test
     public void checkNegativeRecordsFromTimestamps() {
         thrown.expect(CodedException.class);
@@ -0,0 +1,104 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.opmonitordaemon;
+
+import com.codahale.metrics.Clock;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests against the sliding time window counter.
+ */
+public class SlidingTimeWindowCounterTest {
+
+    private static final long WINDOW_SECONDS = 600;
+
+    private final TestClock clock = new TestClock();
+
+    private final SlidingTimeWindowCounter counter = new SlidingTimeWindowCounter(
+            WINDOW_SECONDS, TimeUnit.SECONDS, clock);
+
+    @Test
+    public void countIncrementsWithinWindow() {
+        counter.inc();
+        counter.inc(4);
+
+        assertEquals(5, counter.getCount());
+
+        clock.advance(WINDOW_SECONDS / 2);
+        counter.inc();
+
+        assertEquals(6, counter.getCount());
+    }
+
+    @Test
+    public void dropIncrementsOutsideWindow() {
+        counter.inc(5);
+
+        clock.advance(WINDOW_SECONDS / 2);
+        counter.inc();
+
+        clock.advance(WINDOW_SECONDS / 2 + 10);
+
+        assertEquals(1, counter.getCount());
+
+        clock.advance(WINDOW_SECONDS);
+
+        assertEquals(0, counter.getCount());
+    }
+
+    @Test
+    public void reuseBucketsAfterWindowHasPassed() {
+        counter.inc(3);
+
+        clock.advance(WINDOW_SECONDS * 2);
+        counter.inc();
+
+        assertEquals(1, counter.getCount());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void decrementNotSupported() {
+        counter.dec();
+    }
+
+    private static final class TestClock extends Clock {
+
+        private long tick = System.nanoTime();
+
+        void advance(long seconds) {
+            tick += TimeUnit.SECONDS.toNanos(seconds);
+        }
+
+        @Override
+        public long getTick() {
+            return tick;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.signature;
+
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.TestSecurityUtil;
+import ee.ria.xroad.common.hashchain.HashChainBuilder;
+import ee.ria.xroad.common.util.CryptoUtils;
+import ee.ria.xroad.common.util.MessageFileNames;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
+
+/**
+ * Measures the cost of one batch signature as a function of the batch size. The cost of
+ * a batch divided by its size is the signing cost per message, which is what adaptive
+ * batching in {@link BatchSigner} aims to reduce.
+ * <p>
+ * Run with {@code ./gradlew :proxy:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchSignatureBenchmark {
+
+    private static final String DIGEST_ALGORITHM_ID = CryptoUtils.SHA512_ID;
+    private static final String SIGNATURE_ALGORITHM_ID = CryptoUtils.SHA512WITHRSA_ID;
+
+    @Param({"1", "2", "8", "32", "128", "512"})
+    private int batchSize;
+
+    private PrivateKey signingKey;
+    private List<SigningRequest> requests;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        TestSecurityUtil.initSecurity();
+
+        X509Certificate signingCert = TestCertUtil.getConsumer().certChain[0];
+        signingKey = TestCertUtil.getConsumer().key;
+
+        requests = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            byte[] message = ("<message id=\"" + i + "\"/>").getBytes(StandardCharsets.UTF_8);
+            byte[] attachment = ("attachment " + i).getBytes(StandardCharsets.UTF_8);
+
+            requests.add(new SigningRequest(signingCert, Arrays.asList(
+                    new MessagePart(MessageFileNames.MESSAGE, DIGEST_ALGORITHM_ID,
+                            calculateDigest(DIGEST_ALGORITHM_ID, message), message),
+                    new MessagePart(MessageFileNames.attachment(1), DIGEST_ALGORITHM_ID,
+                            calculateDigest(DIGEST_ALGORITHM_ID, attachment), null))));
+        }
+    }
+
+    /**
+     * Hash chain construction only.
+     */
+    @Benchmark
+    public void hashChain(Blackhole blackhole) throws Exception {
+        HashChainBuilder builder = new HashChainBuilder(DIGEST_ALGORITHM_ID);
+        for (SigningRequest request : requests) {
+            builder.addInputHash(request.getParts().stream()
+                    .map(MessagePart::getData)
+                    .toArray(byte[][]::new));
+        }
+        builder.finishBuilding();
+
+        blackhole.consume(builder.getHashChainResult(MessageFileNames.SIG_HASH_CHAIN));
+        blackhole.consume(builder.getHashChains(MessageFileNames.MESSAGE));
+    }
+
+    /**
+     * Complete batch signature: hash chain, signed data, one RSA signature and
+     * the signature data of every request in the batch.
+     */
+    @Benchmark
+    public void batchSignature(Blackhole blackhole) throws Exception {
+        SignatureCtx ctx = new SignatureCtx(SIGNATURE_ALGORITHM_ID);
+        requests.forEach(ctx::add);
+
+        Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM_ID);
+        signature.initSign(signingKey);
+        signature.update(ctx.getDataToBeSigned());
+
+        String signatureXml = ctx.createSignatureXml(signature.sign());
+        for (int i = 0; i < batchSize; i++) {
+            blackhole.consume(ctx.createSignatureData(signatureXml, i));
+        }
+    }
+}
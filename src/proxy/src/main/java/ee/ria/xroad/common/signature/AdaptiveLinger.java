@@ -0,0 +1,99 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.signature;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how long a batch signing lane should wait for more signing requests
+ * before signing the requests it already has.
+ * <p>
+ * The decision is based on exponentially weighted moving averages of the request
+ * inter-arrival time and the signing latency. Waiting is only worthwhile when at
+ * least one more request is expected to arrive during the wait, and the wait is
+ * never longer than half of the signing latency or the configured maximum.
+ */
+final class AdaptiveLinger {
+
+    private static final double ALPHA = 0.2;
+
+    private final long maxLingerNanos;
+
+    private boolean arrived;
+    private long lastArrivalNanos;
+    private double arrivalIntervalNanos = -1;
+    private double signLatencyNanos = -1;
+
+    /**
+     * @param maxLingerMicros the maximum time to wait for more requests, in microseconds
+     */
+    AdaptiveLinger(long maxLingerMicros) {
+        this.maxLingerNanos = TimeUnit.MICROSECONDS.toNanos(maxLingerMicros);
+    }
+
+    /**
+     * Records the arrival of a new signing request.
+     * @param nowNanos current {@link System#nanoTime()}
+     */
+    synchronized void onArrival(long nowNanos) {
+        if (arrived) {
+            arrivalIntervalNanos = ewma(arrivalIntervalNanos, nowNanos - lastArrivalNanos);
+        }
+        arrived = true;
+        lastArrivalNanos = nowNanos;
+    }
+
+    /**
+     * Records the duration of a completed signing operation.
+     * @param latencyNanos the signing latency in nanoseconds
+     */
+    synchronized void onSigned(long latencyNanos) {
+        signLatencyNanos = ewma(signLatencyNanos, latencyNanos);
+    }
+
+    /**
+     * @param batchSize number of requests already collected into the batch
+     * @param maxBatchSize maximum number of requests in a batch
+     * @return time in nanoseconds to wait for more requests, 0 if the batch should be signed at once
+     */
+    synchronized long getLingerNanos(int batchSize, int maxBatchSize) {
+        if (maxLingerNanos <= 0 || batchSize >= maxBatchSize || signLatencyNanos < 0 || arrivalIntervalNanos <= 0) {
+            return 0;
+        }
+
+        double linger = Math.min(maxLingerNanos, signLatencyNanos / 2);
+        if (linger < arrivalIntervalNanos) {
+            // Not even one more request is expected within the wait.
+            return 0;
+        }
+
+        return (long) Math.min(linger, arrivalIntervalNanos * (maxBatchSize - batchSize));
+    }
+
+    private static double ewma(double average, long sample) {
+        return average < 0 ? sample : average + ALPHA * (sample - average);
+    }
+}
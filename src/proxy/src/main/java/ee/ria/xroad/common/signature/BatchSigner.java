@@ -27,8 +27,12 @@ package ee.ria.xroad.common.signature;
 
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.util.MetricsHolder;
 import ee.ria.xroad.signer.SignerProxy;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
 import lombok.Data;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -38,13 +42,15 @@ import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.codahale.metrics.MetricRegistry.name;
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
 import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
@@ -58,6 +64,13 @@ import static ee.ria.xroad.common.util.CryptoUtils.getDigestAlgorithmId;
  * Moreover, multiple signing requests for the same signing certificate
  * (and thus the same key id) are signed in batch and the resulting hash
  * chain is produced for each request.
+ * <p>
+ * Each signing certificate is served by a configurable number of signing lanes
+ * with bounded request queues. When all the queues of a certificate are full,
+ * new signing requests are rejected instead of being queued indefinitely.
+ * <p>
+ * Optionally, a lane waits briefly for more requests before signing, if the observed
+ * request rate and signing latency suggest that the batch would grow (see {@link AdaptiveLinger}).
  */
 @Slf4j
 public class BatchSigner {
@@ -66,7 +79,21 @@ public class BatchSigner {
 
     private static BatchSigner instance;
 
-    private final Map<String, WorkerImpl> workers = new ConcurrentHashMap<>();
+    private final Map<String, WorkerGroup> workers = new ConcurrentHashMap<>();
+
+    private final int lanes = SystemProperties.getBatchSignerLanes();
+    private final int queueCapacity = SystemProperties.getBatchSignerQueueCapacity();
+    private final int maxBatchSize = SystemProperties.getBatchSignerMaxBatchSize();
+    private final long maxLingerMicros = SystemProperties.getBatchSignerMaxLingerMicros();
+
+    private final Histogram batchSize = MetricsHolder.getRegistry().histogram(name(BatchSigner.class, "batchSize"));
+    private final Timer signLatency = MetricsHolder.getRegistry().timer(name(BatchSigner.class, "signLatency"));
+    private final Meter rejected = MetricsHolder.getRegistry().meter(name(BatchSigner.class, "rejected"));
+
+    BatchSigner() {
+        MetricsHolder.registerGauge(name(BatchSigner.class, "queueDepth"),
+                () -> workers.values().stream().mapToInt(WorkerGroup::getQueueDepth).sum());
+    }
 
     public static void init() {
         instance = new BatchSigner();
@@ -74,7 +101,7 @@ public class BatchSigner {
 
     public static void shutdown() {
         if (instance != null) {
-            instance.workers.values().forEach(WorkerImpl::stop);
+            instance.workers.values().forEach(WorkerGroup::stop);
         }
     }
 
@@ -112,14 +139,14 @@ public class BatchSigner {
         getWorker(signRequest).handleSignRequest(signRequest);
     }
 
-    private WorkerImpl getWorker(SigningRequestWrapper signRequest) {
+    private WorkerGroup getWorker(SigningRequestWrapper signRequest) {
         // Signing worker based on cert hash.
         try {
             String name = calculateCertHexHash(signRequest.getSigningCert());
 
             return workers.computeIfAbsent(name, key -> {
                 log.trace("Creating new worker for cert '{}'", name);
-                return new WorkerImpl(signRequest.getKeyId());
+                return new WorkerGroup(signRequest.getKeyId());
             });
         } catch (Exception e) {
             throw new RuntimeException("Unable to get worker", e);
@@ -127,30 +154,93 @@ public class BatchSigner {
     }
 
     /**
-     * This is the worker that does the heavy lifting.
+     * Group of signing lanes for one signing certificate. Every lane batches and
+     * signs independently, so up to {@code lanes} signing operations for the same
+     * key can be in flight at the same time.
      */
-    private static class WorkerImpl {
+    private final class WorkerGroup {
 
-        private final boolean batchSigningEnabled;
-        private final BlockingQueue<SigningRequestWrapper> requestsQueue = new LinkedBlockingQueue<>();
-        private boolean stopping;
-        private final Thread workerThread;
+        private final WorkerImpl[] workerLanes;
+        private final AtomicInteger nextLane = new AtomicInteger();
 
-        protected WorkerImpl(String keyId) {
+        WorkerGroup(String keyId) {
+            boolean batchSigningEnabled;
             try {
                 batchSigningEnabled = SignerProxy.isTokenBatchSigningEnabled(keyId);
             } catch (Exception e) {
                 log.error("Failed to query if batch signing is enabled for token with key {}", keyId, e);
                 throw new RuntimeException(e);
             }
+
+            workerLanes = new WorkerImpl[lanes];
+            for (int i = 0; i < lanes; i++) {
+                workerLanes[i] = new WorkerImpl(batchSigningEnabled);
+            }
+        }
+
+        void handleSignRequest(SigningRequestWrapper signRequest) {
+            // Start from a rotating position so that equally loaded lanes get an even share.
+            int start = Math.floorMod(nextLane.getAndIncrement(), workerLanes.length);
+            WorkerImpl selected = workerLanes[start];
+            for (int i = 1; i < workerLanes.length && selected.getQueueDepth() > 0; i++) {
+                WorkerImpl candidate = workerLanes[(start + i) % workerLanes.length];
+                if (candidate.getQueueDepth() < selected.getQueueDepth()) {
+                    selected = candidate;
+                }
+            }
+
+            if (!selected.handleSignRequest(signRequest)) {
+                rejected.mark();
+                throw new CodedException(X_INTERNAL_ERROR, "Signing request queue is full");
+            }
+        }
+
+        int getQueueDepth() {
+            int depth = 0;
+            for (WorkerImpl lane : workerLanes) {
+                depth += lane.getQueueDepth();
+            }
+            return depth;
+        }
+
+        void stop() {
+            for (WorkerImpl lane : workerLanes) {
+                lane.stop();
+            }
+        }
+    }
+
+    /**
+     * This is the worker that does the heavy lifting.
+     */
+    private final class WorkerImpl {
+
+        private final boolean batchSigningEnabled;
+        private final BlockingQueue<SigningRequestWrapper> requestsQueue;
+        private final AdaptiveLinger linger = new AdaptiveLinger(maxLingerMicros);
+        private volatile boolean stopping;
+        private final Thread workerThread;
+
+        WorkerImpl(boolean batchSigningEnabled) {
+            this.batchSigningEnabled = batchSigningEnabled;
+            this.requestsQueue = new ArrayBlockingQueue<>(queueCapacity);
+
             workerThread = new Thread(this::process);
             workerThread.setDaemon(true);
             workerThread.start();
         }
 
-        public void handleSignRequest(SigningRequestWrapper signRequest) {
+        boolean handleSignRequest(SigningRequestWrapper signRequest) {
             log.trace("handleSignRequest()");
-            requestsQueue.add(signRequest);
+            if (!requestsQueue.offer(signRequest)) {
+                return false;
+            }
+            linger.onArrival(System.nanoTime());
+            return true;
+        }
+
+        int getQueueDepth() {
+            return requestsQueue.size();
         }
 
         private void sendSignatureResponse(BatchSignatureCtx ctx, byte[] signatureValue) throws Exception {
@@ -178,7 +268,7 @@ public class BatchSigner {
             return System.currentTimeMillis() - requestWrapper.getCreatedOn() > TIMEOUT_MILLIS;
         }
 
-        private synchronized void process() {
+        private void process() {
             while (!stopping) {
                 log.trace("polling queue");
                 List<SigningRequestWrapper> requests = new LinkedList<>();
@@ -191,7 +281,8 @@ public class BatchSigner {
                     requests.add(first);
                     if (batchSigningEnabled) {
                         // poll all remaining
-                        requestsQueue.drainTo(requests);
+                        requestsQueue.drainTo(requests, maxBatchSize - 1);
+                        awaitMoreRequests(requests);
                     }
 
                     log.trace("processing {} sign requests", requests.size());
@@ -200,9 +291,18 @@ public class BatchSigner {
                             .filter(req -> !isExpired(req))
                             .forEach(req -> ctx.add(req.getClientFuture(), req.getRequest()));
 
+                    batchSize.update(ctx.getClients().size());
+
                     try {
                         byte[] digest = calculateDigest(getDigestAlgorithmId(ctx.getSignatureAlgorithmId()), ctx.getDataToBeSigned());
-                        final byte[] response = SignerProxy.sign(ctx.getKeyId(), ctx.getSignatureAlgorithmId(), digest);
+                        final byte[] response;
+                        Timer.Context signTime = signLatency.time();
+                        try {
+                            response = SignerProxy.sign(ctx.getKeyId(), ctx.getSignatureAlgorithmId(), digest);
+                        } finally {
+                            // failed calls count too, so that the linger adapts to a degraded signer
+                            linger.onSigned(signTime.stop());
+                        }
                         sendSignatureResponse(ctx, response);
                     } catch (Exception exception) {
                         sendException(ctx, exception);
@@ -215,7 +315,29 @@ public class BatchSigner {
             log.trace("Worker thread stopped");
         }
 
-        protected void stop() {
+        /**
+         * Lingers for a while if more requests are expected to arrive soon, so that
+         * they can be signed in the same batch.
+         */
+        private void awaitMoreRequests(List<SigningRequestWrapper> requests) throws InterruptedException {
+            long lingerNanos = linger.getLingerNanos(requests.size(), maxBatchSize);
+            if (lingerNanos <= 0) {
+                return;
+            }
+
+            long deadline = System.nanoTime() + lingerNanos;
+            while (requests.size() < maxBatchSize) {
+                long remaining = deadline - System.nanoTime();
+                SigningRequestWrapper next = remaining > 0 ? requestsQueue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                if (next == null) {
+                    return;
+                }
+                requests.add(next);
+                requestsQueue.drainTo(requests, maxBatchSize - requests.size());
+            }
+        }
+
+        void stop() {
             log.trace("stop()");
             this.stopping = true;
             this.workerThread.interrupt();
@@ -338,10 +338,25 @@ public final class ProxyMain {
         adminPort.addHandler("/clearconfcache", new AdminPort.SynchronousCallback() {
             @Override
             public void handle(HttpServletRequest request, HttpServletResponse response) {
-                ServerConf.clearCache();
+                // optional parameter 'client' (INSTANCE/CLASS/CODE[/SUBSYSTEM]) limits clearing to a single client
+                String client = request.getParameter("client");
+                String result;
+                if (client == null) {
+                    ServerConf.clearCache();
+                    result = "Configuration cache cleared";
+                } else {
+                    String[] parts = client.split("/");
+                    if (parts.length == 3 || parts.length == 4) {
+                        ServerConf.clearCache(ClientId.Conf.create(parts[0], parts[1], parts[2],
+                                parts.length == 4 ? parts[3] : null));
+                        result = "Configuration cache of client " + client + " cleared";
+                    } else {
+                        result = "Invalid parameter 'client', request ignored";
+                    }
+                }
                 try {
                     response.setCharacterEncoding("UTF8");
-                    response.getWriter().println("Configuration cache cleared");
+                    response.getWriter().println(result);
                 } catch (IOException e) {
                     logResponseIOError(e);
                 }
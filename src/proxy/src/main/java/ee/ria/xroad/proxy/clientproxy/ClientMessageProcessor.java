@@ -26,6 +26,7 @@
 package ee.ria.xroad.proxy.clientproxy;
 
 import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.cert.CertChain;
 import ee.ria.xroad.common.conf.serverconf.IsAuthenticationData;
 import ee.ria.xroad.common.identifier.ClientId;
@@ -39,6 +40,7 @@ import ee.ria.xroad.common.message.SoapMessageImpl;
 import ee.ria.xroad.common.message.SoapUtils;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
 import ee.ria.xroad.common.util.HttpSender;
+import ee.ria.xroad.common.util.MetricsHolder;
 import ee.ria.xroad.common.util.MimeUtils;
 import ee.ria.xroad.proxy.conf.KeyConf;
 import ee.ria.xroad.proxy.messagelog.MessageLog;
@@ -63,12 +65,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import static com.codahale.metrics.MetricRegistry.name;
 import static ee.ria.xroad.common.ErrorCodes.X_INCONSISTENT_RESPONSE;
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_MISSING_SIGNATURE;
@@ -128,18 +130,25 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
     /** Holds the response from server proxy. */
     private ProxyMessage response;
 
-    private static final ExecutorService SOAP_HANDLER_EXECUTOR =
+    private static final int SOAP_PIPE_BUFFER_SIZE = SystemProperties.getClientProxySoapPipeBufferSize();
+
+    private static final ThreadPoolExecutor SOAP_HANDLER_EXECUTOR =
             createSoapHandlerExecutor();
 
-    private static ExecutorService createSoapHandlerExecutor() {
-        return Executors.newCachedThreadPool(new ThreadFactory() {
-            @Override
-            public Thread newThread(Runnable r) {
-                Thread handlerThread = new Thread(r);
-                handlerThread.setName(Thread.currentThread().getName() + "-soap");
+    static {
+        MetricsHolder.registerGauge(name(ClientMessageProcessor.class, "soapHandlerThreads"),
+                SOAP_HANDLER_EXECUTOR::getPoolSize);
+        MetricsHolder.registerGauge(name(ClientMessageProcessor.class, "activeSoapHandlers"),
+                SOAP_HANDLER_EXECUTOR::getActiveCount);
+    }
+
+    private static ThreadPoolExecutor createSoapHandlerExecutor() {
+        // Same as a cached thread pool, but exposes the pool size for the metrics
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread handlerThread = new Thread(r);
+            handlerThread.setName(Thread.currentThread().getName() + "-soap");
 
-                return handlerThread;
-            }
+            return handlerThread;
         });
     }
 
@@ -147,7 +156,7 @@ class ClientMessageProcessor extends AbstractClientMessageProcessor {
             HttpClient httpClient, IsAuthenticationData clientCert, OpMonitoringData opMonitoringData)
             throws Exception {
         super(servletRequest, servletResponse, httpClient, clientCert, opMonitoringData);
-        this.reqIns = new PipedInputStream();
+        this.reqIns = new PipedInputStream(SOAP_PIPE_BUFFER_SIZE);
         this.reqOuts = new PipedOutputStream(reqIns);
         this.xRequestId = UUID.randomUUID().toString();
     }
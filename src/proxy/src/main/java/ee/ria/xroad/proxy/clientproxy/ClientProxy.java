@@ -146,6 +146,10 @@ public class ClientProxy implements StartStop {
         // Disable request retry
         cb.setRetryHandler(new DefaultHttpRequestRetryHandler(0, false));
 
+        if (SystemProperties.isClientProxyHealthScoredTargetSelection()) {
+            cb.setRequestExecutor(new HealthScoringRequestExecutor(TargetHealthScores.getInstance()));
+        }
+
         client = cb.build();
     }
 
@@ -49,6 +49,7 @@ import java.net.Socket;
 import java.net.SocketException;
 import java.net.URI;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
@@ -65,6 +66,11 @@ import static ee.ria.xroad.proxy.clientproxy.AuthTrustVerifier.verify;
  *
  * If an SSL session already exists to one of the provided addresses, then
  * that address is selected immediately without previous selection algorithm.
+ *
+ * When health scored target selection is enabled, addresses that already have
+ * a score in {@link TargetHealthScores} are instead connected to in the order
+ * given by the scores, and the connection selection is only used until the
+ * first request to one of the addresses has completed.
  */
 @Slf4j
 class FastestConnectionSelectingSSLSocketFactory
@@ -87,6 +93,7 @@ class FastestConnectionSelectingSSLSocketFactory
 
     private final Cache<CacheKey, URI> selectedHosts;
     private final boolean cachingEnabled;
+    private final TargetHealthScores healthScores;
 
     FastestConnectionSelectingSSLSocketFactory(SSLContext sslContext) {
         super(sslContext, null, SystemProperties.getXroadTLSCipherSuites(), (HostnameVerifier)null);
@@ -95,7 +102,10 @@ class FastestConnectionSelectingSSLSocketFactory
                 .expireAfterWrite(SystemProperties.getClientProxyFastestConnectingSslUriCachePeriod(), TimeUnit.SECONDS)
                 .maximumSize(CACHE_MAXIMUM_SIZE)
                 .build();
-        this.cachingEnabled = SystemProperties.getClientProxyFastestConnectingSslUriCachePeriod() > 0;
+        this.healthScores = SystemProperties.isClientProxyHealthScoredTargetSelection()
+                ? TargetHealthScores.getInstance() : null;
+        this.cachingEnabled = healthScores == null
+                && SystemProperties.getClientProxyFastestConnectingSslUriCachePeriod() > 0;
     }
 
     @Override
@@ -112,6 +122,14 @@ class FastestConnectionSelectingSSLSocketFactory
 
         // Read target addresses from the context.
         final URI[] addressesFromContext = getAddressesFromContext(context);
+        final boolean useScores = healthScores != null && addressesFromContext.length > 1;
+        if (useScores) {
+            final List<URI> ordered = healthScores.order(addressesFromContext);
+            if (ordered != null) {
+                return connectInOrder(timeout, ordered, addressesFromContext, context);
+            }
+        }
+
         final boolean useCache = cachingEnabled && (addressesFromContext.length > 1);
         final FastestSocketSelector selector = new FastestSocketSelector();
 
@@ -147,12 +165,11 @@ class FastestConnectionSelectingSSLSocketFactory
                 // Select the fastest address if more than one address is provided.
                 // see also FastestSocketSelector
                 selectedSocket = selector.select(connectTimeout);
-                sslSocket = wrapToSSLSocket(selectedSocket.getSocket(), connectTimeout);
-                prepareAndVerify(sslSocket, selectedSocket.getUri(), context);
-                configureSocket(sslSocket);
-                log.trace("Connected to {}", selectedSocket.getUri());
-                updateOpMonitoringData(context, selectedSocket);
+                sslSocket = connect(selectedSocket, connectTimeout, context);
 
+                if (useScores) {
+                    healthScores.bind(sslSocket, selectedSocket.getUri());
+                }
                 if (useCache && cachedURI == null) {
                     log.info("Storing the fastest provider URI '{}' to cache", selectedSocket.getUri());
                     selectedHosts.put(cacheKey, selectedSocket.getUri());
@@ -164,6 +181,9 @@ class FastestConnectionSelectingSSLSocketFactory
                 if (selectedSocket != null) {
                     log.warn("Failed to connect to {}", selectedSocket.getUri(), e);
                     closeQuietly(selectedSocket.getSocket());
+                    if (useScores) {
+                        healthScores.recordFailure(selectedSocket.getUri());
+                    }
                 } else {
                     log.warn("Failed to connect", e);
                 }
@@ -187,6 +207,51 @@ class FastestConnectionSelectingSSLSocketFactory
         throw couldNotConnectException(addressesFromContext, deferredException);
     }
 
+    private Socket connectInOrder(int timeout, List<URI> ordered, URI[] addressesFromContext, HttpContext context) {
+        log.trace("Connecting to addresses in health score order {}", ordered);
+
+        Exception deferredException = null;
+        int connectTimeout = timeout;
+        for (URI target : ordered) {
+            final FastestSocketSelector selector = new FastestSocketSelector();
+            selector.add(target);
+            SocketInfo selectedSocket = null;
+            SSLSocket sslSocket = null;
+            try {
+                selectedSocket = selector.select(connectTimeout);
+                sslSocket = connect(selectedSocket, connectTimeout, context);
+                healthScores.bind(sslSocket, target);
+                return sslSocket;
+            } catch (IOException | RuntimeException e) {
+                deferredException = e;
+                log.warn("Failed to connect to {}", target, e);
+                closeQuietly(sslSocket);
+                if (selectedSocket != null) {
+                    closeQuietly(selectedSocket.getSocket());
+                }
+                healthScores.recordFailure(target);
+                //if there are addresses left, try again but using reduced connection timeout.
+                connectTimeout = Math.max(MIN_TIMEOUT, connectTimeout / 2);
+            }
+        }
+        throw couldNotConnectException(addressesFromContext, deferredException);
+    }
+
+    private SSLSocket connect(SocketInfo selectedSocket, int connectTimeout, HttpContext context)
+            throws IOException {
+        final SSLSocket sslSocket = wrapToSSLSocket(selectedSocket.getSocket(), connectTimeout);
+        try {
+            prepareAndVerify(sslSocket, selectedSocket.getUri(), context);
+            configureSocket(sslSocket);
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(sslSocket);
+            throw e;
+        }
+        log.trace("Connected to {}", selectedSocket.getUri());
+        updateOpMonitoringData(context, selectedSocket);
+        return sslSocket;
+    }
+
     @Override
     protected void prepareSocket(final SSLSocket socket) throws IOException {
         socket.setEnabledProtocols(new String[] {CryptoUtils.SSL_PROTOCOL});
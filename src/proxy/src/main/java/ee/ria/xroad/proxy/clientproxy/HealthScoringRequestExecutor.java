@@ -0,0 +1,82 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.URI;
+
+/**
+ * Request executor that feeds the response latency and failures of requests to provider security servers to the
+ * {@link TargetHealthScores}. Only requests sent over connections that {@link FastestConnectionSelectingSSLSocketFactory}
+ * opened to a target selected among several addresses are recorded.
+ */
+class HealthScoringRequestExecutor extends HttpRequestExecutor {
+
+    private final TargetHealthScores scores;
+
+    HealthScoringRequestExecutor(TargetHealthScores scores) {
+        this.scores = scores;
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request, HttpClientConnection conn, HttpContext context)
+            throws IOException, HttpException {
+        final URI target = getTarget(conn);
+        if (target == null) {
+            return super.execute(request, conn, context);
+        }
+        final long start = System.nanoTime();
+        boolean success = false;
+        try {
+            final HttpResponse response = super.execute(request, conn, context);
+            success = true;
+            return response;
+        } finally {
+            if (success) {
+                scores.recordSuccess(target, System.nanoTime() - start);
+            } else {
+                scores.recordFailure(target);
+            }
+        }
+    }
+
+    private URI getTarget(HttpClientConnection conn) {
+        if (conn instanceof ManagedHttpClientConnection) {
+            final Socket socket = ((ManagedHttpClientConnection)conn).getSocket();
+            return socket == null ? null : scores.getTarget(socket);
+        }
+        return null;
+    }
+}
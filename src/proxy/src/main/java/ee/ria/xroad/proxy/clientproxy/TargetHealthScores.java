@@ -0,0 +1,276 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.util.HealthScore;
+import ee.ria.xroad.common.util.MetricsHolder;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.net.SocketFactory;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Keeps health scores of provider security servers that are selected among several addresses.
+ *
+ * The score of a target is its {@link HealthScore}: the exponentially weighted moving average (EWMA) of the response
+ * latency of requests sent to it, multiplied by a penalty that grows with the EWMA of its error rate. Targets are chosen randomly with a
+ * weight inversely proportional to the square of the score, so the fastest healthy target gets most of the requests
+ * while the others keep receiving enough traffic to keep their scores current. Targets that have not been used for a
+ * probe interval are probed in the background with a TCP connection, which lets failed targets recover.
+ */
+@Slf4j
+final class TargetHealthScores {
+
+    private static final double MAX_USABLE_ERROR_RATE = 0.9;
+    private static final int PROBE_TIMEOUT_MS = 5000;
+    private static final int STALE_PROBE_INTERVALS = 20;
+
+    private static volatile TargetHealthScores instance;
+
+    private final ConcurrentMap<URI, Score> scores = new ConcurrentHashMap<>();
+    private final Map<Socket, URI> connectionTargets = Collections.synchronizedMap(new WeakHashMap<>());
+    private final LongSupplier clock;
+    private final long probeIntervalNanos;
+
+    TargetHealthScores(LongSupplier clock, long probeIntervalNanos) {
+        this.clock = clock;
+        this.probeIntervalNanos = probeIntervalNanos;
+    }
+
+    /**
+     * @return the process-wide target health scores, probing is started on first access
+     */
+    static TargetHealthScores getInstance() {
+        TargetHealthScores result = instance;
+        if (result == null) {
+            synchronized (TargetHealthScores.class) {
+                result = instance;
+                if (result == null) {
+                    int interval = Math.max(1, SystemProperties.getClientProxyTargetHealthProbeInterval());
+                    result = new TargetHealthScores(System::nanoTime, TimeUnit.SECONDS.toNanos(interval));
+                    ScheduledExecutorService prober = Executors.newSingleThreadScheduledExecutor(
+                            new ThreadFactoryBuilder().setNameFormat("target-health-prober").setDaemon(true).build());
+                    prober.scheduleWithFixedDelay(result::probe, interval, interval, TimeUnit.SECONDS);
+                    instance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Orders the given addresses for connecting, the first address being the selected one and the rest ordered
+     * by score for failover. Addresses without a score yet are assumed to be as good as the best scored one.
+     * @param addresses the addresses to order
+     * @return ordered addresses or null if none of the addresses has a usable score, in which case the caller
+     * should fall back to selecting the fastest connecting address
+     */
+    List<URI> order(URI[] addresses) {
+        final long now = clock.getAsLong();
+        final List<URI> ordered = new ArrayList<>(addresses.length);
+        final Map<URI, Double> values = new HashMap<>();
+        double best = Double.MAX_VALUE;
+        for (URI address : addresses) {
+            Score score = scores.get(address);
+            if (score != null) {
+                score.lastSelected = now;
+                if (score.health.hasLatency() && score.health.getErrorRate() < MAX_USABLE_ERROR_RATE) {
+                    double value = score.health.value();
+                    values.put(address, value);
+                    best = Math.min(best, value);
+                }
+            }
+            ordered.add(address);
+        }
+        if (values.isEmpty()) {
+            return null;
+        }
+        for (URI address : addresses) {
+            Score score = scores.get(address);
+            if (score == null) {
+                values.put(address, best);
+            } else if (!score.health.hasLatency() && score.health.getErrorRate() < MAX_USABLE_ERROR_RATE) {
+                values.put(address, score.health.value(best));
+            }
+        }
+        // unusable targets go last
+        ordered.sort(Comparator.comparingDouble(a -> values.getOrDefault(a, Double.MAX_VALUE)));
+
+        double totalWeight = 0;
+        for (URI address : ordered) {
+            totalWeight += weight(values.get(address));
+        }
+        double r = ThreadLocalRandom.current().nextDouble() * totalWeight;
+        for (int i = 0; i < ordered.size(); i++) {
+            r -= weight(values.get(ordered.get(i)));
+            if (r < 0) {
+                ordered.add(0, ordered.remove(i));
+                break;
+            }
+        }
+        return ordered;
+    }
+
+    private static double weight(Double value) {
+        return value == null ? 0 : 1 / (value * value);
+    }
+
+    /**
+     * Records a request to the target that completed in the given time.
+     * @param target the target address
+     * @param latencyNanos the response latency in nanoseconds
+     */
+    void recordSuccess(URI target, long latencyNanos) {
+        getScore(target).success(latencyNanos, clock.getAsLong());
+    }
+
+    /**
+     * Records a failed connection or request to the target.
+     * @param target the target address
+     */
+    void recordFailure(URI target) {
+        getScore(target).failure(clock.getAsLong());
+    }
+
+    /**
+     * Associates a connection with the target address it was opened to, so that requests sent over pooled
+     * connections can be attributed to the target.
+     * @param socket the connection
+     * @param target the target address
+     */
+    void bind(Socket socket, URI target) {
+        connectionTargets.put(socket, target);
+    }
+
+    /**
+     * @param socket the connection
+     * @return the target address the connection was opened to or null if unknown
+     */
+    URI getTarget(Socket socket) {
+        return connectionTargets.get(socket);
+    }
+
+    /**
+     * @param target the target address
+     * @return the current score of the target or NaN if the target has no latency score
+     */
+    double score(URI target) {
+        Score score = scores.get(target);
+        return score == null ? Double.NaN : score.health.value();
+    }
+
+    private Score getScore(URI target) {
+        return scores.computeIfAbsent(target, this::newScore);
+    }
+
+    private Score newScore(URI target) {
+        Score score = new Score(clock.getAsLong());
+        String prefix = name(TargetHealthScores.class, target.getAuthority());
+        MetricsHolder.registerGauge(name(prefix, "latencyMillis"),
+                () -> score.health.getLatencyNanos() / TimeUnit.MILLISECONDS.toNanos(1));
+        MetricsHolder.registerGauge(name(prefix, "errorRate"), score.health::getErrorRate);
+        return score;
+    }
+
+    /**
+     * Probes targets that have not been updated within the probe interval and forgets targets that have not been
+     * selected for a long time.
+     */
+    void probe() {
+        final long now = clock.getAsLong();
+        for (Map.Entry<URI, Score> entry : scores.entrySet()) {
+            final URI target = entry.getKey();
+            final Score score = entry.getValue();
+            if (now - score.lastSelected > STALE_PROBE_INTERVALS * probeIntervalNanos) {
+                scores.remove(target, score);
+                String prefix = name(TargetHealthScores.class, target.getAuthority());
+                MetricsHolder.getRegistry().remove(name(prefix, "latencyMillis"));
+                MetricsHolder.getRegistry().remove(name(prefix, "errorRate"));
+            } else if (now - score.lastUpdated > probeIntervalNanos) {
+                probe(target, score);
+            }
+        }
+    }
+
+    private void probe(URI target, Score score) {
+        try (Socket socket = SocketFactory.getDefault().createSocket()) {
+            socket.connect(new InetSocketAddress(target.getHost(), target.getPort()), PROBE_TIMEOUT_MS);
+            score.probeSuccess(clock.getAsLong());
+        } catch (Exception e) {
+            log.trace("Probing {} failed: {}", target, e.getMessage());
+            score.failure(clock.getAsLong());
+        }
+    }
+
+    private static final class Score {
+        private final HealthScore health = new HealthScore();
+        private volatile long lastUpdated;
+        private volatile long lastSelected;
+
+        Score(long now) {
+            lastUpdated = now;
+            lastSelected = now;
+        }
+
+        void success(long latency, long now) {
+            health.success(latency);
+            lastUpdated = now;
+        }
+
+        void probeSuccess(long now) {
+            // a successful connection says nothing about response latency, only about availability
+            health.available();
+            lastUpdated = now;
+        }
+
+        void failure(long now) {
+            health.failure();
+            lastUpdated = now;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.signature;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests to verify the batch signing linger decisions.
+ */
+public class AdaptiveLingerTest {
+
+    private static final long MICROS = TimeUnit.MICROSECONDS.toNanos(1);
+
+    @Test
+    public void doesNotLingerWhenDisabled() {
+        AdaptiveLinger linger = arrivalsEvery(0, 10 * MICROS);
+        linger.onSigned(1000 * MICROS);
+
+        assertEquals(0, linger.getLingerNanos(1, 100));
+    }
+
+    @Test
+    public void doesNotLingerWithoutSigningLatency() {
+        AdaptiveLinger linger = arrivalsEvery(500, 10 * MICROS);
+
+        assertEquals(0, linger.getLingerNanos(1, 100));
+    }
+
+    @Test
+    public void doesNotLingerWhenRequestsArriveRarely() {
+        AdaptiveLinger linger = arrivalsEvery(500, 5000 * MICROS);
+        linger.onSigned(1000 * MICROS);
+
+        assertEquals(0, linger.getLingerNanos(1, 100));
+    }
+
+    @Test
+    public void lingersAtMostHalfOfSigningLatency() {
+        AdaptiveLinger linger = arrivalsEvery(5000, 10 * MICROS);
+        linger.onSigned(1000 * MICROS);
+
+        assertEquals(500 * MICROS, linger.getLingerNanos(1, 100));
+    }
+
+    @Test
+    public void lingersAtMostTheConfiguredMaximum() {
+        AdaptiveLinger linger = arrivalsEvery(200, 10 * MICROS);
+        linger.onSigned(1000 * MICROS);
+
+        assertEquals(200 * MICROS, linger.getLingerNanos(1, 100));
+    }
+
+    @Test
+    public void lingersOnlyUntilBatchIsExpectedToBeFull() {
+        AdaptiveLinger linger = arrivalsEvery(5000, 10 * MICROS);
+        linger.onSigned(1000 * MICROS);
+
+        long lingerNanos = linger.getLingerNanos(7, 10);
+
+        assertTrue(lingerNanos > 0);
+        assertEquals(30 * MICROS, lingerNanos);
+        assertEquals(0, linger.getLingerNanos(10, 10));
+    }
+
+    private static AdaptiveLinger arrivalsEvery(long maxLingerMicros, long intervalNanos) {
+        AdaptiveLinger linger = new AdaptiveLinger(maxLingerMicros);
+        for (int i = 0; i < 10; i++) {
+            linger.onArrival(i * intervalNanos);
+        }
+        return linger;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests target health score based selection.
+ */
+public class TargetHealthScoresTest {
+
+    private static final URI FAST = URI.create("https://10.0.0.1:5500");
+    private static final URI SLOW = URI.create("https://10.0.0.2:5500");
+    private static final URI UNKNOWN = URI.create("https://10.0.0.3:5500");
+    private static final long PROBE_INTERVAL = TimeUnit.SECONDS.toNanos(30);
+
+    private final AtomicLong clock = new AtomicLong();
+    private TargetHealthScores scores;
+
+    @Before
+    public void setUp() {
+        scores = new TargetHealthScores(clock::get, PROBE_INTERVAL);
+    }
+
+    @Test
+    public void noOrderWithoutScores() {
+        assertNull(scores.order(new URI[] {FAST, SLOW}));
+    }
+
+    @Test
+    public void fasterTargetIsPreferred() {
+        for (int i = 0; i < 10; i++) {
+            scores.recordSuccess(FAST, TimeUnit.MILLISECONDS.toNanos(10));
+            scores.recordSuccess(SLOW, TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10), scores.score(FAST), 1);
+
+        int fastSelected = 0;
+        for (int i = 0; i < 1000; i++) {
+            List<URI> ordered = scores.order(new URI[] {SLOW, FAST});
+            assertEquals(2, ordered.size());
+            if (FAST.equals(ordered.get(0))) {
+                fastSelected++;
+            }
+        }
+        // weights are 1/10^2 and 1/100^2
+        assertTrue(fastSelected > 950);
+    }
+
+    @Test
+    public void unknownTargetIsExplored() {
+        scores.recordSuccess(FAST, TimeUnit.MILLISECONDS.toNanos(10));
+
+        int unknownSelected = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (UNKNOWN.equals(scores.order(new URI[] {FAST, UNKNOWN}).get(0))) {
+                unknownSelected++;
+            }
+        }
+        assertTrue(unknownSelected > 300 && unknownSelected < 700);
+    }
+
+    @Test
+    public void failingTargetIsOrderedLast() {
+        scores.recordSuccess(FAST, TimeUnit.MILLISECONDS.toNanos(10));
+        scores.recordSuccess(SLOW, TimeUnit.MILLISECONDS.toNanos(100));
+        for (int i = 0; i < 50; i++) {
+            scores.recordFailure(FAST);
+        }
+
+        for (int i = 0; i < 100; i++) {
+            List<URI> ordered = scores.order(new URI[] {FAST, SLOW});
+            assertEquals(SLOW, ordered.get(0));
+            assertEquals(FAST, ordered.get(1));
+        }
+    }
+
+    @Test
+    public void staleTargetsAreForgotten() {
+        scores.recordSuccess(FAST, TimeUnit.MILLISECONDS.toNanos(10));
+        clock.addAndGet(21 * PROBE_INTERVAL);
+
+        scores.probe();
+
+        assertTrue(Double.isNaN(scores.score(FAST)));
+        assertNull(scores.order(new URI[] {FAST, SLOW}));
+    }
+}
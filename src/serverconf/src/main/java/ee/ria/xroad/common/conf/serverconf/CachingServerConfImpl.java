@@ -32,13 +32,19 @@ import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.model.ClientType;
 import ee.ria.xroad.common.conf.serverconf.model.DescriptionType;
 import ee.ria.xroad.common.conf.serverconf.model.EndpointType;
+import ee.ria.xroad.common.conf.serverconf.model.ServiceDescriptionType;
 import ee.ria.xroad.common.conf.serverconf.model.ServiceType;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
 import ee.ria.xroad.common.identifier.ServiceId;
+import ee.ria.xroad.common.util.MetricsHolder;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ObjectUtils;
@@ -47,26 +53,40 @@ import org.hibernate.Session;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
+import static com.codahale.metrics.MetricRegistry.name;
 import static ee.ria.xroad.common.ErrorCodes.X_UNKNOWN_SERVICE;
 
 /**
  * Caching implementation for ServerConf
  * The long lasting and frequently used operations are cached
+ *
+ * In refresh-ahead mode (see {@link SystemProperties#isServerConfCacheRefreshAhead()}) entries that are older than the
+ * cache period are reloaded in the background by a small loader pool while the old value is still being served, so
+ * proxy threads only load synchronously on a real miss. Such entries expire after twice the cache period if they are
+ * not accessed (and thus not refreshed) in the meanwhile.
  */
 @Slf4j
 public class CachingServerConfImpl extends ServerConfImpl {
 
     public static final String TSP_URL = "tsp_url";
 
+    private static final int LOADER_QUEUE_SIZE = 1000;
+
     private final int expireSeconds;
+    private final boolean refreshAhead;
+    private final Executor loaderExecutor;
     private volatile SecurityServerId.Conf serverId;
-    private final Cache<Object, List<String>> tspCache;
-    private final Cache<ServiceId, Optional<ServiceType>> serviceCache;
-    private final Cache<AclCacheKey, List<EndpointType>> aclCache;
-    private final Cache<ClientId, Optional<ClientType>> clientCache;
+    private final LoadingCache<Object, List<String>> tspCache;
+    private final LoadingCache<ServiceId, Optional<ServiceType>> serviceCache;
+    private final LoadingCache<AclCacheKey, List<EndpointType>> aclCache;
+    private final LoadingCache<ClientId, Optional<ClientType>> clientCache;
     private final Cache<String, InternalSSLKey> internalKeyCache;
 
     /**
@@ -77,36 +97,110 @@ public class CachingServerConfImpl extends ServerConfImpl {
     public CachingServerConfImpl() {
         super();
         expireSeconds = SystemProperties.getServerConfCachePeriod();
+        refreshAhead = SystemProperties.isServerConfCacheRefreshAhead();
+
+        int loaderThreads = Math.max(1, SystemProperties.getServerConfCacheLoaderThreads());
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(loaderThreads, loaderThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(LOADER_QUEUE_SIZE),
+                new ThreadFactoryBuilder().setNameFormat("serverconf-cache-loader-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        loaderExecutor = executor;
 
         internalKeyCache = CacheBuilder.newBuilder()
                 .maximumSize(1)
                 .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
                 .build();
 
-        tspCache = CacheBuilder.newBuilder()
+        tspCache = newBuilder()
                 .maximumSize(1)
-                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
-                .build();
+                .build(loader(key -> super.getTspUrl()));
 
-        clientCache = CacheBuilder.newBuilder()
+        clientCache = newBuilder()
                 .maximumSize(SystemProperties.getServerConfClientCacheSize())
-                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
-                .recordStats()
-                .build();
+                .build(loader(clientId -> tx(session -> Optional.ofNullable(super.getClient(session, clientId)))));
 
-        serviceCache = CacheBuilder.newBuilder()
+        serviceCache = newBuilder()
                 .maximumSize(SystemProperties.getServerConfServiceCacheSize())
-                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
-                .recordStats()
-                .build();
+                .build(loader(serviceId -> tx(session -> Optional.ofNullable(super.getService(session, serviceId)))));
 
-        aclCache = CacheBuilder.newBuilder()
+        aclCache = newBuilder()
                 .weigher((AclCacheKey k, List<EndpointType> v) -> v.size() + 1)
                 .maximumWeight(SystemProperties.getServerConfAclCacheSize())
-                .expireAfterWrite(expireSeconds, TimeUnit.SECONDS)
-                .recordStats()
-                .build();
+                .build(loader(key -> tx(session -> super.getAclEndpoints(session, key.client, key.serviceId))));
+
+        registerMetrics("tspCache", tspCache);
+        registerMetrics("clientCache", clientCache);
+        registerMetrics("serviceCache", serviceCache);
+        registerMetrics("aclCache", aclCache);
+
+        if (refreshAhead) {
+            loaderExecutor.execute(this::warmUp);
+        }
+    }
 
+    private CacheBuilder<Object, Object> newBuilder() {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
+        if (refreshAhead) {
+            return builder
+                    .refreshAfterWrite(expireSeconds, TimeUnit.SECONDS)
+                    .expireAfterWrite(2L * expireSeconds, TimeUnit.SECONDS);
+        }
+        return builder.expireAfterWrite(expireSeconds, TimeUnit.SECONDS);
+    }
+
+    private <K, V> CacheLoader<K, V> loader(Function<K, V> function) {
+        CacheLoader<K, V> loader = CacheLoader.from(function::apply);
+        return refreshAhead ? CacheLoader.asyncReloading(loader, loaderExecutor) : loader;
+    }
+
+    private static void registerMetrics(String cacheName, Cache<?, ?> cache) {
+        MetricsHolder.registerGauge(name(CachingServerConfImpl.class, cacheName, "size"), cache::size);
+        MetricsHolder.registerGauge(name(CachingServerConfImpl.class, cacheName, "hitCount"),
+                () -> cache.stats().hitCount());
+        MetricsHolder.registerGauge(name(CachingServerConfImpl.class, cacheName, "missCount"),
+                () -> cache.stats().missCount());
+        MetricsHolder.registerGauge(name(CachingServerConfImpl.class, cacheName, "loadSuccessCount"),
+                () -> cache.stats().loadSuccessCount());
+        MetricsHolder.registerGauge(name(CachingServerConfImpl.class, cacheName, "loadExceptionCount"),
+                () -> cache.stats().loadExceptionCount());
+        MetricsHolder.registerGauge(name(CachingServerConfImpl.class, cacheName, "averageLoadPenaltyNanos"),
+                () -> cache.stats().averageLoadPenalty());
+        MetricsHolder.registerGauge(name(CachingServerConfImpl.class, cacheName, "evictionCount"),
+                () -> cache.stats().evictionCount());
+    }
+
+    /**
+     * Loads all clients and their services in a single transaction so that the first requests after start-up do not
+     * have to hit the database one key at a time.
+     */
+    private void warmUp() {
+        try {
+            long start = System.currentTimeMillis();
+            int loaded = tx(session -> {
+                int count = 0;
+                for (ClientType client : getConf(session).getClient()) {
+                    if (clientCache.size() >= SystemProperties.getServerConfClientCacheSize()) {
+                        break;
+                    }
+                    clientCache.put(client.getIdentifier(), Optional.of(client));
+                    count++;
+                    for (ServiceDescriptionType description : client.getServiceDescription()) {
+                        for (ServiceType service : description.getService()) {
+                            if (serviceCache.size() < SystemProperties.getServerConfServiceCacheSize()) {
+                                serviceCache.put(ServiceId.Conf.create(client.getIdentifier(),
+                                        service.getServiceCode(), service.getServiceVersion()), Optional.of(service));
+                            }
+                        }
+                    }
+                }
+                return count;
+            });
+            log.info("Warmed up configuration cache with {} clients in {} ms", loaded,
+                    System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.warn("Failed to warm up configuration cache", e);
+        }
     }
 
     @Override
@@ -149,8 +243,8 @@ public class CachingServerConfImpl extends ServerConfImpl {
     @Override
     public List<String> getTspUrl() {
         try {
-            return tspCache.get(TSP_URL, super::getTspUrl);
-        } catch (ExecutionException e) {
+            return tspCache.get(TSP_URL);
+        } catch (ExecutionException | UncheckedExecutionException e) {
             if (e.getCause() instanceof CodedException) {
                 throw (CodedException) e.getCause();
             }
@@ -217,12 +311,12 @@ public class CachingServerConfImpl extends ServerConfImpl {
         final AclCacheKey key = new AclCacheKey(client, service);
         try {
             /*
-             * Implementation note. It seems that the loader function is executed in the same thread, in which case the
-             * transaction simply joins the current one. However, this is not explicitly promised by the API,
-             * so we start a transaction if necessary.
+             * Implementation note. A synchronous load is executed in the calling thread, in which case the
+             * transaction simply joins the current one. Refresh-ahead reloads run in the loader pool, so the
+             * loader always starts a transaction if necessary.
              */
-            return aclCache.get(key, () -> tx(s -> super.getAclEndpoints(s, client, service)));
-        } catch (ExecutionException e) {
+            return aclCache.get(key);
+        } catch (ExecutionException | UncheckedExecutionException e) {
             if (e.getCause() instanceof CodedException) {
                 throw (CodedException) e.getCause();
             }
@@ -233,9 +327,8 @@ public class CachingServerConfImpl extends ServerConfImpl {
 
     private Optional<ServiceType> getService(ServiceId serviceId) {
         try {
-            return serviceCache
-                    .get(serviceId, () -> tx(session -> Optional.ofNullable(super.getService(session, serviceId))));
-        } catch (ExecutionException e) {
+            return serviceCache.get(serviceId);
+        } catch (ExecutionException | UncheckedExecutionException e) {
             if (e.getCause() instanceof CodedException) {
                 throw (CodedException) e.getCause();
             }
@@ -246,9 +339,8 @@ public class CachingServerConfImpl extends ServerConfImpl {
 
     private Optional<ClientType> getClient(ClientId clientId) {
         try {
-            return clientCache.get(clientId,
-                    () -> tx(session -> Optional.ofNullable(super.getClient(session, clientId))));
-        } catch (ExecutionException e) {
+            return clientCache.get(clientId);
+        } catch (ExecutionException | UncheckedExecutionException e) {
             if (e.getCause() instanceof CodedException) {
                 throw (CodedException) e.getCause();
             }
@@ -275,6 +367,15 @@ public class CachingServerConfImpl extends ServerConfImpl {
         internalKeyCache.invalidateAll();
     }
 
+    @Override
+    public void clearCache(ClientId clientId) {
+        log.info("Clearing configuration cache of client {}", clientId);
+        clientCache.invalidate(clientId);
+        serviceCache.asMap().keySet().removeIf(serviceId -> serviceId.getClientId().equals(clientId));
+        aclCache.asMap().keySet().removeIf(key -> key.client.equals(clientId)
+                || key.serviceId.getClientId().equals(clientId));
+    }
+
     @Value
     private static class AclCacheKey {
         final ClientId client;
@@ -319,6 +319,10 @@ public class ServerConf {
         getInstance().clearCache();
     }
 
+    public static void clearCache(ClientId clientId) {
+        getInstance().clearCache(clientId);
+    }
+
     public static boolean isAvailable() {
         return getInstance().isAvailable();
     }
@@ -207,6 +207,14 @@ public interface ServerConfProvider {
         // by default there is no cache to clear
     }
 
+    /**
+     * Clear cached configuration of the given client and its services
+     * @param clientId the client identifier
+     */
+    default void clearCache(ClientId clientId) {
+        // by default there is no cache to clear
+    }
+
     /**
      * @return true if this provider is capable of providing configuration
      */
@@ -154,6 +154,21 @@ public class CachingServerConfTest {
         assertTrue(ServerConf.serviceExists(service));
     }
 
+    /**
+     * Tests that clearing the cache of a single client reloads its services.
+     */
+    @Test
+    public void clearClientCache() {
+        ClientId.Conf serviceProvider = createTestClientId(client(1));
+        ServiceId.Conf service = ServiceId.Conf.create(serviceProvider, service(1, 1), SERVICE_VERSION);
+        assertEquals(SERVICE_URL + 1, ServerConf.getServiceAddress(service));
+
+        ServerConf.clearCache(serviceProvider);
+
+        assertEquals(SERVICE_URL + 1, ServerConf.getServiceAddress(service));
+        assertEquals(IsAuthentication.SSLAUTH, ServerConf.getIsAuthentication(serviceProvider));
+    }
+
     /**
      * Tests getting all services.
      */
@@ -30,6 +30,7 @@ import ee.ria.xroad.common.CertificationServiceStatus;
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.DiagnosticsErrorCodes;
 import ee.ria.xroad.common.OcspResponderStatus;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.cert.CertChain;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.globalconfextension.GlobalConfExtensions;
@@ -37,15 +38,19 @@ import ee.ria.xroad.common.conf.globalconfextension.OcspFetchInterval;
 import ee.ria.xroad.common.ocsp.OcspVerifier;
 import ee.ria.xroad.common.ocsp.OcspVerifierOptions;
 import ee.ria.xroad.common.util.CertUtils;
+import ee.ria.xroad.common.util.MetricsHolder;
 import ee.ria.xroad.common.util.TimeUtils;
 import ee.ria.xroad.signer.job.OcspClientExecuteScheduler;
 import ee.ria.xroad.signer.protocol.dto.CertificateInfo;
 import ee.ria.xroad.signer.tokenmanager.TokenManager;
 
+import com.codahale.metrics.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
 import org.bouncycastle.cert.ocsp.OCSPException;
 import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.SingleResp;
 import org.niis.xroad.signer.proto.SetOcspResponsesReq;
 
 import java.io.IOException;
@@ -57,14 +62,24 @@ import java.time.OffsetDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
+import static com.codahale.metrics.MetricRegistry.name;
 import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
 import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
 import static ee.ria.xroad.common.util.CryptoUtils.readCertificate;
@@ -74,7 +89,9 @@ import static java.util.Collections.emptyList;
  * This class is responsible for retrieving the OCSP responses from the OCSP
  * server and providing the responses to the message signer.
  * <p>
- * The certificate status is queried from the server at a fixed interval.
+ * The certificate status is queried from the server at a fixed interval. The certificates are refreshed
+ * concurrently, the ones whose cached responses expire first are queried first. The number of concurrent
+ * requests sent to a single responder is limited.
  */
 @Slf4j
 @RequiredArgsConstructor
@@ -89,6 +106,13 @@ public class OcspClientWorker {
 
     private final CertificationServiceDiagnostics certServDiagnostics = new CertificationServiceDiagnostics();
 
+    private final ThreadPoolExecutor refreshExecutor = createRefreshExecutor();
+
+    private final Map<String, Semaphore> responderPermits = new ConcurrentHashMap<>();
+
+    private final Timer refreshCycleTime = MetricsHolder.getRegistry()
+            .timer(name(OcspClientWorker.class, "refreshCycleTime"));
+
     public CertificationServiceDiagnostics getDiagnostics() {
         return certServDiagnostics;
     }
@@ -167,27 +191,23 @@ public class OcspClientWorker {
 
         log.info("Fetching OCSP responses for {} certificates", certs.size());
 
-        boolean failed = false;
-        Map<String, OCSPResp> statuses = new HashMap<>();
-
-        for (X509Certificate subject : certs) {
-            try {
-                OCSPResp status = queryCertStatus(subject, new OcspVerifierOptions(
-                        GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate()));
-                if (status != null) {
-                    String subjectHash = calculateCertHexHash(subject);
-                    statuses.put(subjectHash, status);
-                } else {
-                    failed = true;
-                }
-            } catch (Exception e) {
-                failed = true;
+        final AtomicBoolean failed = new AtomicBoolean();
+        final Map<String, OCSPResp> statuses = new ConcurrentHashMap<>();
+        final OcspVerifierOptions verifierOptions = new OcspVerifierOptions(
+                GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate());
 
-                log.error("Error when querying certificate '{}'", subject.getSerialNumber(), e);
+        try (Timer.Context ignored = refreshCycleTime.time()) {
+            final List<Future<?>> queries = new ArrayList<>(certs.size());
+            final PriorityQueue<RefreshTask> tasks = prioritize(certs, verifierOptions);
+            while (!tasks.isEmpty()) {
+                final RefreshTask task = tasks.poll();
+                queries.add(refreshExecutor.submit(() -> refresh(task, verifierOptions, statuses, failed)));
             }
+            awaitAll(queries, failed);
         }
+
         if (ocspClientExecuteScheduler != null) {
-            if (failed) {
+            if (failed.get()) {
                 ocspClientExecuteScheduler.failure();
             } else {
                 ocspClientExecuteScheduler.success();
@@ -201,6 +221,83 @@ public class OcspClientWorker {
         }
     }
 
+    private void refresh(RefreshTask task, OcspVerifierOptions verifierOptions, Map<String, OCSPResp> statuses,
+            AtomicBoolean failed) {
+        try {
+            OCSPResp status = queryCertStatus(task.subject, verifierOptions);
+            if (status != null) {
+                statuses.put(task.subjectHash, status);
+            } else {
+                failed.set(true);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed.set(true);
+
+            log.warn("Interrupted when querying certificate '{}'", task.subject.getSerialNumber());
+        } catch (Exception e) {
+            failed.set(true);
+
+            log.error("Error when querying certificate '{}'", task.subject.getSerialNumber(), e);
+        }
+    }
+
+    private static void awaitAll(List<Future<?>> queries, AtomicBoolean failed) {
+        for (Future<?> query : queries) {
+            try {
+                query.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queries.forEach(q -> q.cancel(true));
+                failed.set(true);
+                return;
+            } catch (ExecutionException e) {
+                failed.set(true);
+                log.error("Error when querying certificate status", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Orders the certificates so that the ones without a valid cached OCSP response come first, followed by the
+     * ones whose cached responses expire earliest.
+     */
+    private PriorityQueue<RefreshTask> prioritize(List<X509Certificate> certs, OcspVerifierOptions verifierOptions) {
+        final PriorityQueue<RefreshTask> tasks = new PriorityQueue<>(Math.max(1, certs.size()),
+                Comparator.comparingLong((RefreshTask task) -> task.expiresAt));
+        final long freshnessMillis = TimeUnit.SECONDS.toMillis(GlobalConf.getOcspFreshnessSeconds());
+
+        for (X509Certificate subject : certs) {
+            try {
+                final String subjectHash = calculateCertHexHash(subject);
+                tasks.add(new RefreshTask(subject, subjectHash,
+                        getExpiryTime(subjectHash, freshnessMillis, verifierOptions.isVerifyNextUpdate())));
+            } catch (Exception e) {
+                log.error("Error when calculating hash of certificate '{}'", subject.getSerialNumber(), e);
+            }
+        }
+        return tasks;
+    }
+
+    private long getExpiryTime(String subjectHash, long freshnessMillis, boolean verifyNextUpdate) {
+        try {
+            final OCSPResp response = ocspResponseManager.getCachedResponse(subjectHash);
+            if (response == null) {
+                return Long.MIN_VALUE;
+            }
+
+            final SingleResp singleResp = ((BasicOCSPResp) response.getResponseObject()).getResponses()[0];
+            long expiresAt = singleResp.getThisUpdate().getTime() + freshnessMillis;
+            if (verifyNextUpdate && singleResp.getNextUpdate() != null) {
+                expiresAt = Math.min(expiresAt, singleResp.getNextUpdate().getTime());
+            }
+            return expiresAt;
+        } catch (Exception e) {
+            log.debug("Unable to read the cached OCSP response of certificate {}", subjectHash, e);
+            return Long.MIN_VALUE;
+        }
+    }
+
     List<X509Certificate> getCertsForOcsp() {
         Set<X509Certificate> certs = new HashSet<>();
 
@@ -267,8 +364,8 @@ public class OcspClientWorker {
 
             try {
                 log.debug("Fetching response from: {}", responderURI);
-                final OCSPResp response = OcspClient
-                        .fetchResponse(responderURI, subject, issuer, signerKey, signer, signAlgoId);
+                final OCSPResp response = fetchResponse(responderURI, subject, issuer, signerKey, signer,
+                        signAlgoId);
 
                 if (response != null) {
                     log.debug("Verifying response: {}", response);
@@ -289,6 +386,10 @@ public class OcspClientWorker {
             } catch (CodedException e) {
                 log.warn("Received OCSP response that failed verification", e);
                 errorCode = DiagnosticsErrorCodes.ERROR_CODE_OCSP_RESPONSE_UNVERIFIED;
+            } catch (InterruptedException e) {
+                // interrupted while waiting for a request permit, do not try the other responders
+                Thread.currentThread().interrupt();
+                throw e;
             } catch (Exception e) {
                 log.error("Unable to fetch response from responder at {}", responderURI, e);
                 errorCode = DiagnosticsErrorCodes.ERROR_CODE_OCSP_RESPONSE_INVALID;
@@ -300,9 +401,31 @@ public class OcspClientWorker {
         return null;
     }
 
+    private OCSPResp fetchResponse(String responderURI, X509Certificate subject, X509Certificate issuer,
+            PrivateKey signerKey, X509Certificate signer, String signAlgoId) throws Exception {
+        final Semaphore permits = responderPermits.computeIfAbsent(responderURI,
+                uri -> new Semaphore(SystemProperties.getOcspResponderMaxConcurrentRequests()));
+        final Timer responseTime = MetricsHolder.getRegistry()
+                .timer(name(OcspClientWorker.class, "responseTime", responderURI));
+
+        permits.acquire();
+        try (Timer.Context ignored = responseTime.time()) {
+            return OcspClient.fetchResponse(responderURI, subject, issuer, signerKey, signer, signAlgoId);
+        } finally {
+            permits.release();
+        }
+    }
+
     private void reportOcspDiagnostics(X509Certificate issuer, String responderURI, int statusCode,
                                        OffsetDateTime prevUpdate, OffsetDateTime nextUpdate) {
+        // responses to different certificates are fetched concurrently
+        synchronized (certServDiagnostics) {
+            doReportOcspDiagnostics(issuer, responderURI, statusCode, prevUpdate, nextUpdate);
+        }
+    }
 
+    private void doReportOcspDiagnostics(X509Certificate issuer, String responderURI, int statusCode,
+                                         OffsetDateTime prevUpdate, OffsetDateTime nextUpdate) {
         OcspResponderStatus responderStatus = new OcspResponderStatus(statusCode, responderURI, prevUpdate, nextUpdate);
 
         String subjectName = issuer.getSubjectDN().toString();
@@ -414,6 +537,30 @@ public class OcspClientWorker {
         }
     }
 
+    private static ThreadPoolExecutor createRefreshExecutor() {
+        final int threads = SystemProperties.getOcspRefreshThreads();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    final Thread thread = new Thread(r, "ocsp-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static final class RefreshTask {
+        private final X509Certificate subject;
+        private final String subjectHash;
+        private final long expiresAt;
+
+        RefreshTask(X509Certificate subject, String subjectHash, long expiresAt) {
+            this.subject = subject;
+            this.subjectHash = subjectHash;
+            this.expiresAt = expiresAt;
+        }
+    }
+
     /**
      * @return the next ocsp freshness time in seconds
      */
@@ -171,6 +171,14 @@ public class OcspResponseManager {
         TokenManager.setOcspResponse(certHash, response);
     }
 
+    /**
+     * @param certHash the certificate hash
+     * @return the cached, non-expired OCSP response of the certificate or null if there is none
+     */
+    OCSPResp getCachedResponse(String certHash) {
+        return getResponse(certHash);
+    }
+
     private OCSPResp getResponse(String certHash) {
         return responseCache.get(certHash);
     }
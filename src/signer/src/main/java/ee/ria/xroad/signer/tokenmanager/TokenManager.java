@@ -42,7 +42,6 @@ import ee.ria.xroad.signer.tokenmanager.merge.MergeOntoFileTokensStrategy;
 import ee.ria.xroad.signer.tokenmanager.merge.TokenMergeAddedCertificatesListener;
 import ee.ria.xroad.signer.tokenmanager.merge.TokenMergeStrategy;
 import ee.ria.xroad.signer.tokenmanager.merge.TokenMergeStrategy.MergeResult;
-import ee.ria.xroad.signer.tokenmanager.module.SoftwareModuleType;
 import ee.ria.xroad.signer.tokenmanager.token.TokenType;
 import ee.ria.xroad.signer.util.SignerUtil;
 import ee.ria.xroad.signer.util.TokenAndKey;
@@ -69,12 +68,18 @@ import static java.util.Collections.unmodifiableList;
 
 /**
  * Manages the current state of tokens, their keys and certificates.
+ * <p>
+ * Modifications are serialized on the class monitor, and each of them publishes a new immutable
+ * {@link TokenSnapshot}. Lookups only read the published snapshot, so they never wait for
+ * modifications or for slow operations like {@link #saveToConf()}.
  */
 @Slf4j
 public final class TokenManager {
 
     private static volatile List<Token> currentTokens = new ArrayList<>();
 
+    private static volatile TokenSnapshot snapshot = TokenSnapshot.of(currentTokens);
+
     private static boolean initialized;
 
     // configure the implementation somewhere else if multiple implementations created
@@ -95,7 +100,10 @@ public final class TokenManager {
             log.error("Failed to load token conf", e);
         }
 
-        currentTokens = new ArrayList<>(TokenConf.getInstance().getTokens());
+        synchronized (TokenManager.class) {
+            currentTokens = new ArrayList<>(TokenConf.getInstance().getTokens());
+            publishSnapshot();
+        }
 
         initialized = true;
     }
@@ -137,6 +145,7 @@ public final class TokenManager {
             synchronized (TokenManager.class) {
                 result = mergeStrategy.merge(fileTokens, currentTokens);
                 currentTokens = result.getResultTokens();
+                publishSnapshot();
             }
             if (listener != null) {
                 listener.mergeDone(result.getAddedCertificates());
@@ -155,11 +164,8 @@ public final class TokenManager {
     /**
      * @return list of tokens
      */
-    public static synchronized List<TokenInfo> listTokens() {
-        return unmodifiableList(
-                currentTokens.stream()
-                        .map(Token::toDTO)
-                        .collect(Collectors.toList()));
+    public static List<TokenInfo> listTokens() {
+        return snapshot().tokens;
     }
 
     /**
@@ -188,6 +194,7 @@ public final class TokenManager {
         token.setAvailable(true);
 
         currentTokens.add(token);
+        publishSnapshot();
 
         return token.toDTO();
     }
@@ -210,13 +217,10 @@ public final class TokenManager {
      * @param tokenId the token id
      * @return the token info DTO for the token id or null of not found
      */
-    public static synchronized TokenInfo getTokenInfo(String tokenId) {
+    public static TokenInfo getTokenInfo(String tokenId) {
         log.trace("getTokenInfo({})", tokenId);
 
-        return currentTokens.stream()
-                .filter(t -> t.getId().equals(tokenId))
-                .map(Token::toDTO)
-                .findFirst().orElse(null);
+        return snapshot().tokensById.get(tokenId);
     }
 
     /**
@@ -224,7 +228,7 @@ public final class TokenManager {
      * @return the token info DTO for the token
      * @throws Exception if key was not found
      */
-    public static synchronized TokenInfo findTokenInfoForKeyId(String keyId) {
+    public static TokenInfo findTokenInfoForKeyId(String keyId) {
         log.trace("getTokenInfoForKeyId({})", keyId);
         String tokenId = findTokenIdForKeyId(keyId);
         return getTokenInfo(tokenId);
@@ -234,72 +238,78 @@ public final class TokenManager {
      * @param keyId the key id
      * @return the token and key or throws exception if not found
      */
-    public static synchronized TokenAndKey findTokenAndKey(String keyId) {
+    public static TokenAndKey findTokenAndKey(String keyId) {
         log.trace("findTokenAndKey({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> new TokenAndKey(t.getId(), k.toDTO()))
-                .orElseThrow(() -> keyNotFound(keyId));
+        TokenSnapshot current = snapshot();
+        KeyInfo keyInfo = current.keysById.get(keyId);
+        if (keyInfo == null) {
+            throw keyNotFound(keyId);
+        }
+
+        return new TokenAndKey(current.tokenIdsByKeyId.get(keyId), keyInfo);
     }
 
     /**
      * @param certHash the certificate hash
      * @return the tokenInfo and key id, or throws exception if not found
      */
-    public static synchronized TokenInfoAndKeyId findTokenAndKeyIdForCertHash(String certHash) {
+    public static TokenInfoAndKeyId findTokenAndKeyIdForCertHash(String certHash) {
         log.trace("findTokenAndKeyIdForCertHash({})", certHash);
 
-        String keyId = forCert((k, c) -> certHash.equals(c.getHash()),
-                (k, c) -> k.getId())
-                .orElseThrow(() -> certWithHashNotFound(certHash));
+        TokenSnapshot current = snapshot();
+        KeyInfo keyInfo = current.keysByCertHash.get(certHash);
+        if (keyInfo == null) {
+            throw certWithHashNotFound(certHash);
+        }
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> new TokenInfoAndKeyId(t.toDTO(), keyId))
-                .orElseThrow(() -> keyNotFound(keyId));
+        return tokenInfoAndKeyId(current, keyInfo.getId());
     }
 
     /**
      * @param certRequestId the certificate request id
      * @return the tokenInfo and key id, or throws exception if not found
      */
-    public static synchronized TokenInfoAndKeyId findTokenAndKeyIdForCertRequestId(String certRequestId) {
+    public static TokenInfoAndKeyId findTokenAndKeyIdForCertRequestId(String certRequestId) {
         log.trace("findTokenAndKeyIdForCertRequestId({})", certRequestId);
 
-        String keyId = forCertRequest((k, c) -> certRequestId.equals(c.getId()),
-                (k, c) -> k.getId())
-                .orElseThrow(() -> csrWithIdNotFound(certRequestId));
+        TokenSnapshot current = snapshot();
+        String keyId = current.keyIdsByCertRequestId.get(certRequestId);
+        if (keyId == null) {
+            throw csrWithIdNotFound(certRequestId);
+        }
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> new TokenInfoAndKeyId(t.toDTO(), keyId))
-                .orElseThrow(() -> keyNotFound(keyId));
+        return tokenInfoAndKeyId(current, keyId);
     }
 
     /**
      * @param keyId the key id
      * @return the token id for the key id or throws exception if not found
      */
-    public static synchronized String findTokenIdForKeyId(String keyId) {
+    public static String findTokenIdForKeyId(String keyId) {
         log.trace("findTokenIdForKeyId({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> t.getId()).orElseThrow(() -> keyNotFound(keyId));
+        String tokenId = snapshot().tokenIdsByKeyId.get(keyId);
+        if (tokenId == null) {
+            throw keyNotFound(keyId);
+        }
+
+        return tokenId;
     }
 
     /**
      * @return the software token id
      */
-    public static synchronized String getSoftwareTokenId() {
-        return forToken(t -> t.getType().equals(SoftwareModuleType.TYPE),
-                t -> t.getId()).orElse(null);
+    public static String getSoftwareTokenId() {
+        return snapshot().softwareTokenId;
     }
 
     /**
      * @param tokenId the token id
      * @return the module id for the token id or null if not found
      */
-    public static synchronized String getModuleId(String tokenId) {
-        return forToken(t -> t.getId().equals(tokenId),
-                t -> t.getModuleId()).orElse(null);
+    public static String getModuleId(String tokenId) {
+        return snapshot().moduleIdsByTokenId.get(tokenId);
     }
 
     /**
@@ -319,46 +329,27 @@ public final class TokenManager {
      * @param keyId the key id
      * @return the key info for the key id or null if not found
      */
-    public static synchronized KeyInfo getKeyInfo(String keyId) {
+    public static KeyInfo getKeyInfo(String keyId) {
         log.trace("getKeyInfo({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> k.toDTO()).orElse(null);
+        return snapshot().keysById.get(keyId);
     }
 
     /**
      * @param clientId the client id
      * @return the list of keys for the given client id
      */
-    public static synchronized List<KeyInfo> getKeyInfo(ClientId clientId) {
+    public static List<KeyInfo> getKeyInfo(ClientId clientId) {
         log.trace("getKeyInfo({})", clientId);
 
         List<KeyInfo> keyInfo = new ArrayList<>();
 
-        for (Token token : currentTokens) {
-            if (token.isInActive()) {
-                // Ignore inactive (not usable) tokens
-                continue;
-            }
-
-            for (Key key : token.getKeys()) {
-                if (!key.isValidForSigning()) {
-                    // Ignore authentication keys
-                    continue;
-                }
-
-                for (Cert cert : key.getCerts()) {
-                    if (cert.isInvalid()) {
-                        // Ignore inactive and invalid certificates
-                        continue;
-                    }
-
-                    if (certBelongsToMember(cert.toDTO(), clientId)) {
-                        log.debug("Found key '{}' for client '{}'",
-                                key.getId(), cert.getMemberId());
-                        keyInfo.add(key.toDTO());
-                    }
-                }
+        // Only signing certificates of active tokens and available signing keys are considered
+        for (TokenSnapshot.SigningCert signingCert : snapshot().signingCerts) {
+            if (certBelongsToMember(signingCert.cert, clientId)) {
+                log.debug("Found key '{}' for client '{}'",
+                        signingCert.key.getId(), signingCert.cert.getMemberId());
+                keyInfo.add(signingCert.key);
             }
         }
 
@@ -383,48 +374,44 @@ public final class TokenManager {
      * @param certId the certificate id
      * @return the certificate info for the certificate id or null if not found
      */
-    public static synchronized CertificateInfo getCertificateInfo(
+    public static CertificateInfo getCertificateInfo(
             String certId) {
         log.trace("getCertificateInfo({})", certId);
 
-        return forCert((k, c) -> c.getId().equals(certId), (k, c) -> c.toDTO())
-                .orElse(null);
+        return snapshot().certsById.get(certId);
     }
 
     /**
      * @param certHash the certificate hash
      * @return the certificate info for the certificate hash or null
      */
-    public static synchronized CertificateInfo getCertificateInfoForCertHash(
+    public static CertificateInfo getCertificateInfoForCertHash(
             String certHash) {
         log.trace("getCertificateInfoForCertHash({})", certHash);
 
-        return forCert((k, c) -> certHash.equals(c.getHash()),
-                (k, c) -> c.toDTO()).orElse(null);
+        return snapshot().certsByHash.get(certHash);
     }
 
     /**
      * @param certHash the certificate hash
      * @return the certificate for the certificate hash or null
      */
-    public static synchronized X509Certificate getCertificateForCertHash(
+    public static X509Certificate getCertificateForCertHash(
             String certHash) {
         log.trace("getCertificateForCertHash({})", certHash);
 
-        return forCert((k, c) -> certHash.equals(c.getHash()),
-                (k, c) -> c.getCertificate()).orElse(null);
+        return snapshot().certificatesByHash.get(certHash);
     }
 
     /**
      * @return all certificates
      */
-    public static synchronized List<CertificateInfo> getAllCerts() {
+    public static List<CertificateInfo> getAllCerts() {
         log.trace("getAllCerts()");
 
-        return currentTokens.stream()
-                .flatMap(t -> t.getKeys().stream())
+        return snapshot().tokens.stream()
+                .flatMap(t -> t.getKeyInfo().stream())
                 .flatMap(k -> k.getCerts().stream())
-                .map(c -> c.toDTO())
                 .collect(Collectors.toList());
     }
 
@@ -443,6 +430,7 @@ public final class TokenManager {
                     c.setOcspResponse(response);
                     return null;
                 });
+        publishSnapshot();
     }
 
     /**
@@ -465,34 +453,30 @@ public final class TokenManager {
      * @param certReqId cert request id
      * @return the certificate request info or null if not found
      */
-    public static synchronized CertRequestInfo getCertRequestInfo(String certReqId) {
+    public static CertRequestInfo getCertRequestInfo(String certReqId) {
         log.trace("getCertRequestInfo({})", certReqId);
 
-        return forCertRequest((k, c) -> certReqId.equals(c.getId()),
-                (k, c) -> c.toDTO())
-                .orElse(null);
+        return snapshot().certRequestsById.get(certReqId);
     }
 
     /**
      * @param certHash the certificate hash
      * @return key info for the certificate hash
      */
-    public static synchronized KeyInfo getKeyInfoForCertHash(String certHash) {
+    public static KeyInfo getKeyInfoForCertHash(String certHash) {
         log.trace("getKeyInfoForCertHash({})", certHash);
 
-        return forCert((k, c) -> certHash.equals(c.getHash()),
-                (k, c) -> k.toDTO()).orElse(null);
+        return snapshot().keysByCertHash.get(certHash);
     }
 
     /**
      * @param certId the certificate id
      * @return key info for certificate id
      */
-    public static synchronized KeyInfo getKeyInfoForCertId(String certId) {
+    public static KeyInfo getKeyInfoForCertId(String certId) {
         log.trace("getKeyInfoForCertId({})", certId);
 
-        return forCert((k, c) -> c.getId().equals(certId),
-                (k, c) -> k.toDTO()).orElse(null);
+        return snapshot().keysByCertId.get(certId);
     }
 
     /**
@@ -510,20 +494,20 @@ public final class TokenManager {
      * @param tokenId the token id
      * @return true if token is available
      */
-    public static synchronized boolean isTokenAvailable(String tokenId) {
+    public static boolean isTokenAvailable(String tokenId) {
         log.trace("isTokenAvailable({})", tokenId);
 
-        return findToken(tokenId).isAvailable();
+        return findTokenInfo(tokenId).isAvailable();
     }
 
     /**
      * @param tokenId the token id
      * @return true if token is active (logged in)
      */
-    public static synchronized boolean isTokenActive(String tokenId) {
+    public static boolean isTokenActive(String tokenId) {
         log.trace("isTokenActive({})", tokenId);
 
-        return findToken(tokenId).isActive();
+        return findTokenInfo(tokenId).isActive();
     }
 
     /**
@@ -541,6 +525,7 @@ public final class TokenManager {
         Token token = findToken(tokenId);
         token.setAvailable(available);
         token.setModuleId(tokenType.getModuleType());
+        publishSnapshot();
     }
 
     /**
@@ -553,6 +538,7 @@ public final class TokenManager {
         log.trace("setTokenAvailable({}, {})", tokenId, available);
 
         findToken(tokenId).setAvailable(available);
+        publishSnapshot();
     }
 
     /**
@@ -566,6 +552,7 @@ public final class TokenManager {
         log.trace("setTokenActive({}, {})", tokenId, active);
 
         findToken(tokenId).setActive(active);
+        publishSnapshot();
     }
 
     /**
@@ -579,16 +566,17 @@ public final class TokenManager {
         log.trace("setTokenFriendlyName({}, {})", tokenId, friendlyName);
 
         findToken(tokenId).setFriendlyName(friendlyName);
+        publishSnapshot();
     }
 
     /**
      * @param tokenId the token if
      * @return the token status info
      */
-    public static synchronized TokenStatusInfo getTokenStatus(String tokenId) {
+    public static TokenStatusInfo getTokenStatus(String tokenId) {
         log.trace("getTokenStatus({})", tokenId);
 
-        return findToken(tokenId).getStatus();
+        return findTokenInfo(tokenId).getStatus();
     }
 
     /**
@@ -602,6 +590,7 @@ public final class TokenManager {
         log.trace("setTokenStatus({}, {})", tokenId, status);
 
         findToken(tokenId).setStatus(status);
+        publishSnapshot();
     }
 
     /**
@@ -615,16 +604,17 @@ public final class TokenManager {
         log.trace("setKeyAvailable({}, {})", keyId, available);
 
         findKey(keyId).setAvailable(available);
+        publishSnapshot();
     }
 
     /**
      * @param keyId the key id
      * @return true if key is available
      */
-    public static synchronized boolean isKeyAvailable(String keyId) {
+    public static boolean isKeyAvailable(String keyId) {
         log.trace("isKeyAvailable()");
 
-        return findKey(keyId).isAvailable();
+        return findKeyInfo(keyId).isAvailable();
     }
 
     /**
@@ -638,6 +628,7 @@ public final class TokenManager {
         log.trace("setKeyFriendlyName({}, {})", keyId, friendlyName);
 
         findKey(keyId).setFriendlyName(friendlyName);
+        publishSnapshot();
     }
 
     /**
@@ -650,6 +641,7 @@ public final class TokenManager {
         log.trace("setKeyLabel({}, {})", keyId, label);
 
         findKey(keyId).setLabel(label);
+        publishSnapshot();
     }
 
     /**
@@ -663,6 +655,7 @@ public final class TokenManager {
         log.trace("setKeyUsage({}, {})", keyId, keyUsage);
 
         findKey(keyId).setUsage(keyUsage);
+        publishSnapshot();
     }
 
     /**
@@ -682,6 +675,7 @@ public final class TokenManager {
         key.setPublicKey(publicKeyBase64);
 
         token.addKey(key);
+        publishSnapshot();
 
         return key.toDTO();
     }
@@ -695,8 +689,11 @@ public final class TokenManager {
     public static synchronized boolean removeKey(String keyId) {
         log.trace("removeKey({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
+        boolean removed = forKey((t, k) -> k.getId().equals(keyId),
                 (t, k) -> t.getKeys().remove(k)).orElse(false);
+        publishSnapshot();
+
+        return removed;
     }
 
     /**
@@ -710,6 +707,7 @@ public final class TokenManager {
         log.trace("setPublicKey({}, {})", keyId, publicKeyBase64);
 
         findKey(keyId).setPublicKey(publicKeyBase64);
+        publishSnapshot();
     }
 
     /**
@@ -727,6 +725,7 @@ public final class TokenManager {
         cert.setCertificate(certBytes);
 
         key.addCert(cert);
+        publishSnapshot();
     }
 
     /**
@@ -746,6 +745,7 @@ public final class TokenManager {
         cert.setStatus(initialStatus);
 
         key.addCert(cert);
+        publishSnapshot();
     }
 
     /**
@@ -759,6 +759,7 @@ public final class TokenManager {
         log.trace("setCertActive({}, {})", certId, active);
 
         findCert(certId).setActive(active);
+        publishSnapshot();
     }
 
     /**
@@ -772,6 +773,7 @@ public final class TokenManager {
         log.trace("setCertStatus({}, {})", certId, status);
 
         findCert(certId).setStatus(status);
+        publishSnapshot();
     }
 
     /**
@@ -783,8 +785,11 @@ public final class TokenManager {
     public static synchronized boolean removeCert(String certId) {
         log.trace("removeCert({})", certId);
 
-        return forCert((k, c) -> c.getId().equals(certId),
+        boolean removed = forCert((k, c) -> c.getId().equals(certId),
                 (k, c) -> k.getCerts().remove(c)).orElse(false);
+        publishSnapshot();
+
+        return removed;
     }
 
     /**
@@ -812,6 +817,7 @@ public final class TokenManager {
         }
 
         key.setUsage(keyUsage);
+        publishSnapshot();
 
         for (CertRequest certRequest : key.getCertRequests()) {
             ClientId crMember = certRequest.getMemberId();
@@ -829,6 +835,7 @@ public final class TokenManager {
 
         String certId = SignerUtil.randomId();
         key.addCertRequest(new CertRequest(certId, memberId, subjectName));
+        publishSnapshot();
 
         log.info("Added new certificate request (memberId: {}, "
                         + "subjectId: {}) under key {}",
@@ -846,7 +853,7 @@ public final class TokenManager {
     public static synchronized String removeCertRequest(String certReqId) {
         log.trace("removeCertRequest({})", certReqId);
 
-        return forCertRequest((k, c) -> c.getId().equals(certReqId),
+        String keyId = forCertRequest((k, c) -> c.getId().equals(certReqId),
                 (k, c) -> {
                     if (!k.getCertRequests().remove(c)) {
                         return null;
@@ -854,6 +861,9 @@ public final class TokenManager {
 
                     return k.getId();
                 }).orElse(null);
+        publishSnapshot();
+
+        return keyId;
     }
 
     /**
@@ -863,21 +873,50 @@ public final class TokenManager {
      * @param info    the token info
      */
     public static synchronized void setTokenInfo(String tokenId, Map<String, String> info) {
-        findToken(tokenId).setInfo(info);
+        Token token = findToken(tokenId);
+        if (!token.getTokenInfo().equals(info)) {
+            token.setInfo(info);
+            publishSnapshot();
+        }
     }
 
     /**
      * @param tokenId the token id
      * @return true if batch signing is enabled for a token
      */
-    public static synchronized boolean isBatchSigningEnabled(String tokenId) {
+    public static boolean isBatchSigningEnabled(String tokenId) {
         log.trace("isBatchSigningEnabled({})", tokenId);
 
-        return findToken(tokenId).isBatchSigningEnabled();
+        Boolean enabled = snapshot().batchSigningEnabledByTokenId.get(tokenId);
+        if (enabled == null) {
+            throw tokenNotFound(tokenId);
+        }
+
+        return enabled;
     }
 
     // ------------------------------------------------------------------------
 
+    private static TokenSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Publishes a snapshot of the current tokens. Must be called holding the class monitor after each modification.
+     */
+    private static void publishSnapshot() {
+        snapshot = TokenSnapshot.of(currentTokens);
+    }
+
+    private static TokenInfoAndKeyId tokenInfoAndKeyId(TokenSnapshot current, String keyId) {
+        String tokenId = current.tokenIdsByKeyId.get(keyId);
+        if (tokenId == null) {
+            throw keyNotFound(keyId);
+        }
+
+        return new TokenInfoAndKeyId(current.tokensById.get(tokenId), keyId);
+    }
+
     private static <T> Optional<T> forToken(Function<Token, Boolean> tester, Function<Token, T> mapper) {
         for (Token token : currentTokens) {
             if (tester.apply(token)) {
@@ -0,0 +1,193 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager;
+
+import ee.ria.xroad.signer.model.Cert;
+import ee.ria.xroad.signer.model.CertRequest;
+import ee.ria.xroad.signer.model.Key;
+import ee.ria.xroad.signer.model.Token;
+import ee.ria.xroad.signer.protocol.dto.CertRequestInfo;
+import ee.ria.xroad.signer.protocol.dto.CertificateInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyInfo;
+import ee.ria.xroad.signer.protocol.dto.TokenInfo;
+import ee.ria.xroad.signer.tokenmanager.module.SoftwareModuleType;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
+
+/**
+ * Immutable, indexed view of the tokens, keys and certificates at one point in time.
+ * <p>
+ * The {@link TokenManager} publishes a new snapshot after its state has changed, so that
+ * the frequent lookups (by token id, key id, certificate id and hash, certificate request id)
+ * can be answered with hash lookups and without taking the lock guarding the mutable model.
+ * When the same id occurs more than once, the first occurrence in token/key order wins,
+ * matching the linear lookups of the mutable model.
+ */
+final class TokenSnapshot {
+
+    /**
+     * A signing certificate usable by a member together with its key.
+     */
+    static final class SigningCert {
+        final KeyInfo key;
+        final CertificateInfo cert;
+
+        SigningCert(KeyInfo key, CertificateInfo cert) {
+            this.key = key;
+            this.cert = cert;
+        }
+    }
+
+    final List<TokenInfo> tokens;
+
+    final Map<String, TokenInfo> tokensById;
+    final Map<String, String> moduleIdsByTokenId;
+    final Map<String, Boolean> batchSigningEnabledByTokenId;
+    final String softwareTokenId;
+
+    final Map<String, KeyInfo> keysById;
+    final Map<String, String> tokenIdsByKeyId;
+
+    final Map<String, CertificateInfo> certsById;
+    final Map<String, CertificateInfo> certsByHash;
+    final Map<String, X509Certificate> certificatesByHash;
+    final Map<String, KeyInfo> keysByCertId;
+    final Map<String, KeyInfo> keysByCertHash;
+
+    final Map<String, CertRequestInfo> certRequestsById;
+    final Map<String, String> keyIdsByCertRequestId;
+
+    // signing certificates of active tokens and available signing keys, in token/key order
+    final List<SigningCert> signingCerts;
+
+    private TokenSnapshot(List<Token> currentTokens) {
+        List<TokenInfo> tokenList = new ArrayList<>(currentTokens.size());
+        Map<String, TokenInfo> tokenMap = new HashMap<>();
+        Map<String, String> moduleIds = new HashMap<>();
+        Map<String, Boolean> batchSigning = new HashMap<>();
+        String softToken = null;
+
+        Map<String, KeyInfo> keys = new HashMap<>();
+        Map<String, String> tokenIds = new HashMap<>();
+
+        Map<String, CertificateInfo> certs = new HashMap<>();
+        Map<String, CertificateInfo> certHashes = new HashMap<>();
+        Map<String, X509Certificate> certificates = new HashMap<>();
+        Map<String, KeyInfo> keysForCertIds = new HashMap<>();
+        Map<String, KeyInfo> keysForCertHashes = new HashMap<>();
+
+        Map<String, CertRequestInfo> certRequests = new HashMap<>();
+        Map<String, String> keyIdsForCertRequests = new HashMap<>();
+
+        List<SigningCert> signing = new ArrayList<>();
+
+        for (Token token : currentTokens) {
+            TokenInfo tokenInfo = token.toDTO();
+            tokenList.add(tokenInfo);
+            tokenMap.putIfAbsent(token.getId(), tokenInfo);
+            moduleIds.putIfAbsent(token.getId(), token.getModuleId());
+            batchSigning.putIfAbsent(token.getId(), token.isBatchSigningEnabled());
+
+            if (softToken == null && SoftwareModuleType.TYPE.equals(token.getType())) {
+                softToken = token.getId();
+            }
+
+            List<KeyInfo> keyInfos = tokenInfo.getKeyInfo();
+            for (int i = 0; i < token.getKeys().size(); i++) {
+                Key key = token.getKeys().get(i);
+                KeyInfo keyInfo = keyInfos.get(i);
+
+                keys.putIfAbsent(key.getId(), keyInfo);
+                tokenIds.putIfAbsent(key.getId(), token.getId());
+
+                boolean usableForSigning = !token.isInActive() && key.isValidForSigning();
+
+                List<CertificateInfo> certInfos = keyInfo.getCerts();
+                for (int j = 0; j < key.getCerts().size(); j++) {
+                    Cert cert = key.getCerts().get(j);
+                    CertificateInfo certInfo = certInfos.get(j);
+
+                    certs.putIfAbsent(cert.getId(), certInfo);
+                    keysForCertIds.putIfAbsent(cert.getId(), keyInfo);
+
+                    if (cert.getHash() != null) {
+                        certHashes.putIfAbsent(cert.getHash(), certInfo);
+                        keysForCertHashes.putIfAbsent(cert.getHash(), keyInfo);
+                        if (cert.getCertificate() != null) {
+                            certificates.putIfAbsent(cert.getHash(), cert.getCertificate());
+                        }
+                    }
+
+                    if (usableForSigning && !cert.isInvalid()) {
+                        signing.add(new SigningCert(keyInfo, certInfo));
+                    }
+                }
+
+                List<CertRequestInfo> certRequestInfos = keyInfo.getCertRequests();
+                for (int j = 0; j < key.getCertRequests().size(); j++) {
+                    CertRequest certRequest = key.getCertRequests().get(j);
+
+                    certRequests.putIfAbsent(certRequest.getId(), certRequestInfos.get(j));
+                    keyIdsForCertRequests.putIfAbsent(certRequest.getId(), key.getId());
+                }
+            }
+        }
+
+        this.tokens = unmodifiableList(tokenList);
+        this.tokensById = unmodifiableMap(tokenMap);
+        this.moduleIdsByTokenId = unmodifiableMap(moduleIds);
+        this.batchSigningEnabledByTokenId = unmodifiableMap(batchSigning);
+        this.softwareTokenId = softToken;
+        this.keysById = unmodifiableMap(keys);
+        this.tokenIdsByKeyId = unmodifiableMap(tokenIds);
+        this.certsById = unmodifiableMap(certs);
+        this.certsByHash = unmodifiableMap(certHashes);
+        this.certificatesByHash = unmodifiableMap(certificates);
+        this.keysByCertId = unmodifiableMap(keysForCertIds);
+        this.keysByCertHash = unmodifiableMap(keysForCertHashes);
+        this.certRequestsById = unmodifiableMap(certRequests);
+        this.keyIdsByCertRequestId = unmodifiableMap(keyIdsForCertRequests);
+        this.signingCerts = unmodifiableList(signing);
+    }
+
+    /**
+     * Creates a snapshot of the given tokens. The caller must make sure the tokens
+     * are not modified while the snapshot is being created.
+     *
+     * @param currentTokens the tokens
+     * @return the snapshot
+     */
+    static TokenSnapshot of(List<Token> currentTokens) {
+        return new TokenSnapshot(currentTokens);
+    }
+}
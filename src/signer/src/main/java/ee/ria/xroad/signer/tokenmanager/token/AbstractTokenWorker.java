@@ -182,6 +182,17 @@ public abstract class AbstractTokenWorker implements TokenWorker, WorkerWithLife
         return workerId;
     }
 
+    /**
+     * Tells whether the token can perform several signing operations at the same time.
+     * If it can, signing requests are not serialized with each other, only with the
+     * other token operations.
+     *
+     * @return true if concurrent signing is supported, false by default
+     */
+    public boolean isConcurrentSigningSupported() {
+        return false;
+    }
+
     /**
      * Execute additional code post every token worker action.
      */
@@ -34,54 +34,65 @@ import org.niis.xroad.signer.proto.GenerateKeyReq;
 import org.niis.xroad.signer.proto.SignCertificateReq;
 import org.niis.xroad.signer.proto.SignReq;
 
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 import static ee.ria.xroad.common.ErrorCodes.translateException;
 
 /**
- * A blocking (calls to token are synchronized) token worker.
+ * A blocking token worker. Calls to the token are mutually exclusive, except for signing
+ * on tokens that support concurrent signing: signing operations may then run in parallel
+ * with each other, but never in parallel with any other token operation.
  */
 @Slf4j
 @RequiredArgsConstructor
 public class BlockingTokenWorker implements TokenWorker {
     private final AbstractTokenWorker tokenWorker;
 
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
     @Override
     public void handleActivateToken(ActivateTokenReq message) {
-        synchronizedAction(() -> tokenWorker.handleActivateToken(message));
+        exclusiveAction(() -> tokenWorker.handleActivateToken(message));
     }
 
     @Override
     public KeyInfo handleGenerateKey(GenerateKeyReq message) {
-        return synchronizedAction(() -> tokenWorker.handleGenerateKey(message));
+        return exclusiveAction(() -> tokenWorker.handleGenerateKey(message));
     }
 
     @Override
     public void handleDeleteKey(String keyId) {
-        synchronizedAction(() -> tokenWorker.handleDeleteKey(keyId));
+        exclusiveAction(() -> tokenWorker.handleDeleteKey(keyId));
     }
 
     @Override
     public void handleDeleteCert(String certificateId) {
-        synchronizedAction(() -> tokenWorker.handleDeleteCert(certificateId));
+        exclusiveAction(() -> tokenWorker.handleDeleteCert(certificateId));
     }
 
     @Override
     public byte[] handleSign(SignReq request) {
-        return synchronizedAction(() -> tokenWorker.handleSign(request));
+        if (tokenWorker.isConcurrentSigningSupported()) {
+            return lockedAction(lock.readLock(), () -> tokenWorker.handleSign(request));
+        }
+        return exclusiveAction(() -> tokenWorker.handleSign(request));
     }
 
     @Override
-    public synchronized byte[] handleSignCertificate(SignCertificateReq request) {
-        return synchronizedAction(() -> tokenWorker.handleSignCertificate(request));
+    public byte[] handleSignCertificate(SignCertificateReq request) {
+        return exclusiveAction(() -> tokenWorker.handleSignCertificate(request));
     }
 
     @Override
-    public synchronized void initializeToken(char[] pin) {
-        synchronizedAction(() -> tokenWorker.initializeToken(pin));
+    public void initializeToken(char[] pin) {
+        exclusiveAction(() -> tokenWorker.initializeToken(pin));
     }
 
     @Override
-    public synchronized void handleUpdateTokenPin(char[] oldPin, char[] newPin) {
-        synchronizedAction(() -> tokenWorker.handleUpdateTokenPin(oldPin, newPin));
+    public void handleUpdateTokenPin(char[] oldPin, char[] newPin) {
+        exclusiveAction(() -> tokenWorker.handleUpdateTokenPin(oldPin, newPin));
     }
 
     @Override
@@ -109,24 +120,29 @@ public class BlockingTokenWorker implements TokenWorker {
     }
 
 
-    private synchronized <T> T synchronizedAction(ThrowingSupplier<T, Exception> action) {
-        try {
-            return action.get();
-        } catch (Exception e) {
-            throw translateException(e);
-        } finally {
-            tokenWorker.onActionHandled();
-        }
+    private <T> T exclusiveAction(ThrowingSupplier<T, Exception> action) {
+        return lockedAction(lock.writeLock(), action);
     }
 
+    private void exclusiveAction(ThrowingRunnable<Exception> action) {
+        lockedAction(lock.writeLock(), () -> {
+            action.run();
+            return null;
+        });
+    }
 
-    private synchronized void synchronizedAction(ThrowingRunnable<Exception> action) {
+    private <T> T lockedAction(Lock actionLock, ThrowingSupplier<T, Exception> action) {
+        actionLock.lock();
         try {
-            action.run();
+            return action.get();
         } catch (Exception e) {
             throw translateException(e);
         } finally {
-            tokenWorker.onActionHandled();
+            try {
+                tokenWorker.onActionHandled();
+            } finally {
+                actionLock.unlock();
+            }
         }
     }
 }
@@ -66,8 +66,10 @@ import java.security.cert.Certificate;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_TOKEN_PIN_POLICY_FAILURE;
@@ -114,7 +116,10 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
     // Use no digesting algorithm, since the input data is already a digest
     private static final String SIGNATURE_ALGORITHM = "NONEwithRSA";
 
-    private final Map<String, PrivateKey> privateKeys = new HashMap<>();
+    private final Map<String, PrivateKey> privateKeys = new ConcurrentHashMap<>();
+
+    // Initialized signatures per key id, reused by the concurrent signing operations
+    private final Map<String, Queue<Signature>> signaturePools = new ConcurrentHashMap<>();
 
     private boolean isTokenLoginAllowed = true;
 
@@ -191,6 +196,9 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
         log.info("Deleting key file {}", path);
 
         Files.deleteIfExists(path);
+
+        privateKeys.remove(keyId);
+        signaturePools.remove(keyId);
     }
 
     @Override
@@ -216,11 +224,26 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
 
         log.debug("Signing with key '{}' and signature algorithm '{}'", keyId, signatureAlgorithmId);
 
-        Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
-        signature.initSign(key);
+        Queue<Signature> pool = signaturePools.computeIfAbsent(keyId, k -> new ConcurrentLinkedQueue<>());
+
+        Signature signature = pool.poll();
+        if (signature == null) {
+            signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+            signature.initSign(key);
+        }
+
         signature.update(data);
+        byte[] result = signature.sign();
 
-        return signature.sign();
+        // After sign() the signature is reset to the state it had after initSign() and can be reused
+        pool.offer(signature);
+
+        return result;
+    }
+
+    @Override
+    public boolean isConcurrentSigningSupported() {
+        return true;
     }
 
     private static void checkSignatureAlgorithm(String signatureAlgorithmId) throws CodedException {
@@ -478,6 +501,7 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
 
     private void deactivateToken() {
         privateKeys.clear();
+        signaturePools.clear();
 
         setTokenActive(tokenId, false);
     }
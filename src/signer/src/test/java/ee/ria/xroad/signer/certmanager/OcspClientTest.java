@@ -26,6 +26,7 @@
 package ee.ria.xroad.signer.certmanager;
 
 import ee.ria.xroad.common.OcspTestUtils;
+import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.TestCertUtil;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
@@ -40,6 +41,7 @@ import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -60,10 +62,21 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
 
 import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -82,6 +95,12 @@ public class OcspClientTest {
     private static Server ocspResponder;
     private static byte[] responseData;
 
+    private static final AtomicInteger RECEIVED_REQUESTS = new AtomicInteger();
+    private static final AtomicInteger ACTIVE_REQUESTS = new AtomicInteger();
+    private static final AtomicInteger MAX_ACTIVE_REQUESTS = new AtomicInteger();
+    private static volatile long responseDelayMillis;
+    private static volatile CountDownLatch responseGate;
+
     private static final Map<String, OCSPResp> OCSP_RESPONSES = new HashMap<>();
     private static X509Certificate ocspResponderCert;
 
@@ -243,6 +262,96 @@ public class OcspClientTest {
         OcspClient.fetchResponse(RESPONDER_URI, subject, issuer, null, null, null);
     }
 
+    /**
+     * Concurrent queries to the same responder must not exceed the configured number of concurrent requests.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void concurrentRequestsToResponderAreLimited() throws Exception {
+        X509Certificate subject = getDefaultClientCert();
+
+        GlobalConf.reload(getTestGlobalConf());
+
+        responseData = createGoodResponse(subject);
+        responseDelayMillis = 100;
+
+        System.setProperty(SystemProperties.SIGNER_OCSP_RESPONDER_MAX_CONCURRENT_REQUESTS, "2");
+        OcspClientWorker client = new TestOcspClient(new OcspResponseManager());
+
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<OCSPResp>> results = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                results.add(executor.submit(() -> client.queryCertStatus(subject, new OcspVerifierOptions(true))));
+            }
+
+            for (Future<OCSPResp> result : results) {
+                assertNotNull(result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(6, RECEIVED_REQUESTS.get());
+        assertEquals(2, MAX_ACTIVE_REQUESTS.get());
+    }
+
+    /**
+     * A query interrupted while waiting for a request permit must stop, keep the interrupt status of the thread and
+     * not try the other responders.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void interruptedWhileWaitingForPermit() throws Exception {
+        X509Certificate subject = getDefaultClientCert();
+
+        GlobalConfProvider conf = getTestGlobalConf();
+        when(conf.getOcspResponderAddresses(Mockito.any(X509Certificate.class))).thenReturn(
+                Arrays.asList(RESPONDER_URI, "http://127.0.0.1:1234"));
+        GlobalConf.reload(conf);
+
+        responseData = createGoodResponse(subject);
+        responseGate = new CountDownLatch(1);
+
+        System.setProperty(SystemProperties.SIGNER_OCSP_RESPONDER_MAX_CONCURRENT_REQUESTS, "1");
+        OcspClientWorker client = new TestOcspClient(new OcspResponseManager());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // holds the only permit until the gate is opened
+            Future<OCSPResp> holder = executor.submit(() -> client.queryCertStatus(subject,
+                    new OcspVerifierOptions(true)));
+            awaitCondition(() -> ACTIVE_REQUESTS.get() == 1);
+
+            AtomicReference<Object> outcome = new AtomicReference<>();
+            Thread waiter = new Thread(() -> {
+                try {
+                    outcome.set(client.queryCertStatus(subject, new OcspVerifierOptions(true)));
+                } catch (InterruptedException e) {
+                    outcome.set(Thread.currentThread().isInterrupted() ? e : null);
+                } catch (Exception e) {
+                    outcome.set(e);
+                }
+            });
+            waiter.start();
+            awaitCondition(() -> waiter.getState() == Thread.State.WAITING);
+
+            waiter.interrupt();
+            waiter.join(5000);
+
+            assertTrue("Got " + outcome.get(), outcome.get() instanceof InterruptedException);
+
+            responseGate.countDown();
+            assertNotNull(holder.get(10, TimeUnit.SECONDS));
+            assertEquals(1, RECEIVED_REQUESTS.get());
+        } finally {
+            responseGate.countDown();
+            executor.shutdownNow();
+        }
+    }
+
     // ------------------------------------------------------------------------
 
     /**
@@ -266,6 +375,12 @@ public class OcspClientTest {
     public void startup() {
         OCSP_RESPONSES.clear();
 
+        RECEIVED_REQUESTS.set(0);
+        ACTIVE_REQUESTS.set(0);
+        MAX_ACTIVE_REQUESTS.set(0);
+        responseDelayMillis = 0;
+        responseGate = null;
+
         if (ocspResponderCert == null) {
             ocspResponderCert = TestCertUtil.getOcspSigner().certChain[0];
         }
@@ -274,6 +389,14 @@ public class OcspClientTest {
         ocspClient = new TestOcspClient(ocspResponseManager);
     }
 
+    /**
+     * After
+     */
+    @After
+    public void cleanup() {
+        System.clearProperty(SystemProperties.SIGNER_OCSP_RESPONDER_MAX_CONCURRENT_REQUESTS);
+    }
+
     /**
      * AfterClass
      *
@@ -321,6 +444,23 @@ public class OcspClientTest {
         return testConf;
     }
 
+    private byte[] createGoodResponse(X509Certificate subject) throws Exception {
+        Date thisUpdate = Date.from(TimeUtils.now().plus(1, ChronoUnit.DAYS));
+
+        return OcspTestUtils.createOCSPResponse(subject, GlobalConf.getCaCert("EE", subject), ocspResponderCert,
+                getOcspSignerKey(), CertificateStatus.GOOD, thisUpdate, null).getEncoded();
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Condition not met in time");
+            }
+            Thread.sleep(10);
+        }
+    }
+
     private void queryAndUpdateCertStatus(OcspClientWorker client, X509Certificate subject) throws Exception {
         OCSPResp response = client.queryCertStatus(subject, new OcspVerifierOptions(true));
         String subjectHash = calculateCertHexHash(subject);
@@ -349,7 +489,16 @@ public class OcspClientTest {
         @Override
         public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
                 throws IOException {
+            RECEIVED_REQUESTS.incrementAndGet();
+            MAX_ACTIVE_REQUESTS.accumulateAndGet(ACTIVE_REQUESTS.incrementAndGet(), Math::max);
             try {
+                if (responseGate != null) {
+                    responseGate.await(10, TimeUnit.SECONDS);
+                }
+                if (responseDelayMillis > 0) {
+                    Thread.sleep(responseDelayMillis);
+                }
+
                 response.setContentType(responseContentType);
 
                 if (responseData != null) {
@@ -358,6 +507,7 @@ public class OcspClientTest {
             } catch (Exception e) {
                 response.sendError(HttpStatus.INTERNAL_SERVER_ERROR_500, e.getMessage());
             } finally {
+                ACTIVE_REQUESTS.decrementAndGet();
                 baseRequest.setHandled(true);
             }
         }
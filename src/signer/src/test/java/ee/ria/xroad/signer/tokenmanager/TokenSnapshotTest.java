@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager;
+
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.util.CryptoUtils;
+import ee.ria.xroad.signer.model.Cert;
+import ee.ria.xroad.signer.model.CertRequest;
+import ee.ria.xroad.signer.model.Key;
+import ee.ria.xroad.signer.model.Token;
+import ee.ria.xroad.signer.protocol.dto.KeyUsageInfo;
+import ee.ria.xroad.signer.tokenmanager.module.SoftwareModuleType;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the indexes of {@link TokenSnapshot}.
+ */
+public class TokenSnapshotTest {
+
+    private static final ClientId.Conf MEMBER = ClientId.Conf.create("EE", "BUSINESS", "consumer");
+
+    @Test
+    public void indexesTokensKeysCertsAndCertRequests() {
+        Token softToken = new Token(SoftwareModuleType.TYPE, "0", CryptoUtils.CKM_RSA_PKCS_NAME);
+        softToken.setModuleId(SoftwareModuleType.TYPE);
+        softToken.setActive(true);
+
+        Key signKey = signingKey(softToken, "key1");
+        Cert cert = activeCert("cert1");
+        signKey.addCert(cert);
+        signKey.addCertRequest(new CertRequest("csr1", MEMBER, "C=EE"));
+        softToken.addKey(signKey);
+
+        Token hwToken = new Token("hw", "1", CryptoUtils.CKM_RSA_PKCS_NAME);
+        hwToken.setBatchSigningEnabled(false);
+        hwToken.addKey(new Key(hwToken, "key2"));
+
+        TokenSnapshot snapshot = TokenSnapshot.of(Arrays.asList(softToken, hwToken));
+
+        assertEquals(2, snapshot.tokens.size());
+        assertEquals("0", snapshot.softwareTokenId);
+        assertEquals(SoftwareModuleType.TYPE, snapshot.moduleIdsByTokenId.get("0"));
+        assertEquals(Boolean.FALSE, snapshot.batchSigningEnabledByTokenId.get("1"));
+
+        assertEquals("0", snapshot.tokenIdsByKeyId.get("key1"));
+        assertEquals("1", snapshot.tokenIdsByKeyId.get("key2"));
+        assertEquals("key1", snapshot.keysByCertId.get("cert1").getId());
+        assertEquals("key1", snapshot.keysByCertHash.get(cert.getHash()).getId());
+        assertEquals("cert1", snapshot.certsByHash.get(cert.getHash()).getId());
+        assertEquals(cert.getCertificate(), snapshot.certificatesByHash.get(cert.getHash()));
+        assertEquals("csr1", snapshot.certRequestsById.get("csr1").getId());
+        assertEquals("key1", snapshot.keyIdsByCertRequestId.get("csr1"));
+        assertNull(snapshot.keysById.get("unknown"));
+    }
+
+    @Test
+    public void signingCertsSkipInactiveTokensAndInvalidCerts() {
+        Token activeToken = new Token(SoftwareModuleType.TYPE, "0", CryptoUtils.CKM_RSA_PKCS_NAME);
+        activeToken.setActive(true);
+        Key activeKey = signingKey(activeToken, "key1");
+        activeKey.addCert(activeCert("cert1"));
+        Cert disabledCert = activeCert("cert2");
+        disabledCert.setActive(false);
+        activeKey.addCert(disabledCert);
+        activeToken.addKey(activeKey);
+
+        Token inactiveToken = new Token("hw", "1", CryptoUtils.CKM_RSA_PKCS_NAME);
+        Key inactiveKey = signingKey(inactiveToken, "key2");
+        inactiveKey.addCert(activeCert("cert3"));
+        inactiveToken.addKey(inactiveKey);
+
+        TokenSnapshot snapshot = TokenSnapshot.of(Arrays.asList(activeToken, inactiveToken));
+
+        assertEquals(1, snapshot.signingCerts.size());
+        assertEquals("cert1", snapshot.signingCerts.get(0).cert.getId());
+        assertEquals("key1", snapshot.signingCerts.get(0).key.getId());
+        assertTrue(TokenManager.certBelongsToMember(snapshot.signingCerts.get(0).cert, MEMBER));
+    }
+
+    private static Key signingKey(Token token, String id) {
+        Key key = new Key(token, id);
+        key.setAvailable(true);
+        key.setUsage(KeyUsageInfo.SIGNING);
+        return key;
+    }
+
+    private static Cert activeCert(String id) {
+        Cert cert = new Cert(id);
+        cert.setCertificate(TestCertUtil.getConsumer().certChain[0]);
+        cert.setMemberId(MEMBER);
+        cert.setActive(true);
+        return cert;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * The MIT License
+ * Copyright (c) 2019- Nordic Institute for Interoperability Solutions (NIIS)
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.niis.xroad.signer.proto.SignReq;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the locking of {@link BlockingTokenWorker}.
+ */
+public class BlockingTokenWorkerTest {
+
+    private ExecutorService executor;
+
+    private final AtomicInteger activeSigners = new AtomicInteger();
+    private final AtomicInteger maxActiveSigners = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void signsConcurrentlyWhenTokenSupportsIt() throws Exception {
+        signTwice(createWorker(true, 5000));
+
+        assertEquals(2, maxActiveSigners.get());
+    }
+
+    @Test
+    public void signsSeriallyWhenTokenDoesNotSupportConcurrentSigning() throws Exception {
+        signTwice(createWorker(false, 200));
+
+        assertEquals(1, maxActiveSigners.get());
+    }
+
+    private void signTwice(BlockingTokenWorker worker) throws Exception {
+        Future<byte[]> first = executor.submit(() -> worker.handleSign(SignReq.getDefaultInstance()));
+        Future<byte[]> second = executor.submit(() -> worker.handleSign(SignReq.getDefaultInstance()));
+
+        first.get(10, TimeUnit.SECONDS);
+        second.get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Creates a worker whose signing operation waits a while for another signing operation
+     * to start and keeps track of how many signing operations were running at the same time.
+     */
+    private BlockingTokenWorker createWorker(boolean concurrentSigning, long waitMillis) {
+        CountDownLatch bothSigning = new CountDownLatch(2);
+
+        AbstractTokenWorker tokenWorker = mock(AbstractTokenWorker.class);
+        when(tokenWorker.isConcurrentSigningSupported()).thenReturn(concurrentSigning);
+        when(tokenWorker.handleSign(any())).thenAnswer(invocation -> {
+            maxActiveSigners.accumulateAndGet(activeSigners.incrementAndGet(), Math::max);
+            bothSigning.countDown();
+            bothSigning.await(waitMillis, TimeUnit.MILLISECONDS);
+            activeSigners.decrementAndGet();
+            return new byte[0];
+        });
+
+        return new BlockingTokenWorker(tokenWorker);
+    }
+}